@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar
+ *
+ * <p>This accepts the same command line options as JMH's own main class, but
+ * results are written as JSON to {@code jmh-results.json} unless {@code -rf}
+ * or {@code -rff} say otherwise, so that runs can be compared over time.</p>
+ */
+public final class BenchmarkMain
+{
+    private static final String DEFAULT_RESULT_FILE = "jmh-results.json";
+
+    private BenchmarkMain()
+    {
+    }
+
+    public static void main(final String... args)
+        throws Exception
+    {
+        final CommandLineOptions cmdLine = new CommandLineOptions(args);
+        final ChainedOptionsBuilder builder
+            = new OptionsBuilder().parent(cmdLine);
+
+        if (!cmdLine.getResultFormat().hasValue())
+            builder.resultFormat(ResultFormatType.JSON);
+        if (!cmdLine.getResult().hasValue())
+            builder.result(DEFAULT_RESULT_FILE);
+
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.main.ValidationFeature;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold compile versus warm validation
+ *
+ * <p>This validates all schemas of the Google discovery document ({@code
+ * /other/google-json-api.json}) against the draft v3 meta-schema, as {@code
+ * MiniPerfTest2} does. A cold operation starts from a new factory, and
+ * therefore also resolves, checks and builds the validators of all
+ * subschemas of the meta-schema it needs; a warm operation reuses the same
+ * schema.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompileBenchmark
+{
+    /**
+     * Validation feature to enable, {@code NONE} for none
+     */
+    @Param({ "NONE", "COMPILED_PROGRAMS", "COMPACT_PROGRAMS",
+        "GENERATED_CLASSES" })
+    public String feature;
+
+    private JsonNode draftv3;
+    private List<JsonNode> instances;
+
+    private JsonSchemaFactory coldFactory;
+    private JsonSchema warmSchema;
+
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        draftv3 = JsonLoader.fromResource("/schema-draftv3.json");
+        instances = ImmutableList.copyOf(JsonLoader
+            .fromResource("/other/google-json-api.json").get("schemas"));
+        warmSchema = createSchema(newFactory(feature));
+        validateAll(warmSchema, null);
+    }
+
+    @Setup(Level.Invocation)
+    public void newColdFactory()
+    {
+        coldFactory = newFactory(feature);
+    }
+
+    @Benchmark
+    public void cold(final Blackhole blackhole)
+    {
+        validateAll(createSchema(coldFactory), blackhole);
+    }
+
+    @Benchmark
+    public void warm(final Blackhole blackhole)
+    {
+        validateAll(warmSchema, blackhole);
+    }
+
+    private JsonSchema createSchema(final JsonSchemaFactory factory)
+    {
+        return factory.createSchema(factory.registerSchema(draftv3));
+    }
+
+    private void validateAll(final JsonSchema schema,
+        final Blackhole blackhole)
+    {
+        ValidationReport report;
+
+        for (final JsonNode instance: instances) {
+            report = schema.validate(instance);
+            if (blackhole != null)
+                blackhole.consume(report);
+        }
+    }
+
+    private static JsonSchemaFactory newFactory(final String feature)
+    {
+        final JsonSchemaFactory.Builder builder
+            = new JsonSchemaFactory.Builder();
+
+        if (!"NONE".equals(feature))
+            builder.enableFeature(ValidationFeature.valueOf(feature));
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Write a generated instance of a given size to a file
+ *
+ * <p>Options:</p>
+ *
+ * <ul>
+ *     <li>{@code --schema file}: the schema (required);</li>
+ *     <li>{@code --out file}: the output file (required);</li>
+ *     <li>{@code --size size}: the size, in bytes, optionally followed by
+ *     {@code k}, {@code m} or {@code g} (default 1m);</li>
+ *     <li>{@code --seed seed}: the seed (default 0);</li>
+ *     <li>{@code --invalid ratio}: the probability for a value to be invalid
+ *     (default 0);</li>
+ *     <li>{@code --array-length n}: the maximum number of array elements
+ *     beyond {@code minItems} (default 10);</li>
+ *     <li>{@code --extra-properties n}: the maximum number of additional
+ *     properties of objects (default 0).</li>
+ * </ul>
+ *
+ * @see InstanceGenerator
+ */
+public final class CorpusWriter
+{
+    private CorpusWriter()
+    {
+    }
+
+    public static void main(final String... args)
+        throws IOException
+    {
+        final List<String> list = Lists.newArrayList(Arrays.asList(args));
+        File schemaFile = null, outFile = null;
+        long size = 1L << 20;
+        long seed = 0L;
+        double invalidRatio = 0.0;
+        int arrayLength = 10, extraProperties = 0;
+        String arg;
+
+        while (!list.isEmpty()) {
+            arg = list.remove(0);
+            if ("--schema".equals(arg))
+                schemaFile = new File(list.remove(0));
+            else if ("--out".equals(arg))
+                outFile = new File(list.remove(0));
+            else if ("--size".equals(arg))
+                size = parseSize(list.remove(0));
+            else if ("--seed".equals(arg))
+                seed = Long.parseLong(list.remove(0));
+            else if ("--invalid".equals(arg))
+                invalidRatio = Double.parseDouble(list.remove(0));
+            else if ("--array-length".equals(arg))
+                arrayLength = Integer.parseInt(list.remove(0));
+            else if ("--extra-properties".equals(arg))
+                extraProperties = Integer.parseInt(list.remove(0));
+            else
+                throw new IllegalArgumentException("unknown option " + arg);
+        }
+
+        if (schemaFile == null || outFile == null)
+            throw new IllegalArgumentException("--schema and --out are "
+                + "required");
+
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        final SchemaContainer container
+            = factory.registerSchema(JsonLoader.fromFile(schemaFile));
+        final InstanceGenerator generator
+            = new InstanceGenerator.Builder(factory).setSeed(seed)
+            .setInvalidRatio(invalidRatio).setMaxArrayLength(arrayLength)
+            .setMaxExtraProperties(extraProperties).build();
+        final Set<String> unsupported = generator.getUnsupportedKeywords();
+
+        if (!unsupported.isEmpty())
+            System.err.println("keywords not honored: " + unsupported);
+
+        final OutputStream out
+            = new BufferedOutputStream(new FileOutputStream(outFile));
+        final long written;
+
+        try {
+            written = generator.write(container, out, size);
+        } finally {
+            out.close();
+        }
+
+        System.out.println(String.format("%d bytes, %d values, %d invalid, "
+            + "%d constraints not honored", written, generator.getValues(),
+            generator.getViolations(), generator.getUnhonored()));
+    }
+
+    private static long parseSize(final String s)
+    {
+        final char unit = Character.toLowerCase(s.charAt(s.length() - 1));
+        final int shift = unit == 'k' ? 10 : unit == 'm' ? 20
+            : unit == 'g' ? 30 : 0;
+        final String digits = shift == 0 ? s : s.substring(0, s.length() - 1);
+
+        return Long.parseLong(digits) << shift;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.format.FormatBundle;
+import org.eel.kitchen.jsonschema.format.FormatSpecifier;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.eel.kitchen.jsonschema.validator.ValidationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Format specifiers, on valid and invalid values
+ *
+ * <p>Values are the ones of the format tests of the main project ({@code
+ * /format/*.json}). The result memo is disabled.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatBenchmark
+{
+    /**
+     * Format names, by test resource name
+     */
+    private static final Map<String, String> FORMATS
+        = ImmutableMap.<String, String>builder()
+        .put("datetime", "date-time")
+        .put("email", "email")
+        .put("hostname", "host-name")
+        .put("ip-address", "ip-address")
+        .put("ipv6", "ipv6")
+        .put("regex", "regex")
+        .put("uri", "uri")
+        .build();
+
+    @Param({
+        "datetime", "email", "hostname", "ip-address", "ipv6", "regex", "uri"
+    })
+    public String resource;
+
+    private String fmt;
+    private FormatSpecifier specifier;
+    private ValidationContext context;
+
+    private final List<JsonNode> valid = Lists.newArrayList();
+    private final List<JsonNode> invalid = Lists.newArrayList();
+
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        fmt = FORMATS.get(resource);
+        specifier = FormatBundle.defaultBundle().getSpecifiers().get(fmt);
+        context = new ValidationContext(null);
+
+        final JsonNode testData
+            = JsonLoader.fromResource("/format/" + resource + ".json");
+
+        for (final JsonNode element: testData)
+            if (element.get("valid").booleanValue())
+                valid.add(element.get("data"));
+            else
+                invalid.add(element.get("data"));
+    }
+
+    @Benchmark
+    public void validValues(final Blackhole blackhole)
+    {
+        run(valid, blackhole);
+    }
+
+    @Benchmark
+    public void invalidValues(final Blackhole blackhole)
+    {
+        run(invalid, blackhole);
+    }
+
+    private void run(final List<JsonNode> values, final Blackhole blackhole)
+    {
+        ValidationReport report;
+
+        for (final JsonNode value: values) {
+            report = new ValidationReport();
+            specifier.validate(fmt, context, report, value);
+            blackhole.consume(report);
+        }
+    }
+}
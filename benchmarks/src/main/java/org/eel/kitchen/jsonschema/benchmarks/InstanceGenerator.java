@@ -0,0 +1,1562 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.CountingOutputStream;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundle;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.keyword.AdditionalItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.AdditionalPropertiesKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.DependenciesKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.DisallowKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.DivisibleByKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.EnumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.ExtendsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.FormatKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MaxItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MaxLengthKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MaximumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinLengthKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinimumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.PatternKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.PropertiesKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.TypeKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.UniqueItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.main.JsonSchemaException;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.util.NodeType;
+import org.eel.kitchen.jsonschema.util.RhinoHelper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generator of instances from a schema
+ *
+ * <p>This generator produces instances which are valid against a schema, and,
+ * with a configurable probability, instances with invalid values: a number
+ * outside of {@code minimum} or {@code maximum}, a string which does not match
+ * {@code pattern} or does not respect {@code minLength} or {@code maxLength}, a
+ * string which is not in {@code enum} (if a string breaks nothing else). Only
+ * one constraint is broken per invalid value, so that the number of validation
+ * failures to expect is known (see {@link #getViolations()}).</p>
+ *
+ * <p>The keywords this generator knows about are the keywords of a {@link
+ * KeywordBundle} (the default bundle unless told otherwise) for which the
+ * validator is the one of the default bundle. Other keywords of the bundle are
+ * reported by {@link #getUnsupportedKeywords()}; when a schema uses one of
+ * them, it is counted as a constraint which could not be honored (see {@link
+ * #getUnhonored()}). The same goes for constraints which the generator fails
+ * to satisfy, for instance a {@code pattern} with regex features it does not
+ * support (see {@link RegexSampler}) and which random strings do not match.
+ * </p>
+ *
+ * <p>Sizes are controlled by the maximum length of arrays, the maximum number
+ * of additional properties of objects, the ratio of optional properties which
+ * are generated, and the maximum depth, beyond which only required properties
+ * and {@code minItems} elements are generated. To produce a document of a
+ * given size, use {@link #write(SchemaContainer, OutputStream, long)}, which
+ * grows the root array or object until the size is reached.</p>
+ *
+ * <p>Generation is deterministic: two generators built with the same seed and
+ * settings generate the same instances, in the same order.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public final class InstanceGenerator
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Keywords honored by this generator, with their default validators
+     */
+    private static final Map<String, Class<? extends KeywordValidator>>
+        HONORED = ImmutableMap.<String, Class<? extends KeywordValidator>>
+        builder()
+        .put("additionalItems", AdditionalItemsKeywordValidator.class)
+        .put("additionalProperties", AdditionalPropertiesKeywordValidator.class)
+        .put("dependencies", DependenciesKeywordValidator.class)
+        .put("disallow", DisallowKeywordValidator.class)
+        .put("divisibleBy", DivisibleByKeywordValidator.class)
+        .put("enum", EnumKeywordValidator.class)
+        .put("extends", ExtendsKeywordValidator.class)
+        .put("format", FormatKeywordValidator.class)
+        .put("maximum", MaximumKeywordValidator.class)
+        .put("maxItems", MaxItemsKeywordValidator.class)
+        .put("maxLength", MaxLengthKeywordValidator.class)
+        .put("minimum", MinimumKeywordValidator.class)
+        .put("minItems", MinItemsKeywordValidator.class)
+        .put("minLength", MinLengthKeywordValidator.class)
+        .put("pattern", PatternKeywordValidator.class)
+        .put("properties", PropertiesKeywordValidator.class)
+        .put("type", TypeKeywordValidator.class)
+        .put("uniqueItems", UniqueItemsKeywordValidator.class)
+        .build();
+
+    private static final Set<String> ARRAY_KEYWORDS = ImmutableSet.of(
+        "items", "additionalItems", "minItems", "maxItems", "uniqueItems");
+    private static final Set<String> OBJECT_KEYWORDS = ImmutableSet.of(
+        "properties", "patternProperties", "additionalProperties",
+        "dependencies");
+    private static final Set<String> NUMBER_KEYWORDS = ImmutableSet.of(
+        "minimum", "maximum", "divisibleBy");
+    private static final Set<String> STRING_KEYWORDS = ImmutableSet.of(
+        "minLength", "maxLength", "pattern", "format");
+
+    private static final Set<NodeType> CONTAINERS
+        = EnumSet.of(NodeType.ARRAY, NodeType.OBJECT);
+
+    private static final String ALPHABET
+        = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    /**
+     * Number of candidates tried for constrained values before giving up
+     */
+    private static final int MAX_ATTEMPTS = 100;
+
+    /**
+     * Required properties and {@code minItems} elements are generated beyond
+     * the maximum depth, but not more than this many times deeper
+     */
+    private static final int MAX_DEPTH_FACTOR = 4;
+
+    /**
+     * Range of numbers, and of string lengths, when there is no bound
+     */
+    private static final int DEFAULT_RANGE = 1000;
+    private static final int DEFAULT_STRING_LENGTH = 16;
+
+    /**
+     * Granularity of non integer numbers
+     */
+    private static final BigDecimal NUMBER_STEP = new BigDecimal("0.01");
+
+    private final JsonSchemaFactory factory;
+    private final Set<String> unsupported;
+    private final Random random;
+    private final double invalidRatio;
+    private final int maxArrayLength;
+    private final int maxExtraProperties;
+    private final double optionalPropertyRatio;
+    private final int maxDepth;
+
+    /**
+     * Regex samplers, by regex; {@code null} if the regex is not supported
+     */
+    private final Map<String, RegexSampler> samplers = Maps.newHashMap();
+
+    private long values = 0L;
+    private long violations = 0L;
+    private long unhonored = 0L;
+
+    private InstanceGenerator(final Builder builder)
+    {
+        factory = builder.factory;
+        random = new Random(builder.seed);
+        invalidRatio = builder.invalidRatio;
+        maxArrayLength = builder.maxArrayLength;
+        maxExtraProperties = builder.maxExtraProperties;
+        optionalPropertyRatio = builder.optionalPropertyRatio;
+        maxDepth = builder.maxDepth;
+
+        final ImmutableSet.Builder<String> set = ImmutableSet.builder();
+
+        for (final Map.Entry<String, Class<? extends KeywordValidator>> entry:
+            builder.bundle.getValidators().entrySet())
+            if (HONORED.get(entry.getKey()) != entry.getValue())
+                set.add(entry.getKey());
+
+        unsupported = set.build();
+    }
+
+    /**
+     * Return the keywords of the bundle which this generator does not honor
+     *
+     * @return an immutable set of keyword names
+     */
+    public Set<String> getUnsupportedKeywords()
+    {
+        return unsupported;
+    }
+
+    /**
+     * Return the number of scalar values generated so far
+     *
+     * @return the number of values
+     */
+    public long getValues()
+    {
+        return values;
+    }
+
+    /**
+     * Return the number of invalid values generated so far
+     *
+     * <p>Each invalid value breaks exactly one constraint.</p>
+     *
+     * @return the number of invalid values
+     */
+    public long getViolations()
+    {
+        return violations;
+    }
+
+    /**
+     * Return the number of constraints which could not be honored so far
+     *
+     * <p>If this number is not zero, some instances which were meant to be
+     * valid may not be.</p>
+     *
+     * @return the number of constraints not honored
+     */
+    public long getUnhonored()
+    {
+        return unhonored;
+    }
+
+    /**
+     * Generate an instance
+     *
+     * @param container the schema container
+     * @return the instance
+     * @throws IllegalArgumentException a JSON Reference failed to resolve
+     */
+    public JsonNode generate(final SchemaContainer container)
+    {
+        return generate(ImmutableList.of(root(container)), 0);
+    }
+
+    /**
+     * Write an instance of about a given size to an output stream
+     *
+     * <p>The root of the instance must be an array or an object: elements, or
+     * additional properties, are generated until the size is reached; the
+     * instance is streamed, so it is never held in memory as a whole (except
+     * for the elements of an array with {@code uniqueItems}). The instance may
+     * be smaller if {@code maxItems} is reached, or if additional properties
+     * are not allowed; it is larger by at most one element or property.</p>
+     *
+     * <p>The output stream is not closed.</p>
+     *
+     * @param container the schema container
+     * @param out the output stream
+     * @param targetBytes the size to reach, in bytes
+     * @return the number of bytes written
+     * @throws IOException failed to write
+     * @throws IllegalArgumentException the root of the instance can be neither
+     * an array nor an object, or a JSON Reference failed to resolve
+     */
+    public long write(final SchemaContainer container, final OutputStream out,
+        final long targetBytes)
+        throws IOException
+    {
+        Preconditions.checkArgument(targetBytes > 0L,
+            "target size must be strictly positive");
+
+        final CountingOutputStream counting = new CountingOutputStream(out);
+        final JsonGenerator generator = MAPPER.getJsonFactory()
+            .createJsonGenerator(counting, JsonEncoding.UTF8);
+        final List<SchemaNode> schemas = collect(ImmutableList.of(
+            root(container)));
+        final Set<NodeType> types = allowedTypes(schemas);
+
+        generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+        if (types.contains(NodeType.ARRAY) && (hasAny(nodes(schemas),
+            ARRAY_KEYWORDS) || !types.contains(NodeType.OBJECT)))
+            writeArray(schemas, generator, counting, targetBytes);
+        else if (types.contains(NodeType.OBJECT))
+            writeObject(schemas, generator, counting, targetBytes);
+        else
+            throw new IllegalArgumentException("root of instance must be an "
+                + "array or an object");
+
+        generator.close();
+        return counting.getCount();
+    }
+
+    private void writeArray(final List<SchemaNode> schemas,
+        final JsonGenerator generator, final CountingOutputStream counting,
+        final long targetBytes)
+        throws IOException
+    {
+        final Integer maxItems = maxItems(schemas);
+        final int minItems = minItems(schemas);
+        final Set<JsonNode> seen = isUnique(schemas)
+            ? Sets.<JsonNode>newHashSet() : null;
+
+        generator.writeStartArray();
+
+        JsonNode element;
+
+        for (int i = 0; maxItems == null || i < maxItems; i++) {
+            if (i >= minItems && counting.getCount() >= targetBytes)
+                break;
+            element = arrayElement(schemas, i, 1, seen);
+            if (!isNew(seen, element, i >= minItems))
+                break;
+            MAPPER.writeTree(generator, element);
+            generator.flush();
+        }
+
+        generator.writeEndArray();
+    }
+
+    private void writeObject(final List<SchemaNode> schemas,
+        final JsonGenerator generator, final CountingOutputStream counting,
+        final long targetBytes)
+        throws IOException
+    {
+        final Set<String> names = Sets.newLinkedHashSet();
+        final List<SchemaNode> effective = plan(schemas, 0, names);
+
+        generator.writeStartObject();
+
+        for (final String name: names) {
+            generator.writeFieldName(name);
+            MAPPER.writeTree(generator, generate(propertySchemas(effective,
+                name), 1));
+            generator.flush();
+        }
+
+        if (additionalAllowed(effective)) {
+            String name;
+            for (int i = 0; counting.getCount() < targetBytes; i++) {
+                name = "extra" + i;
+                if (names.contains(name))
+                    continue;
+                generator.writeFieldName(name);
+                MAPPER.writeTree(generator, generate(propertySchemas(
+                    effective, name), 1));
+                generator.flush();
+            }
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static SchemaNode root(final SchemaContainer container)
+    {
+        Preconditions.checkNotNull(container, "container must not be null");
+        return new SchemaNode(container, container.getSchema());
+    }
+
+    private JsonNode generate(final List<SchemaNode> input, final int depth)
+    {
+        if (depth > MAX_DEPTH_FACTOR * (maxDepth + 1))
+            throw new IllegalArgumentException("required content is nested "
+                + "too deeply (recursive required properties?)");
+
+        final List<SchemaNode> schemas = collect(input);
+
+        for (final SchemaNode schemaNode: schemas)
+            if (hasTypeSchemas(schemaNode.getNode()))
+                return generate(chooseType(schemas, schemaNode), depth);
+
+        for (final SchemaNode schemaNode: schemas)
+            if (schemaNode.getNode().path("enum").isArray())
+                return enumValue(schemas, schemaNode.getNode().get("enum"));
+
+        final List<NodeType> types = Lists.newArrayList(allowedTypes(schemas));
+
+        if (hasUntypedDisallow(schemas))
+            unhonored++;
+
+        if (depth >= maxDepth && !CONTAINERS.containsAll(types))
+            types.removeAll(CONTAINERS);
+
+        if (types.isEmpty()) {
+            unhonored++;
+            types.add(NodeType.NULL);
+        }
+
+        final NodeType type = types.get(random.nextInt(types.size()));
+
+        switch (type) {
+            case ARRAY:
+                return arrayValue(schemas, depth);
+            case OBJECT:
+                return objectValue(schemas, depth);
+            case STRING:
+                return stringValue(schemas);
+            case INTEGER:
+                return numberValue(schemas, true);
+            case NUMBER:
+                return numberValue(schemas, false);
+            case BOOLEAN:
+                values++;
+                return FACTORY.booleanNode(random.nextBoolean());
+            default:
+                values++;
+                return FACTORY.nullNode();
+        }
+    }
+
+    /**
+     * Resolve schemas and add the schemas they extend
+     *
+     * @param input the schemas
+     * @return the resolved schemas, without duplicates
+     */
+    private List<SchemaNode> collect(final List<SchemaNode> input)
+    {
+        final List<SchemaNode> ret = Lists.newArrayList();
+        final Set<JsonNode> seen = Sets.newIdentityHashSet();
+        final List<SchemaNode> queue = Lists.newLinkedList(input);
+
+        SchemaNode schemaNode;
+        SchemaContainer container;
+        JsonNode node, parents;
+
+        while (!queue.isEmpty()) {
+            schemaNode = resolve(queue.remove(0));
+            node = schemaNode.getNode();
+            if (!node.isObject() || !seen.add(node))
+                continue;
+            ret.add(schemaNode);
+            for (final String keyword: unsupported)
+                if (node.has(keyword))
+                    unhonored++;
+            container = schemaNode.getContainer();
+            parents = node.path("extends");
+            if (parents.isObject())
+                queue.add(new SchemaNode(container, parents));
+            else
+                for (final JsonNode parent: parents)
+                    queue.add(new SchemaNode(container, parent));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Resolve a schema, in the same way as the validator does
+     *
+     * @param schemaNode the schema
+     * @return the resolved schema
+     * @throws IllegalArgumentException ref loop or dangling reference
+     */
+    private SchemaNode resolve(final SchemaNode schemaNode)
+    {
+        final Set<JsonRef> refs = Sets.newHashSet();
+
+        SchemaContainer container = schemaNode.getContainer();
+        JsonNode node = schemaNode.getNode();
+        JsonRef source, target;
+
+        try {
+            while (node.path("$ref").isTextual()) {
+                source = container.getLocator();
+                target = source.resolve(JsonRef.fromNode(node.get("$ref")));
+                if (!refs.add(target))
+                    throw new IllegalArgumentException("ref loop detected: "
+                        + refs);
+                if (!source.contains(target))
+                    container = factory.getSchema(target.getRootAsURI());
+                node = target.getFragment().resolve(container.getSchema());
+                if (node.isMissingNode())
+                    throw new IllegalArgumentException("dangling JSON "
+                        + "Reference: " + target);
+            }
+        } catch (JsonSchemaException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        return new SchemaNode(container, node);
+    }
+
+    private static boolean hasTypeSchemas(final JsonNode schema)
+    {
+        for (final JsonNode element: schema.path("type"))
+            if (element.isObject())
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Choose one element of a {@code type} array containing schemas
+     *
+     * <p>The schema is replaced with a copy of it, with the chosen simple type
+     * as {@code type}, or without {@code type} but with the chosen schema added
+     * to the list.</p>
+     *
+     * @param schemas the schemas
+     * @param schemaNode the schema with a {@code type} array
+     * @return the new list of schemas
+     */
+    private List<SchemaNode> chooseType(final List<SchemaNode> schemas,
+        final SchemaNode schemaNode)
+    {
+        final List<SchemaNode> ret = Lists.newArrayList(schemas);
+        final JsonNode types = schemaNode.getNode().get("type");
+        final JsonNode choice = types.get(random.nextInt(types.size()));
+        final ObjectNode copy = schemaNode.getNode().deepCopy();
+        final SchemaContainer container = schemaNode.getContainer();
+
+        if (choice.isTextual())
+            copy.put("type", choice);
+        else {
+            copy.remove("type");
+            ret.add(new SchemaNode(container, choice));
+        }
+
+        ret.set(ret.indexOf(schemaNode), new SchemaNode(container, copy));
+        return ret;
+    }
+
+    /**
+     * Return the types an instance may have
+     *
+     * <p>Schemas in {@code disallow} are only partially honored: if they have
+     * a {@code type}, instances of this type are not generated; otherwise, an
+     * instance is valid against them if its type is not one their keywords
+     * apply to, so only types they apply to are generated, but these may still
+     * be valid against the disallowed schema (see {@link
+     * #hasUntypedDisallow(List)}).</p>
+     *
+     * @param schemas the schemas
+     * @return the set of types
+     */
+    private static Set<NodeType> allowedTypes(final List<SchemaNode> schemas)
+    {
+        final Set<NodeType> ret = EnumSet.allOf(NodeType.class);
+        final List<JsonNode> nodes = Lists.newArrayList();
+        boolean typed = false;
+        JsonNode node;
+
+        for (final SchemaNode schemaNode: schemas) {
+            node = schemaNode.getNode();
+            nodes.add(node);
+            if (node.has("type")) {
+                typed = true;
+                ret.retainAll(simpleTypes(node.get("type")));
+            }
+            if (!node.has("disallow"))
+                continue;
+            ret.removeAll(simpleTypes(node.get("disallow")));
+            for (final JsonNode disallowed: node.get("disallow")) {
+                if (!disallowed.isObject())
+                    continue;
+                if (disallowed.has("type"))
+                    ret.removeAll(simpleTypes(disallowed.get("type")));
+                else
+                    ret.retainAll(inferredTypes(ImmutableList.of(disallowed)));
+            }
+        }
+
+        if (typed)
+            return ret;
+
+        /*
+         * No type: infer it from keywords, if any
+         */
+        final Set<NodeType> inferred = inferredTypes(nodes);
+
+        inferred.retainAll(ret);
+        return inferred.isEmpty() ? ret : inferred;
+    }
+
+    /**
+     * Return the types which keywords of schemas apply to
+     *
+     * @param schemas the schemas
+     * @return the set of types, empty if no keyword is type specific
+     */
+    private static Set<NodeType> inferredTypes(final List<JsonNode> schemas)
+    {
+        final Set<NodeType> ret = EnumSet.noneOf(NodeType.class);
+
+        if (hasAny(schemas, ARRAY_KEYWORDS))
+            ret.add(NodeType.ARRAY);
+        if (hasAny(schemas, OBJECT_KEYWORDS))
+            ret.add(NodeType.OBJECT);
+        if (hasAny(schemas, NUMBER_KEYWORDS))
+            ret.addAll(EnumSet.of(NodeType.INTEGER, NodeType.NUMBER));
+        if (hasAny(schemas, STRING_KEYWORDS))
+            ret.add(NodeType.STRING);
+
+        return ret;
+    }
+
+    /**
+     * Tell whether one of the schemas disallows a schema without a type
+     *
+     * @param schemas the schemas
+     * @return true if generated instances may be valid against a disallowed
+     * schema
+     */
+    private static boolean hasUntypedDisallow(final List<SchemaNode> schemas)
+    {
+        for (final SchemaNode schemaNode: schemas)
+            for (final JsonNode disallowed: schemaNode.getNode()
+                .path("disallow"))
+                if (disallowed.isObject() && !disallowed.has("type"))
+                    return true;
+
+        return false;
+    }
+
+    /**
+     * Return the simple types of a {@code type} or {@code disallow} value
+     *
+     * <p>Schemas in the value are ignored.</p>
+     *
+     * @param value the keyword value
+     * @return the set of types
+     */
+    private static Set<NodeType> simpleTypes(final JsonNode value)
+    {
+        final Set<NodeType> ret = EnumSet.noneOf(NodeType.class);
+        final List<JsonNode> elements = value.isTextual()
+            ? ImmutableList.of(value) : ImmutableList.copyOf(value);
+
+        String name;
+
+        for (final JsonNode element: elements) {
+            if (!element.isTextual())
+                continue;
+            name = element.textValue();
+            if ("any".equals(name))
+                return EnumSet.allOf(NodeType.class);
+            if ("number".equals(name))
+                ret.add(NodeType.INTEGER);
+            ret.add(NodeType.fromName(name));
+        }
+
+        return ret;
+    }
+
+    private static boolean hasAny(final List<JsonNode> schemas,
+        final Set<String> keywords)
+    {
+        for (final JsonNode schema: schemas)
+            for (final String keyword: keywords)
+                if (schema.has(keyword))
+                    return true;
+
+        return false;
+    }
+
+    private static List<JsonNode> nodes(final List<SchemaNode> schemas)
+    {
+        final List<JsonNode> ret = Lists.newArrayList();
+
+        for (final SchemaNode schemaNode: schemas)
+            ret.add(schemaNode.getNode());
+
+        return ret;
+    }
+
+    private boolean violate()
+    {
+        return invalidRatio > 0.0 && random.nextDouble() < invalidRatio;
+    }
+
+    private JsonNode enumValue(final List<SchemaNode> schemas,
+        final JsonNode values)
+    {
+        this.values++;
+
+        /*
+         * The invalid value is a string: only use it if it breaks nothing
+         * else
+         */
+        if (violate() && allowedTypes(schemas).contains(NodeType.STRING)
+            && !hasAny(nodes(schemas), STRING_KEYWORDS)) {
+            JsonNode ret;
+            do {
+                ret = FACTORY.textNode("notInEnum" + random.nextInt());
+            } while (Iterables.contains(values, ret));
+            violations++;
+            return ret;
+        }
+
+        final Set<NodeType> types = allowedTypes(schemas);
+        final List<JsonNode> candidates = Lists.newArrayList();
+
+        for (final JsonNode value: values)
+            if (types.contains(NodeType.getNodeType(value))
+                && inAllEnums(schemas, value))
+                candidates.add(value);
+
+        if (!candidates.isEmpty())
+            return candidates.get(random.nextInt(candidates.size()));
+
+        unhonored++;
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static boolean inAllEnums(final List<SchemaNode> schemas,
+        final JsonNode value)
+    {
+        JsonNode values;
+
+        for (final SchemaNode schemaNode: schemas) {
+            values = schemaNode.getNode().path("enum");
+            if (values.isArray() && !Iterables.contains(values, value))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Generate a number
+     *
+     * <p>The number is a multiple of {@code divisibleBy} if present, or else
+     * of 1 for integers and of {@link #NUMBER_STEP} for other numbers. When
+     * there is no lower or upper bound, the range is {@link #DEFAULT_RANGE}
+     * steps wide. An invalid number is the nearest multiple outside of one of
+     * the bounds, so that it only breaks this bound.</p>
+     *
+     * <p>If an integer is asked for, but there is no integer multiple within
+     * the bounds, a non integer number is generated if allowed.</p>
+     *
+     * @param schemas the schemas
+     * @param integer true if the number should be an integer
+     * @return the number
+     */
+    private JsonNode numberValue(final List<SchemaNode> schemas,
+        final boolean integer)
+    {
+        BigDecimal lower = null, upper = null, divisor = null, value;
+        boolean lowerExclusive = false, upperExclusive = false, exclusive;
+        JsonNode node;
+
+        values++;
+
+        for (final SchemaNode schemaNode: schemas) {
+            node = schemaNode.getNode();
+            if (node.path("minimum").isNumber()) {
+                value = node.get("minimum").decimalValue();
+                exclusive = node.path("exclusiveMinimum").asBoolean(false);
+                if (lower == null || value.compareTo(lower) > 0
+                    || value.compareTo(lower) == 0 && exclusive) {
+                    lower = value;
+                    lowerExclusive = exclusive;
+                }
+            }
+            if (node.path("maximum").isNumber()) {
+                value = node.get("maximum").decimalValue();
+                exclusive = node.path("exclusiveMaximum").asBoolean(false);
+                if (upper == null || value.compareTo(upper) < 0
+                    || value.compareTo(upper) == 0 && exclusive) {
+                    upper = value;
+                    upperExclusive = exclusive;
+                }
+            }
+            if (node.path("divisibleBy").isNumber()) {
+                value = node.get("divisibleBy").decimalValue();
+                if (divisor == null)
+                    divisor = value;
+                else if (divisor.compareTo(value) != 0)
+                    unhonored++;
+            }
+        }
+
+        boolean integral = integer;
+        BigDecimal step = step(divisor, integral);
+
+        if (violate() && (lower != null || upper != null)) {
+            violations++;
+            value = lower != null && (upper == null || random.nextBoolean())
+                ? below(lower, lowerExclusive, step)
+                : above(upper, upperExclusive, step);
+            return numberNode(value, integral);
+        }
+
+        BigDecimal min = null, max = null;
+
+        for (int i = 0; i < 2; i++) {
+            min = lower == null ? null : above(lower, !lowerExclusive, step)
+                .divide(step);
+            max = upper == null ? null : below(upper, !upperExclusive, step)
+                .divide(step);
+            if (!integral || min == null || max == null
+                || min.compareTo(max) <= 0
+                || !allowedTypes(schemas).contains(NodeType.NUMBER))
+                break;
+            integral = false;
+            step = step(divisor, false);
+        }
+
+        final BigDecimal range = BigDecimal.valueOf(DEFAULT_RANGE);
+
+        if (min == null)
+            min = max == null ? BigDecimal.ZERO : max.subtract(range);
+        if (max == null)
+            max = min.add(range);
+
+        if (min.compareTo(max) > 0) {
+            unhonored++;
+            max = min;
+        }
+
+        final int span = max.subtract(min).min(range).intValue();
+        final BigDecimal factor = min.add(BigDecimal.valueOf(random.nextInt(
+            span + 1)));
+
+        return numberNode(factor.multiply(step), integral);
+    }
+
+    private static BigDecimal step(final BigDecimal divisor,
+        final boolean integer)
+    {
+        if (divisor == null)
+            return integer ? BigDecimal.ONE : NUMBER_STEP;
+
+        final int scale = divisor.stripTrailingZeros().scale();
+
+        return integer && scale > 0 ? divisor.movePointRight(scale) : divisor;
+    }
+
+    /**
+     * Return the greatest multiple of a step below a bound
+     *
+     * @param bound the bound
+     * @param orEqual true if the bound itself may be returned
+     * @param step the step
+     * @return the multiple
+     */
+    private static BigDecimal below(final BigDecimal bound,
+        final boolean orEqual, final BigDecimal step)
+    {
+        final BigDecimal ret
+            = bound.divide(step, 0, RoundingMode.FLOOR).multiply(step);
+
+        return orEqual || ret.compareTo(bound) < 0 ? ret : ret.subtract(step);
+    }
+
+    /**
+     * Return the least multiple of a step above a bound
+     *
+     * @param bound the bound
+     * @param orEqual true if the bound itself may be returned
+     * @param step the step
+     * @return the multiple
+     */
+    private static BigDecimal above(final BigDecimal bound,
+        final boolean orEqual, final BigDecimal step)
+    {
+        final BigDecimal ret
+            = bound.divide(step, 0, RoundingMode.CEILING).multiply(step);
+
+        return orEqual || ret.compareTo(bound) > 0 ? ret : ret.add(step);
+    }
+
+    /**
+     * Build a number node
+     *
+     * <p>Integers are built as int or long nodes if they fit, like a parser
+     * would; other numbers always have a fractional part, so that they are
+     * still numbers, and not integers, when written and parsed again.</p>
+     *
+     * @param value the value
+     * @param integer true if the value is an integer
+     * @return the node
+     */
+    private static JsonNode numberNode(final BigDecimal value,
+        final boolean integer)
+    {
+        if (!integer)
+            return FACTORY.numberNode(value.scale() > 0 ? value
+                : value.setScale(1));
+
+        final BigInteger ret = value.toBigIntegerExact();
+
+        if (ret.bitLength() < 32)
+            return FACTORY.numberNode(ret.intValue());
+        if (ret.bitLength() < 64)
+            return FACTORY.numberNode(ret.longValue());
+        return FACTORY.numberNode(ret);
+    }
+
+    private JsonNode stringValue(final List<SchemaNode> schemas)
+    {
+        final List<String> patterns = Lists.newArrayList();
+        int minLength = 0;
+        Integer maxLength = null;
+        String format = null;
+        JsonNode node;
+
+        values++;
+
+        for (final SchemaNode schemaNode: schemas) {
+            node = schemaNode.getNode();
+            if (node.path("minLength").isIntegralNumber())
+                minLength = Math.max(minLength, node.get("minLength")
+                    .intValue());
+            if (node.path("maxLength").isIntegralNumber())
+                maxLength = maxLength == null ? node.get("maxLength")
+                    .intValue() : Math.min(maxLength, node.get("maxLength")
+                    .intValue());
+            if (node.path("pattern").isTextual())
+                patterns.add(node.get("pattern").textValue());
+            if (format == null && node.path("format").isTextual())
+                format = node.get("format").textValue();
+        }
+
+        if (violate()) {
+            final String ret = invalidString(patterns, minLength, maxLength);
+            if (ret != null) {
+                violations++;
+                return FACTORY.textNode(ret);
+            }
+        }
+
+        final int max = maxLength != null ? maxLength
+            : minLength + DEFAULT_STRING_LENGTH;
+        final RegexSampler sampler = patterns.isEmpty() ? null
+            : sampler(patterns.get(0));
+
+        String ret = null;
+
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            ret = format != null ? formatValue(format) : null;
+            if (ret == null)
+                ret = sampler != null ? sampler.sample(random)
+                    : randomString(minLength, max);
+            if (ret.length() >= minLength && (maxLength == null
+                || ret.length() <= maxLength) && matchesAll(patterns, ret))
+                return FACTORY.textNode(ret);
+        }
+
+        unhonored++;
+        return FACTORY.textNode(ret);
+    }
+
+    /**
+     * Generate a string breaking one of the string constraints
+     *
+     * @param patterns the patterns
+     * @param minLength the minimum length
+     * @param maxLength the maximum length, {@code null} if none
+     * @return the string, or {@code null} if there is no constraint to break
+     */
+    private String invalidString(final List<String> patterns,
+        final int minLength, final Integer maxLength)
+    {
+        final List<String> choices = Lists.newArrayList();
+
+        if (!patterns.isEmpty())
+            choices.add("pattern");
+        if (minLength > 0)
+            choices.add("minLength");
+        if (maxLength != null)
+            choices.add("maxLength");
+
+        if (choices.isEmpty())
+            return null;
+
+        final String choice = choices.get(random.nextInt(choices.size()));
+        String ret;
+
+        /*
+         * A string of the wrong length must still match patterns, otherwise
+         * break a pattern instead
+         */
+        if (!"pattern".equals(choice)) {
+            ret = "minLength".equals(choice)
+                ? randomString(minLength - 1, minLength - 1)
+                : randomString(maxLength + 1, maxLength + 1);
+            if (matchesAll(patterns, ret))
+                return ret;
+            if (patterns.isEmpty())
+                return null;
+        }
+
+        final int max = maxLength != null ? maxLength
+            : minLength + DEFAULT_STRING_LENGTH;
+
+        /*
+         * Try random strings, and the same strings starting with a character
+         * which is not in the alphabet
+         */
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            ret = randomString(minLength, max);
+            if (!matchesAll(patterns, ret))
+                return ret;
+            ret = ret.isEmpty() ? "#" : '#' + ret.substring(1);
+            if (ret.length() <= max && !matchesAll(patterns, ret))
+                return ret;
+        }
+
+        return null;
+    }
+
+    private static boolean matchesAll(final List<String> patterns,
+        final String s)
+    {
+        for (final String pattern: patterns)
+            if (!RhinoHelper.regMatch(pattern, s))
+                return false;
+
+        return true;
+    }
+
+    private RegexSampler sampler(final String regex)
+    {
+        if (samplers.containsKey(regex))
+            return samplers.get(regex);
+
+        RegexSampler ret;
+
+        try {
+            ret = new RegexSampler(regex);
+        } catch (IllegalArgumentException ignored) {
+            ret = null;
+        }
+
+        samplers.put(regex, ret);
+        return ret;
+    }
+
+    private String randomString(final int minLength, final int maxLength)
+    {
+        final int length = minLength + random.nextInt(Math.max(0,
+            maxLength - minLength) + 1);
+        final StringBuilder sb = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++)
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+
+        return sb.toString();
+    }
+
+    /**
+     * Generate a value for a format of the default format bundle
+     *
+     * @param format the format
+     * @return the value, or {@code null} if the format is unknown
+     */
+    private String formatValue(final String format)
+    {
+        if ("date-time".equals(format))
+            return String.format("%04d-%02d-%02dT%02d:%02d:%02dZ",
+                1970 + random.nextInt(100), 1 + random.nextInt(12),
+                1 + random.nextInt(28), random.nextInt(24), random.nextInt(60),
+                random.nextInt(60));
+        if ("email".equals(format))
+            return randomString(1, 8) + "@example.com";
+        if ("host-name".equals(format))
+            return randomString(1, 8) + ".example.com";
+        if ("ip-address".equals(format))
+            return String.format("%d.%d.%d.%d", random.nextInt(256),
+                random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        if ("ipv6".equals(format))
+            return String.format("2001:db8::%x", random.nextInt(0x10000));
+        if ("regex".equals(format))
+            return "^[a-z]+" + random.nextInt(DEFAULT_RANGE) + "$";
+        if ("uri".equals(format))
+            return "http://example.com/" + randomString(0, 8);
+        return null;
+    }
+
+    private JsonNode arrayValue(final List<SchemaNode> schemas,
+        final int depth)
+    {
+        final int minItems = minItems(schemas);
+        final Integer maxItems = maxItems(schemas);
+        int max = maxItems != null ? maxItems : minItems + maxArrayLength;
+
+        if (depth >= maxDepth)
+            max = minItems;
+
+        for (final SchemaNode schemaNode: schemas) {
+            final JsonNode node = schemaNode.getNode();
+            if (node.path("items").isArray()
+                && !node.path("additionalItems").asBoolean(true))
+                max = Math.min(max, node.get("items").size());
+        }
+
+        if (max < minItems) {
+            unhonored++;
+            max = minItems;
+        }
+
+        final int size = minItems + random.nextInt(max - minItems + 1);
+        final Set<JsonNode> seen = isUnique(schemas)
+            ? Sets.<JsonNode>newHashSet() : null;
+        final ArrayNode ret = FACTORY.arrayNode();
+
+        JsonNode element;
+
+        for (int i = 0; i < size; i++) {
+            element = arrayElement(schemas, i, depth + 1, seen);
+            if (!isNew(seen, element, i >= minItems))
+                break;
+            ret.add(element);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Generate an array element
+     *
+     * @param schemas the schemas of the array
+     * @param index the index of the element
+     * @param depth the depth of the element
+     * @param seen the elements already generated, {@code null} if elements
+     * need not be unique
+     * @return the element, which may still be in {@code seen} if no unique
+     * element could be generated
+     */
+    private JsonNode arrayElement(final List<SchemaNode> schemas,
+        final int index, final int depth, final Set<JsonNode> seen)
+    {
+        final List<SchemaNode> itemSchemas = Lists.newArrayList();
+
+        SchemaContainer container;
+        JsonNode node, items;
+
+        for (final SchemaNode schemaNode: schemas) {
+            container = schemaNode.getContainer();
+            node = schemaNode.getNode();
+            items = node.path("items");
+            if (items.isObject())
+                itemSchemas.add(new SchemaNode(container, items));
+            else if (index < items.size())
+                itemSchemas.add(new SchemaNode(container, items.get(index)));
+            else if (node.path("additionalItems").isObject())
+                itemSchemas.add(new SchemaNode(container,
+                    node.get("additionalItems")));
+        }
+
+        JsonNode ret = generate(itemSchemas, depth);
+
+        if (seen == null)
+            return ret;
+
+        for (int i = 0; i < MAX_ATTEMPTS && seen.contains(ret); i++)
+            ret = generate(itemSchemas, depth);
+
+        return ret;
+    }
+
+    /**
+     * Record a unique array element
+     *
+     * <p>An array with unique elements stops growing when no new element can
+     * be generated, unless it has fewer than {@code minItems} elements.</p>
+     *
+     * @param seen the elements already generated, {@code null} if elements
+     * need not be unique
+     * @param element the element
+     * @param optional true if the array has at least {@code minItems} elements
+     * @return false if the element should not be added
+     */
+    private boolean isNew(final Set<JsonNode> seen, final JsonNode element,
+        final boolean optional)
+    {
+        if (seen == null || seen.add(element))
+            return true;
+
+        if (optional)
+            return false;
+
+        unhonored++;
+        return true;
+    }
+
+    private static int minItems(final List<SchemaNode> schemas)
+    {
+        int ret = 0;
+
+        for (final SchemaNode schemaNode: schemas)
+            ret = Math.max(ret, schemaNode.getNode().path("minItems")
+                .asInt(0));
+
+        return ret;
+    }
+
+    private static Integer maxItems(final List<SchemaNode> schemas)
+    {
+        Integer ret = null;
+        JsonNode node;
+
+        for (final SchemaNode schemaNode: schemas) {
+            node = schemaNode.getNode().path("maxItems");
+            if (node.isIntegralNumber())
+                ret = ret == null ? node.intValue()
+                    : Math.min(ret, node.intValue());
+        }
+
+        return ret;
+    }
+
+    private static boolean isUnique(final List<SchemaNode> schemas)
+    {
+        for (final SchemaNode schemaNode: schemas)
+            if (schemaNode.getNode().path("uniqueItems").asBoolean(false))
+                return true;
+
+        return false;
+    }
+
+    private JsonNode objectValue(final List<SchemaNode> schemas,
+        final int depth)
+    {
+        final Set<String> names = Sets.newLinkedHashSet();
+        final List<SchemaNode> effective = plan(schemas, depth, names);
+        final ObjectNode ret = FACTORY.objectNode();
+
+        for (final String name: names)
+            ret.put(name, generate(propertySchemas(effective, name),
+                depth + 1));
+
+        return ret;
+    }
+
+    /**
+     * Choose the properties of an object, and add schema dependencies
+     *
+     * <p>Since schema dependencies may themselves add properties, which may
+     * have schema dependencies of their own, this is done up to three times.
+     * </p>
+     *
+     * @param schemas the schemas of the object
+     * @param depth the depth of the object
+     * @param names the set to fill with property names
+     * @return the schemas, with schema dependencies added
+     */
+    private List<SchemaNode> plan(final List<SchemaNode> schemas,
+        final int depth, final Set<String> names)
+    {
+        List<SchemaNode> ret = schemas;
+        List<SchemaNode> added;
+        JsonNode dependency;
+
+        names.addAll(propertyNames(ret, depth));
+
+        for (int round = 0; round < 3; round++) {
+            added = Lists.newArrayList();
+            for (final SchemaNode schemaNode: ret)
+                for (final String name: names) {
+                    dependency = schemaNode.getNode().path("dependencies")
+                        .path(name);
+                    if (dependency.isObject())
+                        added.add(new SchemaNode(schemaNode.getContainer(),
+                            dependency));
+                }
+            added = collect(added);
+            added.removeAll(ret);
+            if (added.isEmpty())
+                break;
+            added.addAll(0, ret);
+            ret = collect(added);
+            names.addAll(propertyNames(ret, depth));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Choose the properties to generate
+     *
+     * <p>Required properties are always generated; optional properties, and
+     * up to {@code maxExtraProperties} additional properties if allowed, are
+     * only generated below the maximum depth. Simple dependencies of chosen
+     * properties are added.</p>
+     *
+     * @param schemas the schemas of the object
+     * @param depth the depth of the object
+     * @return the property names, in generation order
+     */
+    private Set<String> propertyNames(final List<SchemaNode> schemas,
+        final int depth)
+    {
+        final Set<String> ret = Sets.newLinkedHashSet();
+        final boolean optional = depth < maxDepth;
+        Map<String, JsonNode> properties;
+
+        for (final SchemaNode schemaNode: schemas) {
+            properties = fields(schemaNode.getNode().path("properties"));
+            for (final Map.Entry<String, JsonNode> entry:
+                properties.entrySet())
+                if (entry.getValue().path("required").asBoolean(false)
+                    || optional && random.nextDouble() < optionalPropertyRatio)
+                    ret.add(entry.getKey());
+        }
+
+        if (optional && additionalAllowed(schemas)) {
+            final int extra = random.nextInt(maxExtraProperties + 1);
+            for (int i = 0; i < extra; i++)
+                ret.add("extra" + i);
+        }
+
+        /*
+         * Simple dependencies: repeat until no property is added
+         */
+        boolean changed = true;
+        JsonNode dependency;
+
+        while (changed) {
+            changed = false;
+            for (final SchemaNode schemaNode: schemas)
+                for (final String name: ImmutableList.copyOf(ret)) {
+                    dependency = schemaNode.getNode().path("dependencies")
+                        .path(name);
+                    if (dependency.isTextual())
+                        changed |= ret.add(dependency.textValue());
+                    else if (dependency.isArray())
+                        for (final JsonNode element: dependency)
+                            changed |= ret.add(element.textValue());
+                }
+        }
+
+        return ret;
+    }
+
+    private static Map<String, JsonNode> fields(final JsonNode node)
+    {
+        if (!node.isObject())
+            return Collections.emptyMap();
+
+        final Map<String, JsonNode> ret = Maps.newLinkedHashMap();
+        final Iterator<Map.Entry<String, JsonNode>> iterator
+            = node.fields();
+
+        Map.Entry<String, JsonNode> entry;
+
+        while (iterator.hasNext()) {
+            entry = iterator.next();
+            ret.put(entry.getKey(), entry.getValue());
+        }
+
+        return ret;
+    }
+
+    private static boolean additionalAllowed(final List<SchemaNode> schemas)
+    {
+        for (final SchemaNode schemaNode: schemas)
+            if (!schemaNode.getNode().path("additionalProperties")
+                .asBoolean(true))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Return the schemas of a property, in the same way as the validator does
+     *
+     * @param schemas the schemas of the object
+     * @param name the property name
+     * @return the schemas of the property value
+     */
+    private static List<SchemaNode> propertySchemas(
+        final List<SchemaNode> schemas, final String name)
+    {
+        final List<SchemaNode> ret = Lists.newArrayList();
+
+        SchemaContainer container;
+        JsonNode node, additional;
+        boolean found;
+
+        for (final SchemaNode schemaNode: schemas) {
+            container = schemaNode.getContainer();
+            node = schemaNode.getNode();
+            found = false;
+            if (node.path("properties").has(name)) {
+                ret.add(new SchemaNode(container,
+                    node.get("properties").get(name)));
+                found = true;
+            }
+            for (final Map.Entry<String, JsonNode> entry:
+                fields(node.path("patternProperties")).entrySet())
+                if (RhinoHelper.regMatch(entry.getKey(), name)) {
+                    ret.add(new SchemaNode(container, entry.getValue()));
+                    found = true;
+                }
+            additional = node.path("additionalProperties");
+            if (!found && additional.isObject())
+                ret.add(new SchemaNode(container, additional));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Builder for an {@link InstanceGenerator}
+     */
+    public static final class Builder
+    {
+        private final JsonSchemaFactory factory;
+        private KeywordBundle bundle = KeywordBundles.defaultBundle();
+        private long seed = 0L;
+        private double invalidRatio = 0.0;
+        private int maxArrayLength = 10;
+        private int maxExtraProperties = 0;
+        private double optionalPropertyRatio = 0.8;
+        private int maxDepth = 8;
+
+        /**
+         * Constructor
+         *
+         * @param factory the schema factory, used to fetch schemas referred to
+         * by JSON References
+         */
+        public Builder(final JsonSchemaFactory factory)
+        {
+            Preconditions.checkNotNull(factory, "factory must not be null");
+            this.factory = factory;
+        }
+
+        /**
+         * Set the keyword bundle (default bundle if not set)
+         *
+         * @param bundle the keyword bundle of the schema factory
+         * @return the builder
+         */
+        public Builder withKeywordBundle(final KeywordBundle bundle)
+        {
+            Preconditions.checkNotNull(bundle, "bundle must not be null");
+            this.bundle = bundle;
+            return this;
+        }
+
+        /**
+         * Set the seed of the generator (0 if not set)
+         *
+         * @param seed the seed
+         * @return the builder
+         */
+        public Builder setSeed(final long seed)
+        {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Set the probability for a value to be invalid (0 if not set)
+         *
+         * @param invalidRatio the probability, between 0 and 1
+         * @return the builder
+         */
+        public Builder setInvalidRatio(final double invalidRatio)
+        {
+            Preconditions.checkArgument(invalidRatio >= 0.0
+                && invalidRatio <= 1.0, "ratio must be between 0 and 1");
+            this.invalidRatio = invalidRatio;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of array elements beyond {@code minItems}
+         * (10 if not set)
+         *
+         * @param maxArrayLength the maximum number of elements
+         * @return the builder
+         */
+        public Builder setMaxArrayLength(final int maxArrayLength)
+        {
+            Preconditions.checkArgument(maxArrayLength >= 0,
+                "length must not be negative");
+            this.maxArrayLength = maxArrayLength;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of additional properties of an object, when
+         * allowed (0 if not set)
+         *
+         * @param maxExtraProperties the maximum number of properties
+         * @return the builder
+         */
+        public Builder setMaxExtraProperties(final int maxExtraProperties)
+        {
+            Preconditions.checkArgument(maxExtraProperties >= 0,
+                "number of properties must not be negative");
+            this.maxExtraProperties = maxExtraProperties;
+            return this;
+        }
+
+        /**
+         * Set the probability for an optional property to be generated (0.8
+         * if not set)
+         *
+         * @param optionalPropertyRatio the probability, between 0 and 1
+         * @return the builder
+         */
+        public Builder setOptionalPropertyRatio(
+            final double optionalPropertyRatio)
+        {
+            Preconditions.checkArgument(optionalPropertyRatio >= 0.0
+                && optionalPropertyRatio <= 1.0,
+                "ratio must be between 0 and 1");
+            this.optionalPropertyRatio = optionalPropertyRatio;
+            return this;
+        }
+
+        /**
+         * Set the maximum depth of optional content (8 if not set)
+         *
+         * @param maxDepth the maximum depth
+         * @return the builder
+         */
+        public Builder setMaxDepth(final int maxDepth)
+        {
+            Preconditions.checkArgument(maxDepth >= 0,
+                "depth must not be negative");
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Build the generator
+         *
+         * @return a new generator
+         */
+        public InstanceGenerator build()
+        {
+            return new InstanceGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import org.eel.kitchen.jsonschema.main.JsonSchemaException;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON Pointer parsing and appending
+ *
+ * <p>Validation appends one path element per child instance, so appending
+ * is on the hot path of validation of every container instance.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonPointerBenchmark
+{
+    /**
+     * Number of path elements of the pointer
+     */
+    @Param({ "1", "4", "16" })
+    public int depth;
+
+    private String input;
+    private JsonPointer pointer;
+
+    @Setup
+    public void setup()
+        throws JsonSchemaException
+    {
+        final StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < depth; i++)
+            sb.append(i % 2 == 0 ? "/a~1b~0c" : "/" + i);
+
+        input = sb.toString();
+        pointer = new JsonPointer(input);
+    }
+
+    @Benchmark
+    public JsonPointer parse()
+        throws JsonSchemaException
+    {
+        return new JsonPointer(input);
+    }
+
+    @Benchmark
+    public JsonPointer appendName()
+    {
+        return pointer.append("property/name");
+    }
+
+    @Benchmark
+    public JsonPointer appendIndex()
+    {
+        return pointer.append(42);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundle;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.keyword.KeywordFactory;
+import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.uri.URIManager;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.eel.kitchen.jsonschema.validator.JsonValidatorCache;
+import org.eel.kitchen.jsonschema.validator.ValidationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword validators, on valid and invalid instances
+ *
+ * <p>Test cases are the ones of the keyword tests of the main project
+ * ({@code /keyword/*.json}): for each keyword, one operation validates all
+ * valid instances (or all invalid instances) of the test file against the
+ * keyword validators of their schema, without going through the validator
+ * cache for the schema itself.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeywordBenchmark
+{
+    @Param({
+        "additionalItems", "additionalProperties", "dependenciesSchema",
+        "dependenciesSimple", "disallow", "divisibleBy", "enum", "extends",
+        "maxItems", "maxLength", "maximum", "minItems", "minLength", "minimum",
+        "pattern", "properties", "type", "typeSimple", "uniqueItems"
+    })
+    public String keyword;
+
+    private final List<TestCase> valid = Lists.newArrayList();
+    private final List<TestCase> invalid = Lists.newArrayList();
+
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        final KeywordBundle bundle = KeywordBundles.defaultBundle();
+        final KeywordFactory factory = new KeywordFactory(bundle);
+        final JsonValidatorCache cache = new JsonValidatorCache(bundle,
+            new SchemaRegistry(new URIManager(), URI.create("")));
+        final JsonNode testData
+            = JsonLoader.fromResource("/keyword/" + keyword + ".json");
+
+        JsonNode schema;
+        TestCase testCase;
+
+        for (final JsonNode element: testData) {
+            schema = element.get("schema");
+            testCase = new TestCase(factory.getValidators(schema),
+                new ValidationContext(cache, new SchemaContainer(schema)),
+                element.get("data"));
+            if (element.get("valid").booleanValue())
+                valid.add(testCase);
+            else
+                invalid.add(testCase);
+        }
+    }
+
+    @Benchmark
+    public void validInstances(final Blackhole blackhole)
+    {
+        run(valid, blackhole);
+    }
+
+    @Benchmark
+    public void invalidInstances(final Blackhole blackhole)
+    {
+        run(invalid, blackhole);
+    }
+
+    private static void run(final List<TestCase> testCases,
+        final Blackhole blackhole)
+    {
+        ValidationReport report;
+
+        for (final TestCase testCase: testCases) {
+            report = new ValidationReport();
+            for (final KeywordValidator validator: testCase.validators)
+                validator.validateInstance(testCase.context, report,
+                    testCase.instance);
+            blackhole.consume(report);
+        }
+    }
+
+    private static final class TestCase
+    {
+        private final Set<KeywordValidator> validators;
+        private final ValidationContext context;
+        private final JsonNode instance;
+
+        private TestCase(final Set<KeywordValidator> validators,
+            final ValidationContext context, final JsonNode instance)
+        {
+            this.validators = validators;
+            this.context = context;
+            this.instance = instance;
+        }
+    }
+}
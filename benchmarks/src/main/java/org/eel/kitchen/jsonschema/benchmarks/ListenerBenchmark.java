@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.main.ValidationFeature;
+import org.eel.kitchen.jsonschema.metrics.AggregatingListener;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of validation listeners
+ *
+ * <p>This validates all schemas of the Google discovery document against the
+ * draft v3 meta-schema, as {@link CompileBenchmark} does when warm, with no
+ * listener ({@code NONE}, which should be as fast as before listeners
+ * existed), with a listener which does nothing but is not the no-op one
+ * ({@code EMPTY}, which measures the cost of reading the clock and building
+ * events), and with an {@link AggregatingListener} ({@code AGGREGATING}).</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListenerBenchmark
+{
+    @Param({ "NONE", "EMPTY", "AGGREGATING" })
+    public String listener;
+
+    /**
+     * Validation feature to enable, {@code NONE} for none
+     */
+    @Param({ "NONE", "COMPILED_PROGRAMS" })
+    public String feature;
+
+    private List<JsonNode> instances;
+    private JsonSchema schema;
+
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        final JsonSchemaFactory.Builder builder
+            = new JsonSchemaFactory.Builder();
+
+        if ("EMPTY".equals(listener))
+            builder.withValidationListener(new ValidationListener()
+            {
+            });
+        else if ("AGGREGATING".equals(listener))
+            builder.withValidationListener(new AggregatingListener());
+
+        if (!"NONE".equals(feature))
+            builder.enableFeature(ValidationFeature.valueOf(feature));
+
+        final JsonSchemaFactory factory = builder.build();
+
+        schema = factory.createSchema(factory.registerSchema(
+            JsonLoader.fromResource("/schema-draftv3.json")));
+        instances = ImmutableList.copyOf(JsonLoader
+            .fromResource("/other/google-json-api.json").get("schemas"));
+
+        for (final JsonNode instance: instances)
+            schema.validate(instance);
+    }
+
+    @Benchmark
+    public void validate(final Blackhole blackhole)
+    {
+        for (final JsonNode instance: instances)
+            blackhole.consume(schema.validate(instance));
+    }
+}
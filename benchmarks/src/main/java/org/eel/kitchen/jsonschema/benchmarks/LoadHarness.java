@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multithreaded load harness
+ *
+ * <p>This runs one scenario of the regression harness (see {@link Scenario})
+ * on 1, 2, 4... up to N threads, all sharing the same factory and schemas.
+ * For each thread count, it reports:</p>
+ *
+ * <ul>
+ *     <li>throughput, and how it scales compared to one thread (1.0 means
+ *     linear scaling);</li>
+ *     <li>the latency distribution, recorded with HdrHistogram;</li>
+ *     <li>the fraction of time worker threads spend blocked or waiting, and
+ *     validator cache misses and evictions;</li>
+ *     <li>contention hotspots: threads are sampled every 10 ms, and for each
+ *     blocked or waiting thread, the innermost frame outside of the JDK is
+ *     counted, along with the lock.</li>
+ * </ul>
+ *
+ * <p>Options:</p>
+ *
+ * <ul>
+ *     <li>{@code --scenario name}: the scenario (default {@code
+ *     draftv3-google});</li>
+ *     <li>{@code --threads n}: the maximum number of threads (default
+ *     64);</li>
+ *     <li>{@code --warmup seconds}, {@code --duration seconds}: warm-up
+ *     time, with the maximum number of threads, and time spent for each
+ *     thread count (default 5 and 10).</li>
+ * </ul>
+ *
+ * <p>No external service is needed: all schemas are local.</p>
+ */
+public final class LoadHarness
+{
+    private static final ThreadMXBean THREADS
+        = ManagementFactory.getThreadMXBean();
+
+    private static final long HIGHEST_LATENCY = TimeUnit.SECONDS.toNanos(60L);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final long SAMPLE_INTERVAL = 10L;
+    private static final int STACK_DEPTH = 32;
+    private static final int HOTSPOTS = 5;
+
+    private String scenarioName = "draftv3-google";
+    private int maxThreads = 64;
+    private long warmupNanos = TimeUnit.SECONDS.toNanos(5L);
+    private long durationNanos = TimeUnit.SECONDS.toNanos(10L);
+
+    private LoadHarness()
+    {
+    }
+
+    public static void main(final String... args)
+        throws IOException, InterruptedException
+    {
+        final LoadHarness harness = new LoadHarness();
+
+        harness.parseArgs(args);
+        harness.run();
+    }
+
+    private void parseArgs(final String... args)
+    {
+        final List<String> list = Lists.newArrayList(Arrays.asList(args));
+        String arg;
+
+        while (!list.isEmpty()) {
+            arg = list.remove(0);
+            if ("--scenario".equals(arg))
+                scenarioName = list.remove(0);
+            else if ("--threads".equals(arg))
+                maxThreads = Integer.parseInt(list.remove(0));
+            else if ("--warmup".equals(arg))
+                warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(list
+                    .remove(0)));
+            else if ("--duration".equals(arg))
+                durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(list
+                    .remove(0)));
+            else
+                throw new IllegalArgumentException("unknown option " + arg);
+        }
+
+        if (maxThreads < 1)
+            throw new IllegalArgumentException("thread count must be "
+                + "strictly positive");
+    }
+
+    private void run()
+        throws IOException, InterruptedException
+    {
+        final Scenario scenario = Scenario.named(scenarioName);
+
+        if (THREADS.isThreadContentionMonitoringSupported())
+            THREADS.setThreadContentionMonitoringEnabled(true);
+
+        System.out.println("scenario " + scenarioName + ", warming up with "
+            + maxThreads + " threads");
+        runStep(scenario, maxThreads, warmupNanos);
+
+        System.out.println(String.format("%7s %12s %7s %9s %9s %9s %9s %9s "
+            + "%8s %8s %8s", "threads", "ops/s", "scaling", "p50 us",
+            "p90 us", "p99 us", "p99.9 us", "max us", "blocked", "misses",
+            "evicted"));
+
+        double single = 0.0;
+        StepResult result;
+
+        for (final int threads: threadCounts()) {
+            result = runStep(scenario, threads, durationNanos);
+            if (threads == 1)
+                single = result.throughput;
+            result.print(single);
+        }
+    }
+
+    private List<Integer> threadCounts()
+    {
+        final List<Integer> ret = Lists.newArrayList();
+
+        for (int n = 1; n < maxThreads; n *= 2)
+            ret.add(n);
+
+        ret.add(maxThreads);
+        return ret;
+    }
+
+    private static StepResult runStep(final Scenario scenario,
+        final int threads, final long nanos)
+        throws InterruptedException
+    {
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Worker[] workers = new Worker[threads];
+        final long[] ids = new long[threads];
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(scenario, i, threads, ready, start);
+            workers[i].start();
+            ids[i] = workers[i].getId();
+        }
+
+        ready.await();
+
+        final CacheStats statsBefore
+            = scenario.getFactory().getValidatorCacheStats();
+        final long contentionBefore = contentionMillis(ids);
+        final Multiset<String> hotspots = HashMultiset.create();
+        int samples = 0;
+
+        final long begin = System.nanoTime();
+        start.countDown();
+
+        while (System.nanoTime() - begin < nanos) {
+            Thread.sleep(SAMPLE_INTERVAL);
+            samples += sample(ids, hotspots);
+        }
+
+        // Contention times are lost once threads die: read them first
+        final long contention = contentionMillis(ids) - contentionBefore;
+
+        for (final Worker worker: workers)
+            worker.running = false;
+        for (final Worker worker: workers)
+            worker.join();
+
+        final long elapsed = System.nanoTime() - begin;
+        final CacheStats stats = scenario.getFactory()
+            .getValidatorCacheStats().minus(statsBefore);
+        final Histogram histogram
+            = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+
+        for (final Worker worker: workers)
+            histogram.add(worker.histogram);
+
+        return new StepResult(threads, histogram,
+            histogram.getTotalCount() * 1e9 / elapsed,
+            contention < 0L ? -1.0 : contention * 1e6 / (threads * elapsed),
+            stats, hotspots, samples);
+    }
+
+    /**
+     * Sample worker threads
+     *
+     * <p>Threads which are not running the scenario (for instance, which are
+     * still waiting for the start signal) are not counted.</p>
+     *
+     * @param ids the worker thread ids
+     * @param hotspots the hotspot counts to update
+     * @return the number of threads sampled
+     */
+    private static int sample(final long[] ids,
+        final Multiset<String> hotspots)
+    {
+        int ret = 0;
+        StackTraceElement frame;
+
+        for (final ThreadInfo info: THREADS.getThreadInfo(ids, STACK_DEPTH)) {
+            if (info == null)
+                continue;
+            frame = innermostFrame(info.getStackTrace());
+            if (frame == null
+                || Worker.class.getName().equals(frame.getClassName()))
+                continue;
+            ret++;
+            switch (info.getThreadState()) {
+                case BLOCKED: case WAITING: case TIMED_WAITING:
+                    hotspots.add(info.getThreadState() + " at " + frame
+                        + " on " + info.getLockName());
+                    break;
+                default:
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Return the innermost frame of a stack which is not in the JDK
+     *
+     * @param stack the stack
+     * @return the frame, or {@code null} if none
+     */
+    private static StackTraceElement innermostFrame(
+        final StackTraceElement[] stack)
+    {
+        for (final StackTraceElement element: stack)
+            if (!isJdkFrame(element.getClassName()))
+                return element;
+
+        return null;
+    }
+
+    private static boolean isJdkFrame(final String className)
+    {
+        return className.startsWith("java.") || className.startsWith("sun.")
+            || className.startsWith("jdk.");
+    }
+
+    /**
+     * Total time worker threads spent blocked or waiting, in milliseconds
+     *
+     * @param ids the worker thread ids
+     * @return the time, or -1 if contention monitoring is not enabled
+     */
+    private static long contentionMillis(final long[] ids)
+    {
+        if (!THREADS.isThreadContentionMonitoringEnabled())
+            return -1L;
+
+        long ret = 0L;
+
+        for (final ThreadInfo info: THREADS.getThreadInfo(ids))
+            if (info != null)
+                ret += info.getBlockedTime() + info.getWaitedTime();
+
+        return ret;
+    }
+
+    private static final class Worker
+        extends Thread
+    {
+        private final Scenario scenario;
+        private final int offset;
+        private final int stride;
+        private final CountDownLatch ready;
+        private final CountDownLatch start;
+        private final Histogram histogram
+            = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+
+        private volatile boolean running = true;
+
+        private Worker(final Scenario scenario, final int offset,
+            final int stride, final CountDownLatch ready,
+            final CountDownLatch start)
+        {
+            super("load-worker-" + offset);
+            this.scenario = scenario;
+            this.offset = offset;
+            this.stride = stride;
+            this.ready = ready;
+            this.start = start;
+        }
+
+        @Override
+        public void run()
+        {
+            ready.countDown();
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long begin;
+
+            for (int i = offset; running; i += stride) {
+                begin = System.nanoTime();
+                scenario.run(i & Integer.MAX_VALUE);
+                histogram.recordValue(Math.min(System.nanoTime() - begin,
+                    HIGHEST_LATENCY));
+            }
+        }
+    }
+
+    private static final class StepResult
+    {
+        private final int threads;
+        private final Histogram histogram;
+        private final double throughput;
+        private final double blocked;
+        private final CacheStats stats;
+        private final Multiset<String> hotspots;
+        private final int samples;
+
+        private StepResult(final int threads, final Histogram histogram,
+            final double throughput, final double blocked,
+            final CacheStats stats, final Multiset<String> hotspots,
+            final int samples)
+        {
+            this.threads = threads;
+            this.histogram = histogram;
+            this.throughput = throughput;
+            this.blocked = blocked;
+            this.stats = stats;
+            this.hotspots = hotspots;
+            this.samples = samples;
+        }
+
+        private void print(final double single)
+        {
+            System.out.println(String.format("%7d %12.1f %7.2f %9.1f %9.1f "
+                + "%9.1f %9.1f %9.1f %7.1f%% %8d %8d", threads, throughput,
+                throughput / (single * threads), micros(50.0), micros(90.0),
+                micros(99.0), micros(99.9), histogram.getMaxValue() / 1e3,
+                blocked * 100.0, stats.missCount(), stats.evictionCount()));
+
+            int count = 0;
+
+            for (final Multiset.Entry<String> entry: Multisets
+                .copyHighestCountFirst(hotspots).entrySet()) {
+                if (count++ == HOTSPOTS)
+                    break;
+                System.out.println(String.format("        %5.1f%% %s",
+                    entry.getCount() * 100.0 / samples, entry.getElement()));
+            }
+        }
+
+        private double micros(final double percentile)
+        {
+            return histogram.getValueAtPercentile(percentile) / 1e3;
+        }
+    }
+}
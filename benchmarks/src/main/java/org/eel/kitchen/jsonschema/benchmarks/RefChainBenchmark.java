@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON Reference chains
+ *
+ * <p>The schema has a chain of {@code depth} references, each one pointing to
+ * the next, the last one pointing to an actual schema. Cold validations use a
+ * new factory each time, and therefore resolve the whole chain; warm
+ * validations only hit the validator cache.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RefChainBenchmark
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    @Param({ "1", "4", "16", "64" })
+    public int depth;
+
+    private JsonNode schema;
+    private final JsonNode instance = FACTORY.numberNode(42);
+
+    private JsonSchemaFactory coldFactory;
+    private JsonSchema warmSchema;
+
+    @Setup
+    public void setup()
+    {
+        final ObjectNode definitions = FACTORY.objectNode();
+
+        for (int i = 0; i < depth; i++)
+            definitions.put("r" + i, FACTORY.objectNode()
+                .put("$ref", "#/definitions/r" + (i + 1)));
+
+        definitions.put("r" + depth, FACTORY.objectNode()
+            .put("type", "integer").put("minimum", 0));
+
+        final ObjectNode node = FACTORY.objectNode();
+        node.put("definitions", definitions);
+        schema = node;
+
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        warmSchema = createSchema(factory);
+        warmSchema.validate(instance);
+    }
+
+    @Setup(Level.Invocation)
+    public void newFactory()
+    {
+        coldFactory = new JsonSchemaFactory.Builder().build();
+    }
+
+    @Benchmark
+    public ValidationReport cold()
+    {
+        return createSchema(coldFactory).validate(instance);
+    }
+
+    @Benchmark
+    public ValidationReport warm()
+    {
+        return warmSchema.validate(instance);
+    }
+
+    private JsonSchema createSchema(final JsonSchemaFactory factory)
+    {
+        final SchemaContainer container = factory.registerSchema(schema);
+        return factory.createSchema(container, "#/definitions/r0");
+    }
+}
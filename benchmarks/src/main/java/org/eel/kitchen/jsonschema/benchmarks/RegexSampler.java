@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generate strings matching a regex
+ *
+ * <p>Only a subset of ECMA 262 regexes is supported: literals, {@code .},
+ * character classes (including negated ones and {@code \d}, {@code \w},
+ * {@code \s} and their negations), groups, alternations and quantifiers.
+ * Anchors are ignored, since a generated string matches the whole regex.
+ * Backreferences and lookarounds are not supported.</p>
+ *
+ * <p>Unbounded quantifiers repeat at most {@link #MAX_EXTRA_REPEATS} times
+ * more than their minimum.</p>
+ */
+final class RegexSampler
+{
+    private static final int MAX_EXTRA_REPEATS = 4;
+    private static final char FIRST_PRINTABLE = ' ';
+    private static final char LAST_PRINTABLE = '~';
+    private static final char END = '\uffff';
+
+    private final String regex;
+    private final Node root;
+
+    private int index = 0;
+
+    /**
+     * Constructor
+     *
+     * @param regex the regex
+     * @throws IllegalArgumentException regex is not supported
+     */
+    RegexSampler(final String regex)
+    {
+        this.regex = regex;
+        root = parseAlternation();
+        if (index != regex.length())
+            throw unsupported();
+    }
+
+    /**
+     * Generate a string
+     *
+     * @param random the source of randomness
+     * @return a string matching the regex
+     */
+    String sample(final Random random)
+    {
+        final StringBuilder sb = new StringBuilder();
+        root.sample(random, sb);
+        return sb.toString();
+    }
+
+    private Node parseAlternation()
+    {
+        final List<Node> branches = Lists.newArrayList();
+
+        branches.add(parseSequence());
+
+        while (peek() == '|') {
+            index++;
+            branches.add(parseSequence());
+        }
+
+        return branches.size() == 1 ? branches.get(0)
+            : new Alternation(branches);
+    }
+
+    private Node parseSequence()
+    {
+        final List<Node> nodes = Lists.newArrayList();
+        Node atom;
+
+        while (peek() != END && peek() != '|' && peek() != ')') {
+            atom = parseAtom();
+            nodes.add(parseQuantifier(atom));
+        }
+
+        return new Sequence(nodes);
+    }
+
+    private Node parseAtom()
+    {
+        final char c = regex.charAt(index++);
+
+        switch (c) {
+            case '^': case '$':
+                return new Sequence(ImmutableList.<Node>of());
+            case '.':
+                return new CharClass(true).add('\n', '\n');
+            case '[':
+                return parseClass();
+            case '\\':
+                return parseEscape(false);
+            case '(':
+                if (peek() == '?') {
+                    if (index + 1 >= regex.length()
+                        || regex.charAt(index + 1) != ':')
+                        throw unsupported();
+                    index += 2;
+                }
+                final Node group = parseAlternation();
+                expect(')');
+                return group;
+            case '*': case '+': case '?': case '{': case ')':
+                throw unsupported();
+            default:
+                return new CharClass(false).add(c, c);
+        }
+    }
+
+    private Node parseQuantifier(final Node atom)
+    {
+        final int min, max;
+
+        switch (peek()) {
+            case '*':
+                index++;
+                min = 0;
+                max = MAX_EXTRA_REPEATS;
+                break;
+            case '+':
+                index++;
+                min = 1;
+                max = 1 + MAX_EXTRA_REPEATS;
+                break;
+            case '?':
+                index++;
+                min = 0;
+                max = 1;
+                break;
+            case '{':
+                index++;
+                min = parseNumber();
+                if (peek() == ',') {
+                    index++;
+                    max = peek() == '}' ? min + MAX_EXTRA_REPEATS
+                        : parseNumber();
+                } else
+                    max = min;
+                expect('}');
+                break;
+            default:
+                return atom;
+        }
+
+        // Lazy quantifiers match the same strings
+        if (peek() == '?')
+            index++;
+
+        return parseQuantifier(new Repeat(atom, min, max));
+    }
+
+    private CharClass parseClass()
+    {
+        final CharClass ret = new CharClass(peek() == '^');
+
+        if (ret.negated)
+            index++;
+
+        char first, last;
+        boolean firstChar = true;
+
+        while (peek() != ']' || firstChar) {
+            if (peek() == END)
+                throw unsupported();
+            firstChar = false;
+            if (peek() == '\\') {
+                index++;
+                final Node escape = parseEscape(true);
+                if (!(escape instanceof CharClass))
+                    throw unsupported();
+                ret.addAll((CharClass) escape);
+                continue;
+            }
+            first = regex.charAt(index++);
+            last = first;
+            if (peek() == '-' && index + 1 < regex.length()
+                && regex.charAt(index + 1) != ']') {
+                index++;
+                last = regex.charAt(index++);
+                if (last == '\\')
+                    throw unsupported();
+            }
+            ret.add(first, last);
+        }
+
+        index++;
+        return ret;
+    }
+
+    private Node parseEscape(final boolean inClass)
+    {
+        if (peek() == END)
+            throw unsupported();
+
+        final char c = regex.charAt(index++);
+
+        switch (c) {
+            case 'd':
+                return new CharClass(false).add('0', '9');
+            case 'D':
+                return new CharClass(true).add('0', '9');
+            case 'w':
+                return word(false);
+            case 'W':
+                return word(true);
+            case 's':
+                return new CharClass(false).add(' ', ' ');
+            case 'S':
+                return new CharClass(true).add(' ', ' ').add('\t', '\r');
+            case 't':
+                return new CharClass(false).add('\t', '\t');
+            case 'n':
+                return new CharClass(false).add('\n', '\n');
+            case 'r':
+                return new CharClass(false).add('\r', '\r');
+            case 'b': case 'B':
+                // Word boundaries: only supported outside of classes, ignored
+                if (inClass)
+                    throw unsupported();
+                return new Sequence(ImmutableList.<Node>of());
+            case 'u':
+                return literal(parseHex(4));
+            case 'x':
+                return literal(parseHex(2));
+            default:
+                if (Character.isLetterOrDigit(c))
+                    throw unsupported();
+                return literal(c);
+        }
+    }
+
+    private static CharClass word(final boolean negated)
+    {
+        return new CharClass(negated).add('a', 'z').add('A', 'Z')
+            .add('0', '9').add('_', '_');
+    }
+
+    private static CharClass literal(final char c)
+    {
+        return new CharClass(false).add(c, c);
+    }
+
+    private char parseHex(final int digits)
+    {
+        if (index + digits > regex.length())
+            throw unsupported();
+
+        try {
+            final int ret = Integer.parseInt(regex.substring(index,
+                index + digits), 16);
+            index += digits;
+            return (char) ret;
+        } catch (NumberFormatException ignored) {
+            throw unsupported();
+        }
+    }
+
+    private int parseNumber()
+    {
+        final int start = index;
+
+        while (Character.isDigit(peek()))
+            index++;
+
+        if (start == index)
+            throw unsupported();
+
+        return Integer.parseInt(regex.substring(start, index));
+    }
+
+    /**
+     * Return the current character, or {@link #END} at the end of the regex
+     *
+     * @return the character
+     */
+    private char peek()
+    {
+        return index < regex.length() ? regex.charAt(index) : END;
+    }
+
+    private void expect(final char c)
+    {
+        if (peek() != c)
+            throw unsupported();
+        index++;
+    }
+
+    private IllegalArgumentException unsupported()
+    {
+        return new IllegalArgumentException("unsupported regex: " + regex);
+    }
+
+    private interface Node
+    {
+        void sample(final Random random, final StringBuilder sb);
+    }
+
+    private static final class Sequence
+        implements Node
+    {
+        private final List<Node> nodes;
+
+        private Sequence(final List<Node> nodes)
+        {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public void sample(final Random random, final StringBuilder sb)
+        {
+            for (final Node node: nodes)
+                node.sample(random, sb);
+        }
+    }
+
+    private static final class Alternation
+        implements Node
+    {
+        private final List<Node> branches;
+
+        private Alternation(final List<Node> branches)
+        {
+            this.branches = branches;
+        }
+
+        @Override
+        public void sample(final Random random, final StringBuilder sb)
+        {
+            branches.get(random.nextInt(branches.size())).sample(random, sb);
+        }
+    }
+
+    private static final class Repeat
+        implements Node
+    {
+        private final Node node;
+        private final int min;
+        private final int max;
+
+        private Repeat(final Node node, final int min, final int max)
+        {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public void sample(final Random random, final StringBuilder sb)
+        {
+            final int count = min + random.nextInt(max - min + 1);
+
+            for (int i = 0; i < count; i++)
+                node.sample(random, sb);
+        }
+    }
+
+    /**
+     * A set of character ranges, possibly negated
+     *
+     * <p>Negated classes only generate printable ASCII characters.</p>
+     */
+    private static final class CharClass
+        implements Node
+    {
+        private final boolean negated;
+        private final List<char[]> ranges = Lists.newArrayList();
+
+        private CharClass(final boolean negated)
+        {
+            this.negated = negated;
+        }
+
+        private CharClass add(final char first, final char last)
+        {
+            ranges.add(new char[] { first, last });
+            return this;
+        }
+
+        private void addAll(final CharClass other)
+        {
+            // A negated escape in a class, as in [\W_]: not supported
+            if (other.negated)
+                throw new IllegalArgumentException("unsupported character "
+                    + "class");
+            ranges.addAll(other.ranges);
+        }
+
+        private boolean contains(final char c)
+        {
+            for (final char[] range: ranges)
+                if (c >= range[0] && c <= range[1])
+                    return true;
+
+            return false;
+        }
+
+        @Override
+        public void sample(final Random random, final StringBuilder sb)
+        {
+            if (!negated) {
+                final char[] range = ranges.get(random.nextInt(ranges.size()));
+                sb.append((char) (range[0]
+                    + random.nextInt(range[1] - range[0] + 1)));
+                return;
+            }
+
+            final int size = LAST_PRINTABLE - FIRST_PRINTABLE + 1;
+            final int start = random.nextInt(size);
+            char c;
+
+            for (int i = 0; i < size; i++) {
+                c = (char) (FIRST_PRINTABLE + (start + i) % size);
+                if (!contains(c)) {
+                    sb.append(c);
+                    return;
+                }
+            }
+
+            throw new IllegalStateException("empty character class");
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end performance regression harness
+ *
+ * <p>This runs a fixed set of scenarios (see {@link Scenario}): the draft v3
+ * meta-schema against real world schemas, all keyword test cases, and large
+ * generated documents. For each of them, it measures throughput, median and
+ * 99th percentile latency, bytes allocated per validation and peak heap
+ * usage (outside of the allocation space, see {@link #heapPools()}), then
+ * compares these to a baseline file. The exit status is 1 if any
+ * metric regresses by more than the tolerance.</p>
+ *
+ * <p>Options:</p>
+ *
+ * <ul>
+ *     <li>{@code --baseline file}: the baseline (default {@code
+ *     baseline.json});</li>
+ *     <li>{@code --tolerance fraction}: the tolerance (default 0.25, ie
+ *     25%);</li>
+ *     <li>{@code --warmup seconds}, {@code --measure seconds}: time spent
+ *     warming up and measuring each scenario (default 5 and 10);</li>
+ *     <li>{@code --write}: write the results as the new baseline instead of
+ *     comparing them.</li>
+ * </ul>
+ *
+ * <p>Baselines are only meaningful on the machine and JVM they were taken
+ * with: after changing either, run once with {@code --write}.</p>
+ */
+public final class RegressionHarness
+{
+    private static final ThreadMXBean THREADS
+        = ManagementFactory.getThreadMXBean();
+
+    private File baselineFile = new File("baseline.json");
+    private double tolerance = 0.25;
+    private long warmupNanos = TimeUnit.SECONDS.toNanos(5L);
+    private long measureNanos = TimeUnit.SECONDS.toNanos(10L);
+    private boolean write = false;
+
+    private RegressionHarness()
+    {
+    }
+
+    public static void main(final String... args)
+        throws IOException
+    {
+        final RegressionHarness harness = new RegressionHarness();
+
+        harness.parseArgs(args);
+        System.exit(harness.run());
+    }
+
+    private void parseArgs(final String... args)
+    {
+        final List<String> list = Lists.newArrayList(Arrays.asList(args));
+        String arg;
+
+        while (!list.isEmpty()) {
+            arg = list.remove(0);
+            if ("--write".equals(arg))
+                write = true;
+            else if ("--baseline".equals(arg))
+                baselineFile = new File(list.remove(0));
+            else if ("--tolerance".equals(arg))
+                tolerance = Double.parseDouble(list.remove(0));
+            else if ("--warmup".equals(arg))
+                warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(list
+                    .remove(0)));
+            else if ("--measure".equals(arg))
+                measureNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(list
+                    .remove(0)));
+            else
+                throw new IllegalArgumentException("unknown option " + arg);
+        }
+    }
+
+    private int run()
+        throws IOException
+    {
+        final ObjectNode results = JsonNodeFactory.instance.objectNode();
+        final JsonNode baseline = write || !baselineFile.exists() ? null
+            : JsonLoader.fromFile(baselineFile);
+
+        if (!write && baseline == null) {
+            System.err.println("no baseline at " + baselineFile
+                + ", run with --write first");
+            return 2;
+        }
+
+        final List<String> regressions = Lists.newArrayList();
+        ScenarioResult result;
+        JsonNode base;
+
+        for (final Scenario scenario: Scenario.all()) {
+            result = measure(scenario);
+            results.put(scenario.getName(), result.toJson());
+            System.out.println(String.format("%-16s %s", scenario.getName(),
+                result));
+            if (baseline == null)
+                continue;
+            base = baseline.get(scenario.getName());
+            if (base == null) {
+                System.out.println("  (not in baseline)");
+                continue;
+            }
+            for (final String regression: result.regressions(
+                ScenarioResult.fromJson(base), tolerance))
+                regressions.add(scenario.getName() + ": " + regression);
+        }
+
+        if (write) {
+            new ObjectMapper().writerWithDefaultPrettyPrinter()
+                .writeValue(baselineFile, results);
+            System.out.println("baseline written to " + baselineFile);
+            return 0;
+        }
+
+        if (regressions.isEmpty()) {
+            System.out.println("no regression (tolerance "
+                + (int) (tolerance * 100) + "%)");
+            return 0;
+        }
+
+        System.out.println("REGRESSIONS (tolerance " + (int) (tolerance * 100)
+            + "%):");
+        for (final String regression: regressions)
+            System.out.println("  " + regression);
+        return 1;
+    }
+
+    private ScenarioResult measure(final Scenario scenario)
+    {
+        int ops = 0;
+        long start = System.nanoTime();
+
+        while (System.nanoTime() - start < warmupNanos)
+            scenario.run(ops++);
+
+        System.gc();
+        for (final MemoryPoolMXBean pool: heapPools())
+            pool.resetPeakUsage();
+
+        long[] latencies = new long[1024];
+        final long allocatedBefore = allocatedBytes();
+        long opStart;
+
+        ops = 0;
+        start = System.nanoTime();
+
+        do {
+            if (ops == latencies.length)
+                latencies = Arrays.copyOf(latencies, ops * 2);
+            opStart = System.nanoTime();
+            scenario.run(ops);
+            latencies[ops++] = System.nanoTime() - opStart;
+        } while (System.nanoTime() - start < measureNanos);
+
+        final long elapsed = System.nanoTime() - start;
+        final long allocatedAfter = allocatedBytes();
+
+        long peakHeap = 0L;
+        for (final MemoryPoolMXBean pool: heapPools())
+            peakHeap += pool.getPeakUsage().getUsed();
+
+        Arrays.sort(latencies, 0, ops);
+
+        return new ScenarioResult(ops * 1e9 / elapsed,
+            percentile(latencies, ops, 0.50) / 1e3,
+            percentile(latencies, ops, 0.99) / 1e3,
+            allocatedBefore < 0L ? -1L
+                : (allocatedAfter - allocatedBefore) / ops, peakHeap);
+    }
+
+    private static long percentile(final long[] sorted, final int size,
+        final double p)
+    {
+        final int index = (int) Math.ceil(p * size) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+    /**
+     * Bytes allocated so far by the current thread
+     *
+     * @return the number of bytes, or -1 if the JVM cannot tell
+     */
+    private static long allocatedBytes()
+    {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+            return -1L;
+
+        final com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean) THREADS;
+
+        if (!threads.isThreadAllocatedMemorySupported()
+            || !threads.isThreadAllocatedMemoryEnabled())
+            return -1L;
+
+        return threads.getThreadAllocatedBytes(Thread.currentThread()
+            .getId());
+    }
+
+    /**
+     * Heap memory pools, except the young generation's allocation space
+     *
+     * <p>How full the allocation space (eden) is at any time only depends on
+     * when the last collection happened: its peak usage is the size of the
+     * space. Other heap pools only hold objects which survived a collection.
+     * </p>
+     *
+     * @return the memory pools
+     */
+    private static List<MemoryPoolMXBean> heapPools()
+    {
+        final List<MemoryPoolMXBean> ret = Lists.newArrayList();
+
+        for (final MemoryPoolMXBean pool:
+            ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP
+                && !pool.getName().contains("Eden"))
+                ret.add(pool);
+
+        return ret;
+    }
+}
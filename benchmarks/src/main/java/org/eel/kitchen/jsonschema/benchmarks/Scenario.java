@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * A validation scenario of the regression harness
+ *
+ * <p>A scenario is a list of (schema, instance) pairs; one operation of the
+ * scenario validates one instance against its schema, in turn. Schemas are
+ * created from one factory per scenario.</p>
+ *
+ * @see RegressionHarness
+ */
+final class Scenario
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private static final String[] KEYWORD_RESOURCES = {
+        "additionalItems", "additionalProperties", "dependenciesSchema",
+        "dependenciesSimple", "disallow", "divisibleBy", "enum", "extends",
+        "maxItems", "maxLength", "maximum", "minItems", "minLength", "minimum",
+        "pattern", "properties", "type", "typeSimple", "uniqueItems"
+    };
+
+    private static final String RECORD_SCHEMA = "{"
+        + "\"type\": \"object\","
+        + "\"properties\": {"
+        + "  \"id\": { \"type\": \"integer\", \"minimum\": 0,"
+        + "    \"required\": true },"
+        + "  \"name\": { \"type\": \"string\", \"maxLength\": 64,"
+        + "    \"pattern\": \"^[a-z]+[0-9]*$\" },"
+        + "  \"score\": { \"type\": \"number\", \"minimum\": 0,"
+        + "    \"maximum\": 100 },"
+        + "  \"tags\": { \"type\": \"array\", \"uniqueItems\": true,"
+        + "    \"items\": { \"enum\": [ \"red\", \"green\", \"blue\" ] } },"
+        + "  \"children\": { \"type\": \"array\","
+        + "    \"items\": { \"$ref\": \"#\" } }"
+        + "},"
+        + "\"additionalProperties\": false"
+        + "}";
+
+    private static final String[] TAGS = { "red", "green", "blue" };
+
+    private final String name;
+    private final JsonSchemaFactory factory;
+    private final List<JsonSchema> schemas;
+    private final List<JsonNode> instances;
+
+    private Scenario(final String name, final JsonSchemaFactory factory,
+        final List<JsonSchema> schemas, final List<JsonNode> instances)
+    {
+        this.name = name;
+        this.factory = factory;
+        this.schemas = ImmutableList.copyOf(schemas);
+        this.instances = ImmutableList.copyOf(instances);
+    }
+
+    /**
+     * Build all scenarios
+     *
+     * @return the list of scenarios
+     * @throws IOException failed to load a resource
+     */
+    static List<Scenario> all()
+        throws IOException
+    {
+        return ImmutableList.of(metaSchema(), keywords(),
+            records("records-10k", 10000, 0), records("tree-5k", 4, 5));
+    }
+
+    /**
+     * Return the scenario with a given name
+     *
+     * @param name the name
+     * @return the scenario
+     * @throws IOException failed to load a resource
+     * @throws IllegalArgumentException no scenario with this name
+     */
+    static Scenario named(final String name)
+        throws IOException
+    {
+        for (final Scenario scenario: all())
+            if (scenario.name.equals(name))
+                return scenario;
+
+        throw new IllegalArgumentException("no scenario named " + name);
+    }
+
+    String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Return the factory all schemas of this scenario were created with
+     *
+     * @return the factory
+     */
+    JsonSchemaFactory getFactory()
+    {
+        return factory;
+    }
+
+    int size()
+    {
+        return instances.size();
+    }
+
+    /**
+     * Run one operation
+     *
+     * @param index the operation index
+     * @return true if the instance was valid
+     */
+    boolean run(final int index)
+    {
+        final int i = index % instances.size();
+        return schemas.get(i).validate(instances.get(i)).isSuccess();
+    }
+
+    /**
+     * The draft v3 meta-schema against the Google discovery document schemas
+     *
+     * @return the scenario
+     * @throws IOException failed to load a resource
+     */
+    private static Scenario metaSchema()
+        throws IOException
+    {
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        final JsonSchema schema = factory.createSchema(factory
+            .registerSchema(JsonLoader.fromResource("/schema-draftv3.json")));
+        final ImmutableList.Builder<JsonSchema> schemas
+            = ImmutableList.builder();
+        final ImmutableList.Builder<JsonNode> instances
+            = ImmutableList.builder();
+
+        for (final JsonNode instance: JsonLoader
+            .fromResource("/other/google-json-api.json").get("schemas")) {
+            schemas.add(schema);
+            instances.add(instance);
+        }
+
+        return new Scenario("draftv3-google", factory, schemas.build(),
+            instances.build());
+    }
+
+    /**
+     * All keyword test cases, valid and invalid
+     *
+     * @return the scenario
+     * @throws IOException failed to load a resource
+     */
+    private static Scenario keywords()
+        throws IOException
+    {
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        final ImmutableList.Builder<JsonSchema> schemas
+            = ImmutableList.builder();
+        final ImmutableList.Builder<JsonNode> instances
+            = ImmutableList.builder();
+
+        JsonNode testData;
+
+        for (final String resource: KEYWORD_RESOURCES) {
+            testData = JsonLoader.fromResource("/keyword/" + resource
+                + ".json");
+            for (final JsonNode element: testData) {
+                schemas.add(factory.createSchema(factory
+                    .registerSchema(element.get("schema"))));
+                instances.add(element.get("data"));
+            }
+        }
+
+        return new Scenario("keywords", factory, schemas.build(),
+            instances.build());
+    }
+
+    /**
+     * One large generated document of records
+     *
+     * <p>The document is a record with {@code width} children, each of which
+     * has {@code width} children, and so on: with a depth of 0, it is a record
+     * with {@code width} children which have no children.</p>
+     *
+     * @param name the scenario name
+     * @param width the number of children per record
+     * @param depth the depth of the tree
+     * @return the scenario
+     * @throws IOException failed to parse the schema
+     */
+    private static Scenario records(final String name, final int width,
+        final int depth)
+        throws IOException
+    {
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        final JsonSchema schema = factory.createSchema(factory.registerSchema(
+            JsonLoader.fromReader(new StringReader(RECORD_SCHEMA))));
+        final int[] counter = { 0 };
+        final JsonNode instance = record(counter, width, depth);
+
+        return new Scenario(name, factory, ImmutableList.of(schema),
+            ImmutableList.of(instance));
+    }
+
+    private static JsonNode record(final int[] counter, final int width,
+        final int depth)
+    {
+        final int i = counter[0]++;
+        final ObjectNode ret = FACTORY.objectNode();
+
+        ret.put("id", i);
+        ret.put("name", "record" + i);
+        ret.put("score", (i * 7) % 101);
+        ret.putArray("tags").add(TAGS[i % 3]).add(TAGS[(i + 1) % 3]);
+
+        if (depth < 0)
+            return ret;
+
+        final ArrayNode children = ret.putArray("children");
+
+        for (int j = 0; j < width; j++)
+            children.add(record(counter, width, depth - 1));
+
+        return ret;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Measurements of one scenario of the regression harness
+ *
+ * <p>Allocated bytes are {@code -1} if the JVM cannot measure them; such
+ * metrics are never compared.</p>
+ *
+ * @see RegressionHarness
+ */
+final class ScenarioResult
+{
+    private final double throughput;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final long allocatedBytes;
+    private final long peakHeapBytes;
+
+    ScenarioResult(final double throughput, final double p50Micros,
+        final double p99Micros, final long allocatedBytes,
+        final long peakHeapBytes)
+    {
+        this.throughput = throughput;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.allocatedBytes = allocatedBytes;
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    static ScenarioResult fromJson(final JsonNode node)
+    {
+        return new ScenarioResult(node.get("throughput").doubleValue(),
+            node.get("p50Micros").doubleValue(),
+            node.get("p99Micros").doubleValue(),
+            node.get("allocatedBytes").longValue(),
+            node.get("peakHeapBytes").longValue());
+    }
+
+    JsonNode toJson()
+    {
+        final ObjectNode ret = JsonNodeFactory.instance.objectNode();
+
+        ret.put("throughput", throughput);
+        ret.put("p50Micros", p50Micros);
+        ret.put("p99Micros", p99Micros);
+        ret.put("allocatedBytes", allocatedBytes);
+        ret.put("peakHeapBytes", peakHeapBytes);
+        return ret;
+    }
+
+    /**
+     * Compare this result to a baseline
+     *
+     * <p>Throughput regresses if it is lower than the baseline by more than
+     * the tolerance; all other metrics regress if they are higher than the
+     * baseline by more than the tolerance.</p>
+     *
+     * @param baseline the baseline
+     * @param tolerance the tolerance, as a fraction (0.1 is 10%)
+     * @return a description of each regression (empty if none)
+     */
+    List<String> regressions(final ScenarioResult baseline,
+        final double tolerance)
+    {
+        final List<String> ret = Lists.newArrayList();
+
+        if (throughput < baseline.throughput * (1.0 - tolerance))
+            ret.add(describe("throughput", throughput, baseline.throughput));
+        checkHigher(ret, "p50Micros", p50Micros, baseline.p50Micros,
+            tolerance);
+        checkHigher(ret, "p99Micros", p99Micros, baseline.p99Micros,
+            tolerance);
+        if (allocatedBytes >= 0L && baseline.allocatedBytes >= 0L)
+            checkHigher(ret, "allocatedBytes", allocatedBytes,
+                baseline.allocatedBytes, tolerance);
+        checkHigher(ret, "peakHeapBytes", peakHeapBytes,
+            baseline.peakHeapBytes, tolerance);
+
+        return ret;
+    }
+
+    private static void checkHigher(final List<String> regressions,
+        final String metric, final double value, final double baseline,
+        final double tolerance)
+    {
+        if (value > baseline * (1.0 + tolerance))
+            regressions.add(describe(metric, value, baseline));
+    }
+
+    private static String describe(final String metric, final double value,
+        final double baseline)
+    {
+        return String.format("%s: %.1f (baseline %.1f, %+.1f%%)", metric,
+            value, baseline, (value - baseline) * 100.0 / baseline);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%10.1f ops/s  p50 %8.1f us  p99 %8.1f us  "
+            + "%10d B/op  peak heap %6d MiB", throughput, p50Micros,
+            p99Micros, allocatedBytes, peakHeapBytes >> 20);
+    }
+}
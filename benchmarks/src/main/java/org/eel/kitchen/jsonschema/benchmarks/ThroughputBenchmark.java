@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation throughput across instance sizes
+ *
+ * <p>The instance is an array of {@code size} records, all valid against the
+ * schema (see {@link #SCHEMA}), so that the cost of one validation is
+ * roughly proportional to the size.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ThroughputBenchmark
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private static final String SCHEMA = "{"
+        + "\"type\": \"array\","
+        + "\"items\": {"
+        + "  \"type\": \"object\","
+        + "  \"properties\": {"
+        + "    \"id\": { \"type\": \"integer\", \"minimum\": 0,"
+        + "      \"required\": true },"
+        + "    \"name\": { \"type\": \"string\", \"maxLength\": 64,"
+        + "      \"pattern\": \"^[a-z]+[0-9]*$\" },"
+        + "    \"score\": { \"type\": \"number\", \"minimum\": 0,"
+        + "      \"maximum\": 100 },"
+        + "    \"tags\": { \"type\": \"array\", \"uniqueItems\": true,"
+        + "      \"items\": { \"enum\": [ \"red\", \"green\", \"blue\" ] } }"
+        + "  },"
+        + "  \"additionalProperties\": false"
+        + "}"
+        + "}";
+
+    private static final String[] TAGS = { "red", "green", "blue" };
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int size;
+
+    private JsonSchema schema;
+    private JsonNode instance;
+
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        final JsonNode schemaNode
+            = JsonLoader.fromReader(new StringReader(SCHEMA));
+
+        schema = factory.createSchema(factory.registerSchema(schemaNode));
+
+        final ArrayNode array = FACTORY.arrayNode();
+        ObjectNode record;
+
+        for (int i = 0; i < size; i++) {
+            record = array.addObject();
+            record.put("id", i);
+            record.put("name", "record" + i);
+            record.put("score", (i * 7) % 101);
+            record.putArray("tags").add(TAGS[i % 3]).add(TAGS[(i + 1) % 3]);
+        }
+
+        instance = array;
+
+        if (!schema.validate(instance).isSuccess())
+            throw new IllegalStateException("generated instance is invalid");
+    }
+
+    @Benchmark
+    public ValidationReport validate()
+    {
+        return schema.validate(instance);
+    }
+}
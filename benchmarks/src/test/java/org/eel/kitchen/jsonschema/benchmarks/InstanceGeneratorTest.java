@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.eel.kitchen.jsonschema.util.RhinoHelper;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+public final class InstanceGeneratorTest
+{
+    private static final String SCHEMA = "{"
+        + "\"type\":\"object\","
+        + "\"properties\":{"
+        + "\"n\":{\"type\":\"integer\",\"minimum\":0,\"maximum\":100,"
+        + "\"divisibleBy\":5,\"required\":true},"
+        + "\"x\":{\"type\":\"number\",\"minimum\":1.5,\"maximum\":2,"
+        + "\"exclusiveMaximum\":true,\"required\":true},"
+        + "\"s\":{\"type\":\"string\",\"minLength\":2,\"maxLength\":5,"
+        + "\"pattern\":\"^[a-c]+$\",\"required\":true},"
+        + "\"e\":{\"enum\":[\"a\",\"b\"],\"required\":true},"
+        + "\"i\":{\"type\":\"integer\",\"enum\":[1,2],\"required\":true},"
+        + "\"a\":{\"type\":\"array\",\"items\":{\"type\":\"integer\","
+        + "\"minimum\":10},\"maxItems\":3,\"required\":true}"
+        + "},"
+        + "\"additionalProperties\":false"
+        + "}";
+
+    private static final String[] REGEXES = {
+        "^[a-c]+$", "^\\d{3}-\\d{2,4}$", "a|bc|d*", "^(?:ab)+x?$",
+        "[^a-z]{2}", "\\w+@\\w+\\.(com|org)", "^\\s\\S\\W$", "^.{0,3}$",
+        "[\\]\\-]+", "^\\x41\\u0042[0-9a-fA-F]{1,}$"
+    };
+
+    private JsonSchemaFactory factory;
+    private SchemaContainer container;
+    private JsonSchema schema;
+
+    @BeforeMethod
+    public void init()
+        throws IOException
+    {
+        factory = new JsonSchemaFactory.Builder().build();
+        container = factory.registerSchema(JsonLoader.fromReader(
+            new StringReader(SCHEMA)));
+        schema = factory.createSchema(container);
+    }
+
+    @Test
+    public void generationIsDeterministicForAGivenSeed()
+    {
+        final List<JsonNode> first = generate(42L, 20);
+
+        assertEquals(generate(42L, 20), first);
+        assertNotEquals(generate(43L, 20), first);
+    }
+
+    @Test
+    public void validInstancesAreValid()
+    {
+        final InstanceGenerator generator
+            = new InstanceGenerator.Builder(factory).setSeed(1L).build();
+
+        JsonNode instance;
+
+        for (int i = 0; i < 100; i++) {
+            instance = generator.generate(container);
+            assertTrue(schema.validate(instance).isSuccess(),
+                "instance: " + instance);
+        }
+
+        assertEquals(generator.getViolations(), 0L);
+        assertEquals(generator.getUnhonored(), 0L);
+    }
+
+    @Test
+    public void invalidValuesBreakExactlyOneConstraint()
+    {
+        final InstanceGenerator generator = new InstanceGenerator
+            .Builder(factory).setSeed(2L).setInvalidRatio(1.0).build();
+
+        long violations = 0L;
+        long messages = 0L;
+        JsonNode instance;
+
+        for (int i = 0; i < 200; i++) {
+            instance = generator.generate(container);
+            messages += schema.validate(instance).getMessages().size();
+            assertEquals(messages, generator.getViolations() - violations,
+                "instance: " + instance);
+            messages = 0L;
+            violations = generator.getViolations();
+        }
+
+        assertTrue(violations > 0L);
+        assertEquals(generator.getUnhonored(), 0L);
+    }
+
+    @Test
+    public void sampledStringsMatchTheirRegex()
+    {
+        final Random random = new Random(0L);
+
+        RegexSampler sampler;
+        String sample;
+
+        for (final String regex: REGEXES) {
+            sampler = new RegexSampler(regex);
+            for (int i = 0; i < 50; i++) {
+                sample = sampler.sample(random);
+                assertTrue(RhinoHelper.regMatch("^(?:" + regex + ")$", sample),
+                    "regex " + regex + " does not match " + sample);
+            }
+        }
+    }
+
+    @Test
+    public void unsupportedRegexesAreRefused()
+    {
+        for (final String regex: new String[] { "(a)\\1", "a(?=b)", "a(?!b)",
+            "*a", "(ab" })
+            try {
+                new RegexSampler(regex);
+                fail("regex " + regex + " should not be supported");
+            } catch (IllegalArgumentException ignored) {
+            }
+    }
+
+    private List<JsonNode> generate(final long seed, final int count)
+    {
+        final InstanceGenerator generator = new InstanceGenerator
+            .Builder(factory).setSeed(seed).setInvalidRatio(0.1).build();
+        final List<JsonNode> ret = Lists.newArrayList();
+
+        for (int i = 0; i < count; i++)
+            ret.add(generator.generate(container));
+
+        return ret;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The fetch of a schema from an URI
+ *
+ * <p>This event is committed once the content is fetched and parsed: its
+ * start time is the end of the fetch, and its duration is 0. Unlike other
+ * events, it has a stack trace, to find out which reference caused it.</p>
+ */
+@Name("org.eel.kitchen.jsonschema.ContentFetch")
+@Label("Content Fetch")
+@Category("JSON Schema")
+@Description("Fetch of a schema from an URI")
+final class ContentFetchEvent
+    extends Event
+{
+    @Label("URI")
+    String uri;
+
+    @Label("Bytes")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+
+    @Label("Latency")
+    @Description("Time spent fetching and parsing the content")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+}
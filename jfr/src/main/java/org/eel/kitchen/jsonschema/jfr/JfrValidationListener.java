@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.jfr;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A validation listener sending JDK Flight Recorder events
+ *
+ * <p>Install it on a factory with {@link
+ * JsonSchemaFactory.Builder#withValidationListener(ValidationListener)}. The
+ * following events, all in the {@code JSON Schema} category, are then
+ * available to recordings:</p>
+ *
+ * <ul>
+ *     <li>{@code org.eel.kitchen.jsonschema.Validation}: the validation of an
+ *     instance, with the schema locator and the number of JSON values in the
+ *     instance (only counted if the event is recorded);</li>
+ *     <li>{@code org.eel.kitchen.jsonschema.ValidatorBuild}: the build of a
+ *     validator, with the time spent resolving JSON References, checking the
+ *     syntax and building keyword validators;</li>
+ *     <li>{@code org.eel.kitchen.jsonschema.ValidatorCacheLoad}: a validator
+ *     cache miss, with the total load time;</li>
+ *     <li>{@code org.eel.kitchen.jsonschema.ContentFetch}: the fetch of a
+ *     schema, with its URI, size and latency.</li>
+ * </ul>
+ *
+ * <p>Only validation events have a duration (and honor thresholds): the other
+ * ones are told to this listener once they are over, and carry their times
+ * as fields instead. This listener does not ask for schema and keyword
+ * events, since there would be far too many of them.</p>
+ *
+ * <p>When an event is disabled, this listener does not build it.</p>
+ */
+public final class JfrValidationListener
+    extends ValidationListener
+{
+    /**
+     * Validations in progress in the current thread, innermost first
+     */
+    private final ThreadLocal<Deque<ValidationEvent>> events
+        = new ThreadLocal<Deque<ValidationEvent>>()
+    {
+        @Override
+        protected Deque<ValidationEvent> initialValue()
+        {
+            return new ArrayDeque<ValidationEvent>();
+        }
+    };
+
+    /**
+     * Return the granularity of this listener
+     *
+     * <p>This listener has no use for schema and keyword events.</p>
+     *
+     * @return {@link Granularity#VALIDATIONS}
+     */
+    @Override
+    public Granularity getGranularity()
+    {
+        return Granularity.VALIDATIONS;
+    }
+
+    @Override
+    public void enterValidation(final JsonRef locator, final JsonNode instance)
+    {
+        final ValidationEvent event = new ValidationEvent();
+
+        event.begin();
+        events.get().push(event);
+    }
+
+    @Override
+    public void exitValidation(final JsonRef locator, final JsonNode instance,
+        final long nanos, final boolean success)
+    {
+        final ValidationEvent event = events.get().pop();
+
+        event.end();
+        if (!event.shouldCommit())
+            return;
+
+        event.schema = locator.toString();
+        event.instanceNodes = countNodes(instance);
+        event.valid = success;
+        event.commit();
+    }
+
+    @Override
+    public void validatorBuilt(final SchemaNode schemaNode,
+        final long resolveNanos, final long syntaxNanos, final long buildNanos,
+        final boolean success)
+    {
+        final ValidatorBuildEvent event = new ValidatorBuildEvent();
+
+        if (!event.isEnabled())
+            return;
+
+        event.schema = schemaNode.getContainer().getLocator().toString();
+        event.resolveTime = resolveNanos;
+        event.syntaxTime = syntaxNanos;
+        event.buildTime = buildNanos;
+        event.success = success;
+        event.commit();
+    }
+
+    @Override
+    public void validatorCacheMiss(final SchemaContainer container,
+        final JsonNode schema, final long nanos)
+    {
+        final ValidatorCacheLoadEvent event = new ValidatorCacheLoadEvent();
+
+        if (!event.isEnabled())
+            return;
+
+        event.schema = container.getLocator().toString();
+        event.loadTime = nanos;
+        event.commit();
+    }
+
+    @Override
+    public void contentFetched(final URI uri, final long bytes,
+        final long nanos)
+    {
+        final ContentFetchEvent event = new ContentFetchEvent();
+
+        if (!event.isEnabled())
+            return;
+
+        event.uri = uri.toString();
+        event.bytes = bytes;
+        event.latency = nanos;
+        event.commit();
+    }
+
+    private static int countNodes(final JsonNode node)
+    {
+        int ret = 1;
+
+        for (final JsonNode child: node)
+            ret += countNodes(child);
+
+        return ret;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The validation of an instance by a schema
+ *
+ * <p>The duration of this event is the duration of the validation.</p>
+ */
+@Name("org.eel.kitchen.jsonschema.Validation")
+@Label("Validation")
+@Category("JSON Schema")
+@Description("Validation of an instance")
+@StackTrace(false)
+final class ValidationEvent
+    extends Event
+{
+    @Label("Schema")
+    @Description("Locator of the schema container")
+    String schema;
+
+    @Label("Instance Nodes")
+    @Description("Number of JSON values in the instance")
+    int instanceNodes;
+
+    @Label("Valid")
+    boolean valid;
+}
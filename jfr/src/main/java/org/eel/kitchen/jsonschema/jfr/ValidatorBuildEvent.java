@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The build of the validator of a subschema, by phase
+ *
+ * <p>This event is committed once the validator is built: its start time is
+ * the end of the build, and its duration is 0.</p>
+ */
+@Name("org.eel.kitchen.jsonschema.ValidatorBuild")
+@Label("Validator Build")
+@Category("JSON Schema")
+@Description("Resolution, syntax validation and build of a validator")
+@StackTrace(false)
+final class ValidatorBuildEvent
+    extends Event
+{
+    @Label("Schema")
+    @Description("Locator of the schema container")
+    String schema;
+
+    @Label("Resolve Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long resolveTime;
+
+    @Label("Syntax Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long syntaxTime;
+
+    @Label("Build Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long buildTime;
+
+    @Label("Success")
+    @Description("False if resolution or syntax validation failed")
+    boolean success;
+}
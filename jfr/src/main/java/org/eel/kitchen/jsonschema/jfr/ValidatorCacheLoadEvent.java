@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A validator cache miss
+ *
+ * <p>This event is committed once the validator is loaded: its start time is
+ * the end of the load, and its duration is 0.</p>
+ */
+@Name("org.eel.kitchen.jsonschema.ValidatorCacheLoad")
+@Label("Validator Cache Load")
+@Category("JSON Schema")
+@Description("Load of a validator on a validator cache miss")
+@StackTrace(false)
+final class ValidatorCacheLoadEvent
+    extends Event
+{
+    @Label("Schema")
+    @Description("Locator of the schema container")
+    String schema;
+
+    @Label("Load Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long loadTime;
+}
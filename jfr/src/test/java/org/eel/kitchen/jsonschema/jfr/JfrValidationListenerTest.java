@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.jfr;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public final class JfrValidationListenerTest
+{
+    private static final String PREFIX = "org.eel.kitchen.jsonschema.";
+
+    @Test
+    public void eventsAreRecorded()
+        throws IOException
+    {
+        final File dir = Files.createTempDir();
+        final File remote = new File(dir, "remote.json");
+        final File dump = new File(dir, "dump.jfr");
+
+        Files.write("{\"type\":\"integer\"}", remote, Charsets.UTF_8);
+
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .withValidationListener(new JfrValidationListener()).build();
+        final JsonNode schema = parse("{\"properties\":{\"a\":{\"$ref\":\""
+            + remote.toURI() + "#\"}}}");
+
+        final Recording recording = new Recording();
+        recording.enable(PREFIX + "Validation");
+        recording.enable(PREFIX + "ValidatorBuild");
+        recording.enable(PREFIX + "ValidatorCacheLoad");
+        recording.enable(PREFIX + "ContentFetch");
+        recording.start();
+
+        final ValidationReport report = factory.createSchema(factory
+            .registerSchema(schema)).validate(parse("{\"a\":\"b\"}"));
+
+        recording.stop();
+        recording.dump(dump.toPath());
+        recording.close();
+
+        assertFalse(report.isSuccess());
+
+        final Map<String, RecordedEvent> events = Maps.newHashMap();
+        final List<RecordedEvent> list = RecordingFile.readAllEvents(
+            dump.toPath());
+
+        for (final RecordedEvent event: list)
+            events.put(event.getEventType().getName(), event);
+
+        RecordedEvent event;
+
+        event = events.get(PREFIX + "Validation");
+        assertNotNull(event);
+        assertEquals(event.getInt("instanceNodes"), 2);
+        assertFalse(event.getBoolean("valid"));
+
+        event = events.get(PREFIX + "ContentFetch");
+        assertNotNull(event);
+        assertEquals(event.getString("uri"), remote.toURI() + "#");
+        assertEquals(event.getLong("bytes"), remote.length());
+
+        event = events.get(PREFIX + "ValidatorBuild");
+        assertNotNull(event);
+        assertTrue(event.getBoolean("success"));
+
+        assertNotNull(events.get(PREFIX + "ValidatorCacheLoad"));
+    }
+
+    private static JsonNode parse(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+}
@@ -22,6 +22,7 @@ import org.eel.kitchen.jsonschema.report.ValidationDomain;
 import org.eel.kitchen.jsonschema.report.ValidationMessage;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
 import org.eel.kitchen.jsonschema.util.NodeType;
+import org.eel.kitchen.jsonschema.validator.ResultMemo;
 import org.eel.kitchen.jsonschema.validator.ValidationContext;
 
 import java.util.EnumSet;
@@ -77,6 +78,11 @@ public abstract class FormatSpecifier
      * with the keyword ({@code format}, the specifier name and the domain
      * ({@link ValidationDomain#VALIDATION}).</p>
      *
+     * <p>If the value is a string and the context's {@link ResultMemo} admits
+     * it, a remembered successful result short-circuits the check. A failed
+     * check is always run again, since the memo only remembers the outcome and
+     * not the messages.</p>
+     *
      * @param fmt the format specifier name
      * @param ctx the validation context
      * @param report the validation report
@@ -88,7 +94,26 @@ public abstract class FormatSpecifier
         if (!typeSet.contains(NodeType.getNodeType(value)))
             return;
 
-        checkValue(fmt, ctx, report, value);
+        final ResultMemo memo = ctx.getResultMemo();
+
+        if (!value.isTextual() || !memo.admits(value.textValue())) {
+            checkValue(fmt, ctx, report, value);
+            return;
+        }
+
+        final String text = value.textValue();
+        final Boolean cached = memo.getFormatResult(fmt, text);
+
+        if (cached != null) {
+            if (!cached)
+                checkValue(fmt, ctx, report, value);
+            return;
+        }
+
+        final ValidationReport tmp = report.copy();
+        checkValue(fmt, ctx, tmp, value);
+        memo.putFormatResult(fmt, text, tmp.isSuccess());
+        report.mergeWith(tmp);
     }
 
     /**
@@ -18,11 +18,15 @@
 package org.eel.kitchen.jsonschema.keyword;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import org.eel.kitchen.jsonschema.util.NodeType;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -30,6 +34,12 @@ import java.util.Set;
  *
  * <p>The structure of these two keywords are the same,
  * the only difference is the validation process.</p>
+ *
+ * <p>When schemas in the keyword definition are discriminated by the value of
+ * a required property (typically, a {@code kind} property with a single value
+ * {@code enum}), an index of these schemas is built so that, for a given
+ * object instance, only the schemas which can possibly validate it are tried.
+ * See {@link #candidateSchemas(JsonNode)}.</p>
  */
 public abstract class AbstractTypeKeywordValidator
     extends KeywordValidator
@@ -49,6 +59,11 @@ public abstract class AbstractTypeKeywordValidator
      */
     protected final Set<JsonNode> schemas;
 
+    /**
+     * Index of {@link #schemas} by discriminator value, if any
+     */
+    private final DiscriminatorIndex discriminator;
+
     protected AbstractTypeKeywordValidator(final String keyword,
         final JsonNode schema)
     {
@@ -58,6 +73,7 @@ public abstract class AbstractTypeKeywordValidator
         if (node.isTextual()) {
             addSimpleType(node.textValue());
             schemas = Collections.emptySet();
+            discriminator = null;
             return;
         }
 
@@ -71,6 +87,84 @@ public abstract class AbstractTypeKeywordValidator
                 builder.add(element);
 
         schemas = builder.build();
+        discriminator = DiscriminatorIndex.build(schemas);
+    }
+
+    /**
+     * Return the schemas which may validate an instance
+     *
+     * <p>Schemas which are not returned are guaranteed to fail validating the
+     * instance. Their order is the same as in {@link #schemas}.</p>
+     *
+     * @param instance the instance
+     * @return the candidate schemas
+     */
+    protected final Collection<JsonNode> candidateSchemas(
+        final JsonNode instance)
+    {
+        return discriminator == null || !instance.isObject() ? schemas
+            : discriminator.candidates(instance);
+    }
+
+    /**
+     * Return the schemas found in the keyword definition
+     *
+     * @return an immutable set of schemas
+     */
+    public final Set<JsonNode> getSchemas()
+    {
+        return schemas;
+    }
+
+    /**
+     * Return the property discriminating the schemas, if any
+     *
+     * @return the property name, or {@code null} if schemas are all tried
+     */
+    public final String getDiscriminator()
+    {
+        return discriminator == null ? null : discriminator.getProperty();
+    }
+
+    /**
+     * Return the candidate schemas, by value of the discriminating property
+     *
+     * <p>Objects with another value, or without this property, have {@link
+     * #getUndiscriminatedSchemas()} as candidates. Other instances have all
+     * schemas as candidates.</p>
+     *
+     * @return an immutable map, empty if schemas are all tried
+     */
+    public final Map<JsonNode, List<JsonNode>> getDiscriminatedSchemas()
+    {
+        return discriminator == null
+            ? Collections.<JsonNode, List<JsonNode>>emptyMap()
+            : discriminator.getCandidates();
+    }
+
+    /**
+     * Return the candidate schemas of objects with no known discriminator
+     * value
+     *
+     * @return an immutable list, of all schemas if schemas are all tried
+     */
+    public final List<JsonNode> getUndiscriminatedSchemas()
+    {
+        return discriminator == null ? ImmutableList.copyOf(schemas)
+            : discriminator.getUndiscriminated();
+    }
+
+    /**
+     * Return the primitive types found in the keyword definition
+     *
+     * <p>As for validation, {@code any} stands for all types, and {@code
+     * number} includes {@code integer}.</p>
+     *
+     * @return an unmodifiable set of types
+     */
+    public final Set<NodeType> getTypes()
+    {
+        return Collections.unmodifiableSet(typeSet);
     }
 
     /**
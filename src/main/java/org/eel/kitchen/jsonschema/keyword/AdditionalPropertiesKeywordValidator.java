@@ -24,7 +24,6 @@ import org.eel.kitchen.jsonschema.report.ValidationMessage;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
 import org.eel.kitchen.jsonschema.util.JacksonUtils;
 import org.eel.kitchen.jsonschema.util.NodeType;
-import org.eel.kitchen.jsonschema.util.RhinoHelper;
 import org.eel.kitchen.jsonschema.validator.ValidationContext;
 
 import java.util.Collections;
@@ -97,7 +96,7 @@ public final class AdditionalPropertiesKeywordValidator
 
         for (final String field: fields)
             for (final String regex: patternProperties)
-                if (RhinoHelper.regMatch(regex, field))
+                if (context.regMatch(regex, field))
                     tmp.add(field);
 
         fields.removeAll(tmp);
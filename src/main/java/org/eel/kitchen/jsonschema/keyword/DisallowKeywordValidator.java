@@ -35,6 +35,9 @@ import org.eel.kitchen.jsonschema.validator.ValidationContext;
  * resolve successfully, then this particular schema fails validation,
  * and the logic is also inverted in that case. While the draft doesn't
  * object this, it can be viewed as a bug.</p>
+ *
+ * <p>Only candidate schemas are tried (see {@link
+ * #candidateSchemas(JsonNode)}).</p>
  */
 public final class DisallowKeywordValidator
     extends AbstractTypeKeywordValidator
@@ -64,7 +67,7 @@ public final class DisallowKeywordValidator
         ValidationReport schemaReport;
         JsonValidator validator;
 
-        for (final JsonNode schema: schemas) {
+        for (final JsonNode schema: candidateSchemas(instance)) {
             validator = context.newValidator(schema);
             schemaReport = report.copy();
             validator.validate(context, schemaReport, instance);
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.keyword;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of a set of schemas by the value of a discriminating property
+ *
+ * <p>A schema is discriminated by property {@code p} with value {@code v} if
+ * all of the following holds:</p>
+ *
+ * <ul>
+ *     <li>it is not a JSON Reference;</li>
+ *     <li>its {@code properties} has a member {@code p}, and this member is
+ *     not a JSON Reference;</li>
+ *     <li>this member has {@code required} set to true, and an {@code enum}
+ *     with {@code v} as its only element.</li>
+ * </ul>
+ *
+ * <p>Such a schema can only validate an object instance if the instance has a
+ * member {@code p} equal to {@code v}.</p>
+ *
+ * <p>Given a set of schemas, the property discriminating the most schemas is
+ * picked. The candidate schemas for an object instance are then the
+ * schemas discriminated by the value of this property in the instance,
+ * plus all schemas which are not discriminated by this property. The original
+ * order of schemas is preserved.</p>
+ *
+ * <p>This index is only built if at least two schemas are discriminated by
+ * the same property.</p>
+ *
+ * @see AbstractTypeKeywordValidator#candidateSchemas(JsonNode)
+ */
+final class DiscriminatorIndex
+{
+    /**
+     * The discriminating property
+     */
+    private final String property;
+
+    /**
+     * Schemas not discriminated by {@link #property}
+     */
+    private final List<JsonNode> undiscriminated;
+
+    /**
+     * Candidate schemas for each value of {@link #property}
+     */
+    private final Map<JsonNode, List<JsonNode>> candidates;
+
+    private DiscriminatorIndex(final String property,
+        final Collection<JsonNode> schemas)
+    {
+        this.property = property;
+
+        final ImmutableList.Builder<JsonNode> builder = ImmutableList.builder();
+        final Map<JsonNode, ImmutableList.Builder<JsonNode>> map
+            = Maps.newLinkedHashMap();
+
+        JsonNode value;
+
+        for (final JsonNode schema: schemas) {
+            value = discriminatorValue(schema, property);
+            if (value == null) {
+                builder.add(schema);
+                for (final ImmutableList.Builder<JsonNode> list: map.values())
+                    list.add(schema);
+                continue;
+            }
+            if (!map.containsKey(value))
+                map.put(value, ImmutableList.<JsonNode>builder()
+                    .addAll(builder.build()));
+            map.get(value).add(schema);
+        }
+
+        undiscriminated = builder.build();
+
+        final ImmutableMap.Builder<JsonNode, List<JsonNode>> mapBuilder
+            = ImmutableMap.builder();
+
+        for (final Map.Entry<JsonNode, ImmutableList.Builder<JsonNode>> entry:
+            map.entrySet())
+            mapBuilder.put(entry.getKey(), entry.getValue().build());
+
+        candidates = mapBuilder.build();
+    }
+
+    /**
+     * Build an index for a set of schemas, if possible
+     *
+     * @param schemas the schemas
+     * @return the index, or {@code null} if no property discriminates at
+     * least two schemas
+     */
+    static DiscriminatorIndex build(final Collection<JsonNode> schemas)
+    {
+        if (schemas.size() < 2)
+            return null;
+
+        final Map<String, Integer> counts = Maps.newTreeMap();
+
+        Integer count;
+        Iterator<String> names;
+        String name;
+
+        for (final JsonNode schema: schemas) {
+            if (!isInline(schema))
+                continue;
+            names = schema.path("properties").fieldNames();
+            while (names.hasNext()) {
+                name = names.next();
+                if (discriminatorValue(schema, name) == null)
+                    continue;
+                count = counts.get(name);
+                counts.put(name, count == null ? 1 : count + 1);
+            }
+        }
+
+        String property = null;
+        int max = 1;
+
+        for (final Map.Entry<String, Integer> entry: counts.entrySet())
+            if (entry.getValue() > max) {
+                property = entry.getKey();
+                max = entry.getValue();
+            }
+
+        return property == null ? null
+            : new DiscriminatorIndex(property, schemas);
+    }
+
+    /**
+     * Return the candidate schemas for an instance
+     *
+     * @param instance the instance (must be an object)
+     * @return the candidate schemas, in their original order
+     */
+    List<JsonNode> candidates(final JsonNode instance)
+    {
+        final JsonNode value = instance.get(property);
+
+        if (value == null)
+            return undiscriminated;
+
+        final List<JsonNode> ret = candidates.get(value);
+        return ret == null ? undiscriminated : ret;
+    }
+
+    String getProperty()
+    {
+        return property;
+    }
+
+    Map<JsonNode, List<JsonNode>> getCandidates()
+    {
+        return candidates;
+    }
+
+    List<JsonNode> getUndiscriminated()
+    {
+        return undiscriminated;
+    }
+
+    private static boolean isInline(final JsonNode schema)
+    {
+        return schema.isObject() && !schema.has("$ref");
+    }
+
+    private static JsonNode discriminatorValue(final JsonNode schema,
+        final String name)
+    {
+        if (!isInline(schema))
+            return null;
+
+        final JsonNode node = schema.path("properties").path(name);
+
+        if (!isInline(node) || !node.path("required").asBoolean(false))
+            return null;
+
+        final JsonNode enumNode = node.path("enum");
+
+        return enumNode.isArray() && enumNode.size() == 1 ? enumNode.get(0)
+            : null;
+    }
+}
@@ -28,13 +28,56 @@ import java.math.BigDecimal;
  *
  * <p>Note: in draft v4, the keyword will be renamed to {@code mod},
  * but will work all the same.</p>
+ *
+ * <p>Unless it is very large, the divisor is precomputed in scaled form, ie an
+ * unscaled {@code long} value and a scale (for instance, {@code 0.25} is
+ * {@code 25} with scale {@code 2}). Integer instances, and decimal instances
+ * whose scale is not greater than the divisor's, are then scaled the same way
+ * and checked with a {@code long} remainder. Other instances, and instances for
+ * which scaling would overflow, are checked using {@link
+ * BigDecimal#remainder(BigDecimal)}.</p>
  */
 public final class DivisibleByKeywordValidator
     extends NumericKeywordValidator
 {
+    /**
+     * Powers of ten which fit into a {@code long}
+     */
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+    }
+
+    /**
+     * Does the divisor have a scaled {@code long} form?
+     */
+    private final boolean isScaled;
+
+    /**
+     * Unscaled value of the divisor
+     */
+    private final long unscaled;
+
+    /**
+     * Scale of the divisor (never negative)
+     */
+    private final int scale;
+
     public DivisibleByKeywordValidator(final JsonNode schema)
     {
         super("divisibleBy", schema);
+
+        BigDecimal divisor = decimalValue.stripTrailingZeros();
+        if (divisor.scale() < 0)
+            divisor = divisor.setScale(0);
+
+        scale = divisor.scale();
+        isScaled = scale < POWERS_OF_TEN.length
+            && divisor.unscaledValue().bitLength() < 64;
+        unscaled = divisor.unscaledValue().longValue();
     }
 
     @Override
@@ -59,22 +102,66 @@ public final class DivisibleByKeywordValidator
     protected void validateDecimal(final ValidationReport report,
         final JsonNode instance)
     {
-        final BigDecimal instanceValue = instance.decimalValue();
-        final BigDecimal decimalValue = number.decimalValue();
+        if (isDivisible(instance))
+            return;
 
-        final BigDecimal remainder = instanceValue.remainder(decimalValue);
+        final ValidationMessage.Builder msg = newMsg()
+            .setMessage("number is not a multiple of divisibleBy")
+            .addInfo("value", instance).addInfo("divisor", number);
+        report.addMessage(msg.build());
+    }
+
+    private boolean isDivisible(final JsonNode instance)
+    {
+        if (isScaled) {
+            if (valueIsLong(instance))
+                return isDivisible(instance.longValue(), scale);
+            if (instance.isBigDecimal()) {
+                final BigDecimal value = instance.decimalValue();
+                if (value.scale() <= scale && value.precision() < 19)
+                    return isDivisible(value.unscaledValue().longValue(),
+                        scale - value.scale());
+            }
+        }
+
+        final BigDecimal remainder
+            = instance.decimalValue().remainder(decimalValue);
 
         /*
          * We cannot use equality! As far as BigDecimal goes,
          * "0" and "0.0" are NOT equal. But .compareTo() returns the correct
          * result.
          */
-        if (remainder.compareTo(BigDecimal.ZERO) == 0)
-            return;
+        return remainder.compareTo(BigDecimal.ZERO) == 0;
+    }
 
-        final ValidationMessage.Builder msg = newMsg()
-            .setMessage("number is not a multiple of divisibleBy")
-            .addInfo("value", instance).addInfo("divisor", number);
-        report.addMessage(msg.build());
+    /**
+     * Check divisibility of an unscaled value, given the number of decimal
+     * digits it needs to be shifted by to reach the scale of the divisor
+     *
+     * @param value the unscaled value
+     * @param shift the shift (never negative)
+     * @return true if divisible
+     */
+    private boolean isDivisible(final long value, final int shift)
+    {
+        if (shift >= POWERS_OF_TEN.length)
+            return isDivisibleSlow(value, shift);
+
+        final long power = POWERS_OF_TEN[shift];
+        final long max = Long.MAX_VALUE / power;
+
+        if (value > max || value < -max)
+            return isDivisibleSlow(value, shift);
+
+        return value * power % unscaled == 0L;
+    }
+
+    private boolean isDivisibleSlow(final long value, final int shift)
+    {
+        final BigDecimal scaled
+            = BigDecimal.valueOf(value).movePointRight(shift);
+        return scaled.remainder(BigDecimal.valueOf(unscaled))
+            .compareTo(BigDecimal.ZERO) == 0;
     }
 }
@@ -18,6 +18,8 @@
 package org.eel.kitchen.jsonschema.keyword;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.google.common.collect.ImmutableSet;
 import org.eel.kitchen.jsonschema.report.ValidationMessage;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
@@ -28,33 +30,118 @@ import java.util.Set;
 
 /**
  * Validator for the {@code enum} keyword
+ *
+ * <p>Enum values are partitioned at construction time: strings are looked up
+ * directly by their text value, {@code int} and {@code long} nodes by their
+ * primitive value, and only the remaining values (other numbers, booleans,
+ * null, containers) are looked up as {@link JsonNode}s. Each primitive set is
+ * sized from the number of values of its type, and is not created if there
+ * are none.</p>
+ *
+ * <p>On failure, the full enum is only reported if it has no more than
+ * {@link #MAX_REPORTED_VALUES} elements. Otherwise, only this many values are
+ * reported, along with the total number of values in an {@code enumSize}
+ * entry.</p>
  */
 public final class EnumKeywordValidator
     extends KeywordValidator
 {
-    private final JsonNode enumNode;
-    private final Set<JsonNode> enumValues;
+    /**
+     * Maximum number of enum values reported in failure messages
+     */
+    static final int MAX_REPORTED_VALUES = 10;
+
+    private final JsonNode reportedValues;
+    private final int enumSize;
+
+    private final Set<String> stringValues;
+    /**
+     * {@code null} if the enum has no {@code int} value
+     */
+    private final LongHashSet intValues;
+
+    /**
+     * {@code null} if the enum has no {@code long} value
+     */
+    private final LongHashSet longValues;
+    private final Set<JsonNode> otherValues;
 
     public EnumKeywordValidator(final JsonNode schema)
     {
         super("enum", NodeType.values());
-        enumNode = schema.get(keyword);
-        enumValues = ImmutableSet.copyOf(enumNode);
+        final JsonNode enumNode = schema.get(keyword);
+        enumSize = enumNode.size();
+
+        final ImmutableSet.Builder<String> strings = ImmutableSet.builder();
+        final ImmutableSet.Builder<JsonNode> others = ImmutableSet.builder();
+        int intCount = 0;
+        int longCount = 0;
+
+        for (final JsonNode value: enumNode)
+            if (value.isInt())
+                intCount++;
+            else if (value.isLong())
+                longCount++;
+
+        intValues = intCount == 0 ? null : new LongHashSet(intCount);
+        longValues = longCount == 0 ? null : new LongHashSet(longCount);
+
+        for (final JsonNode value: enumNode)
+            if (value.isTextual())
+                strings.add(value.textValue());
+            else if (value.isInt())
+                intValues.add(value.longValue());
+            else if (value.isLong())
+                longValues.add(value.longValue());
+            else
+                others.add(value);
+
+        stringValues = strings.build();
+        otherValues = others.build();
+
+        if (enumSize <= MAX_REPORTED_VALUES) {
+            reportedValues = enumNode;
+            return;
+        }
+
+        final ArrayNode node = JsonNodeFactory.instance.arrayNode();
+
+        for (int i = 0; i < MAX_REPORTED_VALUES; i++)
+            node.add(enumNode.get(i));
+
+        reportedValues = node;
     }
 
     @Override
     public void validate(final ValidationContext context,
         final ValidationReport report, final JsonNode instance)
     {
-        if (enumValues.contains(instance))
+        if (contains(instance))
             return;
 
         final ValidationMessage.Builder msg = newMsg()
-            .setMessage("value not found in enum").addInfo("enum", enumNode)
-            .addInfo("value", instance);
+            .setMessage("value not found in enum")
+            .addInfo("enum", reportedValues).addInfo("value", instance);
+
+        if (enumSize > MAX_REPORTED_VALUES)
+            msg.addInfo("enumSize", enumSize);
+
         report.addMessage(msg.build());
     }
 
+    private boolean contains(final JsonNode instance)
+    {
+        if (instance.isTextual())
+            return stringValues.contains(instance.textValue());
+        if (instance.isInt())
+            return intValues != null
+                && intValues.contains(instance.longValue());
+        if (instance.isLong())
+            return longValues != null
+                && longValues.contains(instance.longValue());
+        return otherValues.contains(instance);
+    }
+
     @Override
     public String toString()
     {
@@ -62,9 +149,9 @@ public final class EnumKeywordValidator
          * Enum values may be arbitrarily complex: we therefore choose to only
          * print the number of possible values instead of each possible value.
          *
-         * By virtue of syntax validation, we also know that enumValues will
+         * By virtue of syntax validation, we also know that the enum will
          * never be empty.
          */
-        return keyword + ": " + enumValues.size() + " possible value(s)";
+        return keyword + ": " + enumSize + " possible value(s)";
     }
 }
@@ -62,6 +62,16 @@ public final class ExtendsKeywordValidator
         schemas = builder.build();
     }
 
+    /**
+     * Return the parent schemas
+     *
+     * @return the parent schemas, in order, without duplicates
+     */
+    public Set<JsonNode> getSchemas()
+    {
+        return schemas;
+    }
+
     @Override
     public void validate(final ValidationContext context,
         final ValidationReport report, final JsonNode instance)
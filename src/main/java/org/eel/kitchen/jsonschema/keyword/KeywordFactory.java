@@ -31,6 +31,7 @@ import org.eel.kitchen.jsonschema.validator.ValidationContext;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -72,12 +73,27 @@ public final class KeywordFactory
      * @return the set of validators
      */
     public Set<KeywordValidator> getValidators(final JsonNode schema)
+    {
+        return getValidators(schema, Collections.<String>emptySet());
+    }
+
+    /**
+     * Return the set of validators for a particular schema, except for some
+     * keywords
+     *
+     * @param schema the schema as a {@link JsonNode}
+     * @param ignored keywords for which no validator should be built
+     * @return the set of validators
+     */
+    public Set<KeywordValidator> getValidators(final JsonNode schema,
+        final Set<String> ignored)
     {
         final Set<KeywordValidator> ret = new HashSet<KeywordValidator>();
 
         final Set<String> set = JacksonUtils.fieldNames(schema);
 
         set.retainAll(validators.keySet());
+        set.removeAll(ignored);
 
         for (final String keyword: set)
             ret.add(buildValidator(validators.get(keyword), schema));
@@ -29,6 +29,7 @@ import org.eel.kitchen.jsonschema.validator.ValidationContext;
 
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Base class for a schema keyword validator
@@ -80,6 +81,26 @@ public abstract class KeywordValidator
         Collections.addAll(instanceTypes, types);
     }
 
+    /**
+     * Return the keyword validated by this validator
+     *
+     * @return the keyword
+     */
+    public final String getKeyword()
+    {
+        return keyword;
+    }
+
+    /**
+     * Return the instance types validated by this validator
+     *
+     * @return an unmodifiable set of types
+     */
+    public final Set<NodeType> getInstanceTypes()
+    {
+        return Collections.unmodifiableSet(instanceTypes);
+    }
+
     /**
      * Main validation function
      *
@@ -94,7 +115,25 @@ public abstract class KeywordValidator
     public final void validateInstance(final ValidationContext context,
         final ValidationReport report, final JsonNode instance)
     {
-        if (instanceTypes.contains(NodeType.getNodeType(instance)))
+        validateInstance(context, report, instance,
+            NodeType.getNodeType(instance));
+    }
+
+    /**
+     * Main validation function, when the instance type is already known
+     *
+     * <p>This avoids computing the type of an instance once per keyword.</p>
+     *
+     * @param context the context
+     * @param report the validation report
+     * @param instance the instance to validate
+     * @param type the type of the instance
+     */
+    public final void validateInstance(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final NodeType type)
+    {
+        if (instanceTypes.contains(type))
             validate(context, report, instance);
     }
 
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.keyword;
+
+/**
+ * A minimal set of primitive {@code long}s
+ *
+ * <p>This is an open addressing hash set with linear probing. It only supports
+ * additions and lookups, which is all keyword validators need, and it does not
+ * box its elements.</p>
+ *
+ * <p>The set is sized once and for all at construction time: do not insert
+ * more elements than the expected size given to the constructor.</p>
+ *
+ * <p>This class is not thread safe. Instances which are not modified after
+ * construction can however be safely shared.</p>
+ */
+final class LongHashSet
+{
+    /**
+     * Golden ratio, used to spread values (Fibonacci hashing)
+     */
+    private static final long PHI = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Table of values; {@code 0} marks an empty slot
+     */
+    private final long[] table;
+
+    /**
+     * Mask to apply to a slot number when probing
+     */
+    private final int mask;
+
+    /**
+     * Shift to apply to a spread value to obtain a slot
+     */
+    private final int shift;
+
+    /**
+     * Since {@code 0} marks empty slots, its presence is tracked separately
+     */
+    private boolean hasZero = false;
+
+    private int size = 0;
+
+    /**
+     * Constructor
+     *
+     * @param expectedSize the maximum number of elements to be inserted
+     */
+    LongHashSet(final int expectedSize)
+    {
+        int capacity = 4;
+
+        // Keep the load factor at or below 0.5
+        while (capacity < expectedSize * 2)
+            capacity <<= 1;
+
+        table = new long[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Add a value to the set
+     *
+     * @param value the value
+     * @return true if the value was not already present
+     */
+    boolean add(final long value)
+    {
+        if (value == 0L) {
+            if (hasZero)
+                return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+
+        int slot = slot(value);
+        long current;
+
+        while ((current = table[slot]) != 0L) {
+            if (current == value)
+                return false;
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Test whether a value is present in the set
+     *
+     * @param value the value
+     * @return true if present
+     */
+    boolean contains(final long value)
+    {
+        if (value == 0L)
+            return hasZero;
+
+        int slot = slot(value);
+        long current;
+
+        while ((current = table[slot]) != 0L) {
+            if (current == value)
+                return true;
+            slot = (slot + 1) & mask;
+        }
+
+        return false;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    private int slot(final long value)
+    {
+        return (int) ((value * PHI) >>> shift);
+    }
+}
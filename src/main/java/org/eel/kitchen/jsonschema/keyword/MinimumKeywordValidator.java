@@ -21,8 +21,6 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.eel.kitchen.jsonschema.report.ValidationMessage;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
 
-import java.math.BigDecimal;
-
 /**
  * Validator for the {@code minimum} keyword
  *
@@ -73,10 +71,7 @@ public final class MinimumKeywordValidator
     protected void validateDecimal(final ValidationReport report,
         final JsonNode instance)
     {
-        final BigDecimal instanceValue = instance.decimalValue();
-        final BigDecimal decimalValue = number.decimalValue();
-
-        final int cmp = instanceValue.compareTo(decimalValue);
+        final int cmp = compareToKeywordValue(instance);
 
         if (cmp > 0)
             return;
@@ -19,10 +19,12 @@ package org.eel.kitchen.jsonschema.keyword;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
 import org.eel.kitchen.jsonschema.util.NodeType;
 import org.eel.kitchen.jsonschema.validator.ValidationContext;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  * Base class for numeric instances validators
@@ -45,20 +47,62 @@ import java.math.BigDecimal;
  *     <li>{@code long}: {@link JsonNode#longValue()};</li>
  *     <li>{@link BigDecimal}: {@link JsonNode#decimalValue()}.</li>
  * </ul>
+ *
+ * <p>The keyword value is also precomputed as a {@link BigDecimal} (see
+ * {@link #decimalValue}), along with other representations which {@link
+ * #compareToKeywordValue(JsonNode)} uses to compare most instances without
+ * resorting to {@link BigDecimal} at all.</p>
  */
 public abstract class NumericKeywordValidator
     extends KeywordValidator
 {
+    private static final BigDecimal LONG_MIN
+        = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX
+        = BigDecimal.valueOf(Long.MAX_VALUE);
+
     /**
      * The keyword value
      */
     protected final JsonNode number;
 
+    /**
+     * The keyword value as a {@link BigDecimal}
+     */
+    protected final BigDecimal decimalValue;
+
     /**
      * Does the keyword value fits into a {@code long}?
      */
     private final boolean isLong;
 
+    /**
+     * Does the integral part (floor) of the keyword value fit into a {@code
+     * long}?
+     */
+    private final boolean floorIsLong;
+
+    /**
+     * The integral part (floor) of the keyword value, if it fits into a
+     * {@code long}
+     */
+    private final long floor;
+
+    /**
+     * Is the keyword value mathematically an integer?
+     */
+    private final boolean integral;
+
+    /**
+     * Is the keyword value exactly representable as a {@code double}?
+     */
+    private final boolean doubleIsExact;
+
+    /**
+     * The keyword value as a {@code double}
+     */
+    private final double doubleValue;
+
     /**
      * Protected constructor
      *
@@ -72,6 +116,18 @@ public abstract class NumericKeywordValidator
         number = schema.get(keyword);
 
         isLong = valueIsLong(number);
+        decimalValue = number.decimalValue();
+
+        final BigDecimal floorValue
+            = decimalValue.setScale(0, RoundingMode.FLOOR);
+        floorIsLong = floorValue.compareTo(LONG_MIN) >= 0
+            && floorValue.compareTo(LONG_MAX) <= 0;
+        floor = floorValue.longValue();
+        integral = floorValue.compareTo(decimalValue) == 0;
+
+        doubleValue = decimalValue.doubleValue();
+        doubleIsExact = !Double.isInfinite(doubleValue)
+            && new BigDecimal(doubleValue).compareTo(decimalValue) == 0;
     }
 
     /**
@@ -116,6 +172,68 @@ public abstract class NumericKeywordValidator
             validateDecimal(report, instance);
     }
 
+    /**
+     * Compare a numeric instance to the keyword value
+     *
+     * <p>The result is always exactly the same as comparing the {@link
+     * BigDecimal} values of both numbers; however, the following cases are
+     * handled without creating a single {@link BigDecimal}:</p>
+     *
+     * <ul>
+     *     <li>the instance fits into a {@code long} and so does the integral
+     *     part of the keyword value;</li>
+     *     <li>the instance is a {@code double} and the keyword value can be
+     *     represented exactly as a {@code double}.</li>
+     * </ul>
+     *
+     * <p>In other cases, the instance's {@link BigDecimal} value is compared
+     * to {@link #decimalValue}.</p>
+     *
+     * <p>Note that a {@code double} instance is compared by its value, not by
+     * the JSON text it was read from: if that text was rounded by the parser,
+     * the instance may compare equal to the keyword value although its text
+     * does not (for instance, {@code 0.50000000000000001} against {@code
+     * 0.5}), and therefore fail {@code exclusiveMinimum}. The {@link
+     * BigDecimal} value of a {@code double} node is derived from the rounded
+     * value as well, so this is not specific to this fast path. Instances
+     * parsed with Jackson's {@code USE_BIG_DECIMAL_FOR_FLOATS} feature (as
+     * {@link JsonLoader} does) are decimal nodes, and are compared by their
+     * exact text value.</p>
+     *
+     * @param instance the instance
+     * @return a negative integer, zero, or a positive integer as the instance
+     * is lower than, equal to, or greater than the keyword value
+     */
+    protected final int compareToKeywordValue(final JsonNode instance)
+    {
+        if (floorIsLong && valueIsLong(instance)) {
+            final long value = instance.longValue();
+            if (value < floor)
+                return -1;
+            if (value > floor)
+                return 1;
+            /*
+             * Equal to the floor: if the keyword value is not an integer,
+             * it is strictly greater than its floor
+             */
+            return integral ? 0 : -1;
+        }
+
+        if (doubleIsExact && instance.isDouble()) {
+            /*
+             * The BigDecimal value of a double node is the canonical string
+             * representation of the double, which rounds back to it. Since
+             * the keyword value is itself a double, that representation is on
+             * the same side of it as the double: comparing doubles gives the
+             * same result as comparing these BigDecimal values.
+             */
+            final double value = instance.doubleValue();
+            return value < doubleValue ? -1 : value > doubleValue ? 1 : 0;
+        }
+
+        return instance.decimalValue().compareTo(decimalValue);
+    }
+
     /**
      * Test whether a numeric instance is a long
      *
@@ -127,10 +245,9 @@ public abstract class NumericKeywordValidator
      * @param node the node to test
      * @return true if both conditions are true
      */
-    private static boolean valueIsLong(final JsonNode node)
+    static boolean valueIsLong(final JsonNode node)
     {
-        return NodeType.getNodeType(node) == NodeType.INTEGER
-            && node.canConvertToLong();
+        return node.isIntegralNumber() && node.canConvertToLong();
     }
 
     @Override
@@ -22,6 +22,7 @@ import org.eel.kitchen.jsonschema.report.ValidationMessage;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
 import org.eel.kitchen.jsonschema.util.NodeType;
 import org.eel.kitchen.jsonschema.util.RhinoHelper;
+import org.eel.kitchen.jsonschema.validator.ResultMemo;
 import org.eel.kitchen.jsonschema.validator.ValidationContext;
 
 /**
@@ -30,6 +31,8 @@ import org.eel.kitchen.jsonschema.validator.ValidationContext;
  * <p>Regexes must conform to ECMA 262, so, again, this makes {@link
  * java.util.regex} unusable.</p>
  *
+ * <p>Matching goes through the context's {@link ResultMemo}, if enabled.</p>
+ *
  * @see RhinoHelper
  */
 public final class PatternKeywordValidator
@@ -47,7 +50,7 @@ public final class PatternKeywordValidator
     public void validate(final ValidationContext context,
         final ValidationReport report, final JsonNode instance)
     {
-        if (RhinoHelper.regMatch(regex, instance.textValue()))
+        if (context.regMatch(regex, instance.textValue()))
             return;
 
         final ValidationMessage.Builder msg = newMsg()
@@ -24,11 +24,19 @@ import org.eel.kitchen.jsonschema.util.NodeType;
 import org.eel.kitchen.jsonschema.validator.JsonValidator;
 import org.eel.kitchen.jsonschema.validator.ValidationContext;
 
+import java.util.Collection;
+
 /**
  * Validator for the {@code type} keyword
  *
  * <p>This keyword and its counterpart ({@code disallowed}) are two of the
  * most complex keywords.</p>
+ *
+ * <p>When schemas are discriminated (see {@link
+ * #candidateSchemas(JsonNode)}), only candidate schemas are tried first. If
+ * none of them validates the instance, all schemas are tried, so that the
+ * validation report is the same as it would have been without
+ * discrimination.</p>
  */
 public final class TypeKeywordValidator
     extends AbstractTypeKeywordValidator
@@ -78,6 +86,12 @@ public final class TypeKeywordValidator
     private void trySchemas(final ValidationContext context,
         final ValidationReport schemaReport, final JsonNode instance)
     {
+        final Collection<JsonNode> candidates = candidateSchemas(instance);
+
+        if (candidates.size() < schemas.size()
+            && anySchemaMatches(context, schemaReport, instance, candidates))
+            return;
+
         final ValidationReport report = schemaReport.copy();
 
         ValidationReport subReport;
@@ -94,4 +108,22 @@ public final class TypeKeywordValidator
 
         schemaReport.mergeWith(report);
     }
+
+    private static boolean anySchemaMatches(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final Collection<JsonNode> candidates)
+    {
+        ValidationReport subReport;
+        JsonValidator validator;
+
+        for (final JsonNode schema: candidates) {
+            subReport = report.copy();
+            validator = context.newValidator(schema);
+            validator.validate(context, subReport, instance);
+            if (subReport.isSuccess())
+                return true;
+        }
+
+        return false;
+    }
 }
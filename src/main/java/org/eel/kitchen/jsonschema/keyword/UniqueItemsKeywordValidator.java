@@ -23,15 +23,42 @@ import org.eel.kitchen.jsonschema.report.ValidationReport;
 import org.eel.kitchen.jsonschema.util.NodeType;
 import org.eel.kitchen.jsonschema.validator.ValidationContext;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
  * Validator for the {@code uniqueItems} keyword
+ *
+ * <p>The duplicate detection strategy is chosen according to the contents of
+ * the array instance:</p>
+ *
+ * <ul>
+ *     <li>if all elements are integers of the same node class (only
+ *     {@code int} or only {@code long}), their primitive values are used;</li>
+ *     <li>if all elements are strings, their text values are used;</li>
+ *     <li>otherwise, the hash code of each element is computed only once and
+ *     elements are only compared for equality if their hash codes are equal.
+ *     </li>
+ * </ul>
+ *
+ * <p>In the first two cases, a hash set is used unless the array is larger
+ * than {@link #LARGE_ARRAY}, in which case a sorted copy is scanned for
+ * adjacent equal values instead: this is slower, but uses a lot less memory.
+ * </p>
+ *
+ * <p>In all cases, two elements are considered equal if and only if
+ * {@link JsonNode#equals(Object)} says so.</p>
  */
 public final class UniqueItemsKeywordValidator
     extends KeywordValidator
 {
+    /**
+     * Size above which sort based duplicate detection is used for integers
+     * and strings
+     */
+    static final int LARGE_ARRAY = 1 << 21;
+
     private final boolean uniqueItems;
 
     public UniqueItemsKeywordValidator(final JsonNode schema)
@@ -47,15 +74,145 @@ public final class UniqueItemsKeywordValidator
         if (!uniqueItems)
             return;
 
-        final Set<JsonNode> set = new HashSet<JsonNode>();
+        if (!hasDuplicates(instance))
+            return;
+
+        final ValidationMessage.Builder msg = newMsg()
+            .setMessage("duplicate elements in array");
+        report.addMessage(msg.build());
+    }
+
+    /**
+     * Tell whether an array has duplicate elements
+     *
+     * @param array the array
+     * @return true if at least two elements are equal
+     */
+    static boolean hasDuplicates(final JsonNode array)
+    {
+        final int size = array.size();
+
+        if (size < 2)
+            return false;
+
+        boolean allInts = true, allLongs = true, allStrings = true;
+
+        for (final JsonNode element: array) {
+            allInts = allInts && element.isInt();
+            allLongs = allLongs && element.isLong();
+            allStrings = allStrings && element.isTextual();
+            if (!(allInts || allLongs || allStrings))
+                break;
+        }
+
+        if (allInts || allLongs)
+            return size > LARGE_ARRAY ? sortedLongsHaveDuplicates(array)
+                : longsHaveDuplicates(array);
+
+        if (allStrings)
+            return size > LARGE_ARRAY ? sortedStringsHaveDuplicates(array)
+                : stringsHaveDuplicates(array);
+
+        return nodesHaveDuplicates(array);
+    }
+
+    private static boolean longsHaveDuplicates(final JsonNode array)
+    {
+        final LongHashSet set = new LongHashSet(array.size());
+
+        for (final JsonNode element: array)
+            if (!set.add(element.longValue()))
+                return true;
+
+        return false;
+    }
+
+    private static boolean sortedLongsHaveDuplicates(final JsonNode array)
+    {
+        final int size = array.size();
+        final long[] values = new long[size];
 
-        for (final JsonNode element: instance)
-            if (!set.add(element)) {
-                final ValidationMessage.Builder msg = newMsg()
-                    .setMessage("duplicate elements in array");
-                report.addMessage(msg.build());
-                return;
+        for (int i = 0; i < size; i++)
+            values[i] = array.get(i).longValue();
+
+        Arrays.sort(values);
+
+        for (int i = 1; i < size; i++)
+            if (values[i] == values[i - 1])
+                return true;
+
+        return false;
+    }
+
+    private static boolean stringsHaveDuplicates(final JsonNode array)
+    {
+        final Set<String> set = new HashSet<String>(array.size() * 2);
+
+        for (final JsonNode element: array)
+            if (!set.add(element.textValue()))
+                return true;
+
+        return false;
+    }
+
+    private static boolean sortedStringsHaveDuplicates(final JsonNode array)
+    {
+        final int size = array.size();
+        final String[] values = new String[size];
+
+        for (int i = 0; i < size; i++)
+            values[i] = array.get(i).textValue();
+
+        Arrays.sort(values);
+
+        for (int i = 1; i < size; i++)
+            if (values[i].equals(values[i - 1]))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Generic duplicate detection
+     *
+     * <p>The hash code of each element is computed only once, and stored
+     * alongside the element index in an open addressing table. Elements are
+     * only compared for equality if their hash codes are equal.</p>
+     *
+     * @param array the array
+     * @return true if at least two elements are equal
+     */
+    private static boolean nodesHaveDuplicates(final JsonNode array)
+    {
+        final int size = array.size();
+
+        int capacity = 4;
+        while (capacity < size * 2)
+            capacity <<= 1;
+
+        final int mask = capacity - 1;
+        // Element indices, plus one; 0 marks an empty slot
+        final int[] indices = new int[capacity];
+        final int[] hashes = new int[capacity];
+
+        JsonNode element;
+        int hash, slot, index;
+
+        for (int i = 0; i < size; i++) {
+            element = array.get(i);
+            hash = element.hashCode();
+            slot = (hash ^ hash >>> 16) * 0x9e3779b9 & mask;
+            while ((index = indices[slot]) != 0) {
+                if (hashes[slot] == hash
+                    && element.equals(array.get(index - 1)))
+                    return true;
+                slot = slot + 1 & mask;
             }
+            indices[slot] = i + 1;
+            hashes[slot] = hash;
+        }
+
+        return false;
     }
 
     @Override
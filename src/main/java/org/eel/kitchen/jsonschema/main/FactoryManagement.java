@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.uri.URIManager;
+import org.eel.kitchen.jsonschema.validator.JsonValidatorCache;
+import org.eel.kitchen.jsonschema.validator.ResultMemo;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MXBean of a factory
+ *
+ * <p>Validation counts and times are collected by a {@link Counter}, which
+ * only asks for validation events: it is combined with the listener of the
+ * factory, if any.</p>
+ *
+ * @see JsonSchemaFactory.Builder#enableManagement(String)
+ */
+final class FactoryManagement
+    implements JsonSchemaFactoryMXBean
+{
+    private static final String DOMAIN = "org.eel.kitchen.jsonschema";
+
+    private final JsonSchemaFactory factory;
+    private final SchemaRegistry registry;
+    private final JsonValidatorCache cache;
+    private final URIManager uriManager;
+    private final ResultMemo memo;
+    private final Counter counter;
+
+    /**
+     * The name this MXBean is registered under, {@code null} if it is not
+     */
+    private ObjectName objectName = null;
+
+    FactoryManagement(final JsonSchemaFactory factory,
+        final SchemaRegistry registry, final JsonValidatorCache cache,
+        final URIManager uriManager, final ResultMemo memo,
+        final Counter counter)
+    {
+        this.factory = factory;
+        this.registry = registry;
+        this.cache = cache;
+        this.uriManager = uriManager;
+        this.memo = memo;
+        this.counter = counter;
+    }
+
+    /**
+     * Return the object name of the MXBean of a factory
+     *
+     * @param name the name of the factory
+     * @return the object name
+     */
+    static ObjectName objectName(final String name)
+    {
+        try {
+            return new ObjectName(DOMAIN + ":type=JsonSchemaFactory,name="
+                + ObjectName.quote(name));
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("invalid factory name \""
+                + name + '"', e);
+        }
+    }
+
+    /**
+     * Register this MXBean on the platform MBean server
+     *
+     * @param name the name of the factory
+     * @throws IllegalStateException an MBean is already registered under this
+     * name, or registration failed
+     */
+    synchronized void register(final String name)
+    {
+        final ObjectName on = objectName(name);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            server.registerMBean(this, on);
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register MBean " + on, e);
+        }
+
+        objectName = on;
+    }
+
+    /**
+     * Unregister this MXBean from the platform MBean server, if registered
+     */
+    synchronized void unregister()
+    {
+        if (objectName == null)
+            return;
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException ignored) {
+            /*
+             * Unregistered by someone else: nothing to do
+             */
+        }
+
+        objectName = null;
+    }
+
+    @Override
+    public long getValidatorCacheSize()
+    {
+        return cache.size();
+    }
+
+    @Override
+    public long getValidatorCacheHitCount()
+    {
+        return cache.stats().hitCount();
+    }
+
+    @Override
+    public long getValidatorCacheMissCount()
+    {
+        return cache.stats().missCount();
+    }
+
+    @Override
+    public long getValidatorCacheLoadCount()
+    {
+        return cache.stats().loadCount();
+    }
+
+    @Override
+    public long getValidatorCacheEvictionCount()
+    {
+        return cache.stats().evictionCount();
+    }
+
+    @Override
+    public long getValidatorCacheTotalLoadMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(cache.stats().totalLoadTime());
+    }
+
+    @Override
+    public long getRegistrySize()
+    {
+        return registry.size();
+    }
+
+    @Override
+    public long getRegistryHitCount()
+    {
+        return registry.stats().hitCount();
+    }
+
+    @Override
+    public long getRegistryMissCount()
+    {
+        return registry.stats().missCount();
+    }
+
+    @Override
+    public long getRegistryLoadCount()
+    {
+        return registry.stats().loadCount();
+    }
+
+    @Override
+    public long getRegistryEvictionCount()
+    {
+        return registry.stats().evictionCount();
+    }
+
+    @Override
+    public List<String> getRegistryURIs()
+    {
+        return sortedStrings(registry.getContainers().keySet());
+    }
+
+    @Override
+    public List<String> getURISchemes()
+    {
+        return sortedStrings(uriManager.getSchemes());
+    }
+
+    @Override
+    public Map<String, String> getURIRedirections()
+    {
+        final Map<String, String> ret = Maps.newTreeMap();
+
+        for (final Map.Entry<URI, URI> entry:
+            uriManager.getRedirections().entrySet())
+            ret.put(entry.getKey().toString(), entry.getValue().toString());
+
+        return ret;
+    }
+
+    @Override
+    public long getResultMemoSize()
+    {
+        return memo.size();
+    }
+
+    @Override
+    public long getResultMemoHitCount()
+    {
+        return memo.stats().hitCount();
+    }
+
+    @Override
+    public long getResultMemoMissCount()
+    {
+        return memo.stats().missCount();
+    }
+
+    @Override
+    public long getValidationCount()
+    {
+        return counter.count.get();
+    }
+
+    @Override
+    public long getValidationFailureCount()
+    {
+        return counter.failures.get();
+    }
+
+    @Override
+    public double getMeanValidationMicros()
+    {
+        final long count = counter.count.get();
+
+        return count == 0L ? 0.0
+            : counter.totalNanos.get() / 1000.0 / count;
+    }
+
+    @Override
+    public long getMaxValidationMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(counter.maxNanos.get());
+    }
+
+    @Override
+    public void clearValidatorCache()
+    {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void clearResultMemo()
+    {
+        memo.invalidateAll();
+    }
+
+    @Override
+    public void resetValidationStats()
+    {
+        counter.count.set(0L);
+        counter.failures.set(0L);
+        counter.totalNanos.set(0L);
+        counter.maxNanos.set(0L);
+    }
+
+    @Override
+    public String warmUp(final String uri)
+    {
+        final SchemaContainer container;
+
+        try {
+            container = factory.getSchema(URI.create(uri));
+        } catch (JsonSchemaException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+
+        return factory.warmUp(ImmutableList.of(container)).toString();
+    }
+
+    private static List<String> sortedStrings(final Iterable<?> objects)
+    {
+        final List<String> ret = Lists.newArrayList();
+
+        for (final Object object: objects)
+            ret.add(object.toString());
+
+        Collections.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Listener counting validations
+     *
+     * <p>It must be installed on the factory before the factory is built.</p>
+     */
+    static final class Counter
+        extends ValidationListener
+    {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        @Override
+        public Granularity getGranularity()
+        {
+            return Granularity.VALIDATIONS;
+        }
+
+        @Override
+        public void exitValidation(final JsonRef locator,
+            final JsonNode instance, final long nanos, final boolean success)
+        {
+            count.incrementAndGet();
+            if (!success)
+                failures.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+
+            long max;
+
+            do {
+                max = maxNanos.get();
+            } while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+        }
+    }
+}
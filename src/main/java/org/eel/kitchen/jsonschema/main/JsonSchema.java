@@ -18,13 +18,19 @@
 package org.eel.kitchen.jsonschema.main;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
 import org.eel.kitchen.jsonschema.ref.SchemaNode;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
 import org.eel.kitchen.jsonschema.validator.JsonValidator;
 import org.eel.kitchen.jsonschema.validator.JsonValidatorCache;
+import org.eel.kitchen.jsonschema.validator.ResultMemo;
 import org.eel.kitchen.jsonschema.validator.ValidationContext;
 
 import java.util.EnumSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The main validation class
@@ -34,19 +40,91 @@ import java.util.EnumSet;
  *
  * <p>In order to build an instance, you need to go through a
  * {@link JsonSchemaFactory}.</p>
+ *
+ * <p>If promotion is enabled (see {@link
+ * JsonSchemaFactory.Builder#enablePromotion(long, Executor)}), a schema which
+ * has been used for validation a given number of times is promoted: a linked
+ * validator tree is built for it in the background, and subsequent validations
+ * use this tree instead of going through the validator cache for each
+ * subschema. Validation reports are the same before and after promotion.</p>
+ *
+ * <p>If {@link ValidationFeature#COMPILED_PROGRAMS} is enabled, the schema is
+ * compiled into a program instead, either on promotion or, if promotion is not
+ * enabled, on first use. If {@link ValidationFeature#COMPACT_PROGRAMS} is
+ * enabled, the program is compact, and this instance no longer refers to the
+ * schema once the program is built.</p>
+ *
+ * <p>If {@link ValidationFeature#GENERATED_CLASSES} is enabled, a JVM class is
+ * generated for the schema and each of its subschemas instead, in the same
+ * conditions.</p>
  */
 public final class JsonSchema
 {
     private final JsonValidatorCache cache;
     private final EnumSet<ValidationFeature> features;
-    private final SchemaNode schemaNode;
+    private final ResultMemo memo;
+    private final ValidationListener listener;
+
+    /**
+     * Locator of the schema container, for the listener
+     */
+    private final JsonRef locator;
+
+    /**
+     * The schema node, {@code null} once a compact program is built
+     */
+    private volatile SchemaNode schemaNode;
+
+    /**
+     * Whether this schema is compiled
+     */
+    private final boolean compiled;
+
+    /**
+     * Whether programs are compact
+     */
+    private final boolean compact;
+
+    /**
+     * Whether classes are generated (this takes precedence over programs)
+     */
+    private final boolean generated;
+
+    /**
+     * Number of validations before promotion, 0 if promotion is disabled
+     */
+    private final long promotionThreshold;
+
+    /**
+     * Executor running the promotion, {@code null} if promotion is disabled
+     */
+    private final Executor promotionExecutor;
+
+    private final AtomicLong invocations = new AtomicLong();
+
+    /**
+     * The linked validator, program or generated validator, once promoted
+     */
+    private volatile JsonValidator promoted = null;
 
     JsonSchema(final JsonValidatorCache cache,
-        final EnumSet<ValidationFeature> features, final SchemaNode schemaNode)
+        final EnumSet<ValidationFeature> features, final ResultMemo memo,
+        final SchemaNode schemaNode, final long promotionThreshold,
+        final Executor promotionExecutor)
     {
         this.cache = cache;
         this.features = EnumSet.copyOf(features);
+        this.memo = memo;
         this.schemaNode = schemaNode;
+        listener = cache.getListener();
+        locator = schemaNode.getContainer().getLocator();
+        this.promotionThreshold = promotionThreshold;
+        this.promotionExecutor = promotionExecutor;
+        generated = features.contains(ValidationFeature.GENERATED_CLASSES);
+        compact = !generated
+            && features.contains(ValidationFeature.COMPACT_PROGRAMS);
+        compiled = compact
+            || features.contains(ValidationFeature.COMPILED_PROGRAMS);
     }
 
     /**
@@ -58,14 +136,109 @@ public final class JsonSchema
     public ValidationReport validate(final JsonNode instance)
     {
         final ValidationContext context
-            = new ValidationContext(cache, features);
+            = new ValidationContext(cache, features, memo);
 
         final ValidationReport report = new ValidationReport();
 
-        final JsonValidator validator = cache.getValidator(schemaNode);
+        if (listener == ValidationListener.noop()) {
+            getValidator().validate(context, report, instance);
+            return report;
+        }
+
+        listener.enterValidation(locator, instance);
 
-        validator.validate(context, report, instance);
+        final long start = System.nanoTime();
+        boolean success = false;
 
+        try {
+            getValidator().validate(context, report, instance);
+            success = report.isSuccess();
+        } finally {
+            listener.exitValidation(locator, instance,
+                System.nanoTime() - start, success);
+        }
         return report;
     }
+
+    /**
+     * Tell whether this schema has been promoted
+     *
+     * @return true if validation uses a linked validator tree, a program or
+     * generated classes
+     */
+    public boolean isPromoted()
+    {
+        return promoted != null;
+    }
+
+    private JsonValidator getValidator()
+    {
+        final JsonValidator ret = promoted;
+
+        if (ret != null)
+            return ret;
+
+        final SchemaNode node = schemaNode;
+
+        /*
+         * The schema node is only dropped after the promoted validator is set
+         */
+        if (node == null)
+            return promoted;
+
+        if (promotionExecutor == null) {
+            if (!compiled && !generated)
+                return cache.getValidator(node);
+            final JsonValidator program = promote(node);
+            setPromoted(program);
+            return program;
+        }
+
+        if (invocations.incrementAndGet() == promotionThreshold)
+            schedulePromotion(node);
+
+        return cache.getValidator(node);
+    }
+
+    /**
+     * Submit the promotion of this schema to the promotion executor
+     *
+     * <p>If the executor rejects the task (it is saturated or shut down),
+     * this schema is simply never promoted, and validations keep going
+     * through the validator cache.</p>
+     *
+     * @param node the schema node
+     */
+    private void schedulePromotion(final SchemaNode node)
+    {
+        try {
+            promotionExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    setPromoted(promote(node));
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // Stay interpreted
+        }
+    }
+
+    private JsonValidator promote(final SchemaNode node)
+    {
+        if (generated)
+            return cache.generate(node);
+        if (!compiled)
+            return cache.link(node);
+
+        return compact ? cache.compileCompact(node) : cache.compile(node);
+    }
+
+    private void setPromoted(final JsonValidator validator)
+    {
+        promoted = validator;
+        if (compact)
+            schemaNode = null;
+    }
 }
@@ -19,22 +19,45 @@ package org.eel.kitchen.jsonschema.main;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.eel.kitchen.jsonschema.bundle.Keyword;
 import org.eel.kitchen.jsonschema.bundle.KeywordBundle;
 import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
 import org.eel.kitchen.jsonschema.format.FormatBundle;
 import org.eel.kitchen.jsonschema.format.FormatSpecifier;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
 import org.eel.kitchen.jsonschema.ref.JsonPointer;
 import org.eel.kitchen.jsonschema.ref.JsonRef;
 import org.eel.kitchen.jsonschema.ref.SchemaContainer;
 import org.eel.kitchen.jsonschema.ref.SchemaNode;
 import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.report.ValidationMessage;
 import org.eel.kitchen.jsonschema.uri.URIDownloader;
 import org.eel.kitchen.jsonschema.uri.URIManager;
 import org.eel.kitchen.jsonschema.validator.JsonValidatorCache;
+import org.eel.kitchen.jsonschema.validator.ResultMemo;
+import org.eel.kitchen.jsonschema.validator.SchemaInterner;
+import org.eel.kitchen.jsonschema.validator.SchemaOptimizer;
+import org.eel.kitchen.jsonschema.validator.SchemaPlan;
 
 import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Factory to build JSON Schema validating instances
@@ -63,6 +86,36 @@ public final class JsonSchemaFactory
 
     private final EnumSet<ValidationFeature> features;
 
+    /**
+     * Format and regex result memo (disabled unless configured)
+     */
+    private final ResultMemo memo;
+
+    /**
+     * Number of validations before a schema is promoted (0 if disabled)
+     */
+    private final long promotionThreshold;
+
+    /**
+     * Executor for promotions, {@code null} if disabled
+     */
+    private final Executor promotionExecutor;
+
+    /**
+     * The keyword bundle, for snapshots
+     */
+    private final KeywordBundle keywordBundle;
+
+    /**
+     * Executor for warm-ups
+     */
+    private final Executor warmUpExecutor;
+
+    /**
+     * The MXBean of this factory, {@code null} if management is not enabled
+     */
+    private final FactoryManagement management;
+
     /**
      * Constructor, private by design
      *
@@ -71,9 +124,27 @@ public final class JsonSchemaFactory
      */
     private JsonSchemaFactory(final Builder builder)
     {
-        registry = new SchemaRegistry(builder.uriManager, builder.namespace);
-        cache = new JsonValidatorCache(builder.keywordBundle, registry);
+        final FactoryManagement.Counter counter
+            = builder.managementName == null ? null
+            : new FactoryManagement.Counter();
+        final ValidationListener listener = counter == null ? builder.listener
+            : ValidationListener.combine(builder.listener, counter);
+
+        registry = new SchemaRegistry(builder.uriManager, builder.namespace,
+            listener);
+        cache = new JsonValidatorCache(builder.keywordBundle, registry,
+            builder.validatorCacheSize);
         features = EnumSet.copyOf(builder.features);
+        memo = builder.memoBuilder == null ? ResultMemo.disabled()
+            : builder.memoBuilder.build();
+        promotionThreshold = builder.promotionThreshold;
+        promotionExecutor = builder.promotionExecutor;
+        keywordBundle = builder.keywordBundle;
+        warmUpExecutor = builder.warmUpExecutor;
+        if (builder.snapshot != null)
+            builder.snapshot.install(registry, cache, keywordBundle);
+        management = counter == null ? null : new FactoryManagement(this,
+            registry, cache, builder.uriManager, memo, counter);
     }
 
     /**
@@ -164,7 +235,229 @@ public final class JsonSchemaFactory
         final JsonNode schema)
     {
         final SchemaNode schemaNode = new SchemaNode(container, schema);
-        return new JsonSchema(cache, features, schemaNode);
+        return new JsonSchema(cache, features, memo, schemaNode,
+            promotionThreshold, promotionExecutor);
+    }
+
+    /**
+     * Create a group of schemas from a list of containers
+     *
+     * @see JsonSchemaGroup
+     *
+     * @param containers the schema containers
+     * @return a {@link JsonSchemaGroup}
+     * @throws NullPointerException list is null
+     */
+    public JsonSchemaGroup createSchemaGroup(final List<SchemaContainer>
+        containers)
+    {
+        Preconditions.checkNotNull(containers, "containers are null");
+
+        final ImmutableList.Builder<SchemaNode> builder
+            = ImmutableList.builder();
+
+        for (final SchemaContainer container: containers)
+            builder.add(new SchemaNode(container, container.getSchema()));
+
+        return new JsonSchemaGroup(cache, features, memo, builder.build());
+    }
+
+    /**
+     * Create a router over a set of schemas
+     *
+     * @see SchemaRouter
+     *
+     * @param containers the schema containers
+     * @return a {@link SchemaRouter}
+     * @throws NullPointerException collection is null
+     */
+    public SchemaRouter createRouter(final Collection<SchemaContainer>
+        containers)
+    {
+        Preconditions.checkNotNull(containers, "containers are null");
+        return new SchemaRouter(this, containers);
+    }
+
+    /**
+     * Explain how instances are validated against a schema container
+     *
+     * <p>Like {@link #warmUp(Collection)}, this builds the validators of all
+     * subschemas reachable from the container, if they are not built yet.</p>
+     *
+     * @see SchemaPlan
+     *
+     * @param container the schema container
+     * @return the plan
+     * @throws NullPointerException container is null
+     */
+    public SchemaPlan explain(final SchemaContainer container)
+    {
+        Preconditions.checkNotNull(container, "container is null");
+        return cache.explain(new SchemaNode(container, container.getSchema()));
+    }
+
+    /**
+     * Build the validators of all schemas reachable from a set of containers
+     *
+     * <p>This resolves JSON References (fetching schemas if needed), checks
+     * the syntax of, and instantiates keyword validators for all subschemas
+     * an instance may be validated against, so that the first validations
+     * against these containers do not have to. Containers are warmed up as
+     * tasks of the warm-up executor (see {@link
+     * Builder#withWarmUpExecutor(Executor)}); this method returns once all of
+     * them are done.</p>
+     *
+     * <p>Warmed up validators stay in the validator cache until they are
+     * evicted: if you warm up a lot of schemas, raise the cache size (see
+     * {@link Builder#setValidatorCacheSize(long)}).</p>
+     *
+     * @see JsonValidatorCache#warmUp(SchemaNode, Set, List)
+     *
+     * @param containers the schema containers
+     * @return a summary of the warm-up
+     * @throws NullPointerException list is null, or contains a null element
+     */
+    public WarmUpSummary warmUp(final Collection<SchemaContainer> containers)
+    {
+        final List<SchemaContainer> list = ImmutableList.copyOf(containers);
+        final Set<SchemaNode> visited = Sets.newSetFromMap(
+            Maps.<SchemaNode, Boolean>newConcurrentMap());
+        final List<ValidationMessage> failures = Collections.synchronizedList(
+            Lists.<ValidationMessage>newArrayList());
+        final List<Throwable> errors = Collections.synchronizedList(
+            Lists.<Throwable>newArrayList());
+        final AtomicInteger schemas = new AtomicInteger();
+        final AtomicLong work = new AtomicLong();
+        final CountDownLatch latch = new CountDownLatch(list.size());
+
+        final long misses = cache.stats().missCount();
+        final long start = System.nanoTime();
+
+        for (final SchemaContainer container: list) {
+            final Runnable task = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    final long taskStart = System.nanoTime();
+                    final SchemaNode schemaNode
+                        = new SchemaNode(container, container.getSchema());
+                    try {
+                        schemas.addAndGet(cache.warmUp(schemaNode, visited,
+                            failures));
+                    } catch (RuntimeException e) {
+                        errors.add(e);
+                    } finally {
+                        work.addAndGet(System.nanoTime() - taskStart);
+                        latch.countDown();
+                    }
+                }
+            };
+            try {
+                warmUpExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                errors.add(e);
+                latch.countDown();
+            }
+        }
+
+        Uninterruptibles.awaitUninterruptibly(latch);
+
+        return new WarmUpSummary(list.size(), schemas.get(),
+            cache.stats().missCount() - misses, failures, errors,
+            System.nanoTime() - start, work.get());
+    }
+
+    /**
+     * Get hit/miss statistics of this factory's format and regex result memo
+     *
+     * @see Builder#withResultMemo(ResultMemo.Builder)
+     *
+     * @return the statistics (all zeroes if the memo is not enabled)
+     */
+    public CacheStats getResultMemoStats()
+    {
+        return memo.stats();
+    }
+
+    /**
+     * Get the schema optimizer of this factory
+     *
+     * <p>Use it to know how many keywords and subschemas were pruned.</p>
+     *
+     * @see SchemaOptimizer
+     *
+     * @return the optimizer
+     */
+    public SchemaOptimizer getSchemaOptimizer()
+    {
+        return cache.getOptimizer();
+    }
+
+    /**
+     * Get hit/miss statistics of this factory's validator cache
+     *
+     * @return the statistics
+     */
+    public CacheStats getValidatorCacheStats()
+    {
+        return cache.stats();
+    }
+
+    /**
+     * Get the validation listener of this factory
+     *
+     * @see Builder#withValidationListener(ValidationListener)
+     *
+     * @return the listener (never null, but possibly a no-op)
+     */
+    public ValidationListener getValidationListener()
+    {
+        return cache.getListener();
+    }
+
+    /**
+     * Get the schema interner of this factory
+     *
+     * <p>Use it to know how many subschemas share their validator with an
+     * equal subschema.</p>
+     *
+     * @see SchemaInterner
+     *
+     * @return the interner
+     */
+    public SchemaInterner getSchemaInterner()
+    {
+        return cache.getInterner();
+    }
+
+    /**
+     * Take a snapshot of the schemas known to this factory
+     *
+     * <p>Only schemas currently held by the schema registry are part of the
+     * snapshot: the registry only keeps the 100 most recently used ones.</p>
+     *
+     * @see SchemaSnapshot
+     *
+     * @return the snapshot
+     */
+    public SchemaSnapshot takeSnapshot()
+    {
+        return SchemaSnapshot.take(registry, keywordBundle);
+    }
+
+    /**
+     * Unregister the MXBean of this factory
+     *
+     * <p>Do this once you are done with a factory built with {@link
+     * Builder#enableManagement(String)}, since the platform MBean server
+     * keeps it reachable otherwise. This does nothing if management is not
+     * enabled, or if the MXBean is already unregistered.</p>
+     */
+    public void unregisterMBean()
+    {
+        if (management != null)
+            management.unregister();
     }
 
     /**
@@ -192,6 +485,31 @@ public final class JsonSchemaFactory
 
         private FormatBundle formatBundle = FormatBundle.defaultBundle();
 
+        /**
+         * Builder for the result memo, {@code null} if not enabled
+         */
+        private ResultMemo.Builder memoBuilder = null;
+
+        private long promotionThreshold = 0L;
+
+        private Executor promotionExecutor = null;
+
+        /**
+         * Snapshot to start from, {@code null} if none
+         */
+        private SchemaSnapshot snapshot = null;
+
+        private long validatorCacheSize = JsonValidatorCache.DEFAULT_SIZE;
+
+        private Executor warmUpExecutor = MoreExecutors.sameThreadExecutor();
+
+        private ValidationListener listener = ValidationListener.noop();
+
+        /**
+         * Name of the MXBean of the factory, {@code null} if disabled
+         */
+        private String managementName = null;
+
         /**
          * Register a {@link URIDownloader} for a given scheme
          *
@@ -329,14 +647,167 @@ public final class JsonSchemaFactory
             return this;
         }
 
+        /**
+         * Enable memoization of format and regex results
+         *
+         * <p>Each factory built from this builder will get its own memo,
+         * configured after the given memo builder.</p>
+         *
+         * @see ResultMemo
+         *
+         * @param memoBuilder the memo builder
+         * @return the builder
+         * @throws NullPointerException memo builder is null
+         */
+        public Builder withResultMemo(final ResultMemo.Builder memoBuilder)
+        {
+            Preconditions.checkNotNull(memoBuilder, "memo builder is null");
+            this.memoBuilder = memoBuilder;
+            return this;
+        }
+
+        /**
+         * Enable promotion of frequently used schemas
+         *
+         * <p>Once a {@link JsonSchema} has been used to validate {@code
+         * threshold} instances, a linked validator tree is built for it using
+         * the given executor. Until the tree is ready, validation proceeds as
+         * usual.</p>
+         *
+         * @see JsonSchema#isPromoted()
+         *
+         * @param threshold the number of validations before promotion
+         * @param executor the executor to build linked validators with
+         * @return the builder
+         * @throws IllegalArgumentException threshold is not strictly positive
+         * @throws NullPointerException executor is null
+         */
+        public Builder enablePromotion(final long threshold,
+            final Executor executor)
+        {
+            Preconditions.checkArgument(threshold > 0L,
+                "promotion threshold must be strictly positive");
+            Preconditions.checkNotNull(executor, "executor is null");
+            promotionThreshold = threshold;
+            promotionExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Start from a snapshot
+         *
+         * <p>Schemas of the snapshot will not be fetched again, and, if the
+         * keyword bundle is the same, their syntax will not be checked
+         * again.</p>
+         *
+         * @see SchemaSnapshot
+         *
+         * @param snapshot the snapshot
+         * @return the builder
+         * @throws NullPointerException snapshot is null
+         */
+        public Builder withSnapshot(final SchemaSnapshot snapshot)
+        {
+            Preconditions.checkNotNull(snapshot, "snapshot is null");
+            this.snapshot = snapshot;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of validators kept by the validator cache
+         *
+         * <p>The default is {@link JsonValidatorCache#DEFAULT_SIZE}.</p>
+         *
+         * @param size the size
+         * @return the builder
+         * @throws IllegalArgumentException size is not strictly positive
+         */
+        public Builder setValidatorCacheSize(final long size)
+        {
+            Preconditions.checkArgument(size > 0L,
+                "cache size must be strictly positive");
+            validatorCacheSize = size;
+            return this;
+        }
+
+        /**
+         * Set the executor to warm up schema containers with
+         *
+         * <p>By default, containers are warmed up one after the other, in the
+         * thread calling {@link JsonSchemaFactory#warmUp(Collection)}.</p>
+         *
+         * @param executor the executor
+         * @return the builder
+         * @throws NullPointerException executor is null
+         */
+        public Builder withWarmUpExecutor(final Executor executor)
+        {
+            Preconditions.checkNotNull(executor, "executor is null");
+            warmUpExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Set the listener to validation events
+         *
+         * <p>By default, no events are sent. See {@link
+         * org.eel.kitchen.jsonschema.metrics.AggregatingListener} for a
+         * listener collecting statistics by schema and keyword.</p>
+         *
+         * @see ValidationListener
+         *
+         * @param listener the listener
+         * @return the builder
+         * @throws NullPointerException listener is null
+         */
+        public Builder withValidationListener(final ValidationListener listener)
+        {
+            Preconditions.checkNotNull(listener, "listener is null");
+            this.listener = listener;
+            uriManager.setValidationListener(listener);
+            return this;
+        }
+
+        /**
+         * Register an MXBean for the factory on the platform MBean server
+         *
+         * <p>The MXBean exposes statistics of the validator cache, of the
+         * schema registry and of the result memo, the state of the URI
+         * manager, and validation counts and times; it also allows to clear
+         * caches and to warm up schemas. See {@link JsonSchemaFactoryMXBean}.
+         * Validation counts and times are collected by a listener of
+         * validations only, which is added to the listener of the factory, if
+         * any.</p>
+         *
+         * <p>The MXBean is registered when the factory is built, and must be
+         * unregistered with {@link JsonSchemaFactory#unregisterMBean()}.</p>
+         *
+         * @param name the name of the factory, unique in the JVM
+         * @return the builder
+         * @throws NullPointerException name is null
+         */
+        public Builder enableManagement(final String name)
+        {
+            Preconditions.checkNotNull(name, "name is null");
+            managementName = name;
+            return this;
+        }
+
         /**
          * Build the factory
          *
          * @return the factory
+         * @throws IllegalStateException management is enabled, and an MBean
+         * is already registered under this name
          */
         public JsonSchemaFactory build()
         {
-            return new JsonSchemaFactory(this);
+            final JsonSchemaFactory ret = new JsonSchemaFactory(this);
+
+            if (ret.management != null)
+                ret.management.register(managementName);
+
+            return ret;
         }
     }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of a {@link JsonSchemaFactory}
+ *
+ * <p>A factory built with {@link
+ * JsonSchemaFactory.Builder#enableManagement(String)} registers an MXBean with
+ * this interface on the platform MBean server, under the object name {@code
+ * org.eel.kitchen.jsonschema:type=JsonSchemaFactory,name=<name>} (the name is
+ * quoted). Attributes are read live; counters are cumulative since the factory
+ * was built, unless reset.</p>
+ *
+ * <p>There is no regex pool in this library: regexes are run by Rhino on
+ * each match. The closest thing is the format and regex result memo (see
+ * {@link JsonSchemaFactory.Builder#withResultMemo}), whose size and counters
+ * are exposed instead.</p>
+ */
+public interface JsonSchemaFactoryMXBean
+{
+    /**
+     * Return the number of validators in the validator cache
+     *
+     * @return the number of validators
+     */
+    long getValidatorCacheSize();
+
+    /**
+     * Return the number of validator cache hits
+     *
+     * @return the count
+     */
+    long getValidatorCacheHitCount();
+
+    /**
+     * Return the number of validator cache misses
+     *
+     * @return the count
+     */
+    long getValidatorCacheMissCount();
+
+    /**
+     * Return the number of validators built
+     *
+     * @return the count
+     */
+    long getValidatorCacheLoadCount();
+
+    /**
+     * Return the number of validators evicted from the validator cache
+     *
+     * @return the count
+     */
+    long getValidatorCacheEvictionCount();
+
+    /**
+     * Return the total time spent building validators
+     *
+     * @return the time, in milliseconds
+     */
+    long getValidatorCacheTotalLoadMillis();
+
+    /**
+     * Return the number of schema containers in the schema registry
+     *
+     * @return the number of containers
+     */
+    long getRegistrySize();
+
+    /**
+     * Return the number of schema registry hits
+     *
+     * @return the count
+     */
+    long getRegistryHitCount();
+
+    /**
+     * Return the number of schema registry misses
+     *
+     * @return the count
+     */
+    long getRegistryMissCount();
+
+    /**
+     * Return the number of schema containers loaded by the registry
+     *
+     * @return the count
+     */
+    long getRegistryLoadCount();
+
+    /**
+     * Return the number of schema containers evicted from the registry
+     *
+     * @return the count
+     */
+    long getRegistryEvictionCount();
+
+    /**
+     * Return the URIs of schema containers in the schema registry
+     *
+     * @return the URIs, sorted
+     */
+    List<String> getRegistryURIs();
+
+    /**
+     * Return the URI schemes the URI manager can fetch content from
+     *
+     * @return the schemes, sorted
+     */
+    List<String> getURISchemes();
+
+    /**
+     * Return the URI redirections of the URI manager
+     *
+     * @return the target URIs, by source URI
+     */
+    Map<String, String> getURIRedirections();
+
+    /**
+     * Return the number of results in the format and regex result memo
+     *
+     * @return the number of results (0 if the memo is not enabled)
+     */
+    long getResultMemoSize();
+
+    /**
+     * Return the number of format and regex results found in the memo
+     *
+     * @return the count
+     */
+    long getResultMemoHitCount();
+
+    /**
+     * Return the number of format and regex results not found in the memo
+     *
+     * @return the count
+     */
+    long getResultMemoMissCount();
+
+    /**
+     * Return the number of instances validated
+     *
+     * @return the number of validations
+     */
+    long getValidationCount();
+
+    /**
+     * Return the number of instances found invalid
+     *
+     * @return the number of failed validations
+     */
+    long getValidationFailureCount();
+
+    /**
+     * Return the mean validation time
+     *
+     * @return the time, in microseconds (0 if there was no validation)
+     */
+    double getMeanValidationMicros();
+
+    /**
+     * Return the longest validation time
+     *
+     * @return the time, in microseconds
+     */
+    long getMaxValidationMicros();
+
+    /**
+     * Remove all validators from the validator cache
+     *
+     * <p>Schemas which were promoted, or compiled, keep their validators.</p>
+     */
+    void clearValidatorCache();
+
+    /**
+     * Forget all results of the format and regex result memo
+     */
+    void clearResultMemo();
+
+    /**
+     * Reset validation counts and times
+     */
+    void resetValidationStats();
+
+    /**
+     * Warm up the schema at a given URI
+     *
+     * @param uri the URI
+     * @return a summary of the warm-up
+     * @throws IllegalArgumentException invalid URI, or cannot get the schema
+     *
+     * @see JsonSchemaFactory#warmUp(java.util.Collection)
+     */
+    String warmUp(String uri);
+}
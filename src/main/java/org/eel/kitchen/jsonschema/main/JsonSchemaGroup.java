@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import org.eel.kitchen.jsonschema.metrics.SlowValidationLog;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.validator.JsonValidatorCache;
+import org.eel.kitchen.jsonschema.validator.MultiSchemaValidator;
+import org.eel.kitchen.jsonschema.validator.ResultMemo;
+import org.eel.kitchen.jsonschema.validator.ValidationContext;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Validation of instances against a group of schemas at once
+ *
+ * <p>This is typically useful to check an instance against several versions
+ * of the same schema. The instance is only walked once for all schemas of the
+ * group, and one {@link ValidationReport} is produced per schema.</p>
+ *
+ * <p>If the factory has a {@link ValidationListener}, one validation is
+ * reported per schema of the group: all schemas are entered before the
+ * traversal, and exited after it in reverse order, each with the duration of
+ * the whole traversal. Schema and keyword events are sent during the
+ * traversal (see {@link MultiSchemaValidator}). Note that listeners which only
+ * record outermost validations, such as {@link SlowValidationLog}, therefore
+ * record a group validation once, under its first schema.</p>
+ *
+ * <p>This class is thread-safe. In order to build an instance, use {@link
+ * JsonSchemaFactory#createSchemaGroup(List)}.</p>
+ *
+ * @see MultiSchemaValidator
+ */
+public final class JsonSchemaGroup
+{
+    private final JsonValidatorCache cache;
+    private final EnumSet<ValidationFeature> features;
+    private final ResultMemo memo;
+    private final MultiSchemaValidator validator;
+    private final ValidationListener listener;
+
+    /**
+     * Locators of the schema containers, for the listener
+     */
+    private final List<JsonRef> locators;
+
+    JsonSchemaGroup(final JsonValidatorCache cache,
+        final EnumSet<ValidationFeature> features, final ResultMemo memo,
+        final List<SchemaNode> schemaNodes)
+    {
+        this.cache = cache;
+        this.features = EnumSet.copyOf(features);
+        this.memo = memo;
+        validator = new MultiSchemaValidator(cache, schemaNodes);
+        listener = cache.getListener();
+
+        final ImmutableList.Builder<JsonRef> builder = ImmutableList.builder();
+
+        for (final SchemaNode schemaNode: schemaNodes)
+            builder.add(schemaNode.getContainer().getLocator());
+
+        locators = builder.build();
+    }
+
+    /**
+     * Validate an instance against all schemas of this group
+     *
+     * @param instance the JSON document to validate
+     * @return the list of reports, in the same order as the schemas
+     */
+    public List<ValidationReport> validate(final JsonNode instance)
+    {
+        final ValidationContext context
+            = new ValidationContext(cache, features, memo);
+
+        if (listener == ValidationListener.noop())
+            return validator.validate(context, instance);
+
+        for (final JsonRef locator: locators)
+            listener.enterValidation(locator, instance);
+
+        final long start = System.nanoTime();
+        List<ValidationReport> reports = null;
+
+        try {
+            reports = validator.validate(context, instance);
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            for (int i = locators.size() - 1; i >= 0; i--)
+                listener.exitValidation(locators.get(i), instance, nanos,
+                    reports != null && reports.get(i).isSuccess());
+        }
+        return reports;
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.NodeType;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Find which of a set of schemas an instance matches
+ *
+ * <p>Validating an instance against each of a large number of schemas in turn
+ * is costly. Instead, a router computes a profile of each schema made of
+ * constraints which are both cheap to check and decisive:</p>
+ *
+ * <ul>
+ *     <li>the primitive types allowed by the root {@code type} keyword;</li>
+ *     <li>for object instances, the names of required properties;</li>
+ *     <li>for object instances, properties whose schema is an {@code enum}
+ *     with only one value.</li>
+ * </ul>
+ *
+ * <p>Only inline schemas are considered when building a profile: a schema, or
+ * property schema, which is a JSON Reference does not contribute any
+ * constraint.</p>
+ *
+ * <p>Schemas are then indexed by allowed instance type and, for objects, by
+ * the value of the property which discriminates the most schemas (ie, a
+ * required property with a single value {@code enum}). For a given instance,
+ * only schemas passing all checks of their profile are fully validated.</p>
+ *
+ * <p>Since profile checks are necessary conditions for an instance to be
+ * valid, routing gives exactly the same matches as validating the instance
+ * against all schemas in turn. Note however that no report is produced for
+ * schemas which are discarded by their profile.</p>
+ *
+ * <p>Instances of this class are obtained using {@link
+ * JsonSchemaFactory#createRouter(Collection)}. This class is thread safe.</p>
+ */
+public final class SchemaRouter
+{
+    /**
+     * All routes, in registration order
+     */
+    private final List<Route> routes;
+
+    /**
+     * Routes for each instance type
+     */
+    private final Map<NodeType, List<Route>> routesByType;
+
+    /**
+     * Discriminating property for object instances, {@code null} if none
+     */
+    private final String discriminator;
+
+    /**
+     * Object routes for each value of the discriminating property
+     */
+    private final Map<JsonNode, List<Route>> discriminated;
+
+    /**
+     * Object routes not indexed by the discriminating property
+     */
+    private final List<Route> undiscriminated;
+
+    SchemaRouter(final JsonSchemaFactory factory,
+        final Collection<SchemaContainer> containers)
+    {
+        final ImmutableList.Builder<Route> builder = ImmutableList.builder();
+
+        int index = 0;
+
+        for (final SchemaContainer container: containers)
+            builder.add(new Route(index++, container,
+                factory.createSchema(container)));
+
+        routes = builder.build();
+
+        final Map<NodeType, List<Route>> map
+            = new EnumMap<NodeType, List<Route>>(NodeType.class);
+
+        for (final NodeType type: NodeType.values()) {
+            final ImmutableList.Builder<Route> list = ImmutableList.builder();
+            for (final Route route: routes)
+                if (route.types.contains(type))
+                    list.add(route);
+            map.put(type, list.build());
+        }
+
+        routesByType = Collections.unmodifiableMap(map);
+
+        final List<Route> objectRoutes = routesByType.get(NodeType.OBJECT);
+        discriminator = findDiscriminator(objectRoutes);
+
+        if (discriminator == null) {
+            discriminated = Collections.emptyMap();
+            undiscriminated = objectRoutes;
+            return;
+        }
+
+        final Map<JsonNode, List<Route>> values = Maps.newLinkedHashMap();
+        final List<Route> rest = Lists.newArrayList();
+
+        JsonNode value;
+
+        for (final Route route: objectRoutes) {
+            value = route.discriminatorValue(discriminator);
+            if (value == null) {
+                rest.add(route);
+                continue;
+            }
+            if (!values.containsKey(value))
+                values.put(value, Lists.<Route>newArrayList());
+            values.get(value).add(route);
+        }
+
+        final ImmutableMap.Builder<JsonNode, List<Route>> mapBuilder
+            = ImmutableMap.builder();
+
+        for (final Map.Entry<JsonNode, List<Route>> entry: values.entrySet())
+            mapBuilder.put(entry.getKey(), ImmutableList.copyOf(entry
+                .getValue()));
+
+        discriminated = mapBuilder.build();
+        undiscriminated = ImmutableList.copyOf(rest);
+    }
+
+    /**
+     * Return the schemas against which an instance will be fully validated
+     *
+     * @param instance the instance
+     * @return the candidate schema containers, in registration order
+     */
+    public List<SchemaContainer> getCandidates(final JsonNode instance)
+    {
+        final ImmutableList.Builder<SchemaContainer> builder
+            = ImmutableList.builder();
+
+        for (final Route route: candidates(instance))
+            builder.add(route.container);
+
+        return builder.build();
+    }
+
+    /**
+     * Validate an instance against all candidate schemas
+     *
+     * <p>The returned list contains one entry per candidate schema (see
+     * {@link #getCandidates(JsonNode)}), in registration order. An instance
+     * matches a schema if the associated report is a success.</p>
+     *
+     * <p>Note that a list is returned, not a map: two anonymous schema
+     * containers are equal, even if their schemas are not.</p>
+     *
+     * @param instance the instance
+     * @return a list of (candidate schema container, validation report) pairs
+     */
+    public List<Map.Entry<SchemaContainer, ValidationReport>> route(
+        final JsonNode instance)
+    {
+        final ImmutableList.Builder<Map.Entry<SchemaContainer,
+            ValidationReport>> builder = ImmutableList.builder();
+
+        for (final Route route: candidates(instance))
+            builder.add(Maps.immutableEntry(route.container,
+                route.schema.validate(instance)));
+
+        return builder.build();
+    }
+
+    /**
+     * Return the schemas an instance matches
+     *
+     * @param instance the instance
+     * @return the list of matching schema containers, in registration order
+     */
+    public List<SchemaContainer> match(final JsonNode instance)
+    {
+        final ImmutableList.Builder<SchemaContainer> builder
+            = ImmutableList.builder();
+
+        for (final Route route: candidates(instance))
+            if (route.schema.validate(instance).isSuccess())
+                builder.add(route.container);
+
+        return builder.build();
+    }
+
+    /**
+     * Return the number of schemas in this router
+     *
+     * @return the number of schemas
+     */
+    public int size()
+    {
+        return routes.size();
+    }
+
+    private List<Route> candidates(final JsonNode instance)
+    {
+        final NodeType type = NodeType.getNodeType(instance);
+
+        if (type != NodeType.OBJECT)
+            return routesByType.get(type);
+
+        final List<Route> ret = Lists.newArrayList();
+
+        if (discriminator != null) {
+            final JsonNode value = instance.get(discriminator);
+            final List<Route> list = value == null ? null
+                : discriminated.get(value);
+            if (list != null)
+                ret.addAll(list);
+        }
+
+        ret.addAll(undiscriminated);
+
+        final Iterator<Route> iterator = ret.iterator();
+
+        while (iterator.hasNext())
+            if (!iterator.next().accepts(instance))
+                iterator.remove();
+
+        if (!ret.isEmpty() && !undiscriminated.isEmpty())
+            Collections.sort(ret);
+
+        return ret;
+    }
+
+    /**
+     * Find the property which discriminates the most routes
+     *
+     * @param routes the routes
+     * @return the property name, or {@code null} if no property discriminates
+     * at least two routes
+     */
+    private static String findDiscriminator(final List<Route> routes)
+    {
+        final Map<String, Integer> counts = Maps.newTreeMap();
+
+        Integer count;
+
+        for (final Route route: routes)
+            for (final String name: route.enums.keySet()) {
+                if (route.discriminatorValue(name) == null)
+                    continue;
+                count = counts.get(name);
+                counts.put(name, count == null ? 1 : count + 1);
+            }
+
+        String ret = null;
+        int max = 1;
+
+        for (final Map.Entry<String, Integer> entry: counts.entrySet())
+            if (entry.getValue() > max) {
+                ret = entry.getKey();
+                max = entry.getValue();
+            }
+
+        return ret;
+    }
+
+    private static boolean isInline(final JsonNode schema)
+    {
+        return schema.isObject() && !schema.has("$ref");
+    }
+
+    /**
+     * A schema along with its profile
+     */
+    private static final class Route
+        implements Comparable<Route>
+    {
+        private final int index;
+        private final SchemaContainer container;
+        private final JsonSchema schema;
+
+        /**
+         * Instance types allowed by the root {@code type} keyword
+         */
+        private final EnumSet<NodeType> types
+            = EnumSet.allOf(NodeType.class);
+
+        /**
+         * Required properties
+         */
+        private final Set<String> required;
+
+        /**
+         * Properties with single value enums
+         */
+        private final Map<String, JsonNode> enums;
+
+        private Route(final int index, final SchemaContainer container,
+            final JsonSchema schema)
+        {
+            this.index = index;
+            this.container = container;
+            this.schema = schema;
+
+            final JsonNode node = container.getSchema();
+
+            final ImmutableSet.Builder<String> requiredBuilder
+                = ImmutableSet.builder();
+            final ImmutableMap.Builder<String, JsonNode> enumsBuilder
+                = ImmutableMap.builder();
+
+            if (!isInline(node)) {
+                required = requiredBuilder.build();
+                enums = enumsBuilder.build();
+                return;
+            }
+
+            computeTypes(node.path("type"));
+
+            final Iterator<Map.Entry<String, JsonNode>> iterator
+                = node.path("properties").fields();
+
+            Map.Entry<String, JsonNode> entry;
+            JsonNode propertySchema, enumNode;
+
+            while (iterator.hasNext()) {
+                entry = iterator.next();
+                propertySchema = entry.getValue();
+                if (!isInline(propertySchema))
+                    continue;
+                if (propertySchema.path("required").asBoolean(false))
+                    requiredBuilder.add(entry.getKey());
+                enumNode = propertySchema.path("enum");
+                if (enumNode.isArray() && enumNode.size() == 1)
+                    enumsBuilder.put(entry.getKey(), enumNode.get(0));
+            }
+
+            required = requiredBuilder.build();
+            enums = enumsBuilder.build();
+        }
+
+        private void computeTypes(final JsonNode typeNode)
+        {
+            final List<String> names = Lists.newArrayList();
+
+            if (typeNode.isTextual())
+                names.add(typeNode.textValue());
+            else if (typeNode.isArray())
+                for (final JsonNode element: typeNode) {
+                    // A schema in the type array: give up
+                    if (!element.isTextual())
+                        return;
+                    names.add(element.textValue());
+                }
+            else
+                return;
+
+            final EnumSet<NodeType> set = EnumSet.noneOf(NodeType.class);
+            NodeType type;
+
+            for (final String name: names) {
+                if ("any".equals(name))
+                    return;
+                type = NodeType.fromName(name);
+                // Unknown type: the schema will fail syntax validation
+                if (type == null)
+                    return;
+                set.add(type);
+                if (type == NodeType.NUMBER)
+                    set.add(NodeType.INTEGER);
+            }
+
+            types.retainAll(set);
+        }
+
+        private JsonNode discriminatorValue(final String name)
+        {
+            return required.contains(name) ? enums.get(name) : null;
+        }
+
+        private boolean accepts(final JsonNode instance)
+        {
+            for (final String name: required)
+                if (!instance.has(name))
+                    return false;
+
+            JsonNode value;
+
+            for (final Map.Entry<String, JsonNode> entry: enums.entrySet()) {
+                value = instance.get(entry.getKey());
+                if (value != null && !value.equals(entry.getValue()))
+                    return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public int compareTo(final Route o)
+        {
+            return index < o.index ? -1 : index == o.index ? 0 : 1;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundle;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.report.ValidationMessage;
+import org.eel.kitchen.jsonschema.syntax.SyntaxChecker;
+import org.eel.kitchen.jsonschema.syntax.SyntaxValidator;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.eel.kitchen.jsonschema.validator.JsonValidatorCache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of the schemas known to a {@link JsonSchemaFactory}
+ *
+ * <p>A snapshot contains the content of all schemas of a factory which have an
+ * absolute URI (schemas registered with an {@code id}, and fetched schemas),
+ * along with the result of the syntax validation of all their subschemas. It
+ * can be written to a file, and read back when an application starts; a
+ * factory built with this snapshot (see {@link
+ * JsonSchemaFactory.Builder#withSnapshot(SchemaSnapshot)}) will then neither
+ * fetch these schemas again, nor check the syntax of their subschemas again.
+ * </p>
+ *
+ * <p>Validators themselves are not part of a snapshot, since keyword
+ * validators may be any user supplied class: they are built again on first
+ * use.</p>
+ *
+ * <p>The file format is versioned, and reading a file with another version
+ * fails. A file is memory mapped when read, and each schema is only parsed
+ * when first needed. Each schema is stored with a SHA-1 fingerprint of its
+ * content: if the content does not match, the schema is ignored (and fetched
+ * as usual). Syntax validation results are only used if the keyword bundle is
+ * the same as the one of the factory which took the snapshot.</p>
+ *
+ * <p>A snapshot does not know whether a fetched schema has changed since it
+ * was taken: use {@link #getCreationTime()} to decide whether it is too old.
+ * </p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public final class SchemaSnapshot
+{
+    /**
+     * File magic number ("JSSS")
+     */
+    private static final int MAGIC = 0x4a535353;
+
+    /**
+     * Current file format version
+     */
+    static final int VERSION = 1;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final JsonPointer ROOT;
+
+    static {
+        try {
+            ROOT = new JsonPointer("");
+        } catch (JsonSchemaException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long creationTime;
+    private final String bundleFingerprint;
+    private final List<Entry> entries;
+
+    private SchemaSnapshot(final long creationTime,
+        final String bundleFingerprint, final List<Entry> entries)
+    {
+        this.creationTime = creationTime;
+        this.bundleFingerprint = bundleFingerprint;
+        this.entries = ImmutableList.copyOf(entries);
+    }
+
+    /**
+     * Take a snapshot of all schemas of a registry
+     *
+     * @param registry the registry
+     * @param bundle the keyword bundle
+     * @return a snapshot
+     */
+    static SchemaSnapshot take(final SchemaRegistry registry,
+        final KeywordBundle bundle)
+    {
+        final SyntaxValidator syntaxValidator = new SyntaxValidator(bundle);
+        final List<Entry> entries = Lists.newArrayList();
+
+        JsonNode schema;
+        List<String> invalid;
+        byte[] content;
+
+        for (final Map.Entry<URI, SchemaContainer> entry:
+            registry.getContainers().entrySet()) {
+            schema = entry.getValue().getSchema();
+            invalid = Lists.newArrayList();
+            findInvalid(syntaxValidator, invalid, ROOT, schema);
+            try {
+                content = MAPPER.writeValueAsBytes(schema);
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot serialize schema", e);
+            }
+            entries.add(new Entry(entry.getKey(), fingerprint(content),
+                invalid, ByteBuffer.wrap(content)));
+        }
+
+        return new SchemaSnapshot(System.currentTimeMillis(),
+            fingerprint(bundle), entries);
+    }
+
+    /**
+     * Read a snapshot from a file
+     *
+     * @param file the file
+     * @return the snapshot
+     * @throws IOException unable to read the file, or not a snapshot with the
+     * current format version
+     */
+    public static SchemaSnapshot read(final File file)
+        throws IOException
+    {
+        Preconditions.checkNotNull(file, "null file");
+
+        final FileInputStream in = new FileInputStream(file);
+        final ByteBuffer buffer;
+
+        try {
+            final FileChannel channel = in.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L,
+                channel.size());
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+
+        try {
+            return read(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated snapshot file", e);
+        }
+    }
+
+    private static SchemaSnapshot read(final ByteBuffer buffer)
+        throws IOException
+    {
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("not a schema snapshot");
+
+        final int version = buffer.getInt();
+
+        if (version != VERSION)
+            throw new IOException("unsupported snapshot version " + version
+                + " (expected " + VERSION + ')');
+
+        final long creationTime = buffer.getLong();
+        final String bundleFingerprint = getString(buffer);
+        final int size = buffer.getInt();
+        final List<Entry> entries = Lists.newArrayList();
+
+        URI uri;
+        byte[] fingerprint;
+        int nrInvalid, length;
+        List<String> invalid;
+        ByteBuffer content;
+
+        for (int i = 0; i < size; i++) {
+            uri = URI.create(getString(buffer));
+            fingerprint = new byte[buffer.getInt()];
+            buffer.get(fingerprint);
+            nrInvalid = buffer.getInt();
+            invalid = Lists.newArrayList();
+            for (int j = 0; j < nrInvalid; j++)
+                invalid.add(getString(buffer));
+            length = buffer.getInt();
+            content = buffer.duplicate();
+            content.limit(content.position() + length);
+            buffer.position(buffer.position() + length);
+            entries.add(new Entry(uri, fingerprint, invalid, content.slice()));
+        }
+
+        return new SchemaSnapshot(creationTime, bundleFingerprint, entries);
+    }
+
+    /**
+     * Write this snapshot to a file
+     *
+     * @param file the file
+     * @throws IOException unable to write the file
+     */
+    public void write(final File file)
+        throws IOException
+    {
+        Preconditions.checkNotNull(file, "null file");
+
+        final DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file)));
+        boolean threw = true;
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(creationTime);
+            putString(out, bundleFingerprint);
+            out.writeInt(entries.size());
+            for (final Entry entry: entries) {
+                putString(out, entry.uri.toString());
+                out.writeInt(entry.fingerprint.length);
+                out.write(entry.fingerprint);
+                out.writeInt(entry.invalid.size());
+                for (final String pointer: entry.invalid)
+                    putString(out, pointer);
+                final byte[] content = entry.content();
+                out.writeInt(content.length);
+                out.write(content);
+            }
+            threw = false;
+        } finally {
+            Closeables.close(out, threw);
+        }
+    }
+
+    /**
+     * Get the time at which this snapshot was taken
+     *
+     * @return the time, in milliseconds since the epoch
+     */
+    public long getCreationTime()
+    {
+        return creationTime;
+    }
+
+    /**
+     * Get the number of schemas in this snapshot
+     *
+     * @return the number of schemas
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Tell whether syntax validation results of this snapshot can be used
+     * with a given keyword bundle
+     *
+     * @param bundle the keyword bundle
+     * @return true if the bundle is the same as the one used to take this
+     * snapshot
+     */
+    public boolean isCompatible(final KeywordBundle bundle)
+    {
+        return bundleFingerprint.equals(fingerprint(bundle));
+    }
+
+    /**
+     * Preload all schemas of this snapshot into a registry
+     *
+     * @param registry the registry
+     * @param cache the validator cache, told about valid subschemas
+     * @param bundle the keyword bundle of the cache
+     */
+    void install(final SchemaRegistry registry, final JsonValidatorCache cache,
+        final KeywordBundle bundle)
+    {
+        final JsonValidatorCache target = isCompatible(bundle) ? cache : null;
+
+        for (final Entry entry: entries)
+            registry.preload(entry.uri, new Supplier<JsonNode>()
+            {
+                @Override
+                public JsonNode get()
+                {
+                    return entry.load(target);
+                }
+            });
+    }
+
+    /**
+     * Compute the fingerprint of a keyword bundle
+     *
+     * <p>This takes into account the name, syntax checker class and validator
+     * class of each keyword.</p>
+     *
+     * @param bundle the bundle
+     * @return the fingerprint, as an hexadecimal string
+     */
+    static String fingerprint(final KeywordBundle bundle)
+    {
+        final Map<String, SyntaxChecker> checkers = bundle.getSyntaxCheckers();
+        final Map<String, Class<?>> validators
+            = new TreeMap<String, Class<?>>(bundle.getValidators());
+        final Set<String> keywords = Sets.newTreeSet(checkers.keySet());
+        final StringBuilder sb = new StringBuilder();
+
+        keywords.addAll(validators.keySet());
+
+        SyntaxChecker checker;
+        Class<?> validator;
+
+        for (final String keyword: keywords) {
+            checker = checkers.get(keyword);
+            validator = validators.get(keyword);
+            sb.append(keyword).append('\0')
+                .append(checker == null ? "" : checker.getClass().getName())
+                .append('\0')
+                .append(validator == null ? "" : validator.getName())
+                .append('\n');
+        }
+
+        return Hashing.sha1().hashString(sb, Charsets.UTF_8).toString();
+    }
+
+    private static byte[] fingerprint(final byte[] content)
+    {
+        return Hashing.sha1().hashBytes(content).asBytes();
+    }
+
+    /**
+     * Find all object nodes of a schema which fail syntax validation
+     *
+     * <p>Every object node is checked, whether it is a subschema or not (for
+     * instance, a member of an {@code enum}): the result of syntax validation
+     * only depends on the node itself.</p>
+     *
+     * @param syntaxValidator the syntax validator
+     * @param invalid the list of pointers to invalid nodes to fill
+     * @param pointer the pointer to the current node
+     * @param node the current node
+     */
+    private static void findInvalid(final SyntaxValidator syntaxValidator,
+        final List<String> invalid, final JsonPointer pointer,
+        final JsonNode node)
+    {
+        if (node.isObject()) {
+            final List<ValidationMessage> messages = Lists.newArrayList();
+            syntaxValidator.validate(messages, node);
+            if (!messages.isEmpty())
+                invalid.add(pointer.toString());
+            final Iterator<Map.Entry<String, JsonNode>> iterator
+                = node.fields();
+            Map.Entry<String, JsonNode> entry;
+            while (iterator.hasNext()) {
+                entry = iterator.next();
+                findInvalid(syntaxValidator, invalid,
+                    pointer.append(entry.getKey()), entry.getValue());
+            }
+            return;
+        }
+
+        for (int i = 0; i < node.size(); i++)
+            findInvalid(syntaxValidator, invalid, pointer.append(i),
+                node.get(i));
+    }
+
+    private static void findValid(final List<JsonNode> valid,
+        final Set<JsonNode> invalid, final JsonNode node)
+    {
+        if (node.isObject() && !invalid.contains(node))
+            valid.add(node);
+
+        for (final JsonNode child: node)
+            findValid(valid, invalid, child);
+    }
+
+    private static String getString(final ByteBuffer buffer)
+    {
+        final byte[] bytes = new byte[buffer.getInt()];
+
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static void putString(final DataOutputStream out,
+        final String s)
+        throws IOException
+    {
+        final byte[] bytes = s.getBytes(Charsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * One schema of a snapshot
+     */
+    private static final class Entry
+    {
+        private final URI uri;
+        private final byte[] fingerprint;
+
+        /**
+         * JSON Pointers to object nodes which fail syntax validation
+         */
+        private final List<String> invalid;
+
+        /**
+         * The serialized schema (possibly a memory mapped buffer)
+         */
+        private final ByteBuffer content;
+
+        private Entry(final URI uri, final byte[] fingerprint,
+            final List<String> invalid, final ByteBuffer content)
+        {
+            this.uri = uri;
+            this.fingerprint = fingerprint;
+            this.invalid = ImmutableList.copyOf(invalid);
+            this.content = content;
+        }
+
+        private byte[] content()
+        {
+            final byte[] ret = new byte[content.remaining()];
+
+            content.duplicate().get(ret);
+            return ret;
+        }
+
+        /**
+         * Parse the schema
+         *
+         * @param cache the cache to tell about valid subschemas, {@code null}
+         * if syntax validation results should not be used
+         * @return the schema, or {@code null} if the content does not match
+         * its fingerprint
+         */
+        private JsonNode load(final JsonValidatorCache cache)
+        {
+            final byte[] bytes = content();
+
+            if (!Arrays.equals(fingerprint, fingerprint(bytes)))
+                return null;
+
+            final JsonNode ret;
+
+            try {
+                ret = JsonLoader.fromReader(new InputStreamReader(
+                    new ByteArrayInputStream(bytes), Charsets.UTF_8));
+            } catch (IOException ignored) {
+                return null;
+            }
+
+            if (cache == null)
+                return ret;
+
+            final Set<JsonNode> invalidNodes = Sets.newIdentityHashSet();
+
+            try {
+                for (final String pointer: invalid)
+                    invalidNodes.add(new JsonPointer(pointer).resolve(ret));
+            } catch (JsonSchemaException ignored) {
+                return ret;
+            }
+
+            final List<JsonNode> valid = Lists.newArrayList();
+
+            findValid(valid, invalidNodes, ret);
+            cache.addValidSchemas(valid);
+            return ret;
+        }
+    }
+}
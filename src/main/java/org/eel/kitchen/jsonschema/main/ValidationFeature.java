@@ -19,6 +19,8 @@ package org.eel.kitchen.jsonschema.main;
 
 import org.eel.kitchen.jsonschema.format.EmailFormatSpecifier;
 import org.eel.kitchen.jsonschema.format.HostnameFormatSpecifier;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.validator.JsonValidatorCache;
 
 /**
  * Validation features
@@ -32,5 +34,38 @@ public enum ValidationFeature
      * @see EmailFormatSpecifier
      * @see HostnameFormatSpecifier
      */
-    STRICT_RFC_CONFORMANCE
+    STRICT_RFC_CONFORMANCE,
+
+    /**
+     * Validate using schemas compiled into flat instruction arrays
+     *
+     * <p>Schemas are compiled on first use, or on promotion if promotion is
+     * enabled. Validation reports are unchanged.</p>
+     *
+     * @see JsonValidatorCache#compile(SchemaNode)
+     */
+    COMPILED_PROGRAMS,
+
+    /**
+     * Validate using compact programs
+     *
+     * <p>This implies {@link #COMPILED_PROGRAMS}. Compact programs, and the
+     * {@link JsonSchema} itself once its program is built, do not retain the
+     * source schema if they do not need it: use this if you have many schemas
+     * and memory is a concern. Validation reports are unchanged.</p>
+     *
+     * @see JsonValidatorCache#compileCompact(SchemaNode)
+     */
+    COMPACT_PROGRAMS,
+
+    /**
+     * Validate using a JVM class generated for each schema
+     *
+     * <p>Classes are generated on first use, or on promotion if promotion is
+     * enabled. This takes precedence over {@link #COMPILED_PROGRAMS} and
+     * {@link #COMPACT_PROGRAMS}. Validation reports are unchanged.</p>
+     *
+     * @see JsonValidatorCache#generate(SchemaNode)
+     */
+    GENERATED_CLASSES
 }
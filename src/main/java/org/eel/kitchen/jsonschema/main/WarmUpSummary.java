@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.google.common.collect.ImmutableList;
+import org.eel.kitchen.jsonschema.report.ValidationMessage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summary of a warm-up
+ *
+ * <p>A warm-up failure is either a message of a schema which failed to
+ * resolve or failed syntax validation, or an unexpected exception (for
+ * instance, if a schema could not be downloaded).</p>
+ *
+ * @see JsonSchemaFactory#warmUp(java.util.Collection)
+ */
+public final class WarmUpSummary
+{
+    private final int containers;
+    private final int schemas;
+    private final long validators;
+    private final List<ValidationMessage> failures;
+    private final List<Throwable> errors;
+    private final long elapsedNanos;
+    private final long workNanos;
+
+    WarmUpSummary(final int containers, final int schemas,
+        final long validators, final List<ValidationMessage> failures,
+        final List<Throwable> errors, final long elapsedNanos,
+        final long workNanos)
+    {
+        this.containers = containers;
+        this.schemas = schemas;
+        this.validators = validators;
+        this.failures = ImmutableList.copyOf(failures);
+        this.errors = ImmutableList.copyOf(errors);
+        this.elapsedNanos = elapsedNanos;
+        this.workNanos = workNanos;
+    }
+
+    /**
+     * Return the number of schema containers warmed up
+     *
+     * @return the number of containers
+     */
+    public int getContainers()
+    {
+        return containers;
+    }
+
+    /**
+     * Return the number of distinct schemas visited
+     *
+     * @return the number of schemas
+     */
+    public int getSchemas()
+    {
+        return schemas;
+    }
+
+    /**
+     * Return the number of validators built by the warm-up
+     *
+     * <p>This is the number of validator cache misses during the warm-up:
+     * validators already in the cache are not counted. If other threads use
+     * the factory meanwhile, their misses are counted as well.</p>
+     *
+     * @return the number of validators built
+     */
+    public long getValidators()
+    {
+        return validators;
+    }
+
+    /**
+     * Return the messages of schemas which failed to resolve or failed syntax
+     * validation
+     *
+     * @return a list of messages (empty if none)
+     */
+    public List<ValidationMessage> getFailures()
+    {
+        return failures;
+    }
+
+    /**
+     * Return unexpected exceptions thrown while warming up containers
+     *
+     * @return a list of exceptions (empty if none)
+     */
+    public List<Throwable> getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * Tell whether the warm-up had no failures and no errors
+     *
+     * @return true if all reachable schemas were warmed up
+     */
+    public boolean isSuccess()
+    {
+        return failures.isEmpty() && errors.isEmpty();
+    }
+
+    /**
+     * Return the wall clock time of the warm-up
+     *
+     * @param unit the time unit
+     * @return the elapsed time
+     */
+    public long getElapsed(final TimeUnit unit)
+    {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the sum of the times spent warming up each container
+     *
+     * <p>With a multithreaded executor, this may be larger than {@link
+     * #getElapsed(TimeUnit) the elapsed time}.</p>
+     *
+     * @param unit the time unit
+     * @return the total time
+     */
+    public long getWork(final TimeUnit unit)
+    {
+        return unit.convert(workNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString()
+    {
+        return containers + " containers, " + schemas + " schemas, "
+            + validators + " validators built, " + failures.size()
+            + " failures, " + errors.size() + " errors, "
+            + getElapsed(TimeUnit.MILLISECONDS) + " ms";
+    }
+}
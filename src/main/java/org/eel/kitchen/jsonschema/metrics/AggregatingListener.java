@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A listener aggregating validation events
+ *
+ * <p>Schema and keyword events are aggregated by schema location, and keyword
+ * events by keyword within a schema, into {@link Stats}: number of
+ * evaluations, number of failures, total and maximum time. Cache, registry and
+ * JSON Reference events are counted.</p>
+ *
+ * <p>The location of a schema is the URI of its container followed by the
+ * JSON Pointer of the schema in this container, for instance {@code
+ * http://my.site/schema#/properties/foo}, or just {@code #/properties/foo} for
+ * an anonymous container. Schemas which share their validator with an equal
+ * schema elsewhere are located at the first place they were looked up from.
+ * If a schema cannot be located, its location is {@code ?} followed by the
+ * beginning of the schema itself.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public final class AggregatingListener
+    extends ValidationListener
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private final ConcurrentMap<String, Stats> schemas
+        = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, ConcurrentMap<String, Stats>> keywords
+        = Maps.newConcurrentMap();
+
+    private final SchemaLocations locations = new SchemaLocations();
+
+    private final AtomicLong validatorCacheHits = new AtomicLong();
+    private final AtomicLong validatorCacheMisses = new AtomicLong();
+    private final AtomicLong validatorLoadNanos = new AtomicLong();
+    private final AtomicLong registryHits = new AtomicLong();
+    private final AtomicLong registryMisses = new AtomicLong();
+    private final AtomicLong registryLoadNanos = new AtomicLong();
+    private final AtomicLong refResolutions = new AtomicLong();
+    private final AtomicLong refHops = new AtomicLong();
+
+    @Override
+    public void exitSchema(final SchemaNode schemaNode, final JsonPointer path,
+        final long nanos, final boolean success)
+    {
+        stats(schemas, locations.locate(schemaNode)).add(nanos, success);
+    }
+
+    @Override
+    public void keyword(final SchemaNode schemaNode, final String keyword,
+        final long nanos, final boolean success)
+    {
+        final String location = locations.locate(schemaNode);
+        ConcurrentMap<String, Stats> map = keywords.get(location);
+
+        if (map == null) {
+            map = Maps.newConcurrentMap();
+            final ConcurrentMap<String, Stats> previous
+                = keywords.putIfAbsent(location, map);
+            if (previous != null)
+                map = previous;
+        }
+
+        stats(map, keyword).add(nanos, success);
+    }
+
+    @Override
+    public void validatorCacheHit(final SchemaContainer container,
+        final JsonNode schema)
+    {
+        locations.index(container);
+        validatorCacheHits.incrementAndGet();
+    }
+
+    @Override
+    public void validatorCacheMiss(final SchemaContainer container,
+        final JsonNode schema, final long nanos)
+    {
+        locations.index(container);
+        validatorCacheMisses.incrementAndGet();
+        validatorLoadNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public void registryHit(final URI uri)
+    {
+        registryHits.incrementAndGet();
+    }
+
+    @Override
+    public void registryMiss(final URI uri, final long nanos)
+    {
+        registryMisses.incrementAndGet();
+        registryLoadNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public void refResolved(final SchemaNode source, final SchemaNode target,
+        final int hops)
+    {
+        refResolutions.incrementAndGet();
+        refHops.addAndGet(hops);
+    }
+
+    /**
+     * Return statistics of schemas, by location
+     *
+     * @return an immutable map of statistics, which are live
+     */
+    public Map<String, Stats> getSchemaStats()
+    {
+        return ImmutableMap.copyOf(schemas);
+    }
+
+    /**
+     * Return statistics of keywords, by schema location, then by keyword
+     *
+     * @return an immutable map of statistics, which are live
+     */
+    public Map<String, Map<String, Stats>> getKeywordStats()
+    {
+        final ImmutableMap.Builder<String, Map<String, Stats>> builder
+            = ImmutableMap.builder();
+
+        for (final Map.Entry<String, ConcurrentMap<String, Stats>> entry:
+            keywords.entrySet())
+            builder.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
+
+        return builder.build();
+    }
+
+    public long getValidatorCacheHits()
+    {
+        return validatorCacheHits.get();
+    }
+
+    public long getValidatorCacheMisses()
+    {
+        return validatorCacheMisses.get();
+    }
+
+    /**
+     * Return the total time spent building validators on cache misses
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getValidatorLoadNanos()
+    {
+        return validatorLoadNanos.get();
+    }
+
+    public long getRegistryHits()
+    {
+        return registryHits.get();
+    }
+
+    public long getRegistryMisses()
+    {
+        return registryMisses.get();
+    }
+
+    /**
+     * Return the total time spent loading schemas on registry misses
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getRegistryLoadNanos()
+    {
+        return registryLoadNanos.get();
+    }
+
+    /**
+     * Return the number of schemas with a JSON Reference resolved
+     *
+     * @return the number of resolutions
+     */
+    public long getRefResolutions()
+    {
+        return refResolutions.get();
+    }
+
+    /**
+     * Return the number of JSON References followed
+     *
+     * <p>This is more than the number of resolutions if references point to
+     * other references.</p>
+     *
+     * @return the number of references followed
+     */
+    public long getRefHops()
+    {
+        return refHops.get();
+    }
+
+    /**
+     * Forget all statistics and counters
+     *
+     * <p>Schema locations are kept.</p>
+     */
+    public void reset()
+    {
+        schemas.clear();
+        keywords.clear();
+        validatorCacheHits.set(0L);
+        validatorCacheMisses.set(0L);
+        validatorLoadNanos.set(0L);
+        registryHits.set(0L);
+        registryMisses.set(0L);
+        registryLoadNanos.set(0L);
+        refResolutions.set(0L);
+        refHops.set(0L);
+    }
+
+    /**
+     * Return all statistics and counters as JSON
+     *
+     * @return a JSON object
+     */
+    public JsonNode asJsonNode()
+    {
+        final ObjectNode ret = FACTORY.objectNode();
+        final ObjectNode schemaNode = ret.putObject("schemas");
+
+        for (final Map.Entry<String, Stats> entry: schemas.entrySet())
+            schemaNode.put(entry.getKey(), entry.getValue().asJsonNode());
+
+        final ObjectNode keywordNode = ret.putObject("keywords");
+        ObjectNode node;
+
+        for (final Map.Entry<String, ConcurrentMap<String, Stats>> entry:
+            keywords.entrySet()) {
+            node = keywordNode.putObject(entry.getKey());
+            for (final Map.Entry<String, Stats> keyword:
+                entry.getValue().entrySet())
+                node.put(keyword.getKey(), keyword.getValue().asJsonNode());
+        }
+
+        node = ret.putObject("validatorCache");
+        node.put("hits", getValidatorCacheHits());
+        node.put("misses", getValidatorCacheMisses());
+        node.put("loadNanos", getValidatorLoadNanos());
+
+        node = ret.putObject("registry");
+        node.put("hits", getRegistryHits());
+        node.put("misses", getRegistryMisses());
+        node.put("loadNanos", getRegistryLoadNanos());
+
+        node = ret.putObject("refs");
+        node.put("resolutions", getRefResolutions());
+        node.put("hops", getRefHops());
+
+        return ret;
+    }
+
+    @Override
+    public String toString()
+    {
+        return asJsonNode().toString();
+    }
+
+    private static Stats stats(final ConcurrentMap<String, Stats> map,
+        final String key)
+    {
+        final Stats ret = map.get(key);
+
+        if (ret != null)
+            return ret;
+
+        final Stats stats = new Stats();
+        final Stats previous = map.putIfAbsent(key, stats);
+
+        return previous == null ? stats : previous;
+    }
+
+    /**
+     * Statistics of a schema or keyword
+     *
+     * <p>This class is thread safe.</p>
+     */
+    public static final class Stats
+    {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Stats()
+        {
+        }
+
+        private void add(final long nanos, final boolean success)
+        {
+            count.incrementAndGet();
+            if (!success)
+                failures.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+
+            long max;
+
+            do {
+                max = maxNanos.get();
+            } while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+        }
+
+        /**
+         * Return the number of evaluations
+         *
+         * @return the count
+         */
+        public long getCount()
+        {
+            return count.get();
+        }
+
+        /**
+         * Return the number of evaluations which added validation messages
+         *
+         * @return the number of failures
+         */
+        public long getFailures()
+        {
+            return failures.get();
+        }
+
+        public long getTotalNanos()
+        {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos()
+        {
+            return maxNanos.get();
+        }
+
+        private JsonNode asJsonNode()
+        {
+            final ObjectNode ret = FACTORY.objectNode();
+
+            ret.put("count", getCount());
+            ret.put("failures", getFailures());
+            ret.put("totalNanos", getTotalNanos());
+            ret.put("maxNanos", getMaxNanos());
+            return ret;
+        }
+
+        @Override
+        public String toString()
+        {
+            return asJsonNode().toString();
+        }
+    }
+}
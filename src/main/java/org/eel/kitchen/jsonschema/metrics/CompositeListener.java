@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * A listener sending all events to several listeners, in order
+ *
+ * <p>Its granularity is the finest of the granularities of its listeners: a
+ * listener may then receive schema and keyword events it did not ask for.</p>
+ *
+ * @see ValidationListener#combine(ValidationListener...)
+ */
+final class CompositeListener
+    extends ValidationListener
+{
+    private final ValidationListener[] listeners;
+    private final Granularity granularity;
+
+    CompositeListener(final List<ValidationListener> listeners)
+    {
+        this.listeners = listeners.toArray(
+            new ValidationListener[listeners.size()]);
+
+        Granularity finest = Granularity.VALIDATIONS;
+
+        for (final ValidationListener listener: listeners)
+            if (listener.getGranularity().compareTo(finest) > 0)
+                finest = listener.getGranularity();
+
+        granularity = finest;
+    }
+
+    @Override
+    public Granularity getGranularity()
+    {
+        return granularity;
+    }
+
+    @Override
+    public void enterValidation(final JsonRef locator, final JsonNode instance)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.enterValidation(locator, instance);
+    }
+
+    @Override
+    public void exitValidation(final JsonRef locator, final JsonNode instance,
+        final long nanos, final boolean success)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.exitValidation(locator, instance, nanos, success);
+    }
+
+    @Override
+    public void enterSchema(final SchemaNode schemaNode, final JsonPointer path)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.enterSchema(schemaNode, path);
+    }
+
+    @Override
+    public void exitSchema(final SchemaNode schemaNode, final JsonPointer path,
+        final long nanos, final boolean success)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.exitSchema(schemaNode, path, nanos, success);
+    }
+
+    @Override
+    public void keyword(final SchemaNode schemaNode, final String keyword,
+        final long nanos, final boolean success)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.keyword(schemaNode, keyword, nanos, success);
+    }
+
+    @Override
+    public void validatorCacheHit(final SchemaContainer container,
+        final JsonNode schema)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.validatorCacheHit(container, schema);
+    }
+
+    @Override
+    public void validatorCacheMiss(final SchemaContainer container,
+        final JsonNode schema, final long nanos)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.validatorCacheMiss(container, schema, nanos);
+    }
+
+    @Override
+    public void validatorBuilt(final SchemaNode schemaNode,
+        final long resolveNanos, final long syntaxNanos, final long buildNanos,
+        final boolean success)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.validatorBuilt(schemaNode, resolveNanos, syntaxNanos,
+                buildNanos, success);
+    }
+
+    @Override
+    public void contentFetched(final URI uri, final long bytes,
+        final long nanos)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.contentFetched(uri, bytes, nanos);
+    }
+
+    @Override
+    public void registryHit(final URI uri)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.registryHit(uri);
+    }
+
+    @Override
+    public void registryMiss(final URI uri, final long nanos)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.registryMiss(uri, nanos);
+    }
+
+    @Override
+    public void refResolved(final SchemaNode source, final SchemaNode target,
+        final int hops)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.refResolved(source, target, hops);
+    }
+
+    @Override
+    public void regexMatched(final String regex)
+    {
+        for (final ValidationListener listener: listeners)
+            listener.regexMatched(regex);
+    }
+}
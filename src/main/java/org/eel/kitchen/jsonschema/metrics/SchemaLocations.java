@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.MapMaker;
+import org.eel.kitchen.jsonschema.main.JsonSchemaException;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Locations of schemas, by identity
+ *
+ * <p>The location of a schema is the URI of its container followed by the
+ * JSON Pointer of the schema in this container, for instance {@code
+ * http://my.site/schema#/properties/foo}, or just {@code #/properties/foo} for
+ * an anonymous container. Containers are indexed as a whole, once, either when
+ * told to or when one of their schemas is first located; a schema found at
+ * several places keeps the first one.</p>
+ *
+ * <p>Schemas which share their validator with an equal schema elsewhere (see
+ * {@link org.eel.kitchen.jsonschema.validator.SchemaInterner}) are only
+ * located if their original container was indexed. A schema which cannot be
+ * located has {@code ?} followed by the beginning of the schema itself as a
+ * location.</p>
+ *
+ * <p>Schemas and containers are only held weakly. This class is thread safe.
+ * </p>
+ */
+final class SchemaLocations
+{
+    private static final int MAX_UNKNOWN_LENGTH = 40;
+
+    private static final JsonPointer ROOT;
+
+    static {
+        try {
+            ROOT = new JsonPointer("");
+        } catch (JsonSchemaException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Map<JsonNode, String> locations
+        = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Root schemas of containers already indexed, by identity
+     */
+    private final Set<JsonNode> indexed = Collections.newSetFromMap(
+        new MapMaker().weakKeys().<JsonNode, Boolean>makeMap());
+
+    /**
+     * Return the location of a schema
+     *
+     * @param schemaNode the schema node
+     * @return the location
+     */
+    String locate(final SchemaNode schemaNode)
+    {
+        final JsonNode schema = schemaNode.getNode();
+        String ret = locations.get(schema);
+
+        if (ret != null)
+            return ret;
+
+        index(schemaNode.getContainer());
+        ret = locations.get(schema);
+
+        if (ret != null)
+            return ret;
+
+        ret = schema.toString();
+        return "?" + (ret.length() <= MAX_UNKNOWN_LENGTH ? ret
+            : ret.substring(0, MAX_UNKNOWN_LENGTH) + "...");
+    }
+
+    /**
+     * Record the location of all schemas of a container
+     *
+     * <p>This does nothing if the container is already indexed.</p>
+     *
+     * @param container the container
+     */
+    void index(final SchemaContainer container)
+    {
+        final JsonNode schema = container.getSchema();
+
+        if (indexed.add(schema))
+            index(container.getLocator().getRootAsURI().toString(), ROOT,
+                schema);
+    }
+
+    private void index(final String prefix, final JsonPointer pointer,
+        final JsonNode node)
+    {
+        if (!node.isContainerNode())
+            return;
+
+        if (node.isObject() && !locations.containsKey(node))
+            locations.put(node, prefix + pointer);
+
+        if (node.isArray()) {
+            for (int i = 0; i < node.size(); i++)
+                index(prefix, pointer.append(i), node.get(i));
+            return;
+        }
+
+        final Iterator<Map.Entry<String, JsonNode>> iterator = node.fields();
+        Map.Entry<String, JsonNode> entry;
+
+        while (iterator.hasNext()) {
+            entry = iterator.next();
+            index(prefix, pointer.append(entry.getKey()), entry.getValue());
+        }
+    }
+}
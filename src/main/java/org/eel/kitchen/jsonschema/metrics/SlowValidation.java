@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * Record of a slow validation
+ *
+ * <p>Maps are ordered, most expensive first. Schema times are inclusive: the
+ * time of a schema includes the time of its subschemas, and a recursive schema
+ * counts nested time more than once.</p>
+ *
+ * @see SlowValidationLog
+ */
+public final class SlowValidation
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private final String schema;
+    private final long nanos;
+    private final boolean valid;
+    private final Map<String, Long> schemaNanos;
+    private final Map<String, Long> pathVisits;
+    private final long otherPathVisits;
+    private final long regexMatches;
+    private final long refHops;
+    private final long validatorsBuilt;
+    private final long buildNanos;
+
+    SlowValidation(final String schema, final long nanos, final boolean valid,
+        final Map<String, Long> schemaNanos, final Map<String, Long> pathVisits,
+        final long otherPathVisits, final long regexMatches, final long refHops,
+        final long validatorsBuilt, final long buildNanos)
+    {
+        this.schema = schema;
+        this.nanos = nanos;
+        this.valid = valid;
+        this.schemaNanos = ImmutableMap.copyOf(schemaNanos);
+        this.pathVisits = ImmutableMap.copyOf(pathVisits);
+        this.otherPathVisits = otherPathVisits;
+        this.regexMatches = regexMatches;
+        this.refHops = refHops;
+        this.validatorsBuilt = validatorsBuilt;
+        this.buildNanos = buildNanos;
+    }
+
+    /**
+     * Return the locator of the schema container
+     *
+     * @return the locator, as a string
+     */
+    public String getSchema()
+    {
+        return schema;
+    }
+
+    /**
+     * Return the duration of the validation
+     *
+     * @return the duration, in nanoseconds
+     */
+    public long getNanos()
+    {
+        return nanos;
+    }
+
+    public boolean isValid()
+    {
+        return valid;
+    }
+
+    /**
+     * Return the most expensive schemas, with their inclusive time
+     *
+     * <p>Only schemas applied to object and array instances are timed.</p>
+     *
+     * @return an ordered map of times in nanoseconds, by schema location
+     */
+    public Map<String, Long> getSchemaNanos()
+    {
+        return schemaNanos;
+    }
+
+    /**
+     * Return the most visited instance paths, with their number of visits
+     *
+     * <p>An instance is visited once for each schema it is validated against.
+     * Only object and array instances are counted.</p>
+     *
+     * @return an ordered map of visits, by instance path
+     */
+    public Map<String, Long> getPathVisits()
+    {
+        return pathVisits;
+    }
+
+    /**
+     * Return the number of visits to paths which were not tracked
+     *
+     * @return the number of visits
+     *
+     * @see SlowValidationLog.Builder#setMaxPaths(int)
+     */
+    public long getOtherPathVisits()
+    {
+        return otherPathVisits;
+    }
+
+    /**
+     * Return the number of regex matches run
+     *
+     * @return the number of matches
+     */
+    public long getRegexMatches()
+    {
+        return regexMatches;
+    }
+
+    /**
+     * Return the number of JSON References followed
+     *
+     * <p>References are only followed when validators are built: this is 0
+     * once all needed validators are in the validator cache.</p>
+     *
+     * @return the number of references followed
+     */
+    public long getRefHops()
+    {
+        return refHops;
+    }
+
+    /**
+     * Return the number of validators built during this validation
+     *
+     * @return the number of validators
+     */
+    public long getValidatorsBuilt()
+    {
+        return validatorsBuilt;
+    }
+
+    /**
+     * Return the time spent building validators during this validation
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getBuildNanos()
+    {
+        return buildNanos;
+    }
+
+    /**
+     * Return this record as JSON
+     *
+     * @return a JSON object
+     */
+    public JsonNode asJsonNode()
+    {
+        final ObjectNode ret = FACTORY.objectNode();
+
+        ret.put("schema", schema);
+        ret.put("nanos", nanos);
+        ret.put("valid", valid);
+
+        ObjectNode node = ret.putObject("schemaNanos");
+
+        for (final Map.Entry<String, Long> entry: schemaNanos.entrySet())
+            node.put(entry.getKey(), entry.getValue());
+
+        node = ret.putObject("pathVisits");
+
+        for (final Map.Entry<String, Long> entry: pathVisits.entrySet())
+            node.put(entry.getKey(), entry.getValue());
+
+        ret.put("otherPathVisits", otherPathVisits);
+        ret.put("regexMatches", regexMatches);
+        ret.put("refHops", refHops);
+        ret.put("validatorsBuilt", validatorsBuilt);
+        ret.put("buildNanos", buildNanos);
+        return ret;
+    }
+
+    @Override
+    public String toString()
+    {
+        return asJsonNode().toString();
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A listener recording validations slower than a threshold
+ *
+ * <p>Each validation is traced in the thread running it; if it takes longer
+ * than the threshold, a {@link SlowValidation} record is sent to the sink,
+ * with the most expensive schemas, the most visited instance paths, and the
+ * number of regex matches, JSON Reference hops and validators built.</p>
+ *
+ * <p>Tracing is meant to be cheap enough to leave enabled: this listener
+ * asks for schema events of object and array instances only (see {@link
+ * ValidationListener.Granularity#CONTAINERS}), so that the clock is not read
+ * for scalar instances or keywords, and the number of distinct instance paths
+ * tracked per validation is bounded. Nothing is built unless the threshold is
+ * exceeded.</p>
+ *
+ * <p>Only validations through {@link
+ * org.eel.kitchen.jsonschema.main.JsonSchema#validate(JsonNode)} are traced;
+ * a validation started from within another one is part of the outer one. The
+ * sink is called from the validating thread, and must be thread safe.</p>
+ */
+public final class SlowValidationLog
+    extends ValidationListener
+{
+    private static final Comparator<Map.Entry<String, Long>> DESCENDING
+        = new Comparator<Map.Entry<String, Long>>()
+    {
+        @Override
+        public int compare(final Map.Entry<String, Long> o1,
+            final Map.Entry<String, Long> o2)
+        {
+            return o2.getValue().compareTo(o1.getValue());
+        }
+    };
+
+    private final long thresholdNanos;
+    private final int topSchemas;
+    private final int topPaths;
+    private final int maxPaths;
+    private final Sink sink;
+
+    private final SchemaLocations locations = new SchemaLocations();
+
+    private final ThreadLocal<Trace> traces = new ThreadLocal<Trace>()
+    {
+        @Override
+        protected Trace initialValue()
+        {
+            return new Trace();
+        }
+    };
+
+    private SlowValidationLog(final Builder builder)
+    {
+        thresholdNanos = builder.thresholdNanos;
+        topSchemas = builder.topSchemas;
+        topPaths = builder.topPaths;
+        maxPaths = builder.maxPaths;
+        sink = builder.sink;
+    }
+
+    /**
+     * Return the granularity of this listener
+     *
+     * @return {@link Granularity#CONTAINERS}
+     */
+    @Override
+    public Granularity getGranularity()
+    {
+        return Granularity.CONTAINERS;
+    }
+
+    @Override
+    public void enterValidation(final JsonRef locator, final JsonNode instance)
+    {
+        traces.get().depth++;
+    }
+
+    @Override
+    public void exitValidation(final JsonRef locator, final JsonNode instance,
+        final long nanos, final boolean success)
+    {
+        final Trace trace = traces.get();
+
+        if (--trace.depth > 0)
+            return;
+
+        try {
+            if (nanos >= thresholdNanos)
+                sink.record(record(trace, locator, nanos, success));
+        } finally {
+            trace.clear();
+        }
+    }
+
+    @Override
+    public void enterSchema(final SchemaNode schemaNode, final JsonPointer path)
+    {
+        final Trace trace = traces.get();
+
+        if (trace.depth == 0)
+            return;
+
+        final long[] visits = trace.paths.get(path);
+
+        if (visits != null)
+            visits[0]++;
+        else if (trace.paths.size() < maxPaths)
+            trace.paths.put(path, new long[] { 1L });
+        else
+            trace.otherPathVisits++;
+    }
+
+    @Override
+    public void exitSchema(final SchemaNode schemaNode, final JsonPointer path,
+        final long nanos, final boolean success)
+    {
+        final Trace trace = traces.get();
+
+        if (trace.depth == 0)
+            return;
+
+        final JsonNode schema = schemaNode.getNode();
+        final SchemaTime time = trace.schemas.get(schema);
+
+        if (time != null)
+            time.nanos += nanos;
+        else
+            trace.schemas.put(schema, new SchemaTime(schemaNode, nanos));
+    }
+
+    @Override
+    public void validatorCacheMiss(final SchemaContainer container,
+        final JsonNode schema, final long nanos)
+    {
+        locations.index(container);
+    }
+
+    @Override
+    public void validatorBuilt(final SchemaNode schemaNode,
+        final long resolveNanos, final long syntaxNanos, final long buildNanos,
+        final boolean success)
+    {
+        final Trace trace = traces.get();
+
+        if (trace.depth == 0)
+            return;
+
+        trace.validatorsBuilt++;
+        trace.buildNanos += resolveNanos + syntaxNanos + buildNanos;
+    }
+
+    @Override
+    public void refResolved(final SchemaNode source, final SchemaNode target,
+        final int hops)
+    {
+        final Trace trace = traces.get();
+
+        if (trace.depth > 0)
+            trace.refHops += hops;
+    }
+
+    @Override
+    public void regexMatched(final String regex)
+    {
+        final Trace trace = traces.get();
+
+        if (trace.depth > 0)
+            trace.regexMatches++;
+    }
+
+    private SlowValidation record(final Trace trace, final JsonRef locator,
+        final long nanos, final boolean success)
+    {
+        final Map<String, Long> schemaNanos = Maps.newHashMap();
+        String location;
+        Long total;
+
+        /*
+         * Different schema nodes may have the same location if they could not
+         * be located
+         */
+        for (final SchemaTime time: trace.schemas.values()) {
+            location = locations.locate(time.schemaNode);
+            total = schemaNanos.get(location);
+            schemaNanos.put(location, total == null ? time.nanos
+                : total + time.nanos);
+        }
+
+        final Map<String, Long> pathVisits = Maps.newHashMap();
+
+        for (final Map.Entry<JsonPointer, long[]> entry:
+            trace.paths.entrySet())
+            pathVisits.put(entry.getKey().toString(), entry.getValue()[0]);
+
+        return new SlowValidation(locator.toString(), nanos, success,
+            top(schemaNanos, topSchemas), top(pathVisits, topPaths),
+            trace.otherPathVisits,
+            trace.regexMatches, trace.refHops,
+            trace.validatorsBuilt, trace.buildNanos);
+    }
+
+    private static Map<String, Long> top(final Map<String, Long> map,
+        final int n)
+    {
+        final List<Map.Entry<String, Long>> entries
+            = Lists.newArrayList(map.entrySet());
+
+        Collections.sort(entries, DESCENDING);
+
+        final Map<String, Long> ret = new LinkedHashMap<String, Long>();
+
+        for (final Map.Entry<String, Long> entry:
+            entries.subList(0, Math.min(n, entries.size())))
+            ret.put(entry.getKey(), entry.getValue());
+
+        return ret;
+    }
+
+    /**
+     * Receiver of slow validation records
+     */
+    public interface Sink
+    {
+        /**
+         * Record a slow validation
+         *
+         * @param slowValidation the record
+         */
+        void record(final SlowValidation slowValidation);
+    }
+
+    /**
+     * State of the validation running in one thread
+     */
+    private static final class Trace
+    {
+        private int depth;
+        private long regexMatches;
+        private long refHops;
+        private long validatorsBuilt;
+        private long buildNanos;
+        private long otherPathVisits;
+
+        /**
+         * Times of schemas, by schema identity
+         */
+        private final Map<JsonNode, SchemaTime> schemas
+            = new IdentityHashMap<JsonNode, SchemaTime>();
+
+        /**
+         * Visits of instance paths
+         */
+        private final Map<JsonPointer, long[]> paths = Maps.newHashMap();
+
+        private void clear()
+        {
+            regexMatches = 0L;
+            refHops = 0L;
+            validatorsBuilt = 0L;
+            buildNanos = 0L;
+            otherPathVisits = 0L;
+            schemas.clear();
+            paths.clear();
+        }
+    }
+
+    private static final class SchemaTime
+    {
+        private final SchemaNode schemaNode;
+        private long nanos;
+
+        private SchemaTime(final SchemaNode schemaNode, final long nanos)
+        {
+            this.schemaNode = schemaNode;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Builder for a {@link SlowValidationLog}
+     */
+    public static final class Builder
+    {
+        /**
+         * Default threshold, in milliseconds
+         */
+        public static final long DEFAULT_THRESHOLD_MILLIS = 100L;
+
+        /**
+         * Default number of schemas and paths in a record
+         */
+        public static final int DEFAULT_TOP = 10;
+
+        /**
+         * Default maximum number of distinct paths tracked per validation
+         */
+        public static final int DEFAULT_MAX_PATHS = 4096;
+
+        private final Sink sink;
+
+        private long thresholdNanos
+            = TimeUnit.MILLISECONDS.toNanos(DEFAULT_THRESHOLD_MILLIS);
+        private int topSchemas = DEFAULT_TOP;
+        private int topPaths = DEFAULT_TOP;
+        private int maxPaths = DEFAULT_MAX_PATHS;
+
+        /**
+         * Constructor
+         *
+         * @param sink the receiver of records
+         * @throws NullPointerException sink is null
+         */
+        public Builder(final Sink sink)
+        {
+            Preconditions.checkNotNull(sink, "sink is null");
+            this.sink = sink;
+        }
+
+        /**
+         * Set the threshold above which a validation is recorded
+         *
+         * @param duration the duration
+         * @param unit the unit of the duration
+         * @return the builder
+         * @throws IllegalArgumentException duration is negative
+         * @throws NullPointerException unit is null
+         */
+        public Builder setThreshold(final long duration, final TimeUnit unit)
+        {
+            Preconditions.checkArgument(duration >= 0L,
+                "threshold must not be negative");
+            Preconditions.checkNotNull(unit, "unit is null");
+            thresholdNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Set the number of schemas in a record
+         *
+         * @param n the number of schemas
+         * @return the builder
+         * @throws IllegalArgumentException number is negative
+         */
+        public Builder setTopSchemas(final int n)
+        {
+            Preconditions.checkArgument(n >= 0,
+                "number of schemas must not be negative");
+            topSchemas = n;
+            return this;
+        }
+
+        /**
+         * Set the number of instance paths in a record
+         *
+         * @param n the number of paths
+         * @return the builder
+         * @throws IllegalArgumentException number is negative
+         */
+        public Builder setTopPaths(final int n)
+        {
+            Preconditions.checkArgument(n >= 0,
+                "number of paths must not be negative");
+            topPaths = n;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of distinct instance paths tracked per
+         * validation
+         *
+         * <p>Visits of paths beyond this number are only counted as a whole
+         * (see {@link SlowValidation#getOtherPathVisits()}).</p>
+         *
+         * @param maxPaths the number of paths
+         * @return the builder
+         * @throws IllegalArgumentException number is negative
+         */
+        public Builder setMaxPaths(final int maxPaths)
+        {
+            Preconditions.checkArgument(maxPaths >= 0,
+                "number of paths must not be negative");
+            this.maxPaths = maxPaths;
+            return this;
+        }
+
+        /**
+         * Build the log
+         *
+         * @return a new log
+         */
+        public SlowValidationLog build()
+        {
+            return new SlowValidationLog(this);
+        }
+    }
+}
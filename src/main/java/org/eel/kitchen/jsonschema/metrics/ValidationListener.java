@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Listener of validation events
+ *
+ * <p>A listener is installed on a factory with {@link
+ * JsonSchemaFactory.Builder#withValidationListener(ValidationListener)}, and
+ * receives events from all schemas of this factory:</p>
+ *
+ * <ul>
+ *     <li>the start and end of the validation of an instance by a {@link
+ *     org.eel.kitchen.jsonschema.main.JsonSchema};</li>
+ *     <li>entering and leaving a schema, with the inclusive time spent in it
+ *     (parents of a schema with {@code extends} are usually merged into it,
+ *     and have no such events of their own);</li>
+ *     <li>the evaluation of a keyword, with its inclusive time and result,
+ *     along with the schema this keyword belongs to;</li>
+ *     <li>hits and misses of the validator cache and of the schema registry;
+ *     </li>
+ *     <li>the time spent resolving, checking and building each validator on
+ *     a validator cache miss;</li>
+ *     <li>the content fetched from each URI;</li>
+ *     <li>JSON Reference resolutions.</li>
+ * </ul>
+ *
+ * <p>A listener may ask for fewer schema and keyword events, which are by far
+ * the most frequent ones, by overriding {@link #getGranularity()}.</p>
+ *
+ * <p>All methods of this class do nothing: override the ones you need. When
+ * no listener is installed, the factory uses {@link #noop()}, and validators
+ * neither read the clock nor build events: the cost of instrumentation is then
+ * one test of a final field per schema, per keyword list and per validator
+ * cache lookup.</p>
+ *
+ * <p>Note that the schema nodes of events may be in an anonymous container if
+ * equal subschemas share their validators (see {@link AggregatingListener} for
+ * a way to find their location anyway). Events can be delivered concurrently
+ * from all threads using the factory: implementations must be thread safe, and
+ * should be fast.</p>
+ *
+ * @see AggregatingListener
+ */
+public abstract class ValidationListener
+{
+    private static final ValidationListener NOOP = new ValidationListener()
+    {
+    };
+
+    /**
+     * Return the listener which does nothing
+     *
+     * @return the no-op listener
+     */
+    public static ValidationListener noop()
+    {
+        return NOOP;
+    }
+
+    /**
+     * Return a listener sending all events to several listeners, in order
+     *
+     * <p>No-op listeners are left out. The granularity of the returned
+     * listener is the finest of the granularities of the listeners.</p>
+     *
+     * @param listeners the listeners
+     * @return a listener ({@link #noop()} if all listeners are no-ops, or the
+     * only listener which is not)
+     * @throws NullPointerException one listener is null
+     */
+    public static ValidationListener combine(
+        final ValidationListener... listeners)
+    {
+        final List<ValidationListener> list = Lists.newArrayList();
+
+        for (final ValidationListener listener: listeners) {
+            Preconditions.checkNotNull(listener, "listener is null");
+            if (listener != NOOP)
+                list.add(listener);
+        }
+
+        if (list.isEmpty())
+            return NOOP;
+
+        return list.size() == 1 ? list.get(0) : new CompositeListener(list);
+    }
+
+    /**
+     * Return which schema and keyword events this listener wants
+     *
+     * <p>This is read each time a validation starts, and when programs are
+     * compiled: it should not change. The default is {@link
+     * Granularity#KEYWORDS}.</p>
+     *
+     * @return the granularity
+     */
+    public Granularity getGranularity()
+    {
+        return Granularity.KEYWORDS;
+    }
+
+    /**
+     * Called when the validation of an instance starts
+     *
+     * @param locator the locator of the schema container
+     * @param instance the instance
+     */
+    public void enterValidation(final JsonRef locator, final JsonNode instance)
+    {
+    }
+
+    /**
+     * Called when the validation of an instance ends
+     *
+     * <p>This is called even if validation throws an exception, in which case
+     * the validation is not a success.</p>
+     *
+     * @param locator the locator of the schema container
+     * @param instance the instance
+     * @param nanos the time spent, in nanoseconds
+     * @param success true if the instance is valid
+     */
+    public void exitValidation(final JsonRef locator, final JsonNode instance,
+        final long nanos, final boolean success)
+    {
+    }
+
+    /**
+     * Called before an instance is validated against a schema
+     *
+     * @param schemaNode the schema
+     * @param path the path of the instance
+     */
+    public void enterSchema(final SchemaNode schemaNode, final JsonPointer path)
+    {
+    }
+
+    /**
+     * Called after an instance is validated against a schema
+     *
+     * @param schemaNode the schema
+     * @param path the path of the instance
+     * @param nanos the time spent, in nanoseconds, including subschemas
+     * @param success true if no validation message was added
+     */
+    public void exitSchema(final SchemaNode schemaNode, final JsonPointer path,
+        final long nanos, final boolean success)
+    {
+    }
+
+    /**
+     * Called after a keyword is evaluated
+     *
+     * @param schemaNode the schema the keyword belongs to
+     * @param keyword the keyword
+     * @param nanos the time spent, in nanoseconds, including subschemas
+     * @param success true if no validation message was added
+     */
+    public void keyword(final SchemaNode schemaNode, final String keyword,
+        final long nanos, final boolean success)
+    {
+    }
+
+    /**
+     * Called when the validator of a schema is found in the validator cache
+     *
+     * @param container the schema container
+     * @param schema the schema
+     */
+    public void validatorCacheHit(final SchemaContainer container,
+        final JsonNode schema)
+    {
+    }
+
+    /**
+     * Called when the validator of a schema is built
+     *
+     * @param container the schema container
+     * @param schema the schema
+     * @param nanos the time spent, in nanoseconds, resolving, checking and
+     * building
+     */
+    public void validatorCacheMiss(final SchemaContainer container,
+        final JsonNode schema, final long nanos)
+    {
+    }
+
+    /**
+     * Called after the validator of a schema is built on a cache miss
+     *
+     * <p>If JSON Reference resolution fails, syntax and build times are 0; if
+     * syntax validation fails, build time is 0.</p>
+     *
+     * @param schemaNode the schema node, before JSON Reference resolution
+     * @param resolveNanos the time spent resolving JSON References
+     * @param syntaxNanos the time spent checking the syntax
+     * @param buildNanos the time spent building keyword validators
+     * @param success false if resolution or syntax validation failed
+     */
+    public void validatorBuilt(final SchemaNode schemaNode,
+        final long resolveNanos, final long syntaxNanos, final long buildNanos,
+        final boolean success)
+    {
+    }
+
+    /**
+     * Called after the content of an URI is fetched and parsed
+     *
+     * <p>This is not called if fetching or parsing fails.</p>
+     *
+     * @param uri the URI (after redirection, if any)
+     * @param bytes the number of bytes read
+     * @param nanos the time spent fetching and parsing, in nanoseconds
+     */
+    public void contentFetched(final URI uri, final long bytes,
+        final long nanos)
+    {
+    }
+
+    /**
+     * Called when a schema container is found in the schema registry
+     *
+     * @param uri the URI
+     */
+    public void registryHit(final URI uri)
+    {
+    }
+
+    /**
+     * Called when a schema container is loaded by the schema registry
+     *
+     * <p>This is called even if loading fails.</p>
+     *
+     * @param uri the URI
+     * @param nanos the time spent, in nanoseconds, fetching the schema
+     */
+    public void registryMiss(final URI uri, final long nanos)
+    {
+    }
+
+    /**
+     * Called when a schema with a JSON Reference is resolved
+     *
+     * @param source the schema with the reference
+     * @param target the resolved schema
+     * @param hops the number of references followed
+     */
+    public void refResolved(final SchemaNode source, final SchemaNode target,
+        final int hops)
+    {
+    }
+
+    /**
+     * Called when an ECMA 262 regex is run against a string instance or a
+     * member name
+     *
+     * <p>Unlike other events, this is only sent if this listener wants schema
+     * events (see {@link #getGranularity()}), so that uninstrumented
+     * validations do not pay for it. Matches answered by a {@link
+     * org.eel.kitchen.jsonschema.validator.ResultMemo} do not run the regex,
+     * and are not reported.</p>
+     *
+     * @param regex the regex
+     */
+    public void regexMatched(final String regex)
+    {
+    }
+
+    /**
+     * Granularity of schema and keyword events
+     *
+     * <p>Each granularity includes the events of the previous ones. Other
+     * events are always sent.</p>
+     */
+    public enum Granularity
+    {
+        /**
+         * No schema or keyword events
+         */
+        VALIDATIONS,
+        /**
+         * Schema events for object and array instances only
+         *
+         * <p>This is much cheaper than {@link #SCHEMAS}, since most instances
+         * are usually scalars, yet still accounts for all of the time spent
+         * (the time spent in a scalar is included in the time of its parent).
+         * </p>
+         */
+        CONTAINERS,
+        /**
+         * Schema events for all instances
+         */
+        SCHEMAS,
+        /**
+         * Schema events for all instances, and keyword events
+         */
+        KEYWORDS
+    }
+}
@@ -18,6 +18,7 @@
 package org.eel.kitchen.jsonschema.ref;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.eel.kitchen.jsonschema.main.JsonSchemaException;
 
@@ -135,6 +136,9 @@ public final class SchemaContainer
     /**
      * Strip an object instance off its {@code id} member, if any
      *
+     * <p>The copy is shallow: members other than {@code id} are shared with
+     * the original schema, which is therefore not retained twice.</p>
+     *
      * @param schema the victim
      * @return the copy
      */
@@ -143,8 +147,9 @@ public final class SchemaContainer
         if (!schema.has("id"))
             return schema;
 
-        final ObjectNode ret = schema.deepCopy();
+        final ObjectNode ret = JsonNodeFactory.instance.objectNode();
 
+        ret.putAll((ObjectNode) schema);
         ret.remove("id");
         return ret;
     }
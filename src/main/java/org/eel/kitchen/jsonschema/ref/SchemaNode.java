@@ -42,10 +42,27 @@ public final class SchemaNode
     private final int hashCode;
 
     public SchemaNode(final SchemaContainer container, final JsonNode node)
+    {
+        this(container, node, node.hashCode());
+    }
+
+    /**
+     * Constructor with an already computed hash code for the schema
+     *
+     * <p>Computing the hash code of a {@link JsonNode} requires walking it
+     * entirely. Use this constructor if you have it already: {@code
+     * nodeHashCode} <b>must</b> be equal to {@code node.hashCode()}.</p>
+     *
+     * @param container the schema container
+     * @param node the schema
+     * @param nodeHashCode the hash code of the schema
+     */
+    public SchemaNode(final SchemaContainer container, final JsonNode node,
+        final int nodeHashCode)
     {
         this.container = container;
         this.node = node;
-        hashCode = 31 * container.hashCode() + node.hashCode();
+        hashCode = 31 * container.hashCode() + nodeHashCode;
     }
 
     public SchemaContainer getContainer()
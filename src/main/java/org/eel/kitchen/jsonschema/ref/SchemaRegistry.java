@@ -19,15 +19,22 @@ package org.eel.kitchen.jsonschema.ref;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import org.eel.kitchen.jsonschema.main.JsonSchemaException;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
 import org.eel.kitchen.jsonschema.report.ValidationDomain;
 import org.eel.kitchen.jsonschema.report.ValidationMessage;
 import org.eel.kitchen.jsonschema.uri.URIManager;
 
 import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -53,6 +60,22 @@ public final class SchemaRegistry
      */
     private final LoadingCache<URI, SchemaContainer> cache;
 
+    /**
+     * The loader of {@link #cache}
+     */
+    private final CacheLoader<URI, SchemaContainer> loader;
+
+    /**
+     * Preloaded schema contents, by URI
+     */
+    private final Map<URI, Supplier<JsonNode>> preloaded
+        = Maps.newConcurrentMap();
+
+    /**
+     * Listener to validation events
+     */
+    private final ValidationListener listener;
+
     /**
      * Constructor
      *
@@ -61,17 +84,43 @@ public final class SchemaRegistry
      */
     public SchemaRegistry(final URIManager manager, final URI namespace)
     {
+        this(manager, namespace, ValidationListener.noop());
+    }
+
+    /**
+     * Constructor with a validation listener
+     *
+     * <p>The listener is told about hits and misses of this registry, and is
+     * also used by validator caches built over this registry (see {@link
+     * #getListener()}).</p>
+     *
+     * @param manager the URI manager to use
+     * @param namespace this registry's namespace
+     * @param listener the validation listener
+     * @throws NullPointerException listener is null
+     */
+    public SchemaRegistry(final URIManager manager, final URI namespace,
+        final ValidationListener listener)
+    {
+        Preconditions.checkNotNull(listener, "listener must not be null");
         this.namespace = namespace.normalize();
-        cache = CacheBuilder.newBuilder().maximumSize(100L)
-            .build(new CacheLoader<URI, SchemaContainer>()
+        this.listener = listener;
+        loader = new CacheLoader<URI, SchemaContainer>()
+        {
+            @Override
+            public SchemaContainer load(final URI key)
+                throws JsonSchemaException
             {
-                @Override
-                public SchemaContainer load(final URI key)
-                    throws JsonSchemaException
-                {
-                    return new SchemaContainer(key, manager.getContent(key));
-                }
-            });
+                final Supplier<JsonNode> supplier = preloaded.get(key);
+                final JsonNode content
+                    = supplier == null ? null : supplier.get();
+
+                return new SchemaContainer(key, content != null ? content
+                    : manager.getContent(key));
+            }
+        };
+        cache = CacheBuilder.newBuilder().maximumSize(100L).recordStats()
+            .build(loader);
     }
 
     /**
@@ -94,6 +143,38 @@ public final class SchemaRegistry
         return container;
     }
 
+    /**
+     * Preload the content of an URI
+     *
+     * <p>The supplier will be asked for the content instead of the URI manager
+     * whenever the schema at this URI is needed. If it returns {@code null},
+     * the content is fetched by the URI manager as usual.</p>
+     *
+     * @param uri the URI (resolved against this registry's namespace)
+     * @param content the supplier of the content
+     * @throws NullPointerException URI or supplier is null
+     */
+    public void preload(final URI uri, final Supplier<JsonNode> content)
+    {
+        Preconditions.checkNotNull(uri, "cannot preload null URI");
+        Preconditions.checkNotNull(content, "null content supplier");
+
+        preloaded.put(namespace.resolve(uri).normalize(), content);
+    }
+
+    /**
+     * Get all schema containers currently in this registry, by URI
+     *
+     * <p>Only containers with an absolute locator, which were either
+     * registered or fetched, are returned.</p>
+     *
+     * @return an immutable map of containers
+     */
+    public Map<URI, SchemaContainer> getContainers()
+    {
+        return ImmutableMap.copyOf(cache.asMap());
+    }
+
     /**
      * Get a schema container from the given URI
      *
@@ -110,7 +191,9 @@ public final class SchemaRegistry
         final URI realURI = namespace.resolve(uri).normalize();
 
         try {
-            return cache.get(realURI);
+            if (listener == ValidationListener.noop())
+                return cache.get(realURI);
+            return instrumentedGet(realURI);
         } catch (ExecutionException e) {
             final ValidationMessage.Builder msg
                 = new ValidationMessage.Builder(ValidationDomain.REF_RESOLVING)
@@ -121,4 +204,85 @@ public final class SchemaRegistry
             throw new JsonSchemaException(msg.build());
         }
     }
+
+    /**
+     * Get hit/miss statistics of this registry
+     *
+     * @return the statistics
+     */
+    public CacheStats stats()
+    {
+        return cache.stats();
+    }
+
+    /**
+     * Get the number of schema containers in this registry
+     *
+     * @return the number of containers
+     */
+    public long size()
+    {
+        return cache.size();
+    }
+
+    /**
+     * Return the validation listener of this registry
+     *
+     * @return the listener (never null, but possibly a no-op)
+     */
+    public ValidationListener getListener()
+    {
+        return listener;
+    }
+
+    /**
+     * Get a container, telling the listener whether it was in the cache
+     *
+     * <p>The container is obtained from the cache itself, so that it records
+     * statistics as usual; the miss, if any, is detected by the loading
+     * callable.</p>
+     *
+     * @param uri the normalized URI
+     * @return the container
+     * @throws ExecutionException failed to load the container
+     */
+    private SchemaContainer instrumentedGet(final URI uri)
+        throws ExecutionException
+    {
+        final long start = System.nanoTime();
+        final MissDetector detector = new MissDetector(uri);
+        final SchemaContainer ret = cache.get(uri, detector);
+
+        if (detector.loaded)
+            listener.registryMiss(uri, System.nanoTime() - start);
+        else
+            listener.registryHit(uri);
+        return ret;
+    }
+
+    /**
+     * Loading callable remembering whether it was called
+     *
+     * <p>It is only called by the cache on a miss, and delegates to the loader
+     * of the cache.</p>
+     */
+    private final class MissDetector
+        implements Callable<SchemaContainer>
+    {
+        private final URI uri;
+        private boolean loaded = false;
+
+        private MissDetector(final URI uri)
+        {
+            this.uri = uri;
+        }
+
+        @Override
+        public SchemaContainer call()
+            throws Exception
+        {
+            loaded = true;
+            return loader.load(uri);
+        }
+    }
 }
@@ -133,6 +133,16 @@ public final class ValidationReport
         msgMap.putAll(path, messages);
     }
 
+    /**
+     * Return the number of messages in this report
+     *
+     * @return the number of messages
+     */
+    public int size()
+    {
+        return msgMap.size();
+    }
+
     /**
      * Is this report a success?
      *
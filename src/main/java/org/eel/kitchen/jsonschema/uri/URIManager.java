@@ -21,9 +21,13 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.io.CountingInputStream;
 import org.eel.kitchen.jsonschema.keyword.NumericKeywordValidator;
 import org.eel.kitchen.jsonschema.main.JsonSchemaException;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
 import org.eel.kitchen.jsonschema.ref.JsonRef;
 import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
 import org.eel.kitchen.jsonschema.report.ValidationDomain;
@@ -36,6 +40,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Class to fetch JSON documents
@@ -81,6 +86,11 @@ public class URIManager
      */
     private final Map<URI, URI> URIRedirections = Maps.newHashMap();
 
+    /**
+     * Listener told about fetched content
+     */
+    private ValidationListener listener = ValidationListener.noop();
+
     public URIManager()
     {
         downloaders.put("http", DefaultURIDownloader.getInstance());
@@ -166,6 +176,38 @@ public class URIManager
         URIRedirections.put(sourceURI, destURI);
     }
 
+    /**
+     * Get the schemes of registered downloaders
+     *
+     * @return an immutable set of schemes
+     */
+    public Set<String> getSchemes()
+    {
+        return ImmutableSet.copyOf(downloaders.keySet());
+    }
+
+    /**
+     * Get the URI redirections
+     *
+     * @return an immutable map of target URIs, by source URI
+     */
+    public Map<URI, URI> getRedirections()
+    {
+        return ImmutableMap.copyOf(URIRedirections);
+    }
+
+    /**
+     * Set the listener to tell about fetched content
+     *
+     * @param listener the listener
+     * @throws NullPointerException listener is null
+     */
+    public void setValidationListener(final ValidationListener listener)
+    {
+        Preconditions.checkNotNull(listener, "listener is null");
+        this.listener = listener;
+    }
+
     /**
      * Get the content at a given URI as a {@link JsonNode}
      *
@@ -197,6 +239,8 @@ public class URIManager
             throw new JsonSchemaException(msg.build());
         }
 
+        final boolean timed = listener != ValidationListener.noop();
+        final long start = timed ? System.nanoTime() : 0L;
         final InputStream in;
 
         try {
@@ -209,7 +253,13 @@ public class URIManager
         try {
             // Note: ObjectMapper's .readTree() closes the InputStream after it
             // is done with it!
-            return mapper.readTree(in);
+            if (!timed)
+                return mapper.readTree(in);
+            final CountingInputStream counting = new CountingInputStream(in);
+            final JsonNode ret = mapper.readTree(counting);
+            listener.contentFetched(target, counting.getCount(),
+                System.nanoTime() - start);
+            return ret;
         } catch (IOException e) {
             msg.setMessage("content fetched from URI is not valid JSON");
             throw new JsonSchemaException(msg.build(), e);
@@ -129,7 +129,7 @@ public enum NodeType
         final JsonToken token = node.asToken();
         final NodeType ret = reverseMap.get(token);
 
-        Preconditions.checkNotNull(ret, "unhandled token type " + token);
+        Preconditions.checkNotNull(ret, "unhandled token type %s", token);
 
         return ret;
     }
@@ -144,6 +144,5 @@ public final class RhinoHelper
         } finally {
             Context.exit();
         }
-
     }
 }
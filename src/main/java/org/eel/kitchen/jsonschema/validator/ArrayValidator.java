@@ -19,12 +19,14 @@ package org.eel.kitchen.jsonschema.validator;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import org.eel.kitchen.jsonschema.ref.JsonPointer;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
 import org.eel.kitchen.jsonschema.util.JacksonUtils;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Validator called for array instance children
@@ -50,7 +52,24 @@ final class ArrayValidator
 
     private final List<JsonNode> items;
 
+    /**
+     * Trivially true subschemas, by identity
+     */
+    private final Set<JsonNode> trivial;
+
     ArrayValidator(final JsonNode schema)
+    {
+        this(schema, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param schema the schema
+     * @param optimizer the optimizer, {@code null} if subschemas should not be
+     * checked for triviality
+     */
+    ArrayValidator(final JsonNode schema, final SchemaOptimizer optimizer)
     {
         JsonNode node;
 
@@ -59,15 +78,38 @@ final class ArrayValidator
         if (node.isObject()) {
             additionalItems = node;
             items = Collections.emptyList();
-            return;
+        } else {
+            // We know that if "items" is not an object, it is an array
+            items = ImmutableList.copyOf(node);
+            node = schema.path("additionalItems");
+            additionalItems = node.isObject() ? node
+                : JacksonUtils.emptySchema();
         }
 
-        // We know that if "items" is not an object, it is an array
-        items = ImmutableList.copyOf(node);
+        trivial = optimizer == null ? Collections.<JsonNode>emptySet()
+            : optimizer.triviallyTrue(getAllSchemas());
+    }
 
-        node = schema.path("additionalItems");
+    /**
+     * Tell whether all subschemas which may apply to elements are trivially
+     * true
+     *
+     * @return true if elements never need to be validated
+     */
+    boolean isTriviallyTrue()
+    {
+        return trivial.containsAll(getAllSchemas());
+    }
 
-        additionalItems = node.isObject() ? node : JacksonUtils.emptySchema();
+    /**
+     * Tell whether a subschema is trivially true
+     *
+     * @param subSchema the subschema
+     * @return true if elements never need to be validated against it
+     */
+    boolean isTriviallyTrue(final JsonNode subSchema)
+    {
+        return trivial.contains(subSchema);
     }
 
     @Override
@@ -80,9 +122,11 @@ final class ArrayValidator
         JsonValidator validator;
 
         for (int i = 0; i < instance.size(); i++) {
+            subSchema = getSchema(i);
+            if (trivial.contains(subSchema))
+                continue;
             report.setPath(pwd.append(i));
             element = instance.get(i);
-            subSchema = getSchema(i);
             validator = context.newValidator(subSchema);
             validator.validate(context, report, element);
         }
@@ -91,7 +135,29 @@ final class ArrayValidator
         return false;
     }
 
-    private JsonNode getSchema(final int index)
+    /**
+     * Get all subschemas which can apply to a child instance
+     *
+     * @return the subschemas (may contain duplicates)
+     */
+    List<JsonNode> getAllSchemas()
+    {
+        final List<JsonNode> ret = Lists.newArrayList(items);
+        ret.add(additionalItems);
+        return ret;
+    }
+
+    List<JsonNode> getItems()
+    {
+        return items;
+    }
+
+    JsonNode getAdditionalItems()
+    {
+        return additionalItems;
+    }
+
+    JsonNode getSchema(final int index)
     {
         return index >= items.size() ? additionalItems : items.get(index);
     }
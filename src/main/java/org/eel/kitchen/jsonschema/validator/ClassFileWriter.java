@@ -0,0 +1,715 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal writer of JVM class files
+ *
+ * <p>This writer only supports what {@link ValidatorGenerator} needs: one
+ * class, with methods but no fields, and a subset of the instruction set.
+ * Class files are of version 49 (Java 5): this version has no stack map
+ * frames, which would otherwise have to be computed for each branch target;
+ * the verifier infers them instead.</p>
+ *
+ * <p>Names use the internal form ({@code java/lang/Object}), and types their
+ * descriptor form ({@code Ljava/lang/Object;}).</p>
+ */
+final class ClassFileWriter
+{
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PROTECTED = 0x0004;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteBuffer pool = new ByteBuffer();
+
+    /**
+     * Indices of constants, by tag and value
+     */
+    private final Map<String, Integer> constants = Maps.newHashMap();
+
+    private int poolSize = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<Code> methods = Lists.newArrayList();
+
+    /**
+     * Constructor
+     *
+     * @param name the name of the class
+     * @param superName the name of its superclass
+     */
+    ClassFileWriter(final String name, final String superName)
+    {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    /**
+     * Add a method
+     *
+     * <p>The method is written when the class is, from the instructions
+     * added to the returned code by then.</p>
+     *
+     * @param access the access flags
+     * @param name the method name
+     * @param descriptor the method descriptor
+     * @return the code of the method
+     */
+    Code method(final int access, final String name, final String descriptor)
+    {
+        final Code ret = new Code(access, utf8(name), utf8(descriptor));
+
+        methods.add(ret);
+        return ret;
+    }
+
+    /**
+     * Write the class file
+     *
+     * @return the class file
+     * @throws IllegalStateException a method is too large
+     */
+    byte[] toByteArray()
+    {
+        final ByteBuffer out = new ByteBuffer();
+        final int code = utf8("Code");
+
+        out.putInt(MAGIC).putShort(0).putShort(VERSION);
+        out.putShort(poolSize).put(pool);
+        out.putShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.putShort(thisClass).putShort(superClass);
+        // No interfaces, no fields
+        out.putShort(0).putShort(0);
+        out.putShort(methods.size());
+        for (final Code method: methods)
+            method.writeTo(out, code);
+        // No class attributes
+        out.putShort(0);
+        return out.toByteArray();
+    }
+
+    int classRef(final String name)
+    {
+        final String key = "C" + name;
+        final Integer index = constants.get(key);
+
+        if (index != null)
+            return index;
+
+        final int nameIndex = utf8(name);
+
+        pool.put(CONSTANT_CLASS).putShort(nameIndex);
+        return newConstant(key, 1);
+    }
+
+    int fieldRef(final String owner, final String name, final String type)
+    {
+        return memberRef(CONSTANT_FIELDREF, owner, name, type);
+    }
+
+    int methodRef(final String owner, final String name,
+        final String descriptor)
+    {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(final String owner, final String name,
+        final String descriptor)
+    {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name,
+            descriptor);
+    }
+
+    private int memberRef(final int tag, final String owner, final String name,
+        final String type)
+    {
+        final String key = "M" + tag + owner + '.' + name + type;
+        final Integer index = constants.get(key);
+
+        if (index != null)
+            return index;
+
+        final int ownerIndex = classRef(owner);
+        final int nameAndType = nameAndType(name, type);
+
+        pool.put(tag).putShort(ownerIndex).putShort(nameAndType);
+        return newConstant(key, 1);
+    }
+
+    private int nameAndType(final String name, final String type)
+    {
+        final String key = "N" + name + ' ' + type;
+        final Integer index = constants.get(key);
+
+        if (index != null)
+            return index;
+
+        final int nameIndex = utf8(name);
+        final int typeIndex = utf8(type);
+
+        pool.put(CONSTANT_NAME_AND_TYPE).putShort(nameIndex)
+            .putShort(typeIndex);
+        return newConstant(key, 1);
+    }
+
+    private int string(final String value)
+    {
+        final String key = "S" + value;
+        final Integer index = constants.get(key);
+
+        if (index != null)
+            return index;
+
+        final int valueIndex = utf8(value);
+
+        pool.put(CONSTANT_STRING).putShort(valueIndex);
+        return newConstant(key, 1);
+    }
+
+    private int integer(final int value)
+    {
+        final String key = "I" + value;
+        final Integer index = constants.get(key);
+
+        if (index != null)
+            return index;
+
+        pool.put(CONSTANT_INTEGER).putInt(value);
+        return newConstant(key, 1);
+    }
+
+    private int longConstant(final long value)
+    {
+        final String key = "J" + value;
+        final Integer index = constants.get(key);
+
+        if (index != null)
+            return index;
+
+        pool.put(CONSTANT_LONG).putInt((int) (value >>> 32))
+            .putInt((int) value);
+        // A long takes two entries in the constant pool
+        return newConstant(key, 2);
+    }
+
+    private int utf8(final String value)
+    {
+        final String key = "U" + value;
+        final Integer index = constants.get(key);
+
+        if (index != null)
+            return index;
+
+        pool.put(CONSTANT_UTF8).putUtf8(value);
+        return newConstant(key, 1);
+    }
+
+    private int newConstant(final String key, final int entries)
+    {
+        final int ret = poolSize;
+
+        poolSize += entries;
+        if (poolSize > 0xFFFF)
+            throw new IllegalStateException("constant pool too large");
+        constants.put(key, ret);
+        return ret;
+    }
+
+    /**
+     * The opcodes used by generated code
+     */
+    static final class Opcodes
+    {
+        static final int ACONST_NULL = 0x01;
+        static final int ICONST_0 = 0x03;
+        static final int LCONST_0 = 0x09;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC = 0x12;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int ILOAD = 0x15;
+        static final int ALOAD = 0x19;
+        static final int ILOAD_0 = 0x1A;
+        static final int ISTORE = 0x36;
+        static final int ASTORE = 0x3A;
+        static final int ISTORE_0 = 0x3B;
+        static final int AALOAD = 0x32;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int LREM = 0x71;
+        static final int IINC = 0x84;
+        static final int LCMP = 0x94;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9A;
+        static final int IFLT = 0x9B;
+        static final int IFGE = 0x9C;
+        static final int IFGT = 0x9D;
+        static final int IFLE = 0x9E;
+        static final int IF_ICMPLT = 0xA1;
+        static final int IF_ICMPGE = 0xA2;
+        static final int IF_ICMPGT = 0xA3;
+        static final int IF_ICMPLE = 0xA4;
+        static final int IF_ACMPEQ = 0xA5;
+        static final int IF_ACMPNE = 0xA6;
+        static final int GOTO = 0xA7;
+        static final int TABLESWITCH = 0xAA;
+        static final int LOOKUPSWITCH = 0xAB;
+        static final int RETURN = 0xB1;
+        static final int GETSTATIC = 0xB2;
+        static final int GETFIELD = 0xB4;
+        static final int INVOKEVIRTUAL = 0xB6;
+        static final int INVOKESPECIAL = 0xB7;
+        static final int INVOKESTATIC = 0xB8;
+        static final int INVOKEINTERFACE = 0xB9;
+        static final int CHECKCAST = 0xC0;
+        static final int IFNULL = 0xC6;
+        static final int IFNONNULL = 0xC7;
+
+        private Opcodes()
+        {
+        }
+    }
+
+    /**
+     * A branch target
+     */
+    static final class Label
+    {
+        /**
+         * Offset in the code, -1 until placed
+         */
+        private int position = -1;
+
+        /**
+         * Instructions referring to this label before it is placed: pairs of
+         * the offset of the instruction, and of its operand
+         */
+        private final List<int[]> references = Lists.newArrayList();
+    }
+
+    /**
+     * The code of a method
+     */
+    final class Code
+    {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final ByteBuffer code = new ByteBuffer();
+
+        private int maxStack;
+        private int maxLocals;
+
+        private Code(final int access, final int name, final int descriptor)
+        {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        /**
+         * Set the maximum stack depth and number of local variables
+         *
+         * @param maxStack the maximum stack depth
+         * @param maxLocals the number of local variable slots (arguments and
+         * {@code this} included)
+         * @return this
+         */
+        Code setMaxs(final int maxStack, final int maxLocals)
+        {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+            return this;
+        }
+
+        /**
+         * Add an instruction without operands
+         *
+         * @param opcode the opcode
+         * @return this
+         */
+        Code op(final int opcode)
+        {
+            code.put(opcode);
+            return this;
+        }
+
+        /**
+         * Add an instruction on a local variable
+         *
+         * @param opcode the opcode ({@link Opcodes#ALOAD}, etc)
+         * @param index the index of the variable
+         * @return this
+         */
+        Code var(final int opcode, final int index)
+        {
+            if (index > 3) {
+                code.put(opcode).put(index);
+                return this;
+            }
+
+            // Variables 0 to 3 have one byte instructions: iload_0, etc
+            if (opcode < Opcodes.ISTORE)
+                return op(Opcodes.ILOAD_0 + (opcode - Opcodes.ILOAD) * 4
+                    + index);
+            return op(Opcodes.ISTORE_0 + (opcode - Opcodes.ISTORE) * 4 + index);
+        }
+
+        /**
+         * Add an instruction with a constant pool index
+         *
+         * @param opcode the opcode
+         * @param index the index
+         * @return this
+         */
+        Code ref(final int opcode, final int index)
+        {
+            code.put(opcode).putShort(index);
+            return this;
+        }
+
+        Code field(final int opcode, final String owner, final String name,
+            final String type)
+        {
+            return ref(opcode, fieldRef(owner, name, type));
+        }
+
+        Code invoke(final int opcode, final String owner, final String name,
+            final String descriptor)
+        {
+            return ref(opcode, methodRef(owner, name, descriptor));
+        }
+
+        /**
+         * Add an {@code invokeinterface} instruction
+         *
+         * @param owner the interface
+         * @param name the method name
+         * @param descriptor the method descriptor
+         * @param argSlots the number of argument slots, the receiver included
+         * @return this
+         */
+        Code invokeInterface(final String owner, final String name,
+            final String descriptor, final int argSlots)
+        {
+            code.put(Opcodes.INVOKEINTERFACE)
+                .putShort(interfaceMethodRef(owner, name, descriptor))
+                .put(argSlots).put(0);
+            return this;
+        }
+
+        Code type(final int opcode, final String name)
+        {
+            return ref(opcode, classRef(name));
+        }
+
+        /**
+         * Push an {@code int}
+         *
+         * @param value the value
+         * @return this
+         */
+        Code push(final int value)
+        {
+            if (value >= -1 && value <= 5)
+                return op(Opcodes.ICONST_0 + value);
+            if (value == (byte) value) {
+                code.put(Opcodes.BIPUSH).put(value);
+                return this;
+            }
+            if (value == (short) value) {
+                code.put(Opcodes.SIPUSH).putShort(value);
+                return this;
+            }
+            return ldc(integer(value));
+        }
+
+        Code push(final long value)
+        {
+            if (value == 0L || value == 1L)
+                return op(Opcodes.LCONST_0 + (int) value);
+            return ref(Opcodes.LDC2_W, longConstant(value));
+        }
+
+        Code push(final String value)
+        {
+            return ldc(string(value));
+        }
+
+        private Code ldc(final int index)
+        {
+            if (index <= 0xFF) {
+                code.put(Opcodes.LDC).put(index);
+                return this;
+            }
+            return ref(Opcodes.LDC_W, index);
+        }
+
+        /**
+         * Add a branch instruction
+         *
+         * @param opcode the opcode ({@link Opcodes#GOTO}, {@link
+         * Opcodes#IFEQ}, etc)
+         * @param label the target
+         * @return this
+         */
+        Code jump(final int opcode, final Label label)
+        {
+            final int at = code.size();
+
+            code.put(opcode);
+            reference(label, at, 2);
+            return this;
+        }
+
+        Code iinc(final int index, final int increment)
+        {
+            code.put(Opcodes.IINC).put(index).put(increment);
+            return this;
+        }
+
+        /**
+         * Add a {@code lookupswitch} instruction
+         *
+         * @param keys the keys, in increasing order
+         * @param labels the targets of the keys
+         * @param dflt the default target
+         * @return this
+         */
+        Code lookupSwitch(final int[] keys, final Label[] labels,
+            final Label dflt)
+        {
+            final int at = switchHeader(Opcodes.LOOKUPSWITCH);
+
+            reference(dflt, at, 4);
+            code.putInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                code.putInt(keys[i]);
+                reference(labels[i], at, 4);
+            }
+            return this;
+        }
+
+        /**
+         * Add a {@code tableswitch} instruction for keys 0 to {@code
+         * labels.length - 1}
+         *
+         * @param labels the targets of the keys
+         * @param dflt the default target
+         * @return this
+         */
+        Code tableSwitch(final Label[] labels, final Label dflt)
+        {
+            final int at = switchHeader(Opcodes.TABLESWITCH);
+
+            reference(dflt, at, 4);
+            code.putInt(0).putInt(labels.length - 1);
+            for (final Label label: labels)
+                reference(label, at, 4);
+            return this;
+        }
+
+        private int switchHeader(final int opcode)
+        {
+            final int ret = code.size();
+
+            code.put(opcode);
+            while (code.size() % 4 != 0)
+                code.put(0);
+            return ret;
+        }
+
+        /**
+         * Place a label at the current offset
+         *
+         * @param label the label
+         * @return this
+         */
+        Code mark(final Label label)
+        {
+            label.position = code.size();
+            for (final int[] reference: label.references)
+                write(reference[1], label.position - reference[0],
+                    reference[2]);
+            label.references.clear();
+            return this;
+        }
+
+        /**
+         * Add a branch offset operand
+         *
+         * <p>Offsets are relative to the branching instruction; they are
+         * written when the label is placed if it is not yet.</p>
+         *
+         * @param label the target
+         * @param at the offset of the branching instruction
+         * @param width the width of the operand (2 or 4)
+         */
+        private void reference(final Label label, final int at,
+            final int width)
+        {
+            final int operand = code.size();
+
+            if (width == 2)
+                code.putShort(0);
+            else
+                code.putInt(0);
+
+            if (label.position >= 0)
+                write(operand, label.position - at, width);
+            else
+                label.references.add(new int[] { at, operand, width });
+        }
+
+        private void write(final int operand, final int offset,
+            final int width)
+        {
+            if (width == 2 && offset != (short) offset)
+                throw new IllegalStateException("branch offset too large");
+            code.set(operand, offset, width);
+        }
+
+        private void writeTo(final ByteBuffer out, final int codeAttribute)
+        {
+            if (code.size() > 0xFFFF)
+                throw new IllegalStateException("method too large");
+
+            out.putShort(access).putShort(name).putShort(descriptor);
+            // One attribute: Code
+            out.putShort(1).putShort(codeAttribute);
+            out.putInt(12 + code.size());
+            out.putShort(maxStack).putShort(maxLocals);
+            out.putInt(code.size()).put(code);
+            // No exception table, no attributes
+            out.putShort(0).putShort(0);
+        }
+    }
+
+    /**
+     * A growable big endian byte buffer
+     */
+    private static final class ByteBuffer
+    {
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        private int size()
+        {
+            return size;
+        }
+
+        private ByteBuffer put(final int b)
+        {
+            ensure(1);
+            bytes[size++] = (byte) b;
+            return this;
+        }
+
+        private ByteBuffer putShort(final int s)
+        {
+            return put(s >>> 8).put(s);
+        }
+
+        private ByteBuffer putInt(final int i)
+        {
+            return putShort(i >>> 16).putShort(i);
+        }
+
+        private ByteBuffer put(final ByteBuffer other)
+        {
+            ensure(other.size);
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+            return this;
+        }
+
+        /**
+         * Write a string in the modified UTF-8 of class files
+         *
+         * @param s the string
+         * @return this
+         */
+        private ByteBuffer putUtf8(final String s)
+        {
+            final int start = size;
+
+            putShort(0);
+
+            char c;
+
+            for (int i = 0; i < s.length(); i++) {
+                c = s.charAt(i);
+                if (c >= 0x01 && c <= 0x7F)
+                    put(c);
+                else if (c <= 0x7FF)
+                    put(0xC0 | c >> 6).put(0x80 | c & 0x3F);
+                else
+                    put(0xE0 | c >> 12).put(0x80 | c >> 6 & 0x3F)
+                        .put(0x80 | c & 0x3F);
+            }
+
+            final int length = size - start - 2;
+
+            if (length > 0xFFFF)
+                throw new IllegalStateException("string constant too long");
+            set(start, length, 2);
+            return this;
+        }
+
+        private void set(final int offset, final int value, final int width)
+        {
+            for (int i = 0; i < width; i++)
+                bytes[offset + i] = (byte) (value >>> 8 * (width - 1 - i));
+        }
+
+        private void ensure(final int length)
+        {
+            if (size + length > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2,
+                    size + length));
+        }
+
+        private byte[] toByteArray()
+        {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.eel.kitchen.jsonschema.keyword.ExtendsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.NodeType;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A validator for a schema with {@code extends}, with its parents flattened
+ *
+ * <p>At runtime, {@link ExtendsKeywordValidator} looks up the validator of
+ * each parent schema in the validator cache, which resolves it if it is a JSON
+ * Reference; each parent then does the same for its own parents.</p>
+ *
+ * <p>This validator does all of this once instead: it is a single list of
+ * steps, where the {@code extends} keyword of a schema is replaced with the
+ * steps of its parents, recursively. A step is either a keyword validator, or
+ * the validation of children of the instance, along with the schema container
+ * to use. Steps come in the exact order in which the original validators
+ * would have run them, so that reports are the same.</p>
+ *
+ * <p>Subschemas which apply to children (in {@code properties}, {@code
+ * items}, etc) are resolved when flattening too, JSON References included,
+ * and each is bound to the flattened validator of its target: children are
+ * then validated without any lookup in the validator cache, nor any JSON
+ * Reference to follow. The flattened validator of a schema is built once, and
+ * shared by all schemas referring to it (see {@link
+ * InstanceValidator#getFlattened(Set)}). Trivially true subschemas are
+ * skipped.</p>
+ *
+ * <p>A parent or subschema which is already being flattened (ie, which is
+ * recursive) is kept as a link: a parent is kept as a call to its validator,
+ * and a subschema is bound to the flattened validator of its target on first
+ * use. Subschemas which fail to resolve are looked up in the validator cache
+ * at validation time, so that the error only occurs if an instance needs
+ * them; subschemas which fail syntax validation are kept as their failing
+ * validator.</p>
+ *
+ * <p>Note that constraints are not merged: a parent's {@code minimum} is
+ * still checked separately from the child's {@code minimum}, since both
+ * report a failure if the instance is invalid against both.</p>
+ *
+ * <p>Keyword events of an instrumented context are told to the listener with
+ * the schema each keyword comes from. Subschemas have the same schema events
+ * as with their {@link InstanceValidator}.</p>
+ *
+ * @see InstanceValidator
+ */
+final class FlattenedValidator
+    implements JsonValidator
+{
+    private final List<Step> steps;
+
+    private FlattenedValidator(final List<Step> steps)
+    {
+        this.steps = steps;
+    }
+
+    /**
+     * Flatten a validator
+     *
+     * @param cache the validator cache, to look up parent schemas
+     * @param validator the validator
+     * @return the flattened validator
+     */
+    static FlattenedValidator flatten(final JsonValidatorCache cache,
+        final InstanceValidator validator)
+    {
+        return flatten(cache, validator, Sets.<SchemaNode>newHashSet());
+    }
+
+    /**
+     * Flatten a validator, as part of the flattening of other schemas
+     *
+     * @param cache the validator cache, to look up parent schemas
+     * @param validator the validator
+     * @param visiting the schemas being flattened
+     * @return the flattened validator
+     */
+    static FlattenedValidator flatten(final JsonValidatorCache cache,
+        final InstanceValidator validator, final Set<SchemaNode> visiting)
+    {
+        final ImmutableList.Builder<Step> builder = ImmutableList.builder();
+
+        addSteps(cache, builder, visiting, validator);
+        return new FlattenedValidator(builder.build());
+    }
+
+    @Override
+    public boolean validate(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance)
+    {
+        final SchemaContainer orig = context.getContainer();
+        final NodeType type = NodeType.getNodeType(instance);
+
+        for (final Step step: steps)
+            step.run(context, report, instance, type);
+
+        context.setContainer(orig);
+        return false;
+    }
+
+    /**
+     * Return the number of steps of this validator
+     *
+     * @return the number of steps
+     */
+    int size()
+    {
+        return steps.size();
+    }
+
+    private static void addSteps(final JsonValidatorCache cache,
+        final ImmutableList.Builder<Step> builder,
+        final Set<SchemaNode> visiting, final InstanceValidator validator)
+    {
+        final SchemaNode schemaNode = validator.getSchemaNode();
+        final SchemaContainer container = schemaNode.getContainer();
+
+        visiting.add(schemaNode);
+
+        JsonValidator parent;
+
+        for (final KeywordValidator keyword: validator.getKeywordValidators()) {
+            if (!(keyword instanceof ExtendsKeywordValidator)) {
+                builder.add(new KeywordStep(schemaNode, keyword));
+                continue;
+            }
+            for (final JsonNode schema:
+                ((ExtendsKeywordValidator) keyword).getSchemas()) {
+                parent = cache.getValidator(new SchemaNode(container, schema));
+                if (parent instanceof InstanceValidator && !visiting.contains(
+                    ((InstanceValidator) parent).getSchemaNode()))
+                    addSteps(cache, builder, visiting,
+                        (InstanceValidator) parent);
+                else
+                    builder.add(new ValidatorStep(parent));
+            }
+        }
+
+        if (validator.getObjectValidator() != null
+            || validator.getArrayValidator() != null)
+            builder.add(new ChildrenStep(cache, visiting, container,
+                validator.getObjectValidator(), validator.getArrayValidator()));
+
+        visiting.remove(schemaNode);
+    }
+
+    private interface Step
+    {
+        void run(final ValidationContext context, final ValidationReport report,
+            final JsonNode instance, final NodeType type);
+    }
+
+    private static final class KeywordStep
+        implements Step
+    {
+        private final SchemaNode schemaNode;
+        private final SchemaContainer container;
+        private final KeywordValidator keyword;
+
+        private KeywordStep(final SchemaNode schemaNode,
+            final KeywordValidator keyword)
+        {
+            this.schemaNode = schemaNode;
+            this.keyword = keyword;
+            container = schemaNode.getContainer();
+        }
+
+        @Override
+        public void run(final ValidationContext context,
+            final ValidationReport report, final JsonNode instance,
+            final NodeType type)
+        {
+            context.setContainer(container);
+            if (context.tracksKeywords())
+                InstanceValidator.validateKeyword(context, report, instance,
+                    type, schemaNode, keyword);
+            else
+                keyword.validateInstance(context, report, instance, type);
+        }
+    }
+
+    private static final class ChildrenStep
+        implements Step
+    {
+        private final SchemaContainer container;
+
+        /**
+         * Validator for object children, {@code null} if there is nothing to
+         * do
+         */
+        private final ObjectValidator objectValidator;
+
+        /**
+         * Validator for array children, {@code null} if there is nothing to
+         * do
+         */
+        private final ArrayValidator arrayValidator;
+
+        /**
+         * Validators of subschemas which are not trivially true, by subschema
+         *
+         * <p>This map is keyed by identity: subschemas returned by the object
+         * and array validators are always the same nodes.</p>
+         */
+        private final Map<JsonNode, JsonValidator> children
+            = new IdentityHashMap<JsonNode, JsonValidator>();
+
+        private ChildrenStep(final JsonValidatorCache cache,
+            final Set<SchemaNode> visiting, final SchemaContainer container,
+            final ObjectValidator objectValidator,
+            final ArrayValidator arrayValidator)
+        {
+            this.container = container;
+            this.objectValidator = objectValidator;
+            this.arrayValidator = arrayValidator;
+
+            if (objectValidator != null)
+                for (final JsonNode subSchema: objectValidator.getAllSchemas())
+                    if (!objectValidator.isTriviallyTrue(subSchema)
+                        && !children.containsKey(subSchema))
+                        children.put(subSchema, child(cache, visiting,
+                            subSchema));
+            if (arrayValidator != null)
+                for (final JsonNode subSchema: arrayValidator.getAllSchemas())
+                    if (!arrayValidator.isTriviallyTrue(subSchema)
+                        && !children.containsKey(subSchema))
+                        children.put(subSchema, child(cache, visiting,
+                            subSchema));
+        }
+
+        private JsonValidator child(final JsonValidatorCache cache,
+            final Set<SchemaNode> visiting, final JsonNode subSchema)
+        {
+            final JsonValidator validator;
+
+            try {
+                validator = cache.getValidator(new SchemaNode(container,
+                    subSchema));
+            } catch (UncheckedExecutionException ignored) {
+                return new LookupValidator(subSchema);
+            }
+
+            if (!(validator instanceof InstanceValidator))
+                return validator;
+
+            final InstanceValidator target = (InstanceValidator) validator;
+
+            return visiting.contains(target.getSchemaNode())
+                ? new ChildValidator(target, null)
+                : new ChildValidator(target, target.getFlattened(visiting));
+        }
+
+        @Override
+        public void run(final ValidationContext context,
+            final ValidationReport report, final JsonNode instance,
+            final NodeType type)
+        {
+            context.setContainer(container);
+            if (type == NodeType.OBJECT && objectValidator != null)
+                validateObject(context, report, instance);
+            else if (type == NodeType.ARRAY && arrayValidator != null)
+                validateArray(context, report, instance);
+        }
+
+        private void validateObject(final ValidationContext context,
+            final ValidationReport report, final JsonNode instance)
+        {
+            final JsonPointer pwd = report.getPath();
+            final Iterator<Map.Entry<String, JsonNode>> iterator
+                = instance.fields();
+
+            Map.Entry<String, JsonNode> entry;
+            String key;
+            JsonNode subSchema;
+
+            while (iterator.hasNext()) {
+                entry = iterator.next();
+                key = entry.getKey();
+                report.setPath(pwd.append(key));
+                if (objectValidator.hasPatternProperties()) {
+                    for (final JsonNode node:
+                        objectValidator.getSchemas(context, key))
+                        validateChild(context, report, node, entry.getValue());
+                    continue;
+                }
+                subSchema = objectValidator.getPropertySchema(key);
+                if (subSchema == null)
+                    subSchema = objectValidator.getAdditionalProperties();
+                validateChild(context, report, subSchema, entry.getValue());
+            }
+
+            report.setPath(pwd);
+        }
+
+        private void validateArray(final ValidationContext context,
+            final ValidationReport report, final JsonNode instance)
+        {
+            final JsonPointer pwd = report.getPath();
+            final int size = instance.size();
+
+            for (int i = 0; i < size; i++) {
+                report.setPath(pwd.append(i));
+                validateChild(context, report, arrayValidator.getSchema(i),
+                    instance.get(i));
+            }
+
+            report.setPath(pwd);
+        }
+
+        private void validateChild(final ValidationContext context,
+            final ValidationReport report, final JsonNode subSchema,
+            final JsonNode child)
+        {
+            final JsonValidator validator = children.get(subSchema);
+
+            if (validator == null)
+                return;
+
+            validator.validate(context, report, child);
+            context.setContainer(container);
+        }
+    }
+
+    /**
+     * The flattened validator of a subschema, with the schema events of its
+     * {@link InstanceValidator}
+     */
+    private static final class ChildValidator
+        implements JsonValidator
+    {
+        private final InstanceValidator validator;
+
+        /**
+         * {@code null} until first use if the subschema is recursive
+         */
+        private volatile FlattenedValidator flattened;
+
+        private ChildValidator(final InstanceValidator validator,
+            final FlattenedValidator flattened)
+        {
+            this.validator = validator;
+            this.flattened = flattened;
+        }
+
+        @Override
+        public boolean validate(final ValidationContext context,
+            final ValidationReport report, final JsonNode instance)
+        {
+            FlattenedValidator target = flattened;
+
+            if (target == null) {
+                target = validator.getFlattened(Sets.<SchemaNode>newHashSet());
+                flattened = target;
+            }
+
+            if (!context.tracksSchemas(instance))
+                return target.validate(context, report, instance);
+
+            final ValidationListener listener = context.getListener();
+            final SchemaNode schemaNode = validator.getSchemaNode();
+            final JsonPointer path = report.getPath();
+            final int size = report.size();
+
+            listener.enterSchema(schemaNode, path);
+
+            final long start = System.nanoTime();
+
+            target.validate(context, report, instance);
+            listener.exitSchema(schemaNode, path, System.nanoTime() - start,
+                report.size() == size);
+            return false;
+        }
+    }
+
+    /**
+     * A subschema which failed to resolve, looked up at validation time
+     *
+     * <p>Generated validators use it too (see {@link ValidatorGenerator}).</p>
+     */
+    static final class LookupValidator
+        implements JsonValidator
+    {
+        private final JsonNode schema;
+
+        LookupValidator(final JsonNode schema)
+        {
+            this.schema = schema;
+        }
+
+        @Override
+        public boolean validate(final ValidationContext context,
+            final ValidationReport report, final JsonNode instance)
+        {
+            return context.newValidator(schema).validate(context, report,
+                instance);
+        }
+    }
+
+    private static final class ValidatorStep
+        implements Step
+    {
+        private final JsonValidator validator;
+
+        private ValidatorStep(final JsonValidator validator)
+        {
+            this.validator = validator;
+        }
+
+        @Override
+        public void run(final ValidationContext context,
+            final ValidationReport report, final JsonNode instance,
+            final NodeType type)
+        {
+            validator.validate(context, report, instance);
+        }
+    }
+}
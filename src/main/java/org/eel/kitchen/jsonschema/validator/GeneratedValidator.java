@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.NodeType;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Base class of generated validators
+ *
+ * <p><b>This class is only meant to be extended by classes generated by
+ * {@link ValidatorGenerator}</b>; it is public, and its members protected,
+ * only because generated classes are defined by class loaders of their own,
+ * and therefore in a package of their own.</p>
+ *
+ * <p>A generated class implements {@link #validateInstance(ValidationContext,
+ * ValidationReport, JsonNode, NodeType)} for one schema. This class handles
+ * listener events and the schema container, and provides what generated code
+ * calls back into: keyword validators which are not inlined, and the
+ * validators of subschemas.</p>
+ *
+ * @see JsonValidatorCache#generate(SchemaNode)
+ */
+public abstract class GeneratedValidator
+    implements JsonValidator
+{
+    private final SchemaNode schemaNode;
+    private final SchemaContainer container;
+
+    /**
+     * Whether the listener of the cache wants schema events
+     */
+    private final boolean instrumented;
+
+    /**
+     * Keyword validators, by index
+     */
+    private final KeywordValidator[] keywords;
+
+    /**
+     * Object validator, if this schema has pattern properties
+     */
+    private final ObjectValidator patterns;
+
+    /**
+     * Indices of children, by object member subschema, if this schema has
+     * pattern properties; trivially true subschemas are absent
+     */
+    private final Map<JsonNode, Integer> patternChildren;
+
+    /**
+     * Validators of subschemas, by index
+     *
+     * <p>This array is filled by the generator once this validator is built,
+     * so that validators may refer to each other.</p>
+     */
+    protected final JsonValidator[] children;
+
+    /**
+     * Constructor
+     *
+     * @param setup the setup of this validator (a {@link Setup}: generated
+     * classes cannot refer to it)
+     */
+    protected GeneratedValidator(final Object setup)
+    {
+        final Setup s = (Setup) setup;
+
+        schemaNode = s.schemaNode;
+        container = schemaNode.getContainer();
+        instrumented = s.instrumented;
+        keywords = s.keywords;
+        patterns = s.patterns;
+        patternChildren = s.patternChildren;
+        children = new JsonValidator[s.childCount];
+    }
+
+    @Override
+    public final boolean validate(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance)
+    {
+        if (!instrumented || !context.tracksSchemas(instance)) {
+            doValidate(context, report, instance);
+            return false;
+        }
+
+        final ValidationListener listener = context.getListener();
+        final JsonPointer path = report.getPath();
+        final int size = report.size();
+
+        listener.enterSchema(schemaNode, path);
+
+        final long start = System.nanoTime();
+
+        doValidate(context, report, instance);
+        listener.exitSchema(schemaNode, path, System.nanoTime() - start,
+            report.size() == size);
+        return false;
+    }
+
+    private void doValidate(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance)
+    {
+        final SchemaContainer orig = context.getContainer();
+        context.setContainer(container);
+
+        validateInstance(context, report, instance,
+            NodeType.getNodeType(instance));
+
+        context.setContainer(orig);
+    }
+
+    /**
+     * Validate an instance, children included
+     *
+     * <p>The context's container is that of this schema.</p>
+     *
+     * @param context the context
+     * @param report the report
+     * @param instance the instance
+     * @param type the type of the instance
+     */
+    protected abstract void validateInstance(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final NodeType type);
+
+    /**
+     * Validate an instance against a keyword validator
+     *
+     * <p>Generated code calls this for keywords it does not inline, and for
+     * inlined keywords which fail or do not apply to a fast path: the
+     * validator then builds the messages.</p>
+     *
+     * @param index the index of the keyword validator
+     * @param context the context
+     * @param report the report
+     * @param instance the instance
+     * @param type the type of the instance
+     */
+    protected final void keyword(final int index,
+        final ValidationContext context, final ValidationReport report,
+        final JsonNode instance, final NodeType type)
+    {
+        if (instrumented && context.tracksKeywords())
+            InstanceValidator.validateKeyword(context, report, instance, type,
+                schemaNode, keywords[index]);
+        else
+            keywords[index].validateInstance(context, report, instance,
+                type);
+    }
+
+    /**
+     * Report a size keyword failure
+     *
+     * @param report the report
+     * @param keyword the keyword
+     * @param value the value of the keyword
+     * @param found the size of the instance
+     * @param message the message
+     */
+    protected static void sizeFailure(final ValidationReport report,
+        final String keyword, final int value, final int found,
+        final String message)
+    {
+        report.addMessage(ValidatorProgram.sizeMessage(keyword, value, found,
+            message));
+    }
+
+    /**
+     * Validate an object member against the subschemas which apply to it,
+     * when this schema has pattern properties
+     *
+     * @param context the context
+     * @param report the report (its path is that of the member)
+     * @param key the member name
+     * @param value the member value
+     */
+    protected final void validateMember(final ValidationContext context,
+        final ValidationReport report, final String key, final JsonNode value)
+    {
+        Integer index;
+
+        for (final JsonNode subSchema: patterns.getSchemas(context, key)) {
+            index = patternChildren.get(subSchema);
+            if (index != null)
+                children[index].validate(context, report, value);
+        }
+    }
+
+    /**
+     * Everything a generated validator needs besides its code
+     */
+    static final class Setup
+    {
+        private final SchemaNode schemaNode;
+        private final boolean instrumented;
+        private final KeywordValidator[] keywords;
+        private final ObjectValidator patterns;
+        private final Map<JsonNode, Integer> patternChildren
+            = new IdentityHashMap<JsonNode, Integer>();
+        private final int childCount;
+
+        /**
+         * Constructor
+         *
+         * @param schemaNode the schema node
+         * @param instrumented whether the listener wants schema events
+         * @param keywords the keyword validators called by generated code
+         * @param patterns the object validator if the schema has pattern
+         * properties, {@code null} otherwise
+         * @param children the subschemas of children, by index
+         */
+        Setup(final SchemaNode schemaNode, final boolean instrumented,
+            final KeywordValidator[] keywords, final ObjectValidator patterns,
+            final Map<JsonNode, Integer> children)
+        {
+            this.schemaNode = schemaNode;
+            this.instrumented = instrumented;
+            this.keywords = keywords;
+            this.patterns = patterns;
+            childCount = children.size();
+            if (patterns == null)
+                return;
+            for (final JsonNode subSchema: patterns.getAllSchemas())
+                if (children.containsKey(subSchema))
+                    patternChildren.put(subSchema, children.get(subSchema));
+        }
+    }
+}
@@ -19,10 +19,15 @@ package org.eel.kitchen.jsonschema.validator;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.eel.kitchen.jsonschema.keyword.ExtendsKeywordValidator;
 import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
 import org.eel.kitchen.jsonschema.ref.SchemaContainer;
 import org.eel.kitchen.jsonschema.ref.SchemaNode;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.NodeType;
 
 import java.util.Set;
 
@@ -30,8 +35,16 @@ import java.util.Set;
  * The main validator
  *
  * <p>Such a validator is only called when the schema syntax has been verified
- * to be correct. It is also responsible to instantiate an {@link
- * ArrayValidator} or {@link ObjectValidator} if necessary.</p>
+ * to be correct. It also holds an {@link ArrayValidator} and an {@link
+ * ObjectValidator} for children of the instance, if necessary: children are
+ * not validated at all if all subschemas which may apply to them are
+ * trivially true (see {@link SchemaOptimizer}).</p>
+ *
+ * <p>If the schema has an {@code extends} keyword, validation is delegated to
+ * a {@link FlattenedValidator}.</p>
+ *
+ * <p>If the context is instrumented, the listener is told about this schema
+ * and about each keyword (see {@link ValidationListener}).</p>
  *
  * @see JsonValidatorCache#getValidator(SchemaNode)
  * @see KeywordValidator
@@ -42,37 +55,210 @@ final class InstanceValidator
     private final SchemaNode schemaNode;
     private final Set<KeywordValidator> validators;
 
+    /**
+     * Validator for object children, {@code null} if all subschemas which may
+     * apply to them are trivially true
+     */
+    private final ObjectValidator objectValidator;
+
+    /**
+     * Validator for array children, {@code null} if all subschemas which may
+     * apply to them are trivially true
+     */
+    private final ArrayValidator arrayValidator;
+
+    /**
+     * The validator cache, used to flatten parent schemas
+     */
+    private final JsonValidatorCache cache;
+
+    /**
+     * Whether this schema has parents (see {@link ExtendsKeywordValidator})
+     */
+    private final boolean hasParents;
+
+    /**
+     * This validator, with parents flattened; built on first use
+     */
+    private volatile FlattenedValidator flattened = null;
+
     /**
      * Constructor, package private
      *
      * @param schemaNode the schema node
      * @param validators the set of keyword validators
+     * @param optimizer the optimizer, to find trivially true subschemas
+     * @param cache the validator cache
      */
     InstanceValidator(final SchemaNode schemaNode,
-        final Set<KeywordValidator> validators)
+        final Set<KeywordValidator> validators,
+        final SchemaOptimizer optimizer, final JsonValidatorCache cache)
     {
         this.validators = ImmutableSet.copyOf(validators);
         this.schemaNode = schemaNode;
+        this.cache = cache;
+
+        boolean parents = false;
+        for (final KeywordValidator validator: validators)
+            parents = parents || validator instanceof ExtendsKeywordValidator;
+        hasParents = parents;
+
+        final JsonNode schema = schemaNode.getNode();
+        final ObjectValidator objects = new ObjectValidator(schema, optimizer);
+        final ArrayValidator arrays = new ArrayValidator(schema, optimizer);
+
+        objectValidator = objects.isTriviallyTrue() ? null : objects;
+        arrayValidator = arrays.isTriviallyTrue() ? null : arrays;
     }
 
     @Override
     public boolean validate(final ValidationContext context,
         final ValidationReport report, final JsonNode instance)
     {
+        if (!context.tracksSchemas(instance))
+            return doValidate(context, report, instance);
+
+        final ValidationListener listener = context.getListener();
+        final JsonPointer path = report.getPath();
+        final int size = report.size();
+
+        listener.enterSchema(schemaNode, path);
+
+        final long start = System.nanoTime();
+
+        doValidate(context, report, instance);
+        listener.exitSchema(schemaNode, path, System.nanoTime() - start,
+            report.size() == size);
+        return false;
+    }
+
+    private boolean doValidate(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance)
+    {
+        if (hasParents)
+            return getFlattened().validate(context, report, instance);
+
         final SchemaContainer orig = context.getContainer();
         context.setContainer(schemaNode.getContainer());
 
-        for (final KeywordValidator validator: validators)
-            validator.validateInstance(context, report, instance);
+        validateKeywords(context, report, instance,
+            NodeType.getNodeType(instance));
 
-        if (instance.isContainerNode()) {
-            final JsonValidator validator = instance.isArray()
-                ? new ArrayValidator(schemaNode.getNode())
-                : new ObjectValidator(schemaNode.getNode());
+        final JsonValidator validator = instance.isObject() ? objectValidator
+            : instance.isArray() ? arrayValidator : null;
 
+        if (validator != null)
             validator.validate(context, report, instance);
-        }
+
         context.setContainer(orig);
         return false;
     }
+
+    /**
+     * Validate an instance against keyword validators only
+     *
+     * <p>Children of the instance, if any, are not validated. Note that the
+     * context's container must have been set by the caller.</p>
+     *
+     * @param context the context
+     * @param report the report
+     * @param instance the instance
+     * @param type the type of the instance
+     */
+    void validateKeywords(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final NodeType type)
+    {
+        if (!context.tracksKeywords()) {
+            for (final KeywordValidator validator: validators)
+                validator.validateInstance(context, report, instance, type);
+            return;
+        }
+
+        for (final KeywordValidator validator: validators)
+            validateKeyword(context, report, instance, type, schemaNode,
+                validator);
+    }
+
+    /**
+     * Validate an instance against one keyword validator, telling the
+     * listener
+     *
+     * @param context the context (must track keywords)
+     * @param report the report
+     * @param instance the instance
+     * @param type the type of the instance
+     * @param schemaNode the schema the keyword belongs to
+     * @param validator the keyword validator
+     */
+    static void validateKeyword(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final NodeType type, final SchemaNode schemaNode,
+        final KeywordValidator validator)
+    {
+        final int size = report.size();
+        final long start = System.nanoTime();
+
+        validator.validateInstance(context, report, instance, type);
+        context.getListener().keyword(schemaNode, validator.getKeyword(),
+            System.nanoTime() - start, report.size() == size);
+    }
+
+    private FlattenedValidator getFlattened()
+    {
+        return getFlattened(Sets.<SchemaNode>newHashSet());
+    }
+
+    /**
+     * Return this validator, flattened
+     *
+     * <p>The flattened validator is built on first use, and kept.</p>
+     *
+     * @param visiting the schemas being flattened, if this one is flattened
+     * as a subschema of another
+     * @return the flattened validator
+     * @see FlattenedValidator
+     */
+    FlattenedValidator getFlattened(final Set<SchemaNode> visiting)
+    {
+        FlattenedValidator ret = flattened;
+
+        if (ret == null) {
+            ret = FlattenedValidator.flatten(cache, this, visiting);
+            flattened = ret;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Build now what this validator would otherwise build on first use
+     *
+     * @see JsonValidatorCache#warmUp
+     */
+    void warmUp()
+    {
+        if (hasParents)
+            getFlattened();
+    }
+
+    ObjectValidator getObjectValidator()
+    {
+        return objectValidator;
+    }
+
+    ArrayValidator getArrayValidator()
+    {
+        return arrayValidator;
+    }
+
+    Set<KeywordValidator> getKeywordValidators()
+    {
+        return validators;
+    }
+
+    SchemaNode getSchemaNode()
+    {
+        return schemaNode;
+    }
 }
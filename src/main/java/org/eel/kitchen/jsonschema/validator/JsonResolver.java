@@ -19,6 +19,7 @@ package org.eel.kitchen.jsonschema.validator;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import org.eel.kitchen.jsonschema.main.JsonSchemaException;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
 import org.eel.kitchen.jsonschema.ref.JsonRef;
 import org.eel.kitchen.jsonschema.ref.SchemaContainer;
 import org.eel.kitchen.jsonschema.ref.SchemaNode;
@@ -39,10 +40,18 @@ import java.util.Set;
 final class JsonResolver
 {
     private final SchemaRegistry registry;
+    private final ValidationListener listener;
 
     JsonResolver(final SchemaRegistry registry)
+    {
+        this(registry, ValidationListener.noop());
+    }
+
+    JsonResolver(final SchemaRegistry registry,
+        final ValidationListener listener)
     {
         this.registry = registry;
+        this.listener = listener;
     }
 
     /**
@@ -58,16 +67,6 @@ final class JsonResolver
     SchemaNode resolve(final SchemaNode schemaNode)
         throws JsonSchemaException
     {
-        final ValidationMessage.Builder msg
-            = new ValidationMessage.Builder(ValidationDomain.REF_RESOLVING)
-            .setKeyword("$ref");
-        /*
-         * These two elements might change during ref resolving. Set them to
-         * their initial values.
-         */
-        SchemaContainer container = schemaNode.getContainer();
-        JsonNode node = schemaNode.getNode();
-
         /*
          * This set will store all ABSOLUTE JSON references we encounter
          * during ref resolution. If there is an attempt to store an already
@@ -77,6 +76,38 @@ final class JsonResolver
          * LinkedHashSet.
          */
         final Set<JsonRef> refs = new LinkedHashSet<JsonRef>();
+        final SchemaNode ret = resolve(schemaNode, refs);
+
+        if (!refs.isEmpty())
+            listener.refResolved(schemaNode, ret, refs.size());
+
+        return ret;
+    }
+
+    /**
+     * Resolve a schema node to the target schema node, collecting the
+     * references followed on the way
+     *
+     * <p>The listener is not told about this resolution.</p>
+     *
+     * @param schemaNode the original schema node
+     * @param refs the set to add absolute target references to, in order
+     * @return the computed schema node
+     * @throws JsonSchemaException ref resolution failure (dangling ref, ref
+     * loop, etc)
+     */
+    SchemaNode resolve(final SchemaNode schemaNode, final Set<JsonRef> refs)
+        throws JsonSchemaException
+    {
+        final ValidationMessage.Builder msg
+            = new ValidationMessage.Builder(ValidationDomain.REF_RESOLVING)
+            .setKeyword("$ref");
+        /*
+         * These two elements might change during ref resolving. Set them to
+         * their initial values.
+         */
+        SchemaContainer container = schemaNode.getContainer();
+        JsonNode node = schemaNode.getNode();
 
         /*
          * All elements below are set during the ref resolution process.
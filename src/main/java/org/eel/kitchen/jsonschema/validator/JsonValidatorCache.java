@@ -18,23 +18,36 @@
 package org.eel.kitchen.jsonschema.validator;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.eel.kitchen.jsonschema.bundle.KeywordBundle;
 import org.eel.kitchen.jsonschema.keyword.KeywordFactory;
 import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
 import org.eel.kitchen.jsonschema.main.JsonSchemaException;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
 import org.eel.kitchen.jsonschema.ref.SchemaNode;
 import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
 import org.eel.kitchen.jsonschema.report.ValidationMessage;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
 import org.eel.kitchen.jsonschema.syntax.SyntaxValidator;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Cache for JSON validators
@@ -46,10 +59,29 @@ import java.util.Set;
  * <p>As it uses a {@link LoadingCache}, it is totally thread safe and also
  * very efficient.</p>
  *
+ * <p>Keys are canonicalized first, so that equal subschemas which do not
+ * depend on their container share one entry (see {@link SchemaInterner}).</p>
+ *
+ * <p>The validation listener of the schema registry, if any, is told about
+ * hits and misses of this cache (see {@link #getListener()}).</p>
+ *
  * @see SchemaNode
  */
 public final class JsonValidatorCache
 {
+    /**
+     * Default maximum number of validators in this cache
+     */
+    public static final long DEFAULT_SIZE = 100L;
+
+    /**
+     * Keywords whose value may hold subschemas, other than children schemas
+     *
+     * @see #keywordSchemas(InstanceValidator)
+     */
+    private static final Set<String> SCHEMA_KEYWORDS
+        = ImmutableSet.of("dependencies", "disallow", "extends", "type");
+
     /**
      * Cache for all validators, even failing ones
      *
@@ -57,15 +89,30 @@ public final class JsonValidatorCache
      */
     private final LoadingCache<SchemaNode, JsonValidator> cache;
 
+    /**
+     * The loader of {@link #cache}
+     */
+    private final CacheLoader<SchemaNode, JsonValidator> loader;
+
     private final JsonResolver resolver;
     private final SyntaxValidator syntaxValidator;
     private final KeywordFactory keywordFactory;
+    private final SchemaOptimizer optimizer;
+    private final SchemaInterner interner;
+    private final ValidationListener listener;
+
+    /**
+     * Schemas known to be syntactically valid, by identity
+     */
+    private final Set<JsonNode> validSchemas = Collections.newSetFromMap(
+        new MapMaker().weakKeys().<JsonNode, Boolean>makeMap());
 
     /**
      * Constructor
      *
-     * <p>Instantiate the syntax validator, the keyword factory, the JSON ref
-     * resolver and the validator cache.</p>
+     * <p>Instantiate the syntax validator, the keyword factory, the schema
+     * optimizer, the schema interner, the JSON ref resolver and the validator
+     * cache.</p>
      *
      * @param bundle the keyword bundle
      * @param registry the schema registry
@@ -73,17 +120,380 @@ public final class JsonValidatorCache
     public JsonValidatorCache(final KeywordBundle bundle,
         final SchemaRegistry registry)
     {
-        resolver = new JsonResolver(registry);
+        this(bundle, registry, true, DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructor with a maximum size
+     *
+     * <p>Raise the size if you {@link #warmUp(SchemaNode, Set, List) warm up}
+     * more subschemas than the default size: least recently used validators
+     * are evicted first.</p>
+     *
+     * @param bundle the keyword bundle
+     * @param registry the schema registry
+     * @param maximumSize the maximum number of validators to keep
+     * @throws IllegalArgumentException size is not strictly positive
+     */
+    public JsonValidatorCache(final KeywordBundle bundle,
+        final SchemaRegistry registry, final long maximumSize)
+    {
+        this(bundle, registry, true, maximumSize);
+    }
+
+    /**
+     * Constructor, package private
+     *
+     * @param bundle the keyword bundle
+     * @param registry the schema registry
+     * @param intern whether equal subschemas should share validators
+     */
+    JsonValidatorCache(final KeywordBundle bundle,
+        final SchemaRegistry registry, final boolean intern)
+    {
+        this(bundle, registry, intern, DEFAULT_SIZE);
+    }
+
+    private JsonValidatorCache(final KeywordBundle bundle,
+        final SchemaRegistry registry, final boolean intern,
+        final long maximumSize)
+    {
+        Preconditions.checkArgument(maximumSize > 0L,
+            "cache size must be strictly positive");
+        listener = registry.getListener();
+        resolver = new JsonResolver(registry, listener);
         syntaxValidator = new SyntaxValidator(bundle);
         keywordFactory = new KeywordFactory(bundle);
+        optimizer = new SchemaOptimizer(bundle, syntaxValidator);
+        interner = new SchemaInterner(intern);
 
-        cache = CacheBuilder.newBuilder().maximumSize(100L)
-            .build(cacheLoader());
+        loader = cacheLoader();
+        cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats()
+            .build(loader);
     }
 
     public JsonValidator getValidator(final SchemaNode schemaNode)
     {
-        return cache.getUnchecked(schemaNode);
+        return getValidator(schemaNode.getContainer(), schemaNode.getNode());
+    }
+
+    /**
+     * Get the validator for a schema in a given container
+     *
+     * <p>Prefer this method to {@link #getValidator(SchemaNode)} if you do not
+     * have a schema node already.</p>
+     *
+     * @param container the schema container
+     * @param node the schema
+     * @return the validator
+     */
+    public JsonValidator getValidator(final SchemaContainer container,
+        final JsonNode node)
+    {
+        final SchemaNode key = interner.canonicalize(container, node);
+
+        if (listener == ValidationListener.noop())
+            return cache.getUnchecked(key);
+
+        /*
+         * Go through the cache itself, so that it records statistics as usual;
+         * the miss, if any, is detected by the loading callable
+         */
+        final long start = System.nanoTime();
+        final MissDetector detector = new MissDetector(key);
+        final JsonValidator ret;
+
+        try {
+            ret = cache.get(key, detector);
+        } catch (ExecutionException e) {
+            throw new UncheckedExecutionException(e.getCause());
+        }
+
+        if (detector.loaded)
+            listener.validatorCacheMiss(container, node,
+                System.nanoTime() - start);
+        else
+            listener.validatorCacheHit(container, node);
+        return ret;
+    }
+
+    /**
+     * Load the validators of a schema and of all subschemas reachable from it
+     *
+     * <p>Subschemas are all schemas an instance may be validated against
+     * starting from this schema: schemas of children, schemas of {@code
+     * extends}, {@code type}, {@code disallow} and {@code dependencies}, and
+     * targets of JSON References, in any container. Once this is done, and
+     * as long as this cache does not evict them, validating an instance
+     * against any of these schemas does no resolution, syntax validation or
+     * keyword validator instantiation anymore.</p>
+     *
+     * <p>Already visited schemas are not walked again; the visited set may be
+     * shared by concurrent calls, in which case it must be thread safe.
+     * Schemas which fail to resolve or fail syntax validation are not walked
+     * either: their messages are added to {@code failures}.</p>
+     *
+     * @param schemaNode the schema node to start from
+     * @param visited the resolved schema nodes already visited
+     * @param failures the list to add failure messages to
+     * @return the number of schemas visited by this call
+     */
+    public int warmUp(final SchemaNode schemaNode,
+        final Set<SchemaNode> visited, final List<ValidationMessage> failures)
+    {
+        final Deque<SchemaNode> pending = new ArrayDeque<SchemaNode>();
+        int ret = 0;
+
+        pending.push(schemaNode);
+
+        JsonValidator validator;
+        InstanceValidator instanceValidator;
+        SchemaNode resolved;
+        SchemaContainer container;
+
+        while (!pending.isEmpty()) {
+            validator = getValidator(pending.pop());
+            if (validator instanceof FailingValidator) {
+                failures.addAll(((FailingValidator) validator).messages);
+                continue;
+            }
+            instanceValidator = (InstanceValidator) validator;
+            resolved = instanceValidator.getSchemaNode();
+            if (!visited.add(resolved))
+                continue;
+            ret++;
+            instanceValidator.warmUp();
+            container = resolved.getContainer();
+            for (final JsonNode subSchema: childrenSchemas(instanceValidator))
+                pending.push(new SchemaNode(container, subSchema));
+            for (final JsonNode subSchema: keywordSchemas(instanceValidator))
+                pending.push(new SchemaNode(container, subSchema));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Tell this cache that schemas are syntactically valid
+     *
+     * <p>Syntax validation will be skipped for these schemas (as instances:
+     * equal schemas are still checked). Schemas are only held weakly.</p>
+     *
+     * @param schemas the schemas
+     */
+    public void addValidSchemas(final Collection<JsonNode> schemas)
+    {
+        validSchemas.addAll(schemas);
+    }
+
+    /**
+     * Get hit/miss statistics of this cache
+     *
+     * @return the statistics
+     */
+    public CacheStats stats()
+    {
+        return cache.stats();
+    }
+
+    /**
+     * Get the number of validators in this cache
+     *
+     * @return the number of validators
+     */
+    public long size()
+    {
+        return cache.size();
+    }
+
+    /**
+     * Remove all validators from this cache
+     *
+     * <p>Validators are built again on next use. Linked validators and
+     * programs already built keep the validators they refer to.</p>
+     */
+    public void invalidateAll()
+    {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Get the schema interner used by this cache
+     *
+     * @return the interner
+     */
+    public SchemaInterner getInterner()
+    {
+        return interner;
+    }
+
+    /**
+     * Get the validation listener of this cache
+     *
+     * <p>This is the listener of the schema registry.</p>
+     *
+     * @return the listener (never null, but possibly a no-op)
+     */
+    public ValidationListener getListener()
+    {
+        return listener;
+    }
+
+    /**
+     * Get the schema optimizer used by this cache
+     *
+     * @return the optimizer
+     */
+    public SchemaOptimizer getOptimizer()
+    {
+        return optimizer;
+    }
+
+    /**
+     * Get a linked validator for a schema node
+     *
+     * <p>Unlike validators returned by {@link #getValidator(SchemaNode)}, the
+     * returned validator keeps direct references to the validators of all
+     * subschemas it has needed so far, and does not go through this cache for
+     * them anymore. Linked validators are not cached: the returned tree is
+     * only reachable from the caller, and is garbage collected with it.</p>
+     *
+     * @param schemaNode the schema node
+     * @return a validator
+     */
+    public JsonValidator link(final SchemaNode schemaNode)
+    {
+        return new LinkedValidator.Linker(this).link(schemaNode);
+    }
+
+    /**
+     * Compile a schema node into a program
+     *
+     * <p>Like linked validators, programs do not go through this cache for
+     * subschemas, and are not cached. See {@link ValidatorProgram} for the
+     * instruction set.</p>
+     *
+     * @param schemaNode the schema node
+     * @return a validator
+     */
+    public JsonValidator compile(final SchemaNode schemaNode)
+    {
+        return new ValidatorProgram.Compiler(this, false).compile(schemaNode);
+    }
+
+    /**
+     * Compile a schema node into a compact program
+     *
+     * <p>Unlike programs returned by {@link #compile(SchemaNode)}, compact
+     * programs resolve JSON References at compile time, and do not keep the
+     * schema container unless they need it. Once nothing else refers to them,
+     * source schemas can be garbage collected.</p>
+     *
+     * @param schemaNode the schema node
+     * @return a validator
+     */
+    public JsonValidator compileCompact(final SchemaNode schemaNode)
+    {
+        return new ValidatorProgram.Compiler(this, true).compile(schemaNode);
+    }
+
+    /**
+     * Generate a JVM class for a schema node, and for each of its subschemas
+     *
+     * <p>Like programs, generated validators do not go through this cache for
+     * subschemas, and are not cached. Their classes are defined by a class
+     * loader of their own, and are unloaded once the returned tree is garbage
+     * collected. See {@link ValidatorGenerator} for what is generated.</p>
+     *
+     * @param schemaNode the schema node
+     * @return a validator
+     */
+    public JsonValidator generate(final SchemaNode schemaNode)
+    {
+        return new ValidatorGenerator(this).generate(schemaNode);
+    }
+
+    /**
+     * Explain how instances are validated against a schema node
+     *
+     * <p>Validators of the schema and of all subschemas reachable from it are
+     * built if they are not in this cache yet. See {@link SchemaPlan}.</p>
+     *
+     * @param schemaNode the schema node
+     * @return the plan
+     */
+    public SchemaPlan explain(final SchemaNode schemaNode)
+    {
+        return new SchemaPlan.Explainer(this, resolver).explain(schemaNode);
+    }
+
+    /**
+     * Return the messages of a validator which failed to build
+     *
+     * @param validator the validator
+     * @return the messages, or an empty list if this validator did not fail
+     */
+    static List<ValidationMessage> failures(final JsonValidator validator)
+    {
+        return validator instanceof FailingValidator
+            ? ((FailingValidator) validator).messages
+            : Collections.<ValidationMessage>emptyList();
+    }
+
+    /**
+     * Return the subschemas of a validator which may apply to children of an
+     * instance, except trivially true ones
+     *
+     * @param validator the validator
+     * @return the subschemas
+     */
+    private List<JsonNode> childrenSchemas(final InstanceValidator validator)
+    {
+        final List<JsonNode> ret = Lists.newArrayList();
+
+        if (validator.getObjectValidator() != null)
+            ret.addAll(validator.getObjectValidator().getAllSchemas());
+        if (validator.getArrayValidator() != null)
+            ret.addAll(validator.getArrayValidator().getAllSchemas());
+
+        ret.removeAll(optimizer.triviallyTrue(ret));
+        return ret;
+    }
+
+    /**
+     * Return the subschemas of the keywords of a validator
+     *
+     * <p>Only keywords which have a validator are considered: schemas of dead
+     * keywords are never used.</p>
+     *
+     * @param validator the validator
+     * @return the subschemas
+     */
+    private static List<JsonNode> keywordSchemas(
+        final InstanceValidator validator)
+    {
+        final JsonNode schema = validator.getSchemaNode().getNode();
+        final List<JsonNode> ret = Lists.newArrayList();
+
+        String keyword;
+        JsonNode value;
+
+        for (final KeywordValidator keywordValidator:
+            validator.getKeywordValidators()) {
+            keyword = keywordValidator.getKeyword();
+            if (!SCHEMA_KEYWORDS.contains(keyword))
+                continue;
+            value = schema.get(keyword);
+            if ("extends".equals(keyword) && value.isObject()) {
+                ret.add(value);
+                continue;
+            }
+            for (final JsonNode element: value)
+                if (element.isObject())
+                    ret.add(element);
+        }
+
+        return ret;
     }
 
     /**
@@ -91,11 +501,17 @@ public final class JsonValidatorCache
      *
      * <p>The implemented {@link CacheLoader#load(Object)} method is the
      * critical part. It will try and check if ref resolution succeeds, if so it
-     * checks the schema syntax, and finally it returns a validator.</p>
+     * checks the schema syntax (unless the schema is known to be valid, see
+     * {@link #addValidSchemas(Collection)}), and finally it returns a
+     * validator, with no keyword validators for dead keywords (see {@link
+     * SchemaOptimizer}).</p>
      *
      * <p>If any of the preliminary checks fail, it returns a {@link
      * FailingValidator}, else it returns an {@link InstanceValidator}.</p>
      *
+     * <p>If there is a listener, it is told how long each of these phases
+     * took.</p>
+     *
      * @return the loader function
      */
     private CacheLoader<SchemaNode, JsonValidator> cacheLoader()
@@ -105,29 +521,74 @@ public final class JsonValidatorCache
             @Override
             public JsonValidator load(final SchemaNode key)
             {
+                final boolean timed = listener != ValidationListener.noop();
+                final long start = timed ? System.nanoTime() : 0L;
                 final SchemaNode realNode;
 
                 try {
                     realNode = resolver.resolve(key);
                 } catch (JsonSchemaException e) {
+                    if (timed)
+                        listener.validatorBuilt(key, System.nanoTime() - start,
+                            0L, 0L, false);
                     return new FailingValidator(e.getValidationMessage());
                 }
 
+                final long resolved = timed ? System.nanoTime() : 0L;
+                final JsonNode schema = realNode.getNode();
                 final List<ValidationMessage> messages = Lists.newArrayList();
 
-                syntaxValidator.validate(messages, realNode.getNode());
+                if (!validSchemas.contains(schema))
+                    syntaxValidator.validate(messages, schema);
+
+                final long checked = timed ? System.nanoTime() : 0L;
 
-                if (!messages.isEmpty())
+                if (!messages.isEmpty()) {
+                    if (timed)
+                        listener.validatorBuilt(key, resolved - start,
+                            checked - resolved, 0L, false);
                     return new FailingValidator(messages);
+                }
 
-                final Set<KeywordValidator> validators
-                    = keywordFactory.getValidators(realNode.getNode());
+                final Set<KeywordValidator> validators = keywordFactory
+                    .getValidators(schema, optimizer.deadKeywords(schema));
+                final JsonValidator ret = new InstanceValidator(realNode,
+                    validators, optimizer, JsonValidatorCache.this);
 
-                return new InstanceValidator(realNode, validators);
+                if (timed)
+                    listener.validatorBuilt(key, resolved - start,
+                        checked - resolved, System.nanoTime() - checked, true);
+                return ret;
             }
         };
     }
 
+    /**
+     * Loading callable remembering whether it was called
+     *
+     * <p>It is only called by the cache on a miss, and delegates to the loader
+     * of the cache.</p>
+     */
+    private final class MissDetector
+        implements Callable<JsonValidator>
+    {
+        private final SchemaNode key;
+        private boolean loaded = false;
+
+        private MissDetector(final SchemaNode key)
+        {
+            this.key = key;
+        }
+
+        @Override
+        public JsonValidator call()
+            throws Exception
+        {
+            loaded = true;
+            return loader.load(key);
+        }
+    }
+
     /**
      * Class instantiated when a schema node fails to pass ref resolution or
      * syntax checking
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Maps;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.NodeType;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A validator with direct links to the validators of its children
+ *
+ * <p>An {@link InstanceValidator} creates an {@link ObjectValidator} or {@link
+ * ArrayValidator} for each container instance it validates, and each of these
+ * asks the {@link JsonValidatorCache} for the validator of each child (which
+ * means building a {@link SchemaNode}, and computing its hash code, for each
+ * child instance).</p>
+ *
+ * <p>A linked validator does all of this only once: it uses the object and
+ * array validators of its {@link InstanceValidator} (so that trivially true
+ * subschemas are skipped in the same way), and the validator of each
+ * subschema is looked up once, the first time it is needed, and then kept.
+ * Linked validators are shared and may be recursive (see {@link Linker}).
+ * </p>
+ *
+ * <p>Validation reports are the same as with an {@link InstanceValidator}.
+ * </p>
+ *
+ * <p>Listener events are the same too, except that schemas with {@code
+ * extends} are not flattened here: their parents have events of their own.
+ * </p>
+ *
+ * @see JsonValidatorCache#link(SchemaNode)
+ */
+final class LinkedValidator
+    implements JsonValidator
+{
+    private final Linker linker;
+    private final InstanceValidator validator;
+    private final SchemaContainer container;
+    /**
+     * Validator for object children, {@code null} if there is nothing to do
+     */
+    private final ObjectValidator objectValidator;
+
+    /**
+     * Validator for array children, {@code null} if there is nothing to do
+     */
+    private final ArrayValidator arrayValidator;
+
+    /**
+     * Links to child validators, by subschema
+     *
+     * <p>This map is keyed by identity: subschemas returned by the object and
+     * array validators are always the same nodes. It is never modified after
+     * construction; only links are.</p>
+     */
+    private final Map<JsonNode, Link> links
+        = new IdentityHashMap<JsonNode, Link>();
+
+    private LinkedValidator(final Linker linker,
+        final InstanceValidator validator)
+    {
+        this.linker = linker;
+        this.validator = validator;
+
+        container = validator.getSchemaNode().getContainer();
+        objectValidator = validator.getObjectValidator();
+        arrayValidator = validator.getArrayValidator();
+
+        if (objectValidator != null)
+            for (final JsonNode subSchema: objectValidator.getAllSchemas())
+                links.put(subSchema, new Link());
+        if (arrayValidator != null)
+            for (final JsonNode subSchema: arrayValidator.getAllSchemas())
+                links.put(subSchema, new Link());
+    }
+
+    @Override
+    public boolean validate(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance)
+    {
+        if (!context.tracksSchemas(instance))
+            return doValidate(context, report, instance);
+
+        final ValidationListener listener = context.getListener();
+        final SchemaNode schemaNode = validator.getSchemaNode();
+        final JsonPointer path = report.getPath();
+        final int size = report.size();
+
+        listener.enterSchema(schemaNode, path);
+
+        final long start = System.nanoTime();
+
+        doValidate(context, report, instance);
+        listener.exitSchema(schemaNode, path, System.nanoTime() - start,
+            report.size() == size);
+        return false;
+    }
+
+    private boolean doValidate(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance)
+    {
+        final SchemaContainer orig = context.getContainer();
+        context.setContainer(container);
+
+        final NodeType type = NodeType.getNodeType(instance);
+
+        validator.validateKeywords(context, report, instance, type);
+
+        if (type == NodeType.OBJECT && objectValidator != null)
+            validateObject(context, report, instance);
+        else if (type == NodeType.ARRAY && arrayValidator != null)
+            validateArray(context, report, instance);
+
+        context.setContainer(orig);
+        return false;
+    }
+
+    private void validateObject(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance)
+    {
+        final JsonPointer pwd = report.getPath();
+        final Iterator<Map.Entry<String, JsonNode>> iterator
+            = instance.fields();
+
+        Map.Entry<String, JsonNode> entry;
+        String key;
+        JsonNode subSchema;
+
+        while (iterator.hasNext()) {
+            entry = iterator.next();
+            key = entry.getKey();
+            report.setPath(pwd.append(key));
+            if (objectValidator.hasPatternProperties()) {
+                for (final JsonNode node:
+                    objectValidator.getSchemas(context, key))
+                    if (!objectValidator.isTriviallyTrue(node))
+                        child(node).validate(context, report,
+                            entry.getValue());
+                continue;
+            }
+            subSchema = objectValidator.getPropertySchema(key);
+            if (subSchema == null)
+                subSchema = objectValidator.getAdditionalProperties();
+            if (!objectValidator.isTriviallyTrue(subSchema))
+                child(subSchema).validate(context, report, entry.getValue());
+        }
+
+        report.setPath(pwd);
+    }
+
+    private void validateArray(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance)
+    {
+        final JsonPointer pwd = report.getPath();
+        final int size = instance.size();
+
+        JsonNode subSchema;
+
+        for (int i = 0; i < size; i++) {
+            subSchema = arrayValidator.getSchema(i);
+            if (arrayValidator.isTriviallyTrue(subSchema))
+                continue;
+            report.setPath(pwd.append(i));
+            child(subSchema).validate(context, report, instance.get(i));
+        }
+
+        report.setPath(pwd);
+    }
+
+    private JsonValidator child(final JsonNode subSchema)
+    {
+        final Link link = links.get(subSchema);
+
+        if (link == null)
+            return linker.link(new SchemaNode(container, subSchema));
+
+        JsonValidator ret = link.validator;
+
+        if (ret == null) {
+            ret = linker.link(new SchemaNode(container, subSchema));
+            link.validator = ret;
+        }
+
+        return ret;
+    }
+
+    /**
+     * A link to a child validator, resolved on first use
+     *
+     * <p>Concurrent resolutions of the same link are harmless: they yield the
+     * same validator.</p>
+     */
+    private static final class Link
+    {
+        private volatile JsonValidator validator;
+    }
+
+    /**
+     * Builder of linked validators for one schema tree
+     *
+     * <p>A linker keeps the linked validators it has built, by resolved schema
+     * node, so that a same subschema (for instance one referred to by several
+     * JSON References, or recursively) is only linked once.</p>
+     */
+    static final class Linker
+    {
+        private final JsonValidatorCache cache;
+
+        private final ConcurrentMap<SchemaNode, JsonValidator> linked
+            = Maps.newConcurrentMap();
+
+        Linker(final JsonValidatorCache cache)
+        {
+            this.cache = cache;
+        }
+
+        /**
+         * Get the linked validator for a schema node
+         *
+         * <p>Validators for schemas which fail to resolve or fail syntax
+         * validation are returned as is.</p>
+         *
+         * @param schemaNode the schema node
+         * @return the validator
+         */
+        JsonValidator link(final SchemaNode schemaNode)
+        {
+            final JsonValidator validator = cache.getValidator(schemaNode);
+
+            if (!(validator instanceof InstanceValidator))
+                return validator;
+
+            final InstanceValidator instanceValidator
+                = (InstanceValidator) validator;
+            final SchemaNode key = instanceValidator.getSchemaNode();
+            final JsonValidator ret = linked.get(key);
+
+            if (ret != null)
+                return ret;
+
+            final JsonValidator newValidator
+                = new LinkedValidator(this, instanceValidator);
+            final JsonValidator previous
+                = linked.putIfAbsent(key, newValidator);
+
+            return previous == null ? newValidator : previous;
+        }
+    }
+}
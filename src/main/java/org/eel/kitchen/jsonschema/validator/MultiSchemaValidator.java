@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JacksonUtils;
+import org.eel.kitchen.jsonschema.util.NodeType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validator of one instance against several schemas in a single traversal
+ *
+ * <p>Validating an instance against N schemas one after the other means
+ * walking the instance N times. This validator walks it only once: at each
+ * node of the instance, it maintains the list of validators applicable to
+ * that node, for all schemas. The instance type, the list of children and the
+ * path of each child are only computed once per node. Child validators of
+ * each schema are those of its {@link InstanceValidator}, so that trivially
+ * true subschemas are skipped, as with a single schema.</p>
+ *
+ * <p>One report is produced per schema, and each of them is identical to the
+ * report which validating the instance against this schema alone would have
+ * produced.</p>
+ *
+ * <p>If the context is instrumented, the listener receives the same schema
+ * and keyword events as when validating against each schema alone, except
+ * that events of all schemas are interleaved: at each node of the instance,
+ * all schemas are entered, then children are walked, then all schemas are
+ * exited, in reverse order. The time reported for a schema at a node
+ * therefore includes the time spent in the other schemas at that node and
+ * below.</p>
+ *
+ * <p>Note that keywords which validate the instance against subschemas of
+ * their own ({@code type}, {@code disallow}, {@code extends}, {@code
+ * dependencies}) still do so with a separate traversal.</p>
+ */
+public final class MultiSchemaValidator
+{
+    private final JsonValidatorCache cache;
+    private final List<SchemaNode> schemaNodes;
+
+    /**
+     * Constructor
+     *
+     * @param cache the validator cache
+     * @param schemaNodes the schemas to validate against
+     */
+    public MultiSchemaValidator(final JsonValidatorCache cache,
+        final List<SchemaNode> schemaNodes)
+    {
+        this.cache = cache;
+        this.schemaNodes = ImmutableList.copyOf(schemaNodes);
+    }
+
+    /**
+     * Validate an instance against all schemas
+     *
+     * @param context the validation context
+     * @param instance the instance
+     * @return one report per schema, in the same order as the schemas
+     */
+    public List<ValidationReport> validate(final ValidationContext context,
+        final JsonNode instance)
+    {
+        final int size = schemaNodes.size();
+        final ValidationReport[] reports = new ValidationReport[size];
+        final List<Entry> entries = Lists.newArrayListWithCapacity(size);
+
+        for (int i = 0; i < size; i++) {
+            reports[i] = new ValidationReport();
+            entries.add(new Entry(i, cache.getValidator(schemaNodes.get(i))));
+        }
+
+        final SchemaContainer orig = context.getContainer();
+
+        if (size > 0)
+            walk(context, reports, entries, instance, reports[0].getPath());
+
+        context.setContainer(orig);
+        return ImmutableList.copyOf(reports);
+    }
+
+    private static void walk(final ValidationContext context,
+        final ValidationReport[] reports, final List<Entry> entries,
+        final JsonNode instance, final JsonPointer path)
+    {
+        final NodeType type = NodeType.getNodeType(instance);
+        final List<InstanceValidator> validators = Lists.newArrayList();
+        final List<Integer> indices = Lists.newArrayList();
+        final boolean tracked = context.tracksSchemas(instance);
+        final long[] starts = tracked ? new long[entries.size()] : null;
+        final int[] sizes = tracked ? new int[entries.size()] : null;
+
+        ValidationReport report;
+        InstanceValidator validator;
+
+        for (final Entry entry: entries) {
+            report = reports[entry.index];
+            report.setPath(path);
+            if (!(entry.validator instanceof InstanceValidator)) {
+                entry.validator.validate(context, report, instance);
+                continue;
+            }
+            validator = (InstanceValidator) entry.validator;
+            if (tracked) {
+                context.getListener().enterSchema(validator.getSchemaNode(),
+                    path);
+                sizes[validators.size()] = report.size();
+                starts[validators.size()] = System.nanoTime();
+            }
+            context.setContainer(validator.getSchemaNode().getContainer());
+            validator.validateKeywords(context, report, instance, type);
+            validators.add(validator);
+            indices.add(entry.index);
+        }
+
+        if (validators.isEmpty())
+            return;
+
+        if (type == NodeType.OBJECT)
+            walkObject(context, reports, validators, indices, instance, path);
+        else if (type == NodeType.ARRAY)
+            walkArray(context, reports, validators, indices, instance, path);
+
+        for (final int index: indices)
+            reports[index].setPath(path);
+
+        if (!tracked)
+            return;
+
+        /*
+         * Schemas are exited in the reverse order they were entered in, as
+         * listeners may keep a stack of them
+         */
+        final long end = System.nanoTime();
+
+        for (int i = validators.size() - 1; i >= 0; i--)
+            context.getListener().exitSchema(validators.get(i).getSchemaNode(),
+                path, end - starts[i],
+                reports[indices.get(i)].size() == sizes[i]);
+    }
+
+    private static void walkObject(final ValidationContext context,
+        final ValidationReport[] reports,
+        final List<InstanceValidator> validators, final List<Integer> indices,
+        final JsonNode instance, final JsonPointer path)
+    {
+        final List<ObjectValidator> objectValidators = Lists.newArrayList();
+        final List<SchemaContainer> containers = Lists.newArrayList();
+        final List<Integer> objectIndices = Lists.newArrayList();
+
+        ObjectValidator objectValidator;
+
+        for (int i = 0; i < validators.size(); i++) {
+            objectValidator = validators.get(i).getObjectValidator();
+            if (objectValidator == null)
+                continue;
+            objectValidators.add(objectValidator);
+            containers.add(validators.get(i).getSchemaNode().getContainer());
+            objectIndices.add(indices.get(i));
+        }
+
+        if (objectValidators.isEmpty())
+            return;
+
+        final int size = objectValidators.size();
+        final Map<String, JsonNode> map = JacksonUtils.nodeToMap(instance);
+
+        String key;
+        List<Entry> children;
+
+        for (final Map.Entry<String, JsonNode> entry: map.entrySet()) {
+            key = entry.getKey();
+            children = Lists.newArrayList();
+            for (int i = 0; i < size; i++) {
+                objectValidator = objectValidators.get(i);
+                context.setContainer(containers.get(i));
+                for (final JsonNode subSchema:
+                    objectValidator.getSchemas(context, key))
+                    if (!objectValidator.isTriviallyTrue(subSchema))
+                        children.add(new Entry(objectIndices.get(i),
+                            context.newValidator(subSchema)));
+            }
+            if (!children.isEmpty())
+                walk(context, reports, children, entry.getValue(),
+                    path.append(key));
+        }
+    }
+
+    private static void walkArray(final ValidationContext context,
+        final ValidationReport[] reports,
+        final List<InstanceValidator> validators, final List<Integer> indices,
+        final JsonNode instance, final JsonPointer path)
+    {
+        final List<ArrayValidator> arrayValidators = Lists.newArrayList();
+        final List<SchemaContainer> containers = Lists.newArrayList();
+        final List<Integer> arrayIndices = Lists.newArrayList();
+
+        ArrayValidator arrayValidator;
+
+        for (int i = 0; i < validators.size(); i++) {
+            arrayValidator = validators.get(i).getArrayValidator();
+            if (arrayValidator == null)
+                continue;
+            arrayValidators.add(arrayValidator);
+            containers.add(validators.get(i).getSchemaNode().getContainer());
+            arrayIndices.add(indices.get(i));
+        }
+
+        if (arrayValidators.isEmpty())
+            return;
+
+        final int size = arrayValidators.size();
+
+        JsonNode subSchema;
+        List<Entry> children;
+
+        for (int index = 0; index < instance.size(); index++) {
+            children = Lists.newArrayListWithCapacity(size);
+            for (int i = 0; i < size; i++) {
+                arrayValidator = arrayValidators.get(i);
+                subSchema = arrayValidator.getSchema(index);
+                if (arrayValidator.isTriviallyTrue(subSchema))
+                    continue;
+                context.setContainer(containers.get(i));
+                children.add(new Entry(arrayIndices.get(i),
+                    context.newValidator(subSchema)));
+            }
+            if (!children.isEmpty())
+                walk(context, reports, children, instance.get(index),
+                    path.append(index));
+        }
+    }
+
+    /**
+     * A validator, along with the index of the schema it originates from
+     */
+    private static final class Entry
+    {
+        private final int index;
+        private final JsonValidator validator;
+
+        private Entry(final int index, final JsonValidator validator)
+        {
+            this.index = index;
+            this.validator = validator;
+        }
+    }
+}
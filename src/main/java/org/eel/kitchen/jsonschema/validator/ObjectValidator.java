@@ -19,13 +19,14 @@ package org.eel.kitchen.jsonschema.validator;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import org.eel.kitchen.jsonschema.ref.JsonPointer;
 import org.eel.kitchen.jsonschema.report.ValidationReport;
 import org.eel.kitchen.jsonschema.util.JacksonUtils;
-import org.eel.kitchen.jsonschema.util.RhinoHelper;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -54,7 +55,24 @@ final class ObjectValidator
     private final Map<String, JsonNode> properties;
     private final Map<String, JsonNode> patternProperties;
 
+    /**
+     * Trivially true subschemas, by identity
+     */
+    private final Set<JsonNode> trivial;
+
     ObjectValidator(final JsonNode schema)
+    {
+        this(schema, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param schema the schema
+     * @param optimizer the optimizer, {@code null} if subschemas should not be
+     * checked for triviality
+     */
+    ObjectValidator(final JsonNode schema, final SchemaOptimizer optimizer)
     {
         JsonNode node;
 
@@ -69,6 +87,31 @@ final class ObjectValidator
         node = schema.path("patternProperties");
         patternProperties = node.isObject() ? JacksonUtils.nodeToMap(node)
             : Collections.<String, JsonNode>emptyMap();
+
+        trivial = optimizer == null ? Collections.<JsonNode>emptySet()
+            : optimizer.triviallyTrue(getAllSchemas());
+    }
+
+    /**
+     * Tell whether all subschemas which may apply to children are trivially
+     * true
+     *
+     * @return true if children never need to be validated
+     */
+    boolean isTriviallyTrue()
+    {
+        return trivial.containsAll(getAllSchemas());
+    }
+
+    /**
+     * Tell whether a subschema is trivially true
+     *
+     * @param subSchema the subschema
+     * @return true if children never need to be validated against it
+     */
+    boolean isTriviallyTrue(final JsonNode subSchema)
+    {
+        return trivial.contains(subSchema);
     }
 
     @Override
@@ -79,31 +122,84 @@ final class ObjectValidator
         final Map<String, JsonNode> map = JacksonUtils.nodeToMap(instance);
 
         for (final Map.Entry<String, JsonNode> entry: map.entrySet())
-            validateOne(context, report, entry);
+            validateOne(context, report, pwd, entry);
 
         report.setPath(pwd);
         return false;
     }
 
     private void validateOne(final ValidationContext context,
-        final ValidationReport report, final Map.Entry<String, JsonNode> entry)
+        final ValidationReport report, final JsonPointer pwd,
+        final Map.Entry<String, JsonNode> entry)
     {
         final String key = entry.getKey();
         final JsonNode value = entry.getValue();
-        final JsonPointer ptr = report.getPath().append(key);
-        final Set<JsonNode> subSchemas = getSchemas(key);
+        final Set<JsonNode> subSchemas = getSchemas(context, key);
+
+        if (trivial.containsAll(subSchemas))
+            return;
 
         JsonValidator validator;
 
-        report.setPath(ptr);
+        report.setPath(pwd.append(key));
 
         for (final JsonNode subSchema: subSchemas) {
+            if (trivial.contains(subSchema))
+                continue;
             validator = context.newValidator(subSchema);
             validator.validate(context, report, value);
         }
     }
 
-    private Set<JsonNode> getSchemas(final String key)
+    /**
+     * Get the schema of a property in {@code properties}
+     *
+     * @param key the property name
+     * @return the schema, or {@code null} if not found
+     */
+    JsonNode getPropertySchema(final String key)
+    {
+        return properties.get(key);
+    }
+
+    boolean hasPatternProperties()
+    {
+        return !patternProperties.isEmpty();
+    }
+
+    JsonNode getAdditionalProperties()
+    {
+        return additionalProperties;
+    }
+
+    /**
+     * Get the schemas of {@code patternProperties}, by regex
+     *
+     * <p>Regexes are in the order in which {@link
+     * #getSchemas(ValidationContext, String)} tries them.</p>
+     *
+     * @return the map (empty if there are no pattern properties)
+     */
+    Map<String, JsonNode> getPatternProperties()
+    {
+        return Collections.unmodifiableMap(patternProperties);
+    }
+
+    /**
+     * Get all subschemas which can apply to a child instance
+     *
+     * @return the subschemas (may contain duplicates)
+     */
+    List<JsonNode> getAllSchemas()
+    {
+        final List<JsonNode> ret = Lists.newArrayList(properties.values());
+        ret.addAll(patternProperties.values());
+        ret.add(additionalProperties);
+        return ret;
+    }
+
+    Set<JsonNode> getSchemas(final ValidationContext context,
+        final String key)
     {
         final Set<JsonNode> ret = new HashSet<JsonNode>();
 
@@ -112,7 +208,7 @@ final class ObjectValidator
 
         for (final Map.Entry<String, JsonNode> entry:
             patternProperties.entrySet())
-            if (RhinoHelper.regMatch(entry.getKey(), key))
+            if (context.regMatch(entry.getKey(), key))
                 ret.add(entry.getValue());
 
         if (ret.isEmpty())
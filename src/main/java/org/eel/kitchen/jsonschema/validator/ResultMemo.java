@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.eel.kitchen.jsonschema.format.FormatSpecifier;
+import org.eel.kitchen.jsonschema.keyword.PatternKeywordValidator;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.util.RhinoHelper;
+
+/**
+ * Memo of format and regex results for string instances
+ *
+ * <p>Some instance strings come back over and over again (host names, country
+ * codes, email addresses...). Checking them against a format specifier or an
+ * ECMA 262 regex is comparatively expensive, so this class remembers the
+ * outcome of such checks. Only a boolean is stored for each (format or regex,
+ * value) pair: validation messages are always produced by the original code
+ * path.</p>
+ *
+ * <p>Which strings are remembered is decided by an admission rule. By default,
+ * only strings no longer than {@link Builder#DEFAULT_MAX_LENGTH} characters are
+ * admitted. The number of remembered results is bounded as well (see
+ * {@link Builder#DEFAULT_MAXIMUM_SIZE}).</p>
+ *
+ * <p>A memo is enabled on a per-factory basis, see {@link
+ * JsonSchemaFactory.Builder#withResultMemo(Builder)}. Note that since format
+ * results may depend on validation features, a memo instance must not be
+ * shared between factories.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @see FormatSpecifier
+ * @see PatternKeywordValidator
+ */
+public final class ResultMemo
+{
+    /**
+     * The disabled memo: admits nothing, remembers nothing
+     */
+    private static final ResultMemo DISABLED = new ResultMemo();
+
+    /**
+     * The admission rule
+     */
+    private final Predicate<String> admission;
+
+    /**
+     * The result cache, {@code null} if this memo is disabled
+     */
+    private final Cache<Key, Boolean> cache;
+
+    /**
+     * Constructor for the disabled memo
+     */
+    private ResultMemo()
+    {
+        admission = null;
+        cache = null;
+    }
+
+    private ResultMemo(final Builder builder)
+    {
+        admission = builder.admission;
+        cache = CacheBuilder.newBuilder().maximumSize(builder.maximumSize)
+            .recordStats().build();
+    }
+
+    /**
+     * Return a memo which never remembers anything
+     *
+     * <p>This is what validation contexts use unless told otherwise.</p>
+     *
+     * @return the disabled memo
+     */
+    public static ResultMemo disabled()
+    {
+        return DISABLED;
+    }
+
+    /**
+     * Tell whether a string value is eligible for memoization
+     *
+     * @param value the string value
+     * @return true if this memo is enabled and the admission rule says yes
+     */
+    public boolean admits(final String value)
+    {
+        return cache != null && admission.apply(value);
+    }
+
+    /**
+     * Match an input against an ECMA 262 regex, remembering the result
+     *
+     * @see RhinoHelper#regMatch(String, String)
+     *
+     * @param regex the regex
+     * @param input the input
+     * @return true if the regex matches the input
+     */
+    public boolean regMatch(final String regex, final String input)
+    {
+        return regMatch(regex, input, ValidationListener.noop());
+    }
+
+    /**
+     * Match an input against an ECMA 262 regex, remembering the result and
+     * reporting regexes actually run
+     *
+     * @param regex the regex
+     * @param input the input
+     * @param listener the listener to report to
+     * @return true if the regex matches the input
+     */
+    boolean regMatch(final String regex, final String input,
+        final ValidationListener listener)
+    {
+        if (!admits(input))
+            return run(regex, input, listener);
+
+        final Key key = new Key(Kind.REGEX, regex, input);
+        final Boolean cached = cache.getIfPresent(key);
+
+        if (cached != null)
+            return cached;
+
+        final boolean ret = run(regex, input, listener);
+        cache.put(key, ret);
+        return ret;
+    }
+
+    private static boolean run(final String regex, final String input,
+        final ValidationListener listener)
+    {
+        listener.regexMatched(regex);
+        return RhinoHelper.regMatch(regex, input);
+    }
+
+    /**
+     * Get the remembered result of a format check, if any
+     *
+     * @param fmt the format specifier name
+     * @param value the string value
+     * @return the result, or {@code null} if unknown
+     */
+    public Boolean getFormatResult(final String fmt, final String value)
+    {
+        if (!admits(value))
+            return null;
+
+        return cache.getIfPresent(new Key(Kind.FORMAT, fmt, value));
+    }
+
+    /**
+     * Remember the result of a format check
+     *
+     * @param fmt the format specifier name
+     * @param value the string value
+     * @param valid the result of the check
+     */
+    public void putFormatResult(final String fmt, final String value,
+        final boolean valid)
+    {
+        if (admits(value))
+            cache.put(new Key(Kind.FORMAT, fmt, value), valid);
+    }
+
+    /**
+     * Return hit/miss statistics for this memo
+     *
+     * <p>A disabled memo always returns all zeroes.</p>
+     *
+     * @return the statistics
+     */
+    public CacheStats stats()
+    {
+        return cache == null ? new CacheStats(0L, 0L, 0L, 0L, 0L, 0L)
+            : cache.stats();
+    }
+
+    /**
+     * Return the number of remembered results
+     *
+     * @return the number of entries
+     */
+    public long size()
+    {
+        return cache == null ? 0L : cache.size();
+    }
+
+    /**
+     * Forget all remembered results
+     */
+    public void invalidateAll()
+    {
+        if (cache != null)
+            cache.invalidateAll();
+    }
+
+    @Override
+    public String toString()
+    {
+        return cache == null ? "disabled" : "size: " + cache.size()
+            + "; " + cache.stats();
+    }
+
+    /**
+     * The two kinds of remembered results
+     */
+    private enum Kind
+    {
+        FORMAT,
+        REGEX
+    }
+
+    /**
+     * Cache key
+     */
+    private static final class Key
+    {
+        private final Kind kind;
+        private final String spec;
+        private final String value;
+        private final int hashCode;
+
+        private Key(final Kind kind, final String spec, final String value)
+        {
+            this.kind = kind;
+            this.spec = spec;
+            this.value = value;
+            hashCode = 31 * (31 * kind.hashCode() + spec.hashCode())
+                + value.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (obj == null)
+                return false;
+            if (this == obj)
+                return true;
+
+            if (getClass() != obj.getClass())
+                return false;
+
+            final Key other = (Key) obj;
+
+            return kind == other.kind && spec.equals(other.spec)
+                && value.equals(other.value);
+        }
+    }
+
+    /**
+     * Builder for a {@link ResultMemo}
+     */
+    public static final class Builder
+    {
+        /**
+         * Default maximum number of remembered results
+         */
+        public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+        /**
+         * Default maximum length of admitted strings
+         */
+        public static final int DEFAULT_MAX_LENGTH = 64;
+
+        private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+        private Predicate<String> admission
+            = maxLength(DEFAULT_MAX_LENGTH);
+
+        /**
+         * Set the maximum number of remembered results
+         *
+         * @param maximumSize the size
+         * @return the builder
+         * @throws IllegalArgumentException size is negative
+         */
+        public Builder setMaximumSize(final long maximumSize)
+        {
+            Preconditions.checkArgument(maximumSize >= 0L,
+                "maximum size must not be negative");
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Only admit strings up to a given length
+         *
+         * @param maxLength the maximum length
+         * @return the builder
+         * @throws IllegalArgumentException length is negative
+         */
+        public Builder setMaxLength(final int maxLength)
+        {
+            Preconditions.checkArgument(maxLength >= 0,
+                "maximum length must not be negative");
+            admission = maxLength(maxLength);
+            return this;
+        }
+
+        /**
+         * Set a custom admission rule
+         *
+         * @param admission the rule
+         * @return the builder
+         * @throws NullPointerException rule is null
+         */
+        public Builder setAdmission(final Predicate<String> admission)
+        {
+            Preconditions.checkNotNull(admission, "admission rule is null");
+            this.admission = admission;
+            return this;
+        }
+
+        /**
+         * Build the memo
+         *
+         * @return a new memo
+         */
+        public ResultMemo build()
+        {
+            return new ResultMemo(this);
+        }
+
+        private static Predicate<String> maxLength(final int maxLength)
+        {
+            return new Predicate<String>()
+            {
+                @Override
+                public boolean apply(final String input)
+                {
+                    return input.length() <= maxLength;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.util.JacksonUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schema interner
+ *
+ * <p>Many schemas repeat the same subschemas (addresses, amounts, dates...),
+ * and without this class, each copy would have its own entry in the
+ * {@link JsonValidatorCache}, and its own validators. This class makes equal
+ * subschemas share one cache entry where this is safe.</p>
+ *
+ * <p>This is only safe for subschemas which do not depend on their resolution
+ * context, that is, subschemas with no JSON Reference anywhere: for these, the
+ * schema container is irrelevant. Such a subschema is replaced with the first
+ * equal subschema seen so far, in an anonymous container. Subschemas with JSON
+ * References are left alone, since the same reference may point to different
+ * schemas in different containers.</p>
+ *
+ * <p>The result of this analysis is kept per subschema instance, along with
+ * the hash code of the subschema, so that cache keys do not need to compute it
+ * again.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public final class SchemaInterner
+{
+    /**
+     * The container of canonical schema nodes
+     */
+    private static final SchemaContainer CANONICAL
+        = new SchemaContainer(JacksonUtils.emptySchema());
+
+    /**
+     * Canonical forms, by schema identity
+     */
+    private final LoadingCache<JsonNode, Canonical> canonicals;
+
+    private final Interner<JsonNode> interner = Interners.newWeakInterner();
+
+    private final boolean enabled;
+
+    private final AtomicLong contextFreeSchemas = new AtomicLong();
+    private final AtomicLong sharedSchemas = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param enabled whether equal subschemas should be shared; if false, only
+     * hash codes are kept
+     */
+    SchemaInterner(final boolean enabled)
+    {
+        this.enabled = enabled;
+        canonicals = CacheBuilder.newBuilder().weakKeys()
+            .build(new CacheLoader<JsonNode, Canonical>()
+            {
+                @Override
+                public Canonical load(final JsonNode key)
+                {
+                    return computeCanonical(key);
+                }
+            });
+    }
+
+    /**
+     * Return the number of distinct subschema instances found not to depend
+     * on their resolution context
+     *
+     * @return the number of context free subschemas
+     */
+    public long getContextFreeSchemas()
+    {
+        return contextFreeSchemas.get();
+    }
+
+    /**
+     * Return the number of distinct subschema instances which were found to be
+     * equal to another one, and share its validator
+     *
+     * @return the number of shared subschemas
+     */
+    public long getSharedSchemas()
+    {
+        return sharedSchemas.get();
+    }
+
+    /**
+     * Return the container of canonical schema nodes
+     *
+     * <p>It is anonymous and empty: it can be used as the context of any
+     * schema which does not depend on its context.</p>
+     *
+     * @return the container
+     */
+    static SchemaContainer canonicalContainer()
+    {
+        return CANONICAL;
+    }
+
+    /**
+     * Return the canonical schema node for a schema and its container
+     *
+     * @param container the schema container
+     * @param node the schema
+     * @return the canonical schema node
+     */
+    SchemaNode canonicalize(final SchemaContainer container,
+        final JsonNode node)
+    {
+        final Canonical canonical = canonicals.getUnchecked(node);
+
+        if (!canonical.contextFree)
+            return new SchemaNode(container, node, canonical.hashCode);
+
+        return new SchemaNode(CANONICAL, canonical.node == null ? node
+            : canonical.node, canonical.hashCode);
+    }
+
+    private Canonical computeCanonical(final JsonNode node)
+    {
+        final int hashCode = node.hashCode();
+
+        if (!enabled || !isContextFree(node))
+            return new Canonical(null, hashCode, false);
+
+        contextFreeSchemas.incrementAndGet();
+
+        final JsonNode ret = interner.intern(node);
+
+        if (ret == node)
+            return new Canonical(null, hashCode, true);
+
+        sharedSchemas.incrementAndGet();
+        return new Canonical(ret, hashCode, true);
+    }
+
+    /**
+     * Tell whether a JSON value has no JSON Reference at any depth
+     *
+     * <p>This is conservative: an object member named {@code $ref} is always
+     * considered to be a JSON Reference, even if it is a property name or
+     * part of an enumeration.</p>
+     *
+     * @param node the JSON value
+     * @return true if there is no {@code $ref} member anywhere
+     */
+    static boolean isContextFree(final JsonNode node)
+    {
+        if (node.has("$ref"))
+            return false;
+
+        for (final JsonNode child: node)
+            if (!isContextFree(child))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * The canonical form of a subschema
+     *
+     * <p>It must not refer to the subschema itself, which is a weak key of the
+     * cache: {@code node} is {@code null} if the subschema is its own canonical
+     * form.</p>
+     */
+    private static final class Canonical
+    {
+        private final JsonNode node;
+        private final int hashCode;
+        private final boolean contextFree;
+
+        private Canonical(final JsonNode node, final int hashCode,
+            final boolean contextFree)
+        {
+            this.node = node;
+            this.hashCode = hashCode;
+            this.contextFree = contextFree;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundle;
+import org.eel.kitchen.jsonschema.keyword.AdditionalItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.AdditionalPropertiesKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.DependenciesKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.ExtendsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinLengthKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.PropertiesKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.TypeKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.UniqueItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.report.ValidationMessage;
+import org.eel.kitchen.jsonschema.syntax.SyntaxValidator;
+import org.eel.kitchen.jsonschema.util.JacksonUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schema optimizer
+ *
+ * <p>This optimizer runs after syntax validation and before keyword validators
+ * are built (see {@link JsonValidatorCache}). It does two things:</p>
+ *
+ * <ul>
+ *     <li>it finds dead keywords, ie keywords which can never fail given their
+ *     value (for instance, {@code "uniqueItems": false} or {@code "type":
+ *     "any"}): no validator is built for them;</li>
+ *     <li>it finds trivially true subschemas, ie subschemas which can never
+ *     fail: they are not JSON References, they are syntactically valid, all
+ *     of their keywords are dead and all of their own subschemas are
+ *     trivially true. Instances are not validated against them at all, and
+ *     neither are their children.</li>
+ * </ul>
+ *
+ * <p>Only keywords whose validator is the one of the default keyword bundle
+ * can be found to be dead: if you register your own validator for a keyword,
+ * this keyword is always considered live.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public final class SchemaOptimizer
+{
+    /**
+     * Default validators for keywords which may be dead
+     */
+    private static final Map<String, Class<? extends KeywordValidator>>
+        DEFAULTS = ImmutableMap.<String, Class<? extends KeywordValidator>>
+        builder()
+        .put("additionalItems", AdditionalItemsKeywordValidator.class)
+        .put("additionalProperties", AdditionalPropertiesKeywordValidator.class)
+        .put("dependencies", DependenciesKeywordValidator.class)
+        .put("extends", ExtendsKeywordValidator.class)
+        .put("minItems", MinItemsKeywordValidator.class)
+        .put("minLength", MinLengthKeywordValidator.class)
+        .put("properties", PropertiesKeywordValidator.class)
+        .put("type", TypeKeywordValidator.class)
+        .put("uniqueItems", UniqueItemsKeywordValidator.class)
+        .build();
+
+    private final Map<String, Class<? extends KeywordValidator>> validators;
+    private final SyntaxValidator syntaxValidator;
+
+    /**
+     * Whether a schema is trivially true, by schema identity
+     */
+    private final LoadingCache<JsonNode, Boolean> trivial;
+
+    private final AtomicLong prunedKeywords = new AtomicLong();
+    private final AtomicLong trivialSchemas = new AtomicLong();
+
+    SchemaOptimizer(final KeywordBundle bundle,
+        final SyntaxValidator syntaxValidator)
+    {
+        validators = ImmutableMap.copyOf(bundle.getValidators());
+        this.syntaxValidator = syntaxValidator;
+        trivial = CacheBuilder.newBuilder().weakKeys()
+            .build(new CacheLoader<JsonNode, Boolean>()
+            {
+                @Override
+                public Boolean load(final JsonNode key)
+                {
+                    final boolean ret = computeTriviallyTrue(key);
+                    if (ret)
+                        trivialSchemas.incrementAndGet();
+                    return ret;
+                }
+            });
+    }
+
+    /**
+     * Return the number of keyword validators which were not built because
+     * their keyword was dead
+     *
+     * @return the number of pruned keywords
+     */
+    public long getPrunedKeywords()
+    {
+        return prunedKeywords.get();
+    }
+
+    /**
+     * Return the number of distinct subschemas found to be trivially true
+     *
+     * <p>Note that default empty schemas (for instance, the schema of
+     * additional properties when {@code additionalProperties} is absent) are
+     * not counted.</p>
+     *
+     * @return the number of trivially true subschemas
+     */
+    public long getTrivialSchemas()
+    {
+        return trivialSchemas.get();
+    }
+
+    /**
+     * Return the dead keywords of a syntactically valid schema
+     *
+     * @param schema the schema
+     * @return the set of dead keywords
+     */
+    Set<String> deadKeywords(final JsonNode schema)
+    {
+        final Set<String> ret = Sets.newHashSet();
+
+        for (final String keyword: validatedKeywords(schema))
+            if (isDead(keyword, schema))
+                ret.add(keyword);
+
+        prunedKeywords.addAndGet(ret.size());
+        return ret;
+    }
+
+    /**
+     * Tell whether a subschema is trivially true
+     *
+     * @param schema the subschema
+     * @return true if no instance can ever fail to validate against it
+     */
+    boolean isTriviallyTrue(final JsonNode schema)
+    {
+        return schema == JacksonUtils.emptySchema()
+            || trivial.getUnchecked(schema);
+    }
+
+    /**
+     * Return the subschemas of a schema which are trivially true
+     *
+     * @param schemas the subschemas
+     * @return a set of these subschemas, by identity
+     */
+    Set<JsonNode> triviallyTrue(final Iterable<JsonNode> schemas)
+    {
+        final Set<JsonNode> ret = Sets.newIdentityHashSet();
+
+        for (final JsonNode schema: schemas)
+            if (isTriviallyTrue(schema))
+                ret.add(schema);
+
+        return ret;
+    }
+
+    private boolean computeTriviallyTrue(final JsonNode schema)
+    {
+        if (!schema.isObject() || schema.has("$ref"))
+            return false;
+
+        final List<ValidationMessage> messages = Lists.newArrayList();
+
+        syntaxValidator.validate(messages, schema);
+
+        if (!messages.isEmpty())
+            return false;
+
+        for (final String keyword: validatedKeywords(schema))
+            if (!isDead(keyword, schema))
+                return false;
+
+        for (final JsonNode subSchema: new ObjectValidator(schema)
+            .getAllSchemas())
+            if (!isTriviallyTrue(subSchema))
+                return false;
+
+        for (final JsonNode subSchema: new ArrayValidator(schema)
+            .getAllSchemas())
+            if (!isTriviallyTrue(subSchema))
+                return false;
+
+        return true;
+    }
+
+    private Set<String> validatedKeywords(final JsonNode schema)
+    {
+        final Set<String> ret = JacksonUtils.fieldNames(schema);
+        ret.retainAll(validators.keySet());
+        return ret;
+    }
+
+    private boolean isDead(final String keyword, final JsonNode schema)
+    {
+        final Class<? extends KeywordValidator> c = DEFAULTS.get(keyword);
+
+        if (c == null || validators.get(keyword) != c)
+            return false;
+
+        final JsonNode value = schema.get(keyword);
+
+        if ("additionalItems".equals(keyword))
+            return value.asBoolean(true) || !schema.path("items").isArray();
+        if ("additionalProperties".equals(keyword))
+            return value.asBoolean(true);
+        if ("dependencies".equals(keyword))
+            return value.size() == 0;
+        if ("extends".equals(keyword))
+            return allTriviallyTrue(value.isObject() ? ImmutableList.of(value)
+                : ImmutableList.copyOf(value));
+        if ("minItems".equals(keyword) || "minLength".equals(keyword))
+            return value.intValue() == 0;
+        if ("properties".equals(keyword))
+            return noneRequired(value);
+        if ("type".equals(keyword))
+            return typeIsDead(value);
+        if ("uniqueItems".equals(keyword))
+            return !value.booleanValue();
+
+        return false;
+    }
+
+    private boolean allTriviallyTrue(final List<JsonNode> schemas)
+    {
+        for (final JsonNode schema: schemas)
+            if (!isTriviallyTrue(schema))
+                return false;
+
+        return true;
+    }
+
+    private static boolean noneRequired(final JsonNode properties)
+    {
+        for (final JsonNode schema: properties)
+            if (schema.path("required").asBoolean(false))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * A type keyword is dead if it allows {@code any}, or if one of its
+     * schemas is trivially true
+     *
+     * @param value the keyword value
+     * @return true if the keyword is dead
+     */
+    private boolean typeIsDead(final JsonNode value)
+    {
+        if (value.isTextual())
+            return "any".equals(value.textValue());
+
+        for (final JsonNode element: value)
+            if (element.isTextual() ? "any".equals(element.textValue())
+                : isTriviallyTrue(element))
+                return true;
+
+        return false;
+    }
+}
@@ -0,0 +1,739 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.eel.kitchen.jsonschema.keyword.AbstractTypeKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.DependenciesKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.EnumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.ExtendsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.FormatKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.PatternKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.UniqueItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.main.JsonSchemaException;
+import org.eel.kitchen.jsonschema.ref.JsonFragment;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.report.ValidationMessage;
+import org.eel.kitchen.jsonschema.util.JacksonUtils;
+import org.eel.kitchen.jsonschema.util.NodeType;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An explanation of how instances are validated against a schema
+ *
+ * <p>A plan is a tree with one node per subschema an instance may be validated
+ * against, starting from the root schema: schemas of children, and schemas of
+ * {@code extends}, {@code type}, {@code disallow} and {@code dependencies}.
+ * Each node tells:</p>
+ *
+ * <ul>
+ *     <li>the location of the subschema, and the target of its JSON Reference,
+ *     if any;</li>
+ *     <li>the keyword validators which run, by instance type (dead keywords
+ *     have none, see {@link SchemaOptimizer});</li>
+ *     <li>regexes, and the engine which runs them;</li>
+ *     <li>whether the schemas of {@code type} and {@code disallow} are all
+ *     tried, or dispatched on a discriminating property;</li>
+ *     <li>the depth of its {@code extends} hierarchy;</li>
+ *     <li>an estimated cost.</li>
+ * </ul>
+ *
+ * <p>Trivially true subschemas are left out, since instances are never
+ * validated against them. A subschema which was already explained (for
+ * instance, the target of a recursive reference) only points to its first
+ * explanation. Subschemas which fail to resolve or fail syntax validation
+ * come with their failure messages.</p>
+ *
+ * <p>Costs are in arbitrary units, relative to the cost of one simple keyword
+ * on one instance. The cost of a node is the worst case cost of validating
+ * one instance against this subschema alone, including the subschemas of its
+ * keywords; its total cost adds the total costs of its children, each counted
+ * once (ie, as if each child instance was present once). The total cost of the
+ * root is a measure of the complexity of the whole schema, which you can
+ * compare against a budget (see {@link #fitsBudget(long)}).</p>
+ *
+ * <p>A plan is rendered as JSON by {@link #asJsonNode()}, and as indented text
+ * by {@link #toString()}.</p>
+ *
+ * @see JsonValidatorCache#explain(SchemaNode)
+ */
+public final class SchemaPlan
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    /**
+     * Name of the regex engine (see {@link
+     * org.eel.kitchen.jsonschema.util.RhinoHelper})
+     */
+    private static final String REGEX_ENGINE = "rhino";
+
+    /**
+     * Cost of a keyword
+     */
+    private static final long KEYWORD_COST = 1L;
+
+    /**
+     * Cost of a regex match
+     */
+    private static final long REGEX_COST = 10L;
+
+    /**
+     * Cost of a format check
+     */
+    private static final long FORMAT_COST = 5L;
+
+    /**
+     * Cost of {@code uniqueItems}, which hashes all elements
+     */
+    private static final long UNIQUE_ITEMS_COST = 4L;
+
+    /**
+     * Number of {@code enum} values costing one more unit
+     *
+     * <p>Lookups are hashed, but the footprint of the validator grows with the
+     * number of values.</p>
+     */
+    private static final int ENUM_VALUES_PER_UNIT = 64;
+
+    /**
+     * Cost of a subschema which refers to another node of the plan, or which
+     * failed to build
+     */
+    private static final long LINK_COST = 1L;
+
+    private static final String INDENT = "  ";
+
+    private static final Joiner TYPE_JOINER = Joiner.on(", ");
+
+    private final Node root;
+
+    private SchemaPlan(final Node root)
+    {
+        this.root = root;
+    }
+
+    /**
+     * Return the estimated total cost of the schema
+     *
+     * @return the total cost of the root node
+     */
+    public long getTotalCost()
+    {
+        return root.totalCost;
+    }
+
+    /**
+     * Tell whether the schema fits in a complexity budget
+     *
+     * @param budget the budget
+     * @return true if the total cost does not exceed the budget
+     */
+    public boolean fitsBudget(final long budget)
+    {
+        return root.totalCost <= budget;
+    }
+
+    /**
+     * Return this plan as JSON
+     *
+     * @return a JSON object for the root node
+     */
+    public JsonNode asJsonNode()
+    {
+        return root.asJsonNode();
+    }
+
+    /**
+     * Return this plan as indented text, one line per fact
+     *
+     * @return the text
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+
+        root.appendTo(sb, "");
+        return sb.toString();
+    }
+
+    /**
+     * Builder of a plan, walking the validators of a schema
+     */
+    static final class Explainer
+    {
+        private static final JsonPointer ROOT;
+
+        static {
+            try {
+                ROOT = new JsonPointer("");
+            } catch (JsonSchemaException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final JsonValidatorCache cache;
+        private final JsonResolver resolver;
+        private final SchemaOptimizer optimizer;
+
+        /**
+         * Locations of nodes already explained, by resolved schema node
+         */
+        private final Map<SchemaNode, String> explained = Maps.newHashMap();
+
+        Explainer(final JsonValidatorCache cache, final JsonResolver resolver)
+        {
+            this.cache = cache;
+            this.resolver = resolver;
+            optimizer = cache.getOptimizer();
+        }
+
+        SchemaPlan explain(final SchemaNode schemaNode)
+        {
+            final JsonRef locator = schemaNode.getContainer().getLocator();
+            final Location location
+                = new Location(locator.getRootAsURI().toString(), ROOT);
+
+            return new SchemaPlan(node(schemaNode, location));
+        }
+
+        private Node node(final SchemaNode schemaNode, final Location location)
+        {
+            final Node ret = new Node(location.toString());
+            final JsonValidator validator = cache.getValidator(schemaNode);
+            Location target = location;
+
+            if (schemaNode.getNode().has("$ref"))
+                target = followRefs(schemaNode, ret, location);
+
+            if (!(validator instanceof InstanceValidator)) {
+                ret.failures = JsonValidatorCache.failures(validator);
+                ret.cost = ret.totalCost = LINK_COST;
+                return ret;
+            }
+
+            final InstanceValidator instanceValidator
+                = (InstanceValidator) validator;
+            final SchemaNode resolved = instanceValidator.getSchemaNode();
+            final String previous = explained.get(resolved);
+
+            if (previous != null) {
+                ret.explainedAt = previous;
+                ret.cost = ret.totalCost = LINK_COST;
+                return ret;
+            }
+
+            explained.put(resolved, target.toString());
+
+            for (final KeywordValidator keywordValidator:
+                instanceValidator.getKeywordValidators())
+                addKeyword(ret, resolved, target, keywordValidator);
+
+            if (instanceValidator.getObjectValidator() != null)
+                addObjectChildren(ret, resolved, target);
+            if (instanceValidator.getArrayValidator() != null)
+                addArrayChildren(ret, resolved, target);
+
+            ret.totalCost = ret.cost;
+            for (final Node child: ret.children)
+                ret.totalCost += child.totalCost;
+
+            return ret;
+        }
+
+        /**
+         * Fill the references of a node, and return the location of the target
+         *
+         * @param schemaNode the schema node
+         * @param node the plan node
+         * @param location the location of the schema node
+         * @return the location of the target, or the original location if
+         * resolution fails
+         */
+        private Location followRefs(final SchemaNode schemaNode,
+            final Node node, final Location location)
+        {
+            final Set<JsonRef> refs = new LinkedHashSet<JsonRef>();
+
+            try {
+                resolver.resolve(schemaNode, refs);
+            } catch (JsonSchemaException ignored) {
+                /*
+                 * The failure is reported by the validator
+                 */
+                return location;
+            }
+
+            JsonRef last = null;
+
+            for (final JsonRef ref: refs) {
+                node.refs.add(ref.toString());
+                last = ref;
+            }
+
+            if (last == null)
+                return location;
+
+            final JsonFragment fragment = last.getFragment();
+
+            return fragment instanceof JsonPointer
+                ? new Location(last.getRootAsURI().toString(),
+                    (JsonPointer) fragment)
+                : new Location(last.toString(), ROOT);
+        }
+
+        private void addKeyword(final Node node, final SchemaNode schemaNode,
+            final Location location, final KeywordValidator validator)
+        {
+            final String name = validator.getKeyword();
+            final JsonNode value = schemaNode.getNode().get(name);
+            final KeywordPlan plan
+                = new KeywordPlan(name, validator.toString());
+
+            for (final NodeType type: validator.getInstanceTypes())
+                node.typeKeywords.get(type).add(name);
+
+            plan.cost = KEYWORD_COST;
+
+            if (validator instanceof PatternKeywordValidator) {
+                plan.regex = value.textValue();
+                plan.cost = REGEX_COST;
+            } else if (validator instanceof FormatKeywordValidator)
+                plan.cost = FORMAT_COST;
+            else if (validator instanceof UniqueItemsKeywordValidator)
+                plan.cost = UNIQUE_ITEMS_COST;
+            else if (validator instanceof EnumKeywordValidator)
+                plan.cost += value.size() / ENUM_VALUES_PER_UNIT;
+            else if (validator instanceof ExtendsKeywordValidator)
+                addExtends(node, plan, schemaNode, location, value);
+            else if (validator instanceof DependenciesKeywordValidator)
+                addDependencies(plan, schemaNode, location, value);
+            else if (validator instanceof AbstractTypeKeywordValidator)
+                addUnion(plan, schemaNode, location, value,
+                    (AbstractTypeKeywordValidator) validator);
+
+            node.keywords.add(plan);
+            node.cost += plan.cost;
+        }
+
+        private void addExtends(final Node node, final KeywordPlan plan,
+            final SchemaNode schemaNode, final Location location,
+            final JsonNode value)
+        {
+            final Location base = location.append("extends");
+
+            if (value.isObject())
+                addSchema(plan, schemaNode, base, value);
+            else
+                for (int i = 0; i < value.size(); i++)
+                    addSchema(plan, schemaNode, base.append(i), value.get(i));
+
+            int depth = 0;
+
+            for (final Node parent: plan.schemas)
+                depth = Math.max(depth, parent.extendsDepth);
+
+            node.extendsDepth = depth + 1;
+
+            for (final Node parent: plan.schemas)
+                plan.cost += parent.totalCost;
+        }
+
+        private void addDependencies(final KeywordPlan plan,
+            final SchemaNode schemaNode, final Location location,
+            final JsonNode value)
+        {
+            final Location base = location.append("dependencies");
+            final Iterator<Map.Entry<String, JsonNode>> iterator
+                = value.fields();
+
+            Map.Entry<String, JsonNode> entry;
+
+            while (iterator.hasNext()) {
+                entry = iterator.next();
+                if (entry.getValue().isObject())
+                    addSchema(plan, schemaNode, base.append(entry.getKey()),
+                        entry.getValue());
+            }
+
+            for (final Node dependency: plan.schemas)
+                plan.cost += dependency.totalCost;
+        }
+
+        /**
+         * Add the schemas of {@code type} or {@code disallow}
+         *
+         * <p>If schemas are dispatched on a discriminator, only the most
+         * expensive one is counted; otherwise, all of them are tried in the
+         * worst case.</p>
+         */
+        private void addUnion(final KeywordPlan plan,
+            final SchemaNode schemaNode, final Location location,
+            final JsonNode value, final AbstractTypeKeywordValidator validator)
+        {
+            if (validator.getSchemas().isEmpty())
+                return;
+
+            final Location base = location.append(plan.keyword);
+
+            for (int i = 0; i < value.size(); i++)
+                if (value.get(i).isObject())
+                    addSchema(plan, schemaNode, base.append(i), value.get(i));
+
+            plan.union = true;
+            plan.discriminator = validator.getDiscriminator();
+
+            long max = 0L;
+
+            for (final Node schema: plan.schemas) {
+                max = Math.max(max, schema.totalCost);
+                if (plan.discriminator == null)
+                    plan.cost += schema.totalCost;
+            }
+
+            if (plan.discriminator != null)
+                plan.cost += max;
+        }
+
+        private void addSchema(final KeywordPlan plan,
+            final SchemaNode schemaNode, final Location location,
+            final JsonNode schema)
+        {
+            plan.schemas.add(node(new SchemaNode(schemaNode.getContainer(),
+                schema), location));
+        }
+
+        private void addObjectChildren(final Node node,
+            final SchemaNode schemaNode, final Location location)
+        {
+            final JsonNode schema = schemaNode.getNode();
+
+            addChildren(node, schemaNode, location.append("properties"),
+                schema.path("properties"));
+
+            final JsonNode patterns = schema.path("patternProperties");
+            final Iterator<String> names = patterns.fieldNames();
+
+            while (names.hasNext())
+                node.patterns.add(names.next());
+
+            node.cost += node.patterns.size() * REGEX_COST;
+
+            addChildren(node, schemaNode,
+                location.append("patternProperties"), patterns);
+            addChild(node, schemaNode, location.append("additionalProperties"),
+                schema.path("additionalProperties"));
+        }
+
+        private void addArrayChildren(final Node node,
+            final SchemaNode schemaNode, final Location location)
+        {
+            final JsonNode schema = schemaNode.getNode();
+            final JsonNode items = schema.path("items");
+            final Location base = location.append("items");
+
+            if (items.isArray())
+                for (int i = 0; i < items.size(); i++)
+                    addChild(node, schemaNode, base.append(i), items.get(i));
+            else
+                addChild(node, schemaNode, base, items);
+
+            addChild(node, schemaNode, location.append("additionalItems"),
+                schema.path("additionalItems"));
+        }
+
+        private void addChildren(final Node node, final SchemaNode schemaNode,
+            final Location location, final JsonNode schemas)
+        {
+            for (final Map.Entry<String, JsonNode> entry:
+                JacksonUtils.nodeToMap(schemas).entrySet())
+                addChild(node, schemaNode, location.append(entry.getKey()),
+                    entry.getValue());
+        }
+
+        private void addChild(final Node node, final SchemaNode schemaNode,
+            final Location location, final JsonNode schema)
+        {
+            if (!schema.isObject() || optimizer.isTriviallyTrue(schema))
+                return;
+
+            node.children.add(node(new SchemaNode(schemaNode.getContainer(),
+                schema), location));
+        }
+    }
+
+    /**
+     * The location of a subschema: a URI, and a JSON Pointer into it
+     */
+    private static final class Location
+    {
+        private final String prefix;
+        private final JsonPointer pointer;
+
+        private Location(final String prefix, final JsonPointer pointer)
+        {
+            this.prefix = prefix;
+            this.pointer = pointer;
+        }
+
+        private Location append(final String element)
+        {
+            return new Location(prefix, pointer.append(element));
+        }
+
+        private Location append(final int index)
+        {
+            return new Location(prefix, pointer.append(index));
+        }
+
+        @Override
+        public String toString()
+        {
+            return prefix + pointer;
+        }
+    }
+
+    private static final class Node
+    {
+        private final String location;
+        private final List<String> refs = Lists.newArrayList();
+        private final Map<NodeType, List<String>> typeKeywords
+            = new EnumMap<NodeType, List<String>>(NodeType.class);
+        private final List<KeywordPlan> keywords = Lists.newArrayList();
+        private final List<String> patterns = Lists.newArrayList();
+        private final List<Node> children = Lists.newArrayList();
+
+        private List<ValidationMessage> failures = ImmutableList.of();
+        private String explainedAt = null;
+        private int extendsDepth = 0;
+        private long cost = 0L;
+        private long totalCost = 0L;
+
+        private Node(final String location)
+        {
+            this.location = location;
+            for (final NodeType type: NodeType.values())
+                typeKeywords.put(type, Lists.<String>newArrayList());
+        }
+
+        private JsonNode asJsonNode()
+        {
+            final ObjectNode ret = FACTORY.objectNode();
+
+            ret.put("location", location);
+
+            if (!refs.isEmpty()) {
+                final ArrayNode node = ret.putArray("refs");
+                for (final String ref: refs)
+                    node.add(ref);
+            }
+
+            if (explainedAt != null)
+                ret.put("explainedAt", explainedAt);
+
+            if (!failures.isEmpty()) {
+                final ArrayNode node = ret.putArray("failures");
+                for (final ValidationMessage message: failures)
+                    node.add(message.toJsonNode());
+            }
+
+            final ObjectNode types = FACTORY.objectNode();
+
+            for (final Map.Entry<NodeType, List<String>> entry:
+                typeKeywords.entrySet()) {
+                if (entry.getValue().isEmpty())
+                    continue;
+                final ArrayNode node = types.putArray(entry.getKey()
+                    .toString());
+                for (final String keyword: entry.getValue())
+                    node.add(keyword);
+            }
+
+            if (types.size() != 0)
+                ret.put("keywordsByType", types);
+
+            if (!keywords.isEmpty()) {
+                final ArrayNode node = ret.putArray("keywords");
+                for (final KeywordPlan keyword: keywords)
+                    node.add(keyword.asJsonNode());
+            }
+
+            if (!patterns.isEmpty()) {
+                final ObjectNode node = ret.putObject("patternProperties");
+                final ArrayNode regexes = node.putArray("regexes");
+                for (final String pattern: patterns)
+                    regexes.add(pattern);
+                node.put("engine", REGEX_ENGINE);
+            }
+
+            if (extendsDepth != 0)
+                ret.put("extendsDepth", extendsDepth);
+
+            ret.put("cost", cost);
+            ret.put("totalCost", totalCost);
+
+            if (!children.isEmpty()) {
+                final ArrayNode node = ret.putArray("children");
+                for (final Node child: children)
+                    node.add(child.asJsonNode());
+            }
+
+            return ret;
+        }
+
+        private void appendTo(final StringBuilder sb, final String indent)
+        {
+            final String inner = indent + INDENT;
+
+            sb.append(indent).append(location).append(" [cost ").append(cost)
+                .append(", total ").append(totalCost).append("]\n");
+
+            for (final String ref: refs)
+                sb.append(inner).append("$ref -> ").append(ref).append('\n');
+
+            if (explainedAt != null)
+                sb.append(inner).append("see ").append(explainedAt)
+                    .append('\n');
+
+            for (final ValidationMessage message: failures)
+                sb.append(inner).append("failure: ").append(message)
+                    .append('\n');
+
+            /*
+             * Group instance types which have the same keywords
+             */
+            final Map<List<String>, List<NodeType>> groups
+                = Maps.newLinkedHashMap();
+
+            for (final Map.Entry<NodeType, List<String>> entry:
+                typeKeywords.entrySet()) {
+                if (entry.getValue().isEmpty())
+                    continue;
+                if (!groups.containsKey(entry.getValue()))
+                    groups.put(entry.getValue(),
+                        Lists.<NodeType>newArrayList());
+                groups.get(entry.getValue()).add(entry.getKey());
+            }
+
+            for (final Map.Entry<List<String>, List<NodeType>> entry:
+                groups.entrySet())
+                sb.append(inner).append("on ")
+                    .append(entry.getValue().size() == NodeType.values().length
+                        ? "all types" : TYPE_JOINER.join(entry.getValue()))
+                    .append(": ").append(entry.getKey()).append('\n');
+
+            for (final KeywordPlan keyword: keywords)
+                keyword.appendTo(sb, inner);
+
+            for (final String pattern: patterns)
+                sb.append(inner).append("patternProperties: \"")
+                    .append(pattern).append("\" (").append(REGEX_ENGINE)
+                    .append(")\n");
+
+            if (extendsDepth != 0)
+                sb.append(inner).append("extends depth: ").append(extendsDepth)
+                    .append('\n');
+
+            for (final Node child: children)
+                child.appendTo(sb, inner);
+        }
+    }
+
+    private static final class KeywordPlan
+    {
+        private final String keyword;
+        private final String description;
+        private final List<Node> schemas = Lists.newArrayList();
+
+        private String regex = null;
+        private boolean union = false;
+        private String discriminator = null;
+        private long cost = 0L;
+
+        private KeywordPlan(final String keyword, final String description)
+        {
+            this.keyword = keyword;
+            this.description = description;
+        }
+
+        private JsonNode asJsonNode()
+        {
+            final ObjectNode ret = FACTORY.objectNode();
+
+            ret.put("keyword", keyword);
+            ret.put("validator", description);
+
+            if (regex != null) {
+                ret.put("regex", regex);
+                ret.put("engine", REGEX_ENGINE);
+            }
+
+            if (union) {
+                ret.put("strategy", discriminator == null ? "sequential"
+                    : "discriminator");
+                if (discriminator != null)
+                    ret.put("discriminator", discriminator);
+            }
+
+            ret.put("cost", cost);
+
+            if (!schemas.isEmpty()) {
+                final ArrayNode node = ret.putArray("schemas");
+                for (final Node schema: schemas)
+                    node.add(schema.asJsonNode());
+            }
+
+            return ret;
+        }
+
+        private void appendTo(final StringBuilder sb, final String indent)
+        {
+            sb.append(indent).append(description).append(" [cost ")
+                .append(cost);
+
+            if (regex != null)
+                sb.append(", engine ").append(REGEX_ENGINE);
+
+            if (union)
+                sb.append(discriminator == null ? ", sequential"
+                    : ", discriminator \"" + discriminator + '"');
+
+            sb.append("]\n");
+
+            for (final Node schema: schemas)
+                schema.appendTo(sb, indent + INDENT);
+        }
+    }
+}
@@ -22,8 +22,8 @@ import com.google.common.collect.ImmutableMap;
 import org.eel.kitchen.jsonschema.format.FormatBundle;
 import org.eel.kitchen.jsonschema.format.FormatSpecifier;
 import org.eel.kitchen.jsonschema.main.ValidationFeature;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
 import org.eel.kitchen.jsonschema.ref.SchemaContainer;
-import org.eel.kitchen.jsonschema.ref.SchemaNode;
 
 import java.util.EnumSet;
 import java.util.Map;
@@ -48,6 +48,23 @@ public final class ValidationContext
     private SchemaContainer container;
     private final EnumSet<ValidationFeature> features;
     private final Map<String, FormatSpecifier> specifiers;
+    private final ResultMemo memo;
+    private final ValidationListener listener;
+
+    /**
+     * Whether the listener wants schema events, at least for containers
+     */
+    private final boolean instrumented;
+
+    /**
+     * Whether the listener wants schema events for all instances
+     */
+    private final boolean allInstances;
+
+    /**
+     * Whether the listener wants keyword events
+     */
+    private final boolean keywords;
 
     public ValidationContext(final JsonValidatorCache cache)
     {
@@ -56,9 +73,26 @@ public final class ValidationContext
 
     public ValidationContext(final JsonValidatorCache cache,
         final EnumSet<ValidationFeature> features)
+    {
+        this(cache, features, ResultMemo.disabled());
+    }
+
+    public ValidationContext(final JsonValidatorCache cache,
+        final EnumSet<ValidationFeature> features, final ResultMemo memo)
     {
         this.cache = cache;
         this.features = EnumSet.copyOf(features);
+        this.memo = memo;
+        listener = cache == null ? ValidationListener.noop()
+            : cache.getListener();
+        final ValidationListener.Granularity granularity
+            = listener.getGranularity();
+        instrumented = listener != ValidationListener.noop()
+            && granularity != ValidationListener.Granularity.VALIDATIONS;
+        allInstances = instrumented
+            && granularity != ValidationListener.Granularity.CONTAINERS;
+        keywords = instrumented
+            && granularity == ValidationListener.Granularity.KEYWORDS;
         specifiers = ImmutableMap.copyOf(FormatBundle.defaultBundle()
             .getSpecifiers());
     }
@@ -90,19 +124,72 @@ public final class ValidationContext
         return specifiers.get(fmt);
     }
 
+    /**
+     * Get the format/regex result memo for this validation
+     *
+     * @return the memo (never null, but possibly disabled)
+     */
+    public ResultMemo getResultMemo()
+    {
+        return memo;
+    }
+
+    /**
+     * Match a string against an ECMA 262 regex
+     *
+     * <p>The result goes through this context's {@link ResultMemo}. Regexes
+     * actually run are reported to the listener only if it wants schema
+     * events: other validations do not pay for it.</p>
+     *
+     * @param regex the regex
+     * @param input the string
+     * @return true if the regex matches the string
+     */
+    public boolean regMatch(final String regex, final String input)
+    {
+        return memo.regMatch(regex, input,
+            instrumented ? listener : ValidationListener.noop());
+    }
+
+    /**
+     * Tell whether validators should send schema events for an instance
+     *
+     * @param instance the instance
+     * @return true if the listener wants them
+     */
+    boolean tracksSchemas(final JsonNode instance)
+    {
+        return instrumented && (allInstances || instance.isContainerNode());
+    }
+
+    /**
+     * Tell whether validators should send keyword events
+     *
+     * @return true if the listener wants them
+     */
+    boolean tracksKeywords()
+    {
+        return keywords;
+    }
+
+    ValidationListener getListener()
+    {
+        return listener;
+    }
+
     /**
      * Build a new validator out of a JSON document
      *
-     * <p>This calls {@link JsonValidatorCache#getValidator(SchemaNode)} with
-     * this context's {@link SchemaContainer} used as a schema context.</p>
+     * <p>This calls {@link JsonValidatorCache#getValidator(SchemaContainer,
+     * JsonNode)} with this context's {@link SchemaContainer} used as a schema
+     * context.</p>
      *
      * @param node the node (a subnode of the schema)
      * @return a validator
      */
     public JsonValidator newValidator(final JsonNode node)
     {
-        final SchemaNode schemaNode = new SchemaNode(container, node);
-        return cache.getValidator(schemaNode);
+        return cache.getValidator(container, node);
     }
 
     @Override
@@ -0,0 +1,909 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.eel.kitchen.jsonschema.keyword.DivisibleByKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.EnumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.ExtendsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MaxItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MaxLengthKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MaximumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinLengthKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinimumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.PatternKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.PropertiesKeywordValidator;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.NodeType;
+import org.eel.kitchen.jsonschema.validator.ClassFileWriter.Label;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import static org.eel.kitchen.jsonschema.validator.ClassFileWriter.Opcodes.*;
+
+/**
+ * Generator of a JVM class per schema
+ *
+ * <p>Each schema of a tree becomes a subclass of {@link GeneratedValidator},
+ * whose code is that of the schema, with nothing left to interpret:</p>
+ *
+ * <ul>
+ *     <li>{@code minLength}, {@code maxLength}, {@code minItems} and {@code
+ *     maxItems} are inlined;</li>
+ *     <li>{@code minimum}, {@code maximum} and {@code divisibleBy} are
+ *     inlined for integer bounds and instances which fit in a {@code long},
+ *     {@code pattern} with its regex as a constant, {@code enum} for string
+ *     instances and required properties as lookups of constant names; the
+ *     keyword validator is only called if the check fails (to build the
+ *     messages) or does not apply;</li>
+ *     <li>{@code extends} calls the validators of the parent schemas
+ *     directly;</li>
+ *     <li>other keywords call their keyword validator;</li>
+ *     <li>object members are dispatched to the validator of their subschema
+ *     by a switch on the hash code of their name, then a comparison with the
+ *     property names, as constants; array elements by a switch on their
+ *     index.</li>
+ * </ul>
+ *
+ * <p>Trivially true subschemas are skipped, as with an {@link
+ * InstanceValidator}. Subschemas which are JSON References are resolved at
+ * generation time; those which fail to resolve are looked up at validation
+ * time, so that the error only occurs if an instance actually needs them.
+ * Validators of schemas which fail to resolve or fail syntax validation are
+ * used as is.</p>
+ *
+ * <p>If the listener of the cache wants keyword events, no keyword is inlined,
+ * so that each has its event. Schema events are the same as with a {@link
+ * LinkedValidator}.</p>
+ *
+ * <p>All classes of a tree are defined by a class loader of their own, which
+ * only the generated validators refer to: once the tree is no longer
+ * reachable, its classes can be unloaded with it.</p>
+ *
+ * <p>A schema whose code would not fit in a class file (a method is limited to
+ * 64 KiB of code, for instance) is linked instead (see {@link
+ * LinkedValidator}).</p>
+ *
+ * <p>A generator is meant to be used for one tree, by one thread.</p>
+ *
+ * @see JsonValidatorCache#generate(SchemaNode)
+ */
+final class ValidatorGenerator
+{
+    /**
+     * Prefix of the names of generated classes
+     */
+    private static final String PREFIX = "org/eel/kitchen/jsonschema/generated"
+        + "/Schema";
+
+    private static final String BASE = internalName(GeneratedValidator.class);
+    private static final String VALIDATOR = internalName(JsonValidator.class);
+    private static final String JSON_NODE = internalName(JsonNode.class);
+    private static final String NODE_TYPE = internalName(NodeType.class);
+    private static final String POINTER = internalName(JsonPointer.class);
+    private static final String REPORT = internalName(ValidationReport.class);
+    private static final String CONTEXT
+        = internalName(ValidationContext.class);
+    private static final String STRING = internalName(String.class);
+    private static final String ITERATOR = internalName(Iterator.class);
+    private static final String ENTRY = internalName(Map.Entry.class);
+
+    private static final String VALIDATE = "(" + type(CONTEXT) + type(REPORT)
+        + type(JSON_NODE) + ")Z";
+    private static final String VALIDATE_INSTANCE = "(" + type(CONTEXT)
+        + type(REPORT) + type(JSON_NODE) + type(NODE_TYPE) + ")V";
+
+    /*
+     * Local variables of validateInstance(): its arguments first, then the
+     * variables of generated code
+     */
+    private static final int THIS = 0;
+    private static final int CONTEXT_VAR = 1;
+    private static final int REPORT_VAR = 2;
+    private static final int INSTANCE_VAR = 3;
+    private static final int TYPE_VAR = 4;
+    private static final int FOUND_VAR = 5;
+    private static final int TEXT_VAR = 6;
+    private static final int PWD_VAR = 7;
+    private static final int ITERATOR_VAR = 8;
+    private static final int SIZE_VAR = 8;
+    private static final int ENTRY_VAR = 9;
+    private static final int INDEX_VAR = 9;
+    private static final int KEY_VAR = 10;
+    private static final int MAX_LOCALS = 11;
+
+    /**
+     * Maximum stack depth of generated code (reached by calls to {@link
+     * GeneratedValidator#keyword(int, ValidationContext, ValidationReport,
+     * JsonNode, NodeType)})
+     */
+    private static final int MAX_STACK = 6;
+
+    private final JsonValidatorCache cache;
+
+    /**
+     * Whether the listener of the cache wants schema events
+     */
+    private final boolean instrumented;
+
+    /**
+     * Whether the listener of the cache wants keyword events
+     */
+    private final boolean keywordEvents;
+
+    private final Loader loader = new Loader();
+
+    /**
+     * Generated validators, by resolved schema node
+     */
+    private final Map<SchemaNode, JsonValidator> generated = Maps.newHashMap();
+
+    /**
+     * Linker for schemas too large to generate, built on first use
+     */
+    private LinkedValidator.Linker linker = null;
+
+    ValidatorGenerator(final JsonValidatorCache cache)
+    {
+        this.cache = cache;
+        final ValidationListener listener = cache.getListener();
+        final ValidationListener.Granularity granularity
+            = listener.getGranularity();
+
+        instrumented = listener != ValidationListener.noop()
+            && granularity != ValidationListener.Granularity.VALIDATIONS;
+        keywordEvents = instrumented
+            && granularity == ValidationListener.Granularity.KEYWORDS;
+    }
+
+    /**
+     * Get the generated validator for a schema node
+     *
+     * <p>Validators for schemas which fail to resolve or fail syntax
+     * validation are returned as is.</p>
+     *
+     * @param schemaNode the schema node
+     * @return the validator
+     */
+    JsonValidator generate(final SchemaNode schemaNode)
+    {
+        final JsonValidator validator = cache.getValidator(schemaNode);
+
+        if (!(validator instanceof InstanceValidator))
+            return validator;
+
+        return generate((InstanceValidator) validator);
+    }
+
+    private JsonValidator generate(final InstanceValidator validator)
+    {
+        final SchemaNode key = validator.getSchemaNode();
+        final JsonValidator ret = generated.get(key);
+
+        if (ret != null)
+            return ret;
+
+        final String name = PREFIX + generated.size();
+        final Builder builder = new Builder(name, validator);
+        final byte[] bytes;
+
+        try {
+            bytes = builder.build();
+        } catch (IllegalStateException ignored) {
+            if (linker == null)
+                linker = new LinkedValidator.Linker(cache);
+            final JsonValidator linked = linker.link(key);
+            generated.put(key, linked);
+            return linked;
+        }
+
+        final GeneratedValidator newValidator = instantiate(name, bytes,
+            builder.setup());
+
+        /*
+         * Registered before children are generated: a schema may refer to
+         * itself
+         */
+        generated.put(key, newValidator);
+
+        final SchemaContainer container = key.getContainer();
+
+        for (final Map.Entry<JsonNode, Integer> entry:
+            builder.children.entrySet())
+            newValidator.children[entry.getValue()]
+                = child(container, entry.getKey());
+
+        return newValidator;
+    }
+
+    private JsonValidator child(final SchemaContainer container,
+        final JsonNode subSchema)
+    {
+        final JsonValidator validator;
+
+        try {
+            validator = cache.getValidator(new SchemaNode(container,
+                subSchema));
+        } catch (UncheckedExecutionException ignored) {
+            return new FlattenedValidator.LookupValidator(subSchema);
+        }
+
+        return validator instanceof InstanceValidator
+            ? generate((InstanceValidator) validator) : validator;
+    }
+
+    private GeneratedValidator instantiate(final String name,
+        final byte[] bytes, final GeneratedValidator.Setup setup)
+    {
+        final Class<?> c = loader.define(name.replace('/', '.'), bytes);
+
+        try {
+            return (GeneratedValidator) c.getConstructor(Object.class)
+                .newInstance(setup);
+        } catch (NoSuchMethodException e) {
+            throw invalidClass(name, e);
+        } catch (InstantiationException e) {
+            throw invalidClass(name, e);
+        } catch (IllegalAccessException e) {
+            throw invalidClass(name, e);
+        } catch (InvocationTargetException e) {
+            throw invalidClass(name, e);
+        }
+    }
+
+    private static IllegalStateException invalidClass(final String name,
+        final Exception e)
+    {
+        return new IllegalStateException("cannot instantiate generated class "
+            + name, e);
+    }
+
+    private static String internalName(final Class<?> c)
+    {
+        return c.getName().replace('.', '/');
+    }
+
+    private static String type(final String internalName)
+    {
+        return 'L' + internalName + ';';
+    }
+
+    /**
+     * Builder of the class of one schema
+     */
+    private final class Builder
+    {
+        private final ClassFileWriter writer;
+        private final InstanceValidator validator;
+        private final JsonNode schema;
+        private ClassFileWriter.Code code;
+
+        /**
+         * Keyword validators called by generated code, by index
+         */
+        private final List<KeywordValidator> keywords = Lists.newArrayList();
+
+        /**
+         * Indices of children, by subschema
+         *
+         * <p>This map is keyed by identity: subschemas returned by the object
+         * validator of a schema with pattern properties are always the same
+         * nodes.</p>
+         */
+        private final Map<JsonNode, Integer> children
+            = new IdentityHashMap<JsonNode, Integer>();
+
+        private Builder(final String name, final InstanceValidator validator)
+        {
+            writer = new ClassFileWriter(name, BASE);
+            this.validator = validator;
+            schema = validator.getSchemaNode().getNode();
+        }
+
+        private GeneratedValidator.Setup setup()
+        {
+            final ObjectValidator objectValidator
+                = validator.getObjectValidator();
+
+            return new GeneratedValidator.Setup(validator.getSchemaNode(),
+                instrumented, keywords.toArray(new KeywordValidator[0]),
+                objectValidator != null
+                    && objectValidator.hasPatternProperties()
+                    ? objectValidator : null, children);
+        }
+
+        private byte[] build()
+        {
+            writer.method(ClassFileWriter.ACC_PUBLIC, "<init>",
+                "(Ljava/lang/Object;)V")
+                .var(ALOAD, THIS).var(ALOAD, 1)
+                .invoke(INVOKESPECIAL, BASE, "<init>", "(Ljava/lang/Object;)V")
+                .op(RETURN).setMaxs(2, 2);
+
+            code = writer.method(ClassFileWriter.ACC_PROTECTED
+                | ClassFileWriter.ACC_FINAL, "validateInstance",
+                VALIDATE_INSTANCE);
+
+            for (final KeywordValidator keyword:
+                validator.getKeywordValidators())
+                keyword(keyword);
+
+            if (validator.getObjectValidator() != null)
+                object(validator.getObjectValidator());
+            if (validator.getArrayValidator() != null)
+                array(validator.getArrayValidator());
+
+            code.op(RETURN).setMaxs(MAX_STACK, MAX_LOCALS);
+            return writer.toByteArray();
+        }
+
+        private void keyword(final KeywordValidator keyword)
+        {
+            if (keywordEvents)
+                delegate(keyword);
+            else if (keyword instanceof MinLengthKeywordValidator)
+                size(keyword, NodeType.STRING, IF_ICMPGE,
+                    "string is too short");
+            else if (keyword instanceof MaxLengthKeywordValidator)
+                size(keyword, NodeType.STRING, IF_ICMPLE,
+                    "string is too long");
+            else if (keyword instanceof MinItemsKeywordValidator)
+                size(keyword, NodeType.ARRAY, IF_ICMPGE,
+                    "not enough elements in array");
+            else if (keyword instanceof MaxItemsKeywordValidator)
+                size(keyword, NodeType.ARRAY, IF_ICMPLE,
+                    "too many elements in array");
+            else if (keyword instanceof MinimumKeywordValidator)
+                bound(keyword, schema.path("exclusiveMinimum")
+                    .asBoolean(false) ? IFGT : IFGE);
+            else if (keyword instanceof MaximumKeywordValidator)
+                bound(keyword, schema.path("exclusiveMaximum")
+                    .asBoolean(false) ? IFLT : IFLE);
+            else if (keyword instanceof DivisibleByKeywordValidator)
+                divisibleBy(keyword);
+            else if (keyword instanceof PatternKeywordValidator)
+                pattern(keyword);
+            else if (keyword instanceof EnumKeywordValidator)
+                enumeration(keyword);
+            else if (keyword instanceof PropertiesKeywordValidator)
+                required(keyword);
+            else if (keyword instanceof ExtendsKeywordValidator)
+                parents((ExtendsKeywordValidator) keyword);
+            else
+                delegate(keyword);
+        }
+
+        /**
+         * Call a keyword validator
+         *
+         * @param keyword the keyword validator
+         */
+        private void delegate(final KeywordValidator keyword)
+        {
+            keywords.add(keyword);
+            code.var(ALOAD, THIS).push(keywords.size() - 1)
+                .var(ALOAD, CONTEXT_VAR).var(ALOAD, REPORT_VAR)
+                .var(ALOAD, INSTANCE_VAR).var(ALOAD, TYPE_VAR)
+                .invoke(INVOKEVIRTUAL, BASE, "keyword", "(I" + type(CONTEXT)
+                    + type(REPORT) + type(JSON_NODE) + type(NODE_TYPE) + ")V");
+        }
+
+        /**
+         * Jump unless the instance is of a given type
+         *
+         * @param nodeType the type
+         * @param label the target
+         */
+        private void unlessType(final NodeType nodeType, final Label label)
+        {
+            code.var(ALOAD, TYPE_VAR)
+                .field(GETSTATIC, NODE_TYPE, nodeType.name(), type(NODE_TYPE))
+                .jump(IF_ACMPNE, label);
+        }
+
+        /**
+         * Inline a size keyword
+         *
+         * @param keyword the keyword validator
+         * @param nodeType the type of instances it applies to
+         * @param success the comparison of the size to the keyword value
+         * which succeeds
+         * @param message the failure message
+         */
+        private void size(final KeywordValidator keyword,
+            final NodeType nodeType, final int success, final String message)
+        {
+            final String name = keyword.getKeyword();
+            final int value = schema.get(name).intValue();
+            final Label ok = new Label();
+
+            unlessType(nodeType, ok);
+            code.var(ALOAD, INSTANCE_VAR);
+            if (nodeType == NodeType.STRING)
+                code.invoke(INVOKEVIRTUAL, JSON_NODE, "textValue",
+                    "()" + type(STRING))
+                    .invoke(INVOKEVIRTUAL, STRING, "length", "()I");
+            else
+                code.invoke(INVOKEVIRTUAL, JSON_NODE, "size", "()I");
+            code.var(ISTORE, FOUND_VAR).var(ILOAD, FOUND_VAR).push(value)
+                .jump(success, ok)
+                .var(ALOAD, REPORT_VAR).push(name).push(value)
+                .var(ILOAD, FOUND_VAR).push(message)
+                .invoke(INVOKESTATIC, BASE, "sizeFailure", "(" + type(REPORT)
+                    + type(STRING) + "II" + type(STRING) + ")V")
+                .mark(ok);
+        }
+
+        /**
+         * Push the value of an integer instance as a {@code long}, or jump
+         * if it is not an integer which fits in one
+         *
+         * @param label the target
+         */
+        private void longValueOr(final Label label)
+        {
+            unlessType(NodeType.INTEGER, label);
+            code.var(ALOAD, INSTANCE_VAR)
+                .invoke(INVOKEVIRTUAL, JSON_NODE, "canConvertToLong", "()Z")
+                .jump(IFEQ, label)
+                .var(ALOAD, INSTANCE_VAR)
+                .invoke(INVOKEVIRTUAL, JSON_NODE, "longValue", "()J");
+        }
+
+        /**
+         * Inline {@code minimum} or {@code maximum}
+         *
+         * @param keyword the keyword validator
+         * @param success the comparison of the instance to the bound which
+         * succeeds
+         */
+        private void bound(final KeywordValidator keyword, final int success)
+        {
+            final JsonNode value = schema.get(keyword.getKeyword());
+
+            if (!isLong(value)) {
+                delegate(keyword);
+                return;
+            }
+
+            final Label fail = new Label();
+            final Label ok = new Label();
+
+            longValueOr(fail);
+            code.push(value.longValue()).op(LCMP).jump(success, ok)
+                .mark(fail);
+            delegate(keyword);
+            code.mark(ok);
+        }
+
+        private void divisibleBy(final KeywordValidator keyword)
+        {
+            final JsonNode value = schema.get("divisibleBy");
+
+            if (!isLong(value)) {
+                delegate(keyword);
+                return;
+            }
+
+            final Label fail = new Label();
+            final Label ok = new Label();
+
+            longValueOr(fail);
+            code.push(value.longValue()).op(LREM).push(0L).op(LCMP)
+                .jump(IFEQ, ok).mark(fail);
+            delegate(keyword);
+            code.mark(ok);
+        }
+
+        private void pattern(final KeywordValidator keyword)
+        {
+            final Label ok = new Label();
+
+            unlessType(NodeType.STRING, ok);
+            code.var(ALOAD, CONTEXT_VAR).push(schema.get("pattern").textValue())
+                .var(ALOAD, INSTANCE_VAR)
+                .invoke(INVOKEVIRTUAL, JSON_NODE, "textValue",
+                    "()" + type(STRING))
+                .invoke(INVOKEVIRTUAL, CONTEXT, "regMatch",
+                    "(" + type(STRING) + type(STRING) + ")Z")
+                .jump(IFNE, ok);
+            delegate(keyword);
+            code.mark(ok);
+        }
+
+        /*
+         * Only string instances are looked up: an enum without any string is
+         * left to its validator
+         */
+        private void enumeration(final KeywordValidator keyword)
+        {
+            final Set<String> strings = new LinkedHashSet<String>();
+
+            for (final JsonNode value: schema.get("enum"))
+                if (value.isTextual())
+                    strings.add(value.textValue());
+
+            if (strings.isEmpty()) {
+                delegate(keyword);
+                return;
+            }
+
+            final Label fail = new Label();
+            final Label ok = new Label();
+            final Map<String, Label> targets = Maps.newLinkedHashMap();
+
+            for (final String value: strings)
+                targets.put(value, ok);
+
+            unlessType(NodeType.STRING, fail);
+            code.var(ALOAD, INSTANCE_VAR)
+                .invoke(INVOKEVIRTUAL, JSON_NODE, "textValue",
+                    "()" + type(STRING))
+                .var(ASTORE, TEXT_VAR);
+            stringSwitch(TEXT_VAR, targets, fail);
+            code.mark(fail);
+            delegate(keyword);
+            code.mark(ok);
+        }
+
+        private void required(final KeywordValidator keyword)
+        {
+            final List<String> required = Lists.newArrayList();
+            final Iterator<Map.Entry<String, JsonNode>> iterator
+                = schema.get("properties").fields();
+
+            Map.Entry<String, JsonNode> entry;
+
+            while (iterator.hasNext()) {
+                entry = iterator.next();
+                if (entry.getValue().path("required").asBoolean(false))
+                    required.add(entry.getKey());
+            }
+
+            if (required.isEmpty())
+                return;
+
+            final Label fail = new Label();
+            final Label ok = new Label();
+
+            unlessType(NodeType.OBJECT, ok);
+            for (final String name: required)
+                code.var(ALOAD, INSTANCE_VAR).push(name)
+                    .invoke(INVOKEVIRTUAL, JSON_NODE, "has",
+                        "(" + type(STRING) + ")Z")
+                    .jump(IFEQ, fail);
+            code.jump(GOTO, ok).mark(fail);
+            delegate(keyword);
+            code.mark(ok);
+        }
+
+        private void parents(final ExtendsKeywordValidator keyword)
+        {
+            final SchemaOptimizer optimizer = cache.getOptimizer();
+
+            for (final JsonNode parent: keyword.getSchemas())
+                if (!optimizer.isTriviallyTrue(parent)) {
+                    pushChild(parent);
+                    code.var(ALOAD, INSTANCE_VAR);
+                    callChild();
+                }
+        }
+
+        private void object(final ObjectValidator objectValidator)
+        {
+            final Label end = new Label();
+            final Label loop = new Label();
+            final Label done = new Label();
+
+            unlessType(NodeType.OBJECT, end);
+            code.var(ALOAD, REPORT_VAR)
+                .invoke(INVOKEVIRTUAL, REPORT, "getPath", "()" + type(POINTER))
+                .var(ASTORE, PWD_VAR)
+                .var(ALOAD, INSTANCE_VAR)
+                .invoke(INVOKEVIRTUAL, JSON_NODE, "fields",
+                    "()" + type(ITERATOR))
+                .var(ASTORE, ITERATOR_VAR)
+                .mark(loop)
+                .var(ALOAD, ITERATOR_VAR)
+                .invokeInterface(ITERATOR, "hasNext", "()Z", 1)
+                .jump(IFEQ, done)
+                .var(ALOAD, ITERATOR_VAR)
+                .invokeInterface(ITERATOR, "next", "()Ljava/lang/Object;", 1)
+                .type(CHECKCAST, ENTRY).var(ASTORE, ENTRY_VAR)
+                .var(ALOAD, ENTRY_VAR)
+                .invokeInterface(ENTRY, "getKey", "()Ljava/lang/Object;", 1)
+                .type(CHECKCAST, STRING).var(ASTORE, KEY_VAR)
+                .var(ALOAD, REPORT_VAR).var(ALOAD, PWD_VAR).var(ALOAD, KEY_VAR)
+                .invoke(INVOKEVIRTUAL, POINTER, "append",
+                    "(" + type(STRING) + ")" + type(POINTER))
+                .invoke(INVOKEVIRTUAL, REPORT, "setPath",
+                    "(" + type(POINTER) + ")V");
+
+            if (objectValidator.hasPatternProperties())
+                patternMember(objectValidator);
+            else
+                member(objectValidator, loop);
+
+            code.jump(GOTO, loop).mark(done)
+                .var(ALOAD, REPORT_VAR).var(ALOAD, PWD_VAR)
+                .invoke(INVOKEVIRTUAL, REPORT, "setPath",
+                    "(" + type(POINTER) + ")V")
+                .mark(end);
+        }
+
+        /**
+         * Validate a member through {@link GeneratedValidator#validateMember(
+         * ValidationContext, ValidationReport, String, JsonNode)}
+         *
+         * @param objectValidator the object validator
+         */
+        private void patternMember(final ObjectValidator objectValidator)
+        {
+            for (final JsonNode subSchema: objectValidator.getAllSchemas())
+                if (!objectValidator.isTriviallyTrue(subSchema))
+                    childIndex(subSchema);
+
+            code.var(ALOAD, THIS).var(ALOAD, CONTEXT_VAR)
+                .var(ALOAD, REPORT_VAR).var(ALOAD, KEY_VAR);
+            memberValue();
+            code.invoke(INVOKEVIRTUAL, BASE, "validateMember", "("
+                + type(CONTEXT) + type(REPORT) + type(STRING) + type(JSON_NODE)
+                + ")V");
+        }
+
+        /**
+         * Validate a member against the subschema of its name, or additional
+         * properties
+         *
+         * @param objectValidator the object validator
+         * @param next the start of the loop
+         */
+        private void member(final ObjectValidator objectValidator,
+            final Label next)
+        {
+            final Map<String, Label> targets = Maps.newLinkedHashMap();
+            final Iterator<String> names = schema.path("properties")
+                .fieldNames();
+
+            while (names.hasNext())
+                targets.put(names.next(), new Label());
+
+            final Label additional = new Label();
+
+            if (!targets.isEmpty())
+                stringSwitch(KEY_VAR, targets, additional);
+
+            for (final Map.Entry<String, Label> entry: targets.entrySet()) {
+                code.mark(entry.getValue());
+                memberChild(objectValidator,
+                    objectValidator.getPropertySchema(entry.getKey()));
+                code.jump(GOTO, next);
+            }
+
+            code.mark(additional);
+            memberChild(objectValidator,
+                objectValidator.getAdditionalProperties());
+        }
+
+        private void memberChild(final ObjectValidator objectValidator,
+            final JsonNode subSchema)
+        {
+            if (objectValidator.isTriviallyTrue(subSchema))
+                return;
+
+            pushChild(subSchema);
+            memberValue();
+            callChild();
+        }
+
+        private void memberValue()
+        {
+            code.var(ALOAD, ENTRY_VAR)
+                .invokeInterface(ENTRY, "getValue", "()Ljava/lang/Object;", 1)
+                .type(CHECKCAST, JSON_NODE);
+        }
+
+        private void array(final ArrayValidator arrayValidator)
+        {
+            final List<JsonNode> items = arrayValidator.getItems();
+            final Label end = new Label();
+            final Label loop = new Label();
+            final Label next = new Label();
+            final Label done = new Label();
+            final Label additional = new Label();
+
+            unlessType(NodeType.ARRAY, end);
+            code.var(ALOAD, REPORT_VAR)
+                .invoke(INVOKEVIRTUAL, REPORT, "getPath", "()" + type(POINTER))
+                .var(ASTORE, PWD_VAR)
+                .var(ALOAD, INSTANCE_VAR)
+                .invoke(INVOKEVIRTUAL, JSON_NODE, "size", "()I")
+                .var(ISTORE, SIZE_VAR)
+                .push(0).var(ISTORE, INDEX_VAR)
+                .mark(loop)
+                .var(ILOAD, INDEX_VAR).var(ILOAD, SIZE_VAR)
+                .jump(IF_ICMPGE, done);
+
+            if (!items.isEmpty()) {
+                final Label[] labels = new Label[items.size()];
+
+                for (int i = 0; i < labels.length; i++)
+                    labels[i] = new Label();
+
+                code.var(ILOAD, INDEX_VAR).tableSwitch(labels, additional);
+                for (int i = 0; i < labels.length; i++) {
+                    code.mark(labels[i]);
+                    element(arrayValidator, items.get(i));
+                    code.jump(GOTO, next);
+                }
+            }
+
+            code.mark(additional);
+            element(arrayValidator, arrayValidator.getAdditionalItems());
+            code.mark(next).iinc(INDEX_VAR, 1).jump(GOTO, loop)
+                .mark(done)
+                .var(ALOAD, REPORT_VAR).var(ALOAD, PWD_VAR)
+                .invoke(INVOKEVIRTUAL, REPORT, "setPath",
+                    "(" + type(POINTER) + ")V")
+                .mark(end);
+        }
+
+        private void element(final ArrayValidator arrayValidator,
+            final JsonNode subSchema)
+        {
+            if (arrayValidator.isTriviallyTrue(subSchema))
+                return;
+
+            code.var(ALOAD, REPORT_VAR).var(ALOAD, PWD_VAR)
+                .var(ILOAD, INDEX_VAR)
+                .invoke(INVOKEVIRTUAL, POINTER, "append", "(I)" + type(POINTER))
+                .invoke(INVOKEVIRTUAL, REPORT, "setPath",
+                    "(" + type(POINTER) + ")V");
+            pushChild(subSchema);
+            code.var(ALOAD, INSTANCE_VAR).var(ILOAD, INDEX_VAR)
+                .invoke(INVOKEVIRTUAL, JSON_NODE, "get",
+                    "(I)" + type(JSON_NODE));
+            callChild();
+        }
+
+        /**
+         * Switch on the value of a string variable
+         *
+         * <p>The switch is on the hash code of the string, then on its
+         * equality to the constants of a same hash code.</p>
+         *
+         * @param var the variable
+         * @param targets the targets, by constant
+         * @param dflt the target if no constant is equal
+         */
+        private void stringSwitch(final int var,
+            final Map<String, Label> targets, final Label dflt)
+        {
+            final SortedMap<Integer, List<String>> hashes = Maps.newTreeMap();
+
+            List<String> list;
+
+            for (final String value: targets.keySet()) {
+                list = hashes.get(value.hashCode());
+                if (list == null) {
+                    list = Lists.newArrayList();
+                    hashes.put(value.hashCode(), list);
+                }
+                list.add(value);
+            }
+
+            final int[] keys = new int[hashes.size()];
+            final Label[] labels = new Label[keys.length];
+
+            int i = 0;
+
+            for (final Integer hash: hashes.keySet()) {
+                keys[i] = hash;
+                labels[i++] = new Label();
+            }
+
+            code.var(ALOAD, var)
+                .invoke(INVOKEVIRTUAL, STRING, "hashCode", "()I")
+                .lookupSwitch(keys, labels, dflt);
+
+            i = 0;
+
+            for (final List<String> values: hashes.values()) {
+                code.mark(labels[i++]);
+                for (final String value: values)
+                    code.var(ALOAD, var).push(value)
+                        .invoke(INVOKEVIRTUAL, STRING, "equals",
+                            "(Ljava/lang/Object;)Z")
+                        .jump(IFNE, targets.get(value));
+                code.jump(GOTO, dflt);
+            }
+        }
+
+        /**
+         * Push the validator of a subschema, then the context and report
+         *
+         * @param subSchema the subschema
+         */
+        private void pushChild(final JsonNode subSchema)
+        {
+            code.var(ALOAD, THIS)
+                .field(GETFIELD, BASE, "children",
+                    "[" + type(VALIDATOR))
+                .push(childIndex(subSchema)).op(AALOAD)
+                .var(ALOAD, CONTEXT_VAR).var(ALOAD, REPORT_VAR);
+        }
+
+        /**
+         * Call the validator of a subschema, once the instance is pushed
+         */
+        private void callChild()
+        {
+            code.invokeInterface(VALIDATOR, "validate", VALIDATE, 4).op(POP);
+        }
+
+        private int childIndex(final JsonNode subSchema)
+        {
+            final Integer index = children.get(subSchema);
+
+            if (index != null)
+                return index;
+
+            final int ret = children.size();
+            children.put(subSchema, ret);
+            return ret;
+        }
+    }
+
+    private static boolean isLong(final JsonNode value)
+    {
+        return value.isIntegralNumber() && value.canConvertToLong();
+    }
+
+    /**
+     * The class loader of a tree of generated classes
+     */
+    private static final class Loader
+        extends ClassLoader
+    {
+        private Loader()
+        {
+            super(GeneratedValidator.class.getClassLoader());
+        }
+
+        private Class<?> define(final String name, final byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
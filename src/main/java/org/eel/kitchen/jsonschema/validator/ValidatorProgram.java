@@ -0,0 +1,1635 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.eel.kitchen.jsonschema.keyword.AbstractTypeKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.DependenciesKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.DisallowKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.DivisibleByKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.EnumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.ExtendsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.KeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MaxItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MaxLengthKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MaximumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinItemsKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinLengthKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.MinimumKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.PatternKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.PropertiesKeywordValidator;
+import org.eel.kitchen.jsonschema.keyword.TypeKeywordValidator;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.report.ValidationDomain;
+import org.eel.kitchen.jsonschema.report.ValidationMessage;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JacksonUtils;
+import org.eel.kitchen.jsonschema.util.NodeType;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A schema lowered into a flat instruction array
+ *
+ * <p>A program is made of an {@code int} array of instructions and a constant
+ * pool. Each inline subschema of the compiled schema is a block of
+ * instructions ended by {@link #END}; two equal subschemas share the same
+ * block. Blocks are run by a
+ * single interpreter loop, which only descends into the instance.</p>
+ *
+ * <p>Instructions are:</p>
+ *
+ * <ul>
+ *     <li>{@link #MIN_LENGTH}, {@link #MAX_LENGTH}, {@link #MIN_ITEMS},
+ *     {@link #MAX_ITEMS}, followed by the keyword value: these keywords are
+ *     checked by the interpreter itself;</li>
+ *     <li>{@link #MINIMUM}, {@link #MAXIMUM}, followed by the index of the
+ *     keyword validator in the constant pool, the index of the keyword value
+ *     in the {@code long} pool and the exclusive flag (0 or 1); {@link
+ *     #DIVISIBLE_BY}, followed by the same two indices: these are emitted if
+ *     the keyword value is an integer which fits into a {@code long}, and
+ *     checked by the interpreter if the instance is one as well;</li>
+ *     <li>{@link #PATTERN}, {@link #ENUM}, {@link #REQUIRED}, followed by the
+ *     index of the keyword validator and the index of a constant (the regex,
+ *     the set of string values of the enum, the array of names of required
+ *     properties): the interpreter matches string instances, looks up string
+ *     instances, and looks up names in object instances respectively;</li>
+ *     <li>{@link #EXTENDS}, followed by the number {@code n} of parent
+ *     schemas and their {@code n} targets, which are run in order;</li>
+ *     <li>{@link #DEPENDENCIES}, followed by the number {@code n} of schema
+ *     dependencies, then {@code n} pairs of the index of the property name
+ *     in the constant pool and the target of the schema; property
+ *     dependencies, if any, are checked by a {@link #KEYWORD} instruction
+ *     just before, with a validator built for them only;</li>
+ *     <li>{@link #TYPE}, {@link #DISALLOW}, followed by the index of a type
+ *     table in the constant pool (primitive types, targets of schemas and
+ *     their discrimination), if the keyword has schemas;</li>
+ *     <li>{@link #KEYWORD}, followed by the index of a {@link
+ *     KeywordValidator} in the constant pool: all other keywords are
+ *     delegated to their validator;</li>
+ *     <li>{@link #OBJECT}, followed by the index of an object table in the
+ *     constant pool (targets of members, by name, and by regex if there are
+ *     {@code patternProperties});</li>
+ *     <li>{@link #ARRAY}, followed by the number {@code n} of {@code items}
+ *     targets, these {@code n} targets, and the {@code additionalItems}
+ *     target.</li>
+ * </ul>
+ *
+ * <p>Lowered keywords only decide whether the instance is valid: on failure,
+ * or if the instance is not handled (a decimal instance for {@link #MINIMUM},
+ * a number for {@link #ENUM}, etc), the keyword validator is called, so that
+ * messages are those of the validator. A {@code properties} keyword without
+ * {@code required} subschemas never fails, and emits no instruction.</p>
+ *
+ * <p>A target is either the offset of a block in the instruction array, or,
+ * if negative, the one's complement of the index of a {@link Link} in the
+ * constant pool, or {@link #NONE} for subschemas which the {@link
+ * SchemaOptimizer} found trivially true. {@link #OBJECT} and {@link #ARRAY}
+ * are only emitted if the schema has object, respectively array, subschemas
+ * which are not trivially true. Links are used for subschemas which are JSON
+ * References, or which fail syntax validation: they point to another program,
+ * or to a failing validator, and are resolved on first use. A resolved link
+ * no longer refers to its compiler or schema node.</p>
+ *
+ * <p>Subschemas are therefore only known to a program through their targets:
+ * keyword validators which would otherwise hold subschemas ({@code extends},
+ * {@code dependencies}, {@code type} and {@code disallow}) are not part of
+ * the constant pool. Messages of primitive types and property dependencies
+ * are those of validators built for these only.</p>
+ *
+ * <p>A compact program (see {@link
+ * JsonValidatorCache#compileCompact(SchemaNode)}) retains as little of the
+ * source schema as possible:</p>
+ *
+ * <ul>
+ *     <li>JSON References are resolved, and the programs they point to
+ *     compiled, at compile time; references to a schema which is being
+ *     compiled (ie, recursive references) are linked to its program once
+ *     compilation is over;</li>
+ *     <li>the schema container is only kept if a keyword validator may need it
+ *     to resolve JSON References at validation time (for instance, a custom
+ *     keyword whose value contains {@code $ref}).</li>
+ * </ul>
+ *
+ * <p>Validation reports are the same as with an {@link InstanceValidator}.
+ * </p>
+ *
+ * <p>If the validator cache has a {@link ValidationListener} which wants schema
+ * events, programs are instrumented: the schema node of each block is kept,
+ * and, if the listener also wants keyword events, size keywords are delegated
+ * to their validators like all other keywords, so that the listener receives
+ * the same events as with an {@link InstanceValidator}. Instrumented compact
+ * programs therefore retain their source schemas.</p>
+ *
+ * @see JsonValidatorCache#compile(SchemaNode)
+ */
+final class ValidatorProgram
+    implements JsonValidator
+{
+    static final int END = 0;
+    static final int KEYWORD = 1;
+    static final int MIN_LENGTH = 2;
+    static final int MAX_LENGTH = 3;
+    static final int MIN_ITEMS = 4;
+    static final int MAX_ITEMS = 5;
+    static final int OBJECT = 6;
+    static final int ARRAY = 7;
+    static final int MINIMUM = 8;
+    static final int MAXIMUM = 9;
+    static final int DIVISIBLE_BY = 10;
+    static final int PATTERN = 11;
+    static final int ENUM = 12;
+    static final int REQUIRED = 13;
+    static final int EXTENDS = 14;
+    static final int DEPENDENCIES = 15;
+    static final int TYPE = 16;
+    static final int DISALLOW = 17;
+
+    /**
+     * Target of trivially true subschemas: nothing is run
+     */
+    static final int NONE = Integer.MIN_VALUE;
+
+    private final SchemaContainer container;
+
+    /**
+     * Offset of the block of the root schema
+     */
+    private final int start;
+
+    private final int[] code;
+    private final Object[] constants;
+    private final long[] longs;
+
+    /**
+     * Schema nodes of blocks, by offset, if this program is instrumented;
+     * {@code null} otherwise
+     */
+    private final SchemaNode[] schemas;
+
+    private ValidatorProgram(final Compiler compiler,
+        final InstanceValidator validator)
+    {
+        final SchemaNode schemaNode = validator.getSchemaNode();
+        final Assembler assembler
+            = new Assembler(compiler, schemaNode.getContainer());
+
+        start = assembler.block(schemaNode.getNode(), validator);
+        code = assembler.code();
+        constants = assembler.constants.toArray();
+        longs = assembler.longs();
+        schemas = assembler.schemas == null ? null
+            : Arrays.copyOf(assembler.schemas, code.length);
+        container = compiler.compact && !assembler.needsContainer
+            ? SchemaInterner.canonicalContainer() : schemaNode.getContainer();
+    }
+
+    @Override
+    public boolean validate(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance)
+    {
+        final SchemaContainer orig = context.getContainer();
+        context.setContainer(container);
+        run(context, report, instance, start);
+        context.setContainer(orig);
+        return false;
+    }
+
+    /**
+     * Return the size of the instruction array
+     *
+     * @return the number of instructions and operands
+     */
+    int codeSize()
+    {
+        return code.length;
+    }
+
+    /**
+     * Count the instructions with a given opcode
+     *
+     * @param opcode the opcode
+     * @return the number of such instructions, in all blocks
+     */
+    int instructionCount(final int opcode)
+    {
+        int ret = 0;
+
+        for (int pc = 0; pc < code.length; pc += length(pc))
+            if (code[pc] == opcode)
+                ret++;
+
+        return ret;
+    }
+
+    private int length(final int pc)
+    {
+        switch (code[pc]) {
+            case END:
+                return 1;
+            case MINIMUM: case MAXIMUM:
+                return 4;
+            case DIVISIBLE_BY: case PATTERN: case ENUM: case REQUIRED:
+                return 3;
+            case ARRAY:
+                return 3 + code[pc + 1];
+            case EXTENDS:
+                return 2 + code[pc + 1];
+            case DEPENDENCIES:
+                return 2 + 2 * code[pc + 1];
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * Return the schema container used by this program
+     *
+     * @return the container
+     */
+    SchemaContainer getContainer()
+    {
+        return container;
+    }
+
+    /**
+     * Return the size of the constant pool
+     *
+     * @return the number of constants
+     */
+    int constantPoolSize()
+    {
+        return constants.length;
+    }
+
+    private void run(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance, final int start)
+    {
+        if (schemas == null || !context.tracksSchemas(instance)) {
+            interpret(context, report, instance, start);
+            return;
+        }
+
+        final ValidationListener listener = context.getListener();
+        final SchemaNode schemaNode = schemas[start];
+        final JsonPointer path = report.getPath();
+        final int size = report.size();
+
+        listener.enterSchema(schemaNode, path);
+
+        final long begin = System.nanoTime();
+
+        interpret(context, report, instance, start);
+        listener.exitSchema(schemaNode, path, System.nanoTime() - begin,
+            report.size() == size);
+    }
+
+    private void interpret(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance, final int start)
+    {
+        final NodeType type = NodeType.getNodeType(instance);
+
+        int pc = start;
+        int value, found;
+
+        while (true) {
+            switch (code[pc]) {
+                case END:
+                    return;
+                case KEYWORD:
+                    if (schemas == null || !context.tracksKeywords())
+                        ((KeywordValidator) constants[code[pc + 1]])
+                            .validateInstance(context, report, instance, type);
+                    else
+                        InstanceValidator.validateKeyword(context, report,
+                            instance, type, schemas[start],
+                            (KeywordValidator) constants[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case MIN_LENGTH:
+                    if (type == NodeType.STRING) {
+                        value = code[pc + 1];
+                        found = instance.textValue().length();
+                        if (found < value)
+                            report.addMessage(sizeMessage("minLength", value,
+                                found, "string is too short"));
+                    }
+                    pc += 2;
+                    break;
+                case MAX_LENGTH:
+                    if (type == NodeType.STRING) {
+                        value = code[pc + 1];
+                        found = instance.textValue().length();
+                        if (found > value)
+                            report.addMessage(sizeMessage("maxLength", value,
+                                found, "string is too long"));
+                    }
+                    pc += 2;
+                    break;
+                case MIN_ITEMS:
+                    if (type == NodeType.ARRAY) {
+                        value = code[pc + 1];
+                        found = instance.size();
+                        if (found < value)
+                            report.addMessage(sizeMessage("minItems", value,
+                                found, "not enough elements in array"));
+                    }
+                    pc += 2;
+                    break;
+                case MAX_ITEMS:
+                    if (type == NodeType.ARRAY) {
+                        value = code[pc + 1];
+                        found = instance.size();
+                        if (found > value)
+                            report.addMessage(sizeMessage("maxItems", value,
+                                found, "too many elements in array"));
+                    }
+                    pc += 2;
+                    break;
+                case MINIMUM:
+                    if (!isLong(type, instance) || !isAbove(instance
+                        .longValue(), longs[code[pc + 2]], code[pc + 3]))
+                        delegate(context, report, instance, type, code[pc + 1]);
+                    pc += 4;
+                    break;
+                case MAXIMUM:
+                    if (!isLong(type, instance) || !isAbove(longs[code[pc + 2]],
+                        instance.longValue(), code[pc + 3]))
+                        delegate(context, report, instance, type, code[pc + 1]);
+                    pc += 4;
+                    break;
+                case DIVISIBLE_BY:
+                    if (!isLong(type, instance)
+                        || instance.longValue() % longs[code[pc + 2]] != 0L)
+                        delegate(context, report, instance, type, code[pc + 1]);
+                    pc += 3;
+                    break;
+                case PATTERN:
+                    if (type == NodeType.STRING && !context.regMatch(
+                        (String) constants[code[pc + 2]], instance.textValue()))
+                        delegate(context, report, instance, type, code[pc + 1]);
+                    pc += 3;
+                    break;
+                case ENUM:
+                    if (type != NodeType.STRING || !((Set<?>)
+                        constants[code[pc + 2]]).contains(instance.textValue()))
+                        delegate(context, report, instance, type, code[pc + 1]);
+                    pc += 3;
+                    break;
+                case REQUIRED:
+                    if (type == NodeType.OBJECT && !hasAll(instance,
+                        (String[]) constants[code[pc + 2]]))
+                        delegate(context, report, instance, type, code[pc + 1]);
+                    pc += 3;
+                    break;
+                case OBJECT:
+                    if (type == NodeType.OBJECT)
+                        runObject(context, report, instance,
+                            (ObjectTable) constants[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case ARRAY:
+                    if (type == NodeType.ARRAY)
+                        runArray(context, report, instance, pc);
+                    pc += 3 + code[pc + 1];
+                    break;
+                case EXTENDS:
+                    value = code[pc + 1];
+                    for (int i = 0; i < value; i++)
+                        runTarget(context, report, instance, code[pc + 2 + i]);
+                    pc += 2 + value;
+                    break;
+                case DEPENDENCIES:
+                    if (type == NodeType.OBJECT)
+                        runDependencies(context, report, instance, pc);
+                    pc += 2 + 2 * code[pc + 1];
+                    break;
+                case TYPE:
+                    runType(context, report, instance, type,
+                        (TypeTable) constants[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case DISALLOW:
+                    runDisallow(context, report, instance, type,
+                        (TypeTable) constants[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                default:
+                    throw new IllegalStateException("illegal instruction "
+                        + code[pc] + " at offset " + pc);
+            }
+        }
+    }
+
+    private void delegate(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final NodeType type, final int index)
+    {
+        ((KeywordValidator) constants[index]).validateInstance(context, report,
+            instance, type);
+    }
+
+    private static boolean isLong(final NodeType type, final JsonNode instance)
+    {
+        return type == NodeType.INTEGER && instance.canConvertToLong();
+    }
+
+    /**
+     * Check a lower bound
+     *
+     * @param value the value
+     * @param bound the bound
+     * @param exclusive 1 if the bound is exclusive, 0 otherwise
+     * @return true if the value is above the bound
+     */
+    private static boolean isAbove(final long value, final long bound,
+        final int exclusive)
+    {
+        return value > bound || value == bound && exclusive == 0;
+    }
+
+    private static boolean hasAll(final JsonNode instance,
+        final String[] names)
+    {
+        for (final String name: names)
+            if (!instance.has(name))
+                return false;
+        return true;
+    }
+
+    private void runObject(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final ObjectTable table)
+    {
+        final JsonPointer pwd = report.getPath();
+        final Iterator<Map.Entry<String, JsonNode>> iterator
+            = instance.fields();
+
+        Map.Entry<String, JsonNode> entry;
+        String key;
+        Integer target;
+
+        while (iterator.hasNext()) {
+            entry = iterator.next();
+            key = entry.getKey();
+            report.setPath(pwd.append(key));
+            if (table.patterns != null) {
+                for (final TargetKey targetKey:
+                    table.patterns.getTargets(context, key))
+                    runTarget(context, report, entry.getValue(),
+                        targetKey.target);
+                continue;
+            }
+            target = table.properties.get(key);
+            runTarget(context, report, entry.getValue(),
+                target == null ? table.additional : target);
+        }
+
+        report.setPath(pwd);
+    }
+
+    private void runArray(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance, final int pc)
+    {
+        final JsonPointer pwd = report.getPath();
+        final int size = instance.size();
+        final int nrItems = code[pc + 1];
+        final int additional = code[pc + 2 + nrItems];
+
+        for (int i = 0; i < size; i++) {
+            report.setPath(pwd.append(i));
+            runTarget(context, report, instance.get(i),
+                i < nrItems ? code[pc + 2 + i] : additional);
+        }
+
+        report.setPath(pwd);
+    }
+
+    private void runDependencies(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance, final int pc)
+    {
+        final int nrSchemas = code[pc + 1];
+
+        for (int i = pc + 2; i < pc + 2 + 2 * nrSchemas; i += 2)
+            if (instance.has((String) constants[code[i]]))
+                runTarget(context, report, instance, code[i + 1]);
+    }
+
+    /*
+     * Same logic as TypeKeywordValidator: the instance is valid if it has one
+     * of the primitive types, or is valid against one of the schemas
+     */
+    private void runType(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final NodeType type, final TypeTable table)
+    {
+        if (table.types.contains(type))
+            return;
+
+        final ValidationReport schemaReport = report.copy();
+
+        trySchemas(context, schemaReport, instance, table);
+        if (schemaReport.isSuccess())
+            return;
+
+        if (table.primitives != null)
+            table.primitives.validateInstance(context, report, instance, type);
+
+        report.mergeWith(schemaReport);
+    }
+
+    private void trySchemas(final ValidationContext context,
+        final ValidationReport schemaReport, final JsonNode instance,
+        final TypeTable table)
+    {
+        final int[] candidates = table.getCandidates(instance);
+
+        if (candidates.length < table.targets.length
+            && anyTargetMatches(context, schemaReport, instance, candidates))
+            return;
+
+        final ValidationReport report = schemaReport.copy();
+
+        ValidationReport subReport;
+
+        for (final int target: table.targets) {
+            subReport = report.copy();
+            runTarget(context, subReport, instance, target);
+            if (subReport.isSuccess())
+                return;
+            report.mergeWith(subReport);
+        }
+
+        schemaReport.mergeWith(report);
+    }
+
+    private boolean anyTargetMatches(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final int[] targets)
+    {
+        ValidationReport subReport;
+
+        for (final int target: targets) {
+            subReport = report.copy();
+            runTarget(context, subReport, instance, target);
+            if (subReport.isSuccess())
+                return true;
+        }
+
+        return false;
+    }
+
+    /*
+     * Same logic as DisallowKeywordValidator: the instance is invalid if it
+     * has one of the primitive types, or is valid against one of the
+     * candidate schemas
+     */
+    private void runDisallow(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final NodeType type, final TypeTable table)
+    {
+        if (table.types.contains(type)) {
+            table.primitives.validateInstance(context, report, instance, type);
+            return;
+        }
+
+        ValidationReport schemaReport;
+
+        for (final int target: table.getCandidates(instance)) {
+            schemaReport = report.copy();
+            runTarget(context, schemaReport, instance, target);
+            if (schemaReport.isSuccess()) {
+                report.addMessage(new ValidationMessage.Builder(
+                    ValidationDomain.VALIDATION).setKeyword("disallow")
+                    .setMessage("instance is valid against a disallowed schema")
+                    .build());
+                return;
+            }
+        }
+    }
+
+    private void runTarget(final ValidationContext context,
+        final ValidationReport report, final JsonNode instance,
+        final int target)
+    {
+        if (target == NONE)
+            return;
+        if (target >= 0)
+            run(context, report, instance, target);
+        else
+            ((Link) constants[~target]).get().validate(context, report,
+                instance);
+    }
+
+    static ValidationMessage sizeMessage(final String keyword,
+        final int value, final int found, final String message)
+    {
+        return new ValidationMessage.Builder(ValidationDomain.VALIDATION)
+            .setKeyword(keyword).addInfo(keyword, value).addInfo("found", found)
+            .setMessage(message).build();
+    }
+
+    /**
+     * Targets of object members
+     */
+    private static final class ObjectTable
+    {
+        /**
+         * Targets of {@code properties} members
+         */
+        private final Map<String, Integer> properties;
+
+        /**
+         * Target of {@code additionalProperties}
+         */
+        private final int additional;
+
+        /**
+         * Target lookup if there are {@code patternProperties}, else {@code
+         * null}
+         */
+        private final PatternTable patterns;
+
+        private ObjectTable(final Map<String, Integer> properties,
+            final int additional, final PatternTable patterns)
+        {
+            this.properties = properties;
+            this.additional = additional;
+            this.patterns = patterns;
+        }
+    }
+
+    /**
+     * Targets of object members, if there are {@code patternProperties}
+     *
+     * <p>Targets of a member are collected as {@link ObjectValidator} collects
+     * subschemas, but into a hash set of {@link TargetKey}s: they are run in
+     * the same order as the subschemas would be.</p>
+     */
+    private static final class PatternTable
+    {
+        private final Map<String, TargetKey> properties;
+        private final String[] regexes;
+        private final TargetKey[] patterns;
+        private final TargetKey additional;
+
+        private PatternTable(final Map<String, TargetKey> properties,
+            final String[] regexes, final TargetKey[] patterns,
+            final TargetKey additional)
+        {
+            this.properties = properties;
+            this.regexes = regexes;
+            this.patterns = patterns;
+            this.additional = additional;
+        }
+
+        /**
+         * Get the targets of a member
+         *
+         * @param context the validation context, to match regexes
+         * @param key the member name
+         * @return the targets
+         * @see ObjectValidator#getSchemas(ValidationContext, String)
+         */
+        private Set<TargetKey> getTargets(final ValidationContext context,
+            final String key)
+        {
+            final Set<TargetKey> ret = new HashSet<TargetKey>();
+            final TargetKey property = properties.get(key);
+
+            if (property != null)
+                ret.add(property);
+
+            for (int i = 0; i < regexes.length; i++)
+                if (context.regMatch(regexes[i], key))
+                    ret.add(patterns[i]);
+
+            if (ret.isEmpty())
+                ret.add(additional);
+
+            return ret;
+        }
+    }
+
+    /**
+     * The target of a subschema, with the hash code of the subschema
+     *
+     * <p>Equal subschemas have the same target, so two keys are equal if
+     * their subschemas are (distinct trivially true subschemas share {@link
+     * #NONE} as a target, hence the hash code is compared as well).</p>
+     */
+    private static final class TargetKey
+    {
+        private final int target;
+        private final int hashCode;
+
+        private TargetKey(final int target, final JsonNode subSchema)
+        {
+            this.target = target;
+            hashCode = subSchema.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (!(obj instanceof TargetKey))
+                return false;
+
+            final TargetKey other = (TargetKey) obj;
+
+            return target == other.target && hashCode == other.hashCode;
+        }
+    }
+
+    /**
+     * Primitive types and targets of schemas of a {@code type} or {@code
+     * disallow} keyword
+     */
+    private static final class TypeTable
+    {
+        /**
+         * Validator for primitive types, {@code null} if there are none
+         */
+        private final KeywordValidator primitives;
+
+        private final Set<NodeType> types;
+
+        /**
+         * Targets of all schemas, in order
+         */
+        private final int[] targets;
+
+        /**
+         * The discriminating property, {@code null} if schemas are all tried
+         */
+        private final String property;
+
+        /**
+         * Targets of candidate schemas, by value of {@link #property}
+         */
+        private final Map<JsonNode, int[]> candidates;
+
+        /**
+         * Targets of candidate schemas of objects with no known value of
+         * {@link #property}
+         */
+        private final int[] undiscriminated;
+
+        private TypeTable(final KeywordValidator primitives,
+            final Set<NodeType> types, final int[] targets,
+            final String property, final Map<JsonNode, int[]> candidates,
+            final int[] undiscriminated)
+        {
+            this.primitives = primitives;
+            this.types = types;
+            this.targets = targets;
+            this.property = property;
+            this.candidates = candidates;
+            this.undiscriminated = undiscriminated;
+        }
+
+        /**
+         * Return the targets of schemas which may validate an instance
+         *
+         * @param instance the instance
+         * @return the targets
+         * @see AbstractTypeKeywordValidator#getDiscriminatedSchemas()
+         */
+        private int[] getCandidates(final JsonNode instance)
+        {
+            if (property == null || !instance.isObject())
+                return targets;
+
+            final JsonNode value = instance.get(property);
+
+            if (value == null)
+                return undiscriminated;
+
+            final int[] ret = candidates.get(value);
+            return ret == null ? undiscriminated : ret;
+        }
+    }
+
+    /**
+     * A link to another validator, resolved on first use unless already known
+     */
+    private static final class Link
+    {
+        /*
+         * Both are nulled out once the link is resolved
+         */
+        private Compiler compiler;
+        private SchemaNode schemaNode;
+        private volatile JsonValidator validator;
+
+        private Link(final Compiler compiler, final SchemaNode schemaNode)
+        {
+            this.compiler = compiler;
+            this.schemaNode = schemaNode;
+        }
+
+        private Link(final JsonValidator validator)
+        {
+            compiler = null;
+            schemaNode = null;
+            this.validator = validator;
+        }
+
+        private JsonValidator get()
+        {
+            final JsonValidator ret = validator;
+
+            if (ret != null)
+                return ret;
+
+            synchronized (this) {
+                if (validator == null)
+                    resolve(compiler.program(schemaNode));
+                return validator;
+            }
+        }
+
+        /**
+         * Link to the program of the target schema, if it is compiled
+         *
+         * @return true if this link is resolved
+         */
+        private synchronized boolean patch()
+        {
+            if (validator != null)
+                return true;
+
+            final JsonValidator program = compiler.compiled.get(schemaNode);
+
+            if (program == null)
+                return false;
+
+            resolve(program);
+            return true;
+        }
+
+        private void resolve(final JsonValidator target)
+        {
+            validator = target;
+            compiler = null;
+            schemaNode = null;
+        }
+    }
+
+    /**
+     * Assembler of one program
+     */
+    private static final class Assembler
+    {
+        private final Compiler compiler;
+        private final SchemaContainer container;
+
+        private int[] code = new int[32];
+        private int size = 0;
+
+        private final List<Object> constants = Lists.newArrayList();
+
+        private long[] longs = new long[4];
+        private int longCount = 0;
+
+        /**
+         * Whether a keyword validator may need the schema container
+         */
+        private boolean needsContainer = false;
+
+        /**
+         * Schema nodes of blocks, by offset, if the program is instrumented
+         */
+        private SchemaNode[] schemas;
+
+        /**
+         * Targets of all subschemas assembled so far, by schema
+         */
+        private final Map<JsonNode, Integer> targets = Maps.newHashMap();
+
+        private Assembler(final Compiler compiler,
+            final SchemaContainer container)
+        {
+            this.compiler = compiler;
+            this.container = container;
+            schemas = compiler.instrumented ? new SchemaNode[code.length]
+                : null;
+        }
+
+        /**
+         * Assemble the block of an inline schema
+         *
+         * <p>The block is reserved, and registered as the target of this
+         * schema, before subschemas are assembled: a schema may have an equal
+         * subschema (an empty schema is its own {@code additionalProperties},
+         * for instance).</p>
+         *
+         * @param schema the schema
+         * @param validator the validator of this schema
+         * @return the offset of the block
+         */
+        private int block(final JsonNode schema,
+            final InstanceValidator validator)
+        {
+            final ObjectValidator objectValidator
+                = validator.getObjectValidator();
+            final ArrayValidator arrayValidator = validator.getArrayValidator();
+            final Set<KeywordValidator> keywords
+                = validator.getKeywordValidators();
+            final List<JsonNode> items = arrayValidator == null
+                ? Collections.<JsonNode>emptyList() : arrayValidator.getItems();
+
+            final List<int[]> instructions = Lists.newArrayList();
+            int length = 0;
+
+            for (final KeywordValidator keyword: keywords) {
+                final int[] words = keyword(schema, keyword);
+                instructions.add(words);
+                length += words.length;
+            }
+
+            final int ret = size;
+            targets.put(schema, ret);
+            reserve(length + (objectValidator == null ? 0 : 2)
+                + (arrayValidator == null ? 0 : 3 + items.size()) + 1);
+            if (schemas != null)
+                schemas[ret] = validator.getSchemaNode();
+
+            int pc = ret;
+
+            for (final int[] words: instructions)
+                pc = put(pc, words);
+
+            final Map<JsonNode, Integer> subTargets = Maps.newHashMap();
+
+            if (objectValidator != null) {
+                for (final JsonNode subSchema: objectValidator.getAllSchemas())
+                    subTargets.put(subSchema,
+                        objectValidator.isTriviallyTrue(subSchema) ? NONE
+                            : target(subSchema));
+                pc = put(pc, OBJECT, constant(objectTable(schema,
+                    objectValidator, subTargets)));
+            }
+
+            if (arrayValidator != null) {
+                for (final JsonNode subSchema: arrayValidator.getAllSchemas())
+                    subTargets.put(subSchema,
+                        arrayValidator.isTriviallyTrue(subSchema) ? NONE
+                            : target(subSchema));
+                pc = put(pc, ARRAY, items.size());
+                for (final JsonNode item: items)
+                    pc = put(pc, subTargets.get(item));
+                pc = put(pc, subTargets.get(arrayValidator
+                    .getAdditionalItems()));
+            }
+
+            put(pc, END);
+            return ret;
+        }
+
+        /**
+         * Lower a keyword
+         *
+         * @param schema the schema
+         * @param keyword the keyword validator
+         * @return the instruction and its operands, if any
+         */
+        private int[] keyword(final JsonNode schema,
+            final KeywordValidator keyword)
+        {
+            if (compiler.keywordEvents)
+                return keywordInstruction(schema, keyword);
+            if (keyword instanceof MinLengthKeywordValidator)
+                return sizeInstruction(MIN_LENGTH, schema, "minLength");
+            if (keyword instanceof MaxLengthKeywordValidator)
+                return sizeInstruction(MAX_LENGTH, schema, "maxLength");
+            if (keyword instanceof MinItemsKeywordValidator)
+                return sizeInstruction(MIN_ITEMS, schema, "minItems");
+            if (keyword instanceof MaxItemsKeywordValidator)
+                return sizeInstruction(MAX_ITEMS, schema, "maxItems");
+            if (keyword instanceof MinimumKeywordValidator)
+                return boundInstruction(MINIMUM, schema, keyword,
+                    "exclusiveMinimum");
+            if (keyword instanceof MaximumKeywordValidator)
+                return boundInstruction(MAXIMUM, schema, keyword,
+                    "exclusiveMaximum");
+            if (keyword instanceof DivisibleByKeywordValidator)
+                return divisibleByInstruction(schema, keyword);
+            if (keyword instanceof PatternKeywordValidator)
+                return new int[] { PATTERN, constant(keyword),
+                    constant(schema.get("pattern").textValue()) };
+            if (keyword instanceof EnumKeywordValidator)
+                return enumInstruction(schema, keyword);
+            if (keyword instanceof PropertiesKeywordValidator)
+                return requiredInstruction(schema, keyword);
+            if (keyword instanceof ExtendsKeywordValidator)
+                return extendsInstruction((ExtendsKeywordValidator) keyword);
+            if (keyword instanceof DependenciesKeywordValidator)
+                return dependenciesInstruction(schema, keyword);
+            if (keyword instanceof TypeKeywordValidator
+                || keyword instanceof DisallowKeywordValidator)
+                return typeInstruction(schema,
+                    (AbstractTypeKeywordValidator) keyword);
+            return keywordInstruction(schema, keyword);
+        }
+
+        private int[] keywordInstruction(final JsonNode schema,
+            final KeywordValidator keyword)
+        {
+            if (!SchemaInterner.isContextFree(schema.path(keyword
+                .getKeyword())))
+                needsContainer = true;
+            return new int[] { KEYWORD, constant(keyword) };
+        }
+
+        private static int[] sizeInstruction(final int opcode,
+            final JsonNode schema, final String name)
+        {
+            return new int[] { opcode, schema.get(name).intValue() };
+        }
+
+        private int[] boundInstruction(final int opcode, final JsonNode schema,
+            final KeywordValidator keyword, final String exclusive)
+        {
+            final JsonNode value = schema.get(keyword.getKeyword());
+
+            if (!isLong(value))
+                return keywordInstruction(schema, keyword);
+
+            return new int[] { opcode, constant(keyword),
+                longConstant(value.longValue()),
+                schema.path(exclusive).asBoolean(false) ? 1 : 0 };
+        }
+
+        private int[] divisibleByInstruction(final JsonNode schema,
+            final KeywordValidator keyword)
+        {
+            final JsonNode value = schema.get("divisibleBy");
+
+            if (!isLong(value))
+                return keywordInstruction(schema, keyword);
+
+            return new int[] { DIVISIBLE_BY, constant(keyword),
+                longConstant(value.longValue()) };
+        }
+
+        /*
+         * Only string values are looked up by the interpreter: an enum
+         * without any is left to its validator
+         */
+        private int[] enumInstruction(final JsonNode schema,
+            final KeywordValidator keyword)
+        {
+            final ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+
+            for (final JsonNode value: schema.get("enum"))
+                if (value.isTextual())
+                    builder.add(value.textValue());
+
+            final Set<String> strings = builder.build();
+
+            if (strings.isEmpty())
+                return keywordInstruction(schema, keyword);
+
+            return new int[] { ENUM, constant(keyword), constant(strings) };
+        }
+
+        private int[] requiredInstruction(final JsonNode schema,
+            final KeywordValidator keyword)
+        {
+            final List<String> required = Lists.newArrayList();
+            final Iterator<Map.Entry<String, JsonNode>> iterator
+                = schema.get("properties").fields();
+
+            Map.Entry<String, JsonNode> entry;
+
+            while (iterator.hasNext()) {
+                entry = iterator.next();
+                if (entry.getValue().path("required").asBoolean(false))
+                    required.add(entry.getKey());
+            }
+
+            if (required.isEmpty())
+                return new int[0];
+
+            return new int[] { REQUIRED, constant(keyword),
+                constant(required.toArray(new String[required.size()])) };
+        }
+
+        private int[] extendsInstruction(final ExtendsKeywordValidator keyword)
+        {
+            final Set<JsonNode> parents = keyword.getSchemas();
+            final int[] ret = new int[2 + parents.size()];
+
+            ret[0] = EXTENDS;
+            ret[1] = parents.size();
+
+            int i = 2;
+
+            for (final JsonNode parent: parents)
+                ret[i++] = subTarget(parent);
+
+            return ret;
+        }
+
+        /*
+         * Schema dependencies are emitted in the order in which the validator
+         * tries them: that of a hash map copied from the map of schemas, which
+         * itself follows the iteration order of JacksonUtils.nodeToMap().
+         */
+        private int[] dependenciesInstruction(final JsonNode schema,
+            final KeywordValidator keyword)
+        {
+            final ObjectNode simple = JsonNodeFactory.instance.objectNode();
+            final Map<String, JsonNode> schemas = Maps.newLinkedHashMap();
+
+            for (final Map.Entry<String, JsonNode> entry: JacksonUtils
+                .nodeToMap(schema.get("dependencies")).entrySet())
+                if (entry.getValue().isObject())
+                    schemas.put(entry.getKey(), entry.getValue());
+                else
+                    simple.put(entry.getKey(), entry.getValue());
+
+            if (schemas.isEmpty())
+                return keywordInstruction(schema, keyword);
+
+            final Map<String, JsonNode> ordered
+                = new HashMap<String, JsonNode>(ImmutableMap.copyOf(schemas));
+            final int[] ret = new int[(simple.size() == 0 ? 0 : 2) + 2
+                + 2 * ordered.size()];
+
+            int i = 0;
+
+            if (simple.size() != 0) {
+                ret[i++] = KEYWORD;
+                ret[i++] = constant(new DependenciesKeywordValidator(
+                    keywordNode("dependencies", simple)));
+            }
+
+            ret[i++] = DEPENDENCIES;
+            ret[i++] = ordered.size();
+
+            for (final Map.Entry<String, JsonNode> entry: ordered.entrySet()) {
+                ret[i++] = constant(entry.getKey());
+                ret[i++] = subTarget(entry.getValue());
+            }
+
+            return ret;
+        }
+
+        private int[] typeInstruction(final JsonNode schema,
+            final AbstractTypeKeywordValidator keyword)
+        {
+            final Set<JsonNode> schemas = keyword.getSchemas();
+
+            if (schemas.isEmpty())
+                return keywordInstruction(schema, keyword);
+
+            final boolean disallow
+                = keyword instanceof DisallowKeywordValidator;
+            final ArrayNode types = JsonNodeFactory.instance.arrayNode();
+
+            for (final JsonNode element: schema.get(keyword.getKeyword()))
+                if (element.isTextual())
+                    types.add(element);
+
+            final KeywordValidator primitives;
+
+            if (types.size() == 0)
+                primitives = null;
+            else if (disallow)
+                primitives = new DisallowKeywordValidator(
+                    keywordNode("disallow", types));
+            else
+                primitives = new TypeKeywordValidator(
+                    keywordNode("type", types));
+
+            final Map<JsonNode, int[]> candidates = Maps.newHashMap();
+
+            for (final Map.Entry<JsonNode, List<JsonNode>> entry:
+                keyword.getDiscriminatedSchemas().entrySet())
+                candidates.put(entry.getKey(), subTargets(entry.getValue()));
+
+            final TypeTable table = new TypeTable(primitives,
+                Sets.immutableEnumSet(keyword.getTypes()),
+                subTargets(schemas), keyword.getDiscriminator(),
+                ImmutableMap.copyOf(candidates),
+                subTargets(keyword.getUndiscriminatedSchemas()));
+
+            return new int[] { disallow ? DISALLOW : TYPE, constant(table) };
+        }
+
+        private static JsonNode keywordNode(final String keyword,
+            final JsonNode value)
+        {
+            final ObjectNode ret = JsonNodeFactory.instance.objectNode();
+
+            ret.put(keyword, value);
+            return ret;
+        }
+
+        private static boolean isLong(final JsonNode value)
+        {
+            return value.isIntegralNumber() && value.canConvertToLong();
+        }
+
+        private ObjectTable objectTable(final JsonNode schema,
+            final ObjectValidator objectValidator,
+            final Map<JsonNode, Integer> subTargets)
+        {
+            final ImmutableMap.Builder<String, Integer> builder
+                = ImmutableMap.builder();
+            final Iterator<Map.Entry<String, JsonNode>> iterator
+                = schema.path("properties").fields();
+
+            Map.Entry<String, JsonNode> entry;
+
+            while (iterator.hasNext()) {
+                entry = iterator.next();
+                builder.put(entry.getKey(), subTargets.get(entry.getValue()));
+            }
+
+            final int additional
+                = subTargets.get(objectValidator.getAdditionalProperties());
+
+            return new ObjectTable(builder.build(), additional,
+                objectValidator.hasPatternProperties() ? patternTable(schema,
+                    objectValidator, subTargets) : null);
+        }
+
+        private static PatternTable patternTable(final JsonNode schema,
+            final ObjectValidator objectValidator,
+            final Map<JsonNode, Integer> subTargets)
+        {
+            final ImmutableMap.Builder<String, TargetKey> builder
+                = ImmutableMap.builder();
+            final Iterator<Map.Entry<String, JsonNode>> iterator
+                = schema.path("properties").fields();
+
+            Map.Entry<String, JsonNode> entry;
+
+            while (iterator.hasNext()) {
+                entry = iterator.next();
+                builder.put(entry.getKey(),
+                    targetKey(entry.getValue(), subTargets));
+            }
+
+            final Map<String, JsonNode> patterns
+                = objectValidator.getPatternProperties();
+            final String[] regexes = new String[patterns.size()];
+            final TargetKey[] keys = new TargetKey[patterns.size()];
+
+            int i = 0;
+
+            for (final Map.Entry<String, JsonNode> pattern: patterns.entrySet())
+            {
+                regexes[i] = pattern.getKey();
+                keys[i++] = targetKey(pattern.getValue(), subTargets);
+            }
+
+            return new PatternTable(builder.build(), regexes, keys, targetKey(
+                objectValidator.getAdditionalProperties(), subTargets));
+        }
+
+        private static TargetKey targetKey(final JsonNode subSchema,
+            final Map<JsonNode, Integer> subTargets)
+        {
+            return new TargetKey(subTargets.get(subSchema), subSchema);
+        }
+
+        /**
+         * Return the target of a subschema which applies to the instance
+         * itself
+         *
+         * @param subSchema the subschema
+         * @return the target, {@link #NONE} if the subschema is trivially true
+         */
+        private int subTarget(final JsonNode subSchema)
+        {
+            return compiler.cache.getOptimizer().isTriviallyTrue(subSchema)
+                ? NONE : target(subSchema);
+        }
+
+        private int[] subTargets(final Collection<JsonNode> subSchemas)
+        {
+            final int[] ret = new int[subSchemas.size()];
+
+            int i = 0;
+
+            for (final JsonNode subSchema: subSchemas)
+                ret[i++] = subTarget(subSchema);
+
+            return ret;
+        }
+
+        /**
+         * Return the target of a subschema
+         *
+         * <p>The subschema is inlined if it is not a JSON Reference and passes
+         * syntax validation; otherwise, a link is created.</p>
+         *
+         * @param subSchema the subschema
+         * @return the target
+         */
+        private int target(final JsonNode subSchema)
+        {
+            final Integer target = targets.get(subSchema);
+
+            if (target != null)
+                return target;
+
+            final SchemaNode schemaNode = new SchemaNode(container, subSchema);
+
+            JsonValidator validator;
+
+            /*
+             * Errors (unreachable schema, for instance) are left for the link
+             * to raise, so that they only occur if an instance actually needs
+             * this subschema, as with the validator cache.
+             */
+            try {
+                validator = compiler.cache.getValidator(schemaNode);
+            } catch (UncheckedExecutionException ignored) {
+                validator = null;
+            }
+
+            if (validator instanceof InstanceValidator && subSchema.equals(
+                ((InstanceValidator) validator).getSchemaNode().getNode()))
+                return block(subSchema, (InstanceValidator) validator);
+
+            final int ret = ~constant(link(schemaNode, validator));
+            targets.put(subSchema, ret);
+            return ret;
+        }
+
+        /**
+         * Create a link to a validator
+         *
+         * <p>In compact mode, the link is resolved right away, unless the
+         * target schema fails to resolve or is being compiled; in the latter
+         * case, it is resolved at the end of the compilation (see {@link
+         * Compiler#compile(SchemaNode)}).</p>
+         *
+         * @param schemaNode the schema node
+         * @param validator the validator, {@code null} if unknown
+         * @return the link
+         */
+        private Link link(final SchemaNode schemaNode,
+            final JsonValidator validator)
+        {
+            if (!compiler.compact || validator == null)
+                return new Link(compiler, schemaNode);
+
+            if (!(validator instanceof InstanceValidator))
+                return new Link(validator);
+
+            final InstanceValidator instanceValidator
+                = (InstanceValidator) validator;
+            final JsonValidator program
+                = compiler.compileUnlessPending(instanceValidator);
+
+            if (program != null)
+                return new Link(program);
+
+            /*
+             * The target is being compiled: link to its resolved schema node,
+             * which is the key of its program once compiled
+             */
+            final Link ret
+                = new Link(compiler, instanceValidator.getSchemaNode());
+            compiler.pendingLinks.add(ret);
+            return ret;
+        }
+
+        private int constant(final Object constant)
+        {
+            constants.add(constant);
+            return constants.size() - 1;
+        }
+
+        private int longConstant(final long value)
+        {
+            if (longCount == longs.length)
+                longs = Arrays.copyOf(longs, longs.length * 2);
+            longs[longCount] = value;
+            return longCount++;
+        }
+
+        private void reserve(final int length)
+        {
+            if (size + length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2,
+                    size + length));
+                if (schemas != null)
+                    schemas = Arrays.copyOf(schemas, code.length);
+            }
+            size += length;
+        }
+
+        /**
+         * Write words into a reserved block
+         *
+         * @param pc the offset to write at
+         * @param words the words
+         * @return the offset following the last written word
+         */
+        private int put(final int pc, final int... words)
+        {
+            System.arraycopy(words, 0, code, pc, words.length);
+            return pc + words.length;
+        }
+
+        private int[] code()
+        {
+            return Arrays.copyOf(code, size);
+        }
+
+        private long[] longs()
+        {
+            return Arrays.copyOf(longs, longCount);
+        }
+    }
+
+    /**
+     * Compiler of programs
+     *
+     * <p>A compiler keeps the programs it has built, by resolved schema node,
+     * so that a same schema referred to by several JSON References, or
+     * recursively, is only compiled once.</p>
+     */
+    static final class Compiler
+    {
+        private final JsonValidatorCache cache;
+        private final boolean compact;
+
+        /**
+         * Whether the listener of the cache wants schema events
+         */
+        private final boolean instrumented;
+
+        /**
+         * Whether the listener of the cache wants keyword events
+         */
+        private final boolean keywordEvents;
+
+        private final ConcurrentMap<SchemaNode, JsonValidator> compiled
+            = Maps.newConcurrentMap();
+
+        /**
+         * Schema nodes being compiled
+         */
+        private final Set<SchemaNode> pending
+            = Sets.newSetFromMap(Maps.<SchemaNode, Boolean>newConcurrentMap());
+
+        /**
+         * Links to schemas which were being compiled, in compact mode
+         */
+        private final Queue<Link> pendingLinks
+            = new ConcurrentLinkedQueue<Link>();
+
+        Compiler(final JsonValidatorCache cache, final boolean compact)
+        {
+            this.cache = cache;
+            this.compact = compact;
+            final ValidationListener listener = cache.getListener();
+            final ValidationListener.Granularity granularity
+                = listener.getGranularity();
+
+            instrumented = listener != ValidationListener.noop()
+                && granularity != ValidationListener.Granularity.VALIDATIONS;
+            keywordEvents = instrumented
+                && granularity == ValidationListener.Granularity.KEYWORDS;
+        }
+
+        /**
+         * Get the program for a schema node
+         *
+         * <p>Validators for schemas which fail to resolve or fail syntax
+         * validation are returned as is.</p>
+         *
+         * <p>In compact mode, links to schemas which were being compiled are
+         * then resolved, so that they no longer retain their schema node, nor
+         * this compiler.</p>
+         *
+         * @param schemaNode the schema node
+         * @return the validator
+         */
+        JsonValidator compile(final SchemaNode schemaNode)
+        {
+            final JsonValidator ret = program(schemaNode);
+
+            if (compact)
+                patchLinks();
+
+            return ret;
+        }
+
+        /**
+         * Resolve all pending links whose target program is compiled
+         *
+         * <p>Links whose target is still being compiled, by another thread,
+         * are left for that thread to resolve.</p>
+         */
+        private void patchLinks()
+        {
+            final List<Link> left = Lists.newArrayList();
+            Link link;
+
+            while ((link = pendingLinks.poll()) != null)
+                if (!link.patch())
+                    left.add(link);
+
+            pendingLinks.addAll(left);
+        }
+
+        private JsonValidator program(final SchemaNode schemaNode)
+        {
+            final JsonValidator validator = cache.getValidator(schemaNode);
+
+            if (!(validator instanceof InstanceValidator))
+                return validator;
+
+            return compile((InstanceValidator) validator);
+        }
+
+        /**
+         * Get the program for a validator, unless it is being compiled
+         *
+         * @param validator the validator
+         * @return the program, or {@code null} if it is being compiled
+         */
+        private JsonValidator compileUnlessPending(
+            final InstanceValidator validator)
+        {
+            return pending.contains(validator.getSchemaNode()) ? null
+                : compile(validator);
+        }
+
+        private JsonValidator compile(final InstanceValidator validator)
+        {
+            final SchemaNode key = validator.getSchemaNode();
+            final JsonValidator ret = compiled.get(key);
+
+            if (ret != null)
+                return ret;
+
+            final JsonValidator newValidator;
+
+            pending.add(key);
+            try {
+                newValidator = new ValidatorProgram(this, validator);
+            } finally {
+                pending.remove(key);
+            }
+
+            final JsonValidator previous
+                = compiled.putIfAbsent(key, newValidator);
+
+            return previous == null ? newValidator : previous;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.keyword;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public final class DiscriminatorIndexTest
+{
+    private static JsonNode parse(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input.replace('\'',
+            '"')));
+    }
+
+    private static JsonNode discriminated(final String property,
+        final String value)
+        throws IOException
+    {
+        return parse("{'properties':{'" + property + "':{'required':true,"
+            + "'enum':['" + value + "']}}}");
+    }
+
+    @Test
+    public void noIndexIsBuiltWithoutTwoDiscriminatedSchemas()
+        throws IOException
+    {
+        final List<JsonNode> schemas = ImmutableList.of(
+            discriminated("kind", "a"), discriminated("type", "b"),
+            parse("{'properties':{'kind':{'enum':['c']}}}"),
+            parse("{'$ref':'#'}"));
+
+        assertNull(DiscriminatorIndex.build(schemas));
+    }
+
+    @Test
+    public void mostDiscriminatingPropertyIsPicked()
+        throws IOException
+    {
+        final List<JsonNode> schemas = ImmutableList.of(
+            discriminated("type", "a"), discriminated("kind", "a"),
+            discriminated("kind", "b"), discriminated("type", "b"),
+            discriminated("kind", "c"));
+
+        final DiscriminatorIndex index = DiscriminatorIndex.build(schemas);
+
+        assertNotNull(index);
+        assertEquals(index.getProperty(), "kind");
+    }
+
+    @Test
+    public void candidatesKeepTheirOriginalOrder()
+        throws IOException
+    {
+        final JsonNode a = discriminated("kind", "a");
+        final JsonNode b = discriminated("kind", "b");
+        final JsonNode other1 = parse("{'minProperties':1}");
+        final JsonNode other2 = parse("{'$ref':'#'}");
+        final JsonNode a2 = parse("{'properties':{'kind':{'required':true,"
+            + "'enum':['a']},'x':{}}}");
+
+        final List<JsonNode> schemas = ImmutableList.of(other1, a, b, other2,
+            a2);
+        final DiscriminatorIndex index = DiscriminatorIndex.build(schemas);
+
+        assertEquals(index.candidates(parse("{'kind':'a'}")),
+            ImmutableList.of(other1, a, other2, a2));
+        assertEquals(index.candidates(parse("{'kind':'b'}")),
+            ImmutableList.of(other1, b, other2));
+        assertEquals(index.candidates(parse("{'kind':'z'}")),
+            ImmutableList.of(other1, other2));
+        assertEquals(index.candidates(parse("{}")),
+            ImmutableList.of(other1, other2));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.keyword;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public final class LongHashSetTest
+{
+    @Test
+    public void zeroIsHandledLikeAnyOtherValue()
+    {
+        final LongHashSet set = new LongHashSet(2);
+
+        assertFalse(set.contains(0L));
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+        assertTrue(set.contains(0L));
+        assertEquals(set.size(), 1);
+    }
+
+    @Test
+    public void setIsFilledUpToItsExpectedSize()
+    {
+        final int size = 1000;
+        final LongHashSet set = new LongHashSet(size);
+
+        // Multiples of a large power of two, to exercise collisions
+        for (long l = 0; l < size; l++)
+            assertTrue(set.add(l << 40));
+
+        for (long l = 0; l < size; l++) {
+            assertFalse(set.add(l << 40));
+            assertTrue(set.contains(l << 40));
+            assertFalse(set.contains((l << 40) + 1));
+        }
+
+        assertEquals(set.size(), size);
+    }
+
+    @Test
+    public void extremeValuesAreSupported()
+    {
+        final LongHashSet set = new LongHashSet(2);
+
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.add(Long.MAX_VALUE));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertTrue(set.contains(Long.MAX_VALUE));
+        assertFalse(set.contains(-1L));
+    }
+}
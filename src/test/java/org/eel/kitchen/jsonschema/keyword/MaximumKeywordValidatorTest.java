@@ -17,7 +17,16 @@
 
 package org.eel.kitchen.jsonschema.keyword;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.Test;
+
 import java.io.IOException;
+import java.io.StringReader;
+
+import static org.testng.Assert.*;
 
 public final class MaximumKeywordValidatorTest
     extends AbstractKeywordValidatorTest
@@ -27,4 +36,35 @@ public final class MaximumKeywordValidatorTest
     {
         super(MaximumKeywordValidator.class, "maximum");
     }
+
+    @Test
+    public void roundedDoubleInstancesFailExclusiveMaximum()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"maximum\":0.5,\"exclusiveMaximum\":true}"));
+        final NumericKeywordValidator validator
+            = new MaximumKeywordValidator(schema);
+        final String text = "0.49999999999999999";
+
+        /*
+         * Without USE_BIG_DECIMAL_FOR_FLOATS, the parser rounds this text
+         * to 0.5; JsonLoader keeps it as a decimal
+         */
+        final JsonNode rounded = new ObjectMapper().readTree(text);
+        final JsonNode exact = JsonLoader.fromReader(new StringReader(text));
+
+        assertTrue(rounded.isDouble());
+        assertEquals(validator.compareToKeywordValue(rounded), 0);
+        assertEquals(rounded.decimalValue()
+            .compareTo(schema.get("maximum").decimalValue()), 0);
+
+        ValidationReport report = new ValidationReport();
+        validator.validateDecimal(report, rounded);
+        assertFalse(report.isSuccess());
+
+        report = new ValidationReport();
+        validator.validateDecimal(report, exact);
+        assertTrue(report.isSuccess());
+    }
 }
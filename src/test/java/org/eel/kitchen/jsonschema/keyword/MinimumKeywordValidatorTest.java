@@ -17,7 +17,18 @@
 
 package org.eel.kitchen.jsonschema.keyword;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.Test;
+
 import java.io.IOException;
+import java.io.StringReader;
+
+import static org.testng.Assert.*;
 
 public final class MinimumKeywordValidatorTest
     extends AbstractKeywordValidatorTest
@@ -27,4 +38,62 @@ public final class MinimumKeywordValidatorTest
     {
         super(MinimumKeywordValidator.class, "minimum");
     }
+
+    @Test
+    public void doubleInstancesCompareLikeTheirDecimalValue()
+    {
+        final JsonNodeFactory factory = JsonNodeFactory.instance;
+        final double[] bounds = { 0.5, -0.5, 0.1, 1e300, 3.0 };
+        final double[] values = { 0.5, 0.49999999999999994, 0.1,
+            0.10000000000000002, -0.5, 1e300, 3.0000000000000004, 2.0 };
+
+        ObjectNode schema;
+        NumericKeywordValidator validator;
+        JsonNode instance;
+        int expected;
+
+        for (final double bound: bounds) {
+            schema = factory.objectNode();
+            schema.put("minimum", bound);
+            validator = new MinimumKeywordValidator(schema);
+            for (final double value: values) {
+                instance = factory.numberNode(value);
+                expected = Integer.signum(instance.decimalValue()
+                    .compareTo(schema.get("minimum").decimalValue()));
+                assertEquals(Integer.signum(validator
+                    .compareToKeywordValue(instance)), expected);
+            }
+        }
+    }
+
+    @Test
+    public void roundedDoubleInstancesFailExclusiveMinimum()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"minimum\":0.5,\"exclusiveMinimum\":true}"));
+        final NumericKeywordValidator validator
+            = new MinimumKeywordValidator(schema);
+        final String text = "0.50000000000000001";
+
+        /*
+         * Without USE_BIG_DECIMAL_FOR_FLOATS, the parser rounds this text
+         * to 0.5; JsonLoader keeps it as a decimal
+         */
+        final JsonNode rounded = new ObjectMapper().readTree(text);
+        final JsonNode exact = JsonLoader.fromReader(new StringReader(text));
+
+        assertTrue(rounded.isDouble());
+        assertEquals(validator.compareToKeywordValue(rounded), 0);
+        assertEquals(rounded.decimalValue()
+            .compareTo(schema.get("minimum").decimalValue()), 0);
+
+        ValidationReport report = new ValidationReport();
+        validator.validateDecimal(report, rounded);
+        assertFalse(report.isSuccess());
+
+        report = new ValidationReport();
+        validator.validateDecimal(report, exact);
+        assertTrue(report.isSuccess());
+    }
 }
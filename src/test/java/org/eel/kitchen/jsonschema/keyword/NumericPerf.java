@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.keyword;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.eel.kitchen.jsonschema.validator.ValidationContext;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Throughput of numeric keywords on telemetry-like data
+ *
+ * <p>Readings are a mix of integers and two-digit decimals, parsed the same
+ * way as {@link JsonLoader} does (ie, decimals as {@link BigDecimal}s). They
+ * are checked against {@code minimum}, {@code maximum} and {@code divisibleBy}
+ * with decimal keyword values; this is compared to doing the same checks with
+ * {@link BigDecimal} only, as was done before.</p>
+ */
+public final class NumericPerf
+{
+    private static final int SIZE = 1000000;
+    private static final int WARMUP = 5;
+    private static final int ROUNDS = 10;
+
+    private NumericPerf()
+    {
+    }
+
+    public static void main(final String... args)
+        throws IOException
+    {
+        final Random random = new Random(0L);
+        final StringBuilder sb = new StringBuilder("[");
+
+        for (int i = 0; i < SIZE; i++) {
+            if (i > 0)
+                sb.append(',');
+            if (i % 4 == 0)
+                sb.append(random.nextInt(160) - 40);
+            else
+                sb.append(String.format(Locale.ROOT, "%.2f",
+                    random.nextInt(16000) / 100.0 - 40.0));
+        }
+
+        final JsonNode readings = JsonLoader.fromReader(new StringReader(sb
+            .append(']').toString()));
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"minimum\":-40.5,\"maximum\":125.25,\"divisibleBy\":0.01}"));
+
+        final KeywordValidator[] validators = {
+            new MinimumKeywordValidator(schema),
+            new MaximumKeywordValidator(schema),
+            new DivisibleByKeywordValidator(schema)
+        };
+
+        final ValidationContext context = new ValidationContext(null);
+
+        for (int i = 0; i < WARMUP; i++) {
+            runValidators(context, validators, readings);
+            runLegacy(schema, readings);
+        }
+
+        long begin, newTime = 0L, oldTime = 0L;
+        int failures = 0, legacyFailures = 0;
+
+        for (int i = 0; i < ROUNDS; i++) {
+            begin = System.nanoTime();
+            failures = runValidators(context, validators, readings);
+            newTime += System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            legacyFailures = runLegacy(schema, readings);
+            oldTime += System.nanoTime() - begin;
+        }
+
+        if (failures != legacyFailures)
+            throw new IllegalStateException("results differ");
+
+        System.out.println(String.format("%d readings, %d failures: %d ms "
+            + "(BigDecimal only: %d ms)", SIZE, failures,
+            newTime / ROUNDS / 1000000L, oldTime / ROUNDS / 1000000L));
+        System.exit(0);
+    }
+
+    private static int runValidators(final ValidationContext context,
+        final KeywordValidator[] validators, final JsonNode readings)
+    {
+        int failures = 0;
+        ValidationReport report;
+
+        for (final JsonNode reading: readings) {
+            report = new ValidationReport();
+            for (final KeywordValidator validator: validators)
+                validator.validate(context, report, reading);
+            if (!report.isSuccess())
+                failures++;
+        }
+
+        return failures;
+    }
+
+    private static int runLegacy(final JsonNode schema,
+        final JsonNode readings)
+    {
+        int failures = 0;
+        ValidationReport report;
+        BigDecimal value;
+        boolean valid;
+
+        for (final JsonNode reading: readings) {
+            report = new ValidationReport();
+            value = reading.decimalValue();
+            valid = value.compareTo(schema.get("minimum").decimalValue()) >= 0;
+            valid &= value.compareTo(schema.get("maximum").decimalValue()) <= 0;
+            valid &= value.remainder(schema.get("divisibleBy").decimalValue())
+                .compareTo(BigDecimal.ZERO) == 0;
+            if (!(valid && report.isSuccess()))
+                failures++;
+        }
+
+        return failures;
+    }
+}
@@ -17,8 +17,14 @@
 
 package org.eel.kitchen.jsonschema.keyword;
 
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.testng.annotations.Test;
+
 import java.io.IOException;
 
+import static org.testng.Assert.*;
+
 public final class UniqueItemsKeywordValidatorTest
     extends AbstractKeywordValidatorTest
 {
@@ -27,4 +33,34 @@ public final class UniqueItemsKeywordValidatorTest
     {
         super(UniqueItemsKeywordValidator.class, "uniqueItems");
     }
+
+    @Test
+    public void largeIntegerArraysAreCorrectlyChecked()
+    {
+        final int size = UniqueItemsKeywordValidator.LARGE_ARRAY + 1;
+        final ArrayNode array = JsonNodeFactory.instance.arrayNode();
+
+        for (int i = 0; i < size; i++)
+            array.add(i);
+
+        assertFalse(UniqueItemsKeywordValidator.hasDuplicates(array));
+
+        array.add(size / 2);
+        assertTrue(UniqueItemsKeywordValidator.hasDuplicates(array));
+    }
+
+    @Test
+    public void largeStringArraysAreCorrectlyChecked()
+    {
+        final int size = UniqueItemsKeywordValidator.LARGE_ARRAY + 1;
+        final ArrayNode array = JsonNodeFactory.instance.arrayNode();
+
+        for (int i = 0; i < size; i++)
+            array.add(Integer.toString(i));
+
+        assertFalse(UniqueItemsKeywordValidator.hasDuplicates(array));
+
+        array.add("0");
+        assertTrue(UniqueItemsKeywordValidator.hasDuplicates(array));
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.keyword;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Throughput of {@code uniqueItems} on large arrays
+ *
+ * <p>For each kind of array (integers, strings, objects), this compares the
+ * current duplicate detection against the former one, which inserted every
+ * element into a {@code HashSet<JsonNode>}.</p>
+ */
+public final class UniqueItemsPerf
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+    private static final int SIZE = 1000000;
+    private static final int WARMUP = 5;
+    private static final int ROUNDS = 10;
+
+    private UniqueItemsPerf()
+    {
+    }
+
+    public static void main(final String... args)
+    {
+        final Random random = new Random(0L);
+        final Set<Integer> seen = new HashSet<Integer>(SIZE * 2);
+        final ArrayNode ints = FACTORY.arrayNode();
+        final ArrayNode randomInts = FACTORY.arrayNode();
+        final ArrayNode strings = FACTORY.arrayNode();
+        final ArrayNode objects = FACTORY.arrayNode();
+
+        ObjectNode node;
+
+        for (int i = 0; i < SIZE; i++) {
+            ints.add(i * 31);
+            int r;
+            do {
+                r = random.nextInt();
+            } while (!seen.add(r));
+            randomInts.add(r);
+            strings.add("item" + i);
+            node = FACTORY.objectNode();
+            node.put("id", i);
+            node.put("name", "item" + i);
+            node.put("tags", FACTORY.arrayNode().add("a").add(i % 7));
+            objects.add(node);
+        }
+
+        run("integers", ints);
+        run("random integers", randomInts);
+        run("strings", strings);
+        run("objects", objects);
+        System.exit(0);
+    }
+
+    private static void run(final String name, final JsonNode array)
+    {
+        for (int i = 0; i < WARMUP; i++) {
+            UniqueItemsKeywordValidator.hasDuplicates(array);
+            legacyHasDuplicates(array);
+        }
+
+        long begin, newTime = 0L, oldTime = 0L;
+
+        for (int i = 0; i < ROUNDS; i++) {
+            begin = System.nanoTime();
+            if (UniqueItemsKeywordValidator.hasDuplicates(array))
+                throw new IllegalStateException();
+            newTime += System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            if (legacyHasDuplicates(array))
+                throw new IllegalStateException();
+            oldTime += System.nanoTime() - begin;
+        }
+
+        System.out.println(String.format("%s: %d ms (HashSet: %d ms)", name,
+            newTime / ROUNDS / 1000000L, oldTime / ROUNDS / 1000000L));
+    }
+
+    private static boolean legacyHasDuplicates(final JsonNode array)
+    {
+        final Set<JsonNode> set = new HashSet<JsonNode>();
+
+        for (final JsonNode element: array)
+            if (!set.add(element))
+                return true;
+
+        return false;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Heap retained by many schemas, with and without compact programs
+ *
+ * <p>Many distinct schemas, each with an {@code id} and internal JSON
+ * References, are built, used once, then only their {@link JsonSchema}
+ * instances are kept. The heap they retain is measured with interpreted
+ * validation, compiled programs and compact programs.</p>
+ *
+ * <p>This is done for two sets of schemas: the first one only has
+ * subschemas for children of the instance, the second one also has
+ * subschemas in {@code extends}, {@code type} and {@code dependencies}.</p>
+ */
+public final class CompactProgramPerf
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private static final int SCHEMAS = 5000;
+
+    private CompactProgramPerf()
+    {
+    }
+
+    public static void main(final String... args)
+    {
+        for (final boolean unions: new boolean[] { false, true }) {
+            run("interpreted", null, unions);
+            run("compiled", ValidationFeature.COMPILED_PROGRAMS, unions);
+            run("compact", ValidationFeature.COMPACT_PROGRAMS, unions);
+        }
+    }
+
+    private static void run(final String name,
+        final ValidationFeature feature, final boolean unions)
+    {
+        final JsonSchemaFactory.Builder builder
+            = new JsonSchemaFactory.Builder();
+
+        if (feature != null)
+            builder.enableFeature(feature);
+
+        final JsonSchemaFactory factory = builder.build();
+        final JsonNode instance = unions ? unionInstance() : instance();
+        final List<JsonSchema> schemas = Lists.newArrayList();
+        final long before = usedHeap();
+
+        JsonSchema schema;
+
+        for (int i = 0; i < SCHEMAS; i++) {
+            schema = factory.createSchema(factory.registerSchema(unions
+                ? unionSchema(i) : schema(i)));
+            schema.validate(instance);
+            schemas.add(schema);
+        }
+
+        final long retained = usedHeap() - before;
+
+        System.out.println(String.format("%s%s: %d schemas retain %d KiB "
+            + "(%d bytes per schema)", name, unions ? " (unions)" : "",
+            schemas.size(), retained / 1024L, retained / schemas.size()));
+    }
+
+    private static JsonNode schema(final int i)
+    {
+        final ObjectNode address = FACTORY.objectNode();
+        final ObjectNode addressProperties = FACTORY.objectNode();
+
+        addressProperties.put("street", FACTORY.objectNode()
+            .put("type", "string").put("maxLength", 200 + i));
+        addressProperties.put("city", FACTORY.objectNode()
+            .put("type", "string").put("description", "City, tenant " + i));
+        addressProperties.put("zip", FACTORY.objectNode()
+            .put("type", "string").put("pattern", "^[0-9]{5}$"));
+        address.put("type", "object");
+        address.put("properties", addressProperties);
+
+        final ObjectNode properties = FACTORY.objectNode();
+
+        properties.put("name", FACTORY.objectNode().put("type", "string")
+            .put("description", "Customer name for tenant " + i));
+        properties.put("billing", FACTORY.objectNode()
+            .put("$ref", "#/address"));
+        properties.put("shipping", FACTORY.objectNode()
+            .put("$ref", "#/address"));
+        properties.put("amount", FACTORY.objectNode().put("type", "number")
+            .put("minimum", 0).put("maximum", 1000 * i));
+
+        final ObjectNode ret = FACTORY.objectNode();
+
+        ret.put("id", "http://example.com/tenant/" + i + "/order#");
+        ret.put("description", "Order schema for tenant " + i);
+        ret.put("type", "object");
+        ret.put("properties", properties);
+        ret.put("address", address);
+        return ret;
+    }
+
+    /*
+     * A payment is a card or a transfer (a type union discriminated by
+     * "kind"); both extend a base schema, and a transfer with a "reference"
+     * must match the "reference" schema (a schema dependency)
+     */
+    private static JsonNode unionSchema(final int i)
+    {
+        final ObjectNode baseProperties = FACTORY.objectNode();
+
+        baseProperties.put("amount", FACTORY.objectNode()
+            .put("type", "number").put("minimum", 0).put("maximum", 1000 * i));
+        baseProperties.put("currency", FACTORY.objectNode()
+            .put("type", "string").put("description", "Currency, tenant " + i));
+
+        final ObjectNode base = FACTORY.objectNode();
+
+        base.put("type", "object");
+        base.put("properties", baseProperties);
+
+        final ObjectNode cardProperties = FACTORY.objectNode();
+
+        cardProperties.put("kind", kind("card"));
+        cardProperties.put("number", FACTORY.objectNode()
+            .put("type", "string").put("pattern", "^[0-9]{16}$"));
+
+        final ObjectNode card = FACTORY.objectNode();
+
+        card.put("extends", FACTORY.objectNode().put("$ref", "#/base"));
+        card.put("properties", cardProperties);
+
+        final ObjectNode transferProperties = FACTORY.objectNode();
+
+        transferProperties.put("kind", kind("transfer"));
+        transferProperties.put("iban", FACTORY.objectNode()
+            .put("type", "string").put("maxLength", 34));
+
+        final ObjectNode dependencies = FACTORY.objectNode();
+
+        dependencies.put("reference", FACTORY.objectNode()
+            .put("$ref", "#/reference"));
+        dependencies.put("iban", "currency");
+
+        final ObjectNode transfer = FACTORY.objectNode();
+
+        transfer.put("extends", FACTORY.objectNode().put("$ref", "#/base"));
+        transfer.put("properties", transferProperties);
+        transfer.put("dependencies", dependencies);
+
+        final ObjectNode referenceProperties = FACTORY.objectNode();
+
+        referenceProperties.put("reference", FACTORY.objectNode()
+            .put("type", "string").put("maxLength", 20 + i));
+
+        final ObjectNode reference = FACTORY.objectNode();
+
+        reference.put("properties", referenceProperties);
+
+        final ArrayNode types = FACTORY.arrayNode();
+
+        types.add(FACTORY.objectNode().put("$ref", "#/card"));
+        types.add(FACTORY.objectNode().put("$ref", "#/transfer"));
+
+        final ObjectNode ret = FACTORY.objectNode();
+
+        ret.put("id", "http://example.com/tenant/" + i + "/payment#");
+        ret.put("description", "Payment schema for tenant " + i);
+        ret.put("type", types);
+        ret.put("base", base);
+        ret.put("card", card);
+        ret.put("transfer", transfer);
+        ret.put("reference", reference);
+        return ret;
+    }
+
+    private static JsonNode kind(final String value)
+    {
+        final ArrayNode values = FACTORY.arrayNode();
+        final ObjectNode ret = FACTORY.objectNode();
+
+        values.add(value);
+        ret.put("required", true);
+        ret.put("enum", values);
+        return ret;
+    }
+
+    private static JsonNode unionInstance()
+    {
+        final ObjectNode ret = FACTORY.objectNode();
+
+        ret.put("kind", "transfer");
+        ret.put("amount", 10);
+        ret.put("currency", "EUR");
+        ret.put("iban", "FR7630006000011234567890189");
+        ret.put("reference", "x");
+        return ret;
+    }
+
+    private static JsonNode instance()
+    {
+        final ObjectNode address = FACTORY.objectNode().put("street", "x")
+            .put("city", "y").put("zip", "12345");
+        final ObjectNode ret = FACTORY.objectNode();
+
+        ret.put("name", "z");
+        ret.put("billing", address);
+        ret.put("shipping", address);
+        ret.put("amount", 10);
+        return ret;
+    }
+
+    private static long usedHeap()
+    {
+        final Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 5; i++)
+            System.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
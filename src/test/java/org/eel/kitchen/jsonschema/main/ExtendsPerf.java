@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Validation against a deep inheritance hierarchy
+ *
+ * <p>Each level of the hierarchy extends the next one through a JSON
+ * Reference, and defines one property and one numeric constraint; instances
+ * are either numbers or objects with a single property.</p>
+ */
+public final class ExtendsPerf
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private static final int DEPTH = 16;
+    private static final int ROUNDS = 20000;
+
+    private ExtendsPerf()
+    {
+    }
+
+    public static void main(final String... args)
+    {
+        final ObjectNode schema = FACTORY.objectNode();
+        ObjectNode level, properties;
+
+        for (int i = 0; i < DEPTH; i++) {
+            level = FACTORY.objectNode();
+            properties = FACTORY.objectNode();
+            properties.put("p" + i, FACTORY.objectNode().put("minimum", i));
+            level.put("properties", properties);
+            level.put("maximum", DEPTH);
+            if (i < DEPTH - 1)
+                level.put("extends", FACTORY.objectNode().put("$ref",
+                    "#/level" + (i + 1)));
+            schema.put("level" + i, level);
+        }
+        schema.put("$ref", "#/level0");
+
+        final ArrayNode instances = FACTORY.arrayNode();
+        ObjectNode instance;
+
+        for (int i = 0; i < 10; i++) {
+            instance = FACTORY.objectNode();
+            instance.put("p" + i, i);
+            instances.add(instance);
+            instances.add(FACTORY.numberNode(i));
+        }
+
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        final JsonSchema jsonSchema = factory.createSchema(
+            factory.registerSchema(schema));
+
+        long begin, elapsed = 0L;
+
+        for (int round = 0; round < 2 * ROUNDS; round++) {
+            begin = System.nanoTime();
+            for (final JsonNode node: instances)
+                jsonSchema.validate(node);
+            if (round >= ROUNDS)
+                elapsed += System.nanoTime() - begin;
+        }
+
+        System.out.println(String.format("depth %d: %d ns/round", DEPTH,
+            elapsed / ROUNDS));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.eel.kitchen.jsonschema.metrics.AggregatingListener;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+import static org.testng.Assert.*;
+
+public final class FactoryManagementTest
+{
+    private static final String NAME = "test";
+
+    private final MBeanServer server
+        = ManagementFactory.getPlatformMBeanServer();
+    private final ObjectName objectName = FactoryManagement.objectName(NAME);
+
+    private AggregatingListener listener;
+    private JsonSchemaFactory factory;
+    private JsonSchemaFactoryMXBean bean;
+
+    @BeforeMethod
+    public void initFactory()
+    {
+        listener = new AggregatingListener();
+        factory = new JsonSchemaFactory.Builder().enableManagement(NAME)
+            .withValidationListener(listener)
+            .addRedirection("http://example.com/a#", "resource:/a#").build();
+        bean = JMX.newMXBeanProxy(server, objectName,
+            JsonSchemaFactoryMXBean.class);
+    }
+
+    @AfterMethod
+    public void unregister()
+    {
+        factory.unregisterMBean();
+    }
+
+    @Test
+    public void factoryIsRegisteredUntilUnregistered()
+    {
+        assertTrue(server.isRegistered(objectName));
+        factory.unregisterMBean();
+        assertFalse(server.isRegistered(objectName));
+        factory.unregisterMBean();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void namesMustBeUnique()
+    {
+        new JsonSchemaFactory.Builder().enableManagement(NAME).build();
+    }
+
+    @Test
+    public void validationsAreCountedAlongWithTheFactoryListener()
+        throws IOException
+    {
+        final JsonSchema schema = factory.createSchema(factory.registerSchema(
+            parse("{\"minimum\":0}")));
+
+        schema.validate(parse("1"));
+        schema.validate(parse("-1"));
+
+        assertEquals(bean.getValidationCount(), 2L);
+        assertEquals(bean.getValidationFailureCount(), 1L);
+        assertTrue(bean.getMeanValidationMicros() >= 0.0);
+        assertEquals(listener.getSchemaStats().get("#").getCount(), 2L);
+
+        bean.resetValidationStats();
+        assertEquals(bean.getValidationCount(), 0L);
+    }
+
+    @Test
+    public void cacheStatisticsAreExposedAndCachesCanBeCleared()
+        throws IOException
+    {
+        final JsonSchema schema = factory.createSchema(factory.registerSchema(
+            parse("{\"properties\":{\"p\":{\"minimum\":0}}}")));
+
+        schema.validate(parse("{\"p\":1}"));
+
+        assertEquals(bean.getValidatorCacheSize(), 2L);
+        assertEquals(bean.getValidatorCacheLoadCount(), 2L);
+
+        bean.clearValidatorCache();
+        assertEquals(bean.getValidatorCacheSize(), 0L);
+        bean.clearResultMemo();
+        assertEquals(bean.getResultMemoSize(), 0L);
+    }
+
+    @Test
+    public void cacheHitsAreCountedWhileManagementIsEnabled()
+        throws IOException
+    {
+        factory.registerSchema(parse("{\"id\":\"http://foo.bar/baz#\","
+            + "\"minimum\":0}"));
+
+        final JsonSchema schema = factory.createSchema(factory.registerSchema(
+            parse("{\"properties\":{\"p\":{\"$ref\":"
+                + "\"http://foo.bar/baz#\"}}}")));
+        final JsonNode instance = parse("{\"p\":1}");
+
+        for (int i = 0; i < 100; i++)
+            schema.validate(instance);
+
+        assertTrue(bean.getValidatorCacheHitCount() > 0L);
+        assertEquals(bean.getValidatorCacheHitCount(),
+            listener.getValidatorCacheHits());
+        assertEquals(bean.getRegistryHitCount(), 1L);
+        assertEquals(listener.getRegistryHits(), 1L);
+    }
+
+    @Test
+    public void uriManagerStateIsExposed()
+    {
+        assertTrue(bean.getURISchemes().contains("resource"));
+        assertEquals(bean.getURIRedirections().get("http://example.com/a#"),
+            "resource:/a#");
+    }
+
+    @Test
+    public void schemasCanBeWarmedUpByURI()
+    {
+        final String summary = bean.warmUp("resource:/schema-lookup.json#");
+
+        assertNotNull(summary);
+        assertTrue(bean.getRegistryURIs().contains(
+            "resource:/schema-lookup.json#"));
+        assertEquals(bean.getRegistrySize(), 1L);
+        assertEquals(bean.getRegistryLoadCount(), 1L);
+        assertTrue(bean.getValidatorCacheSize() > 0L);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void warmingUpAnUnreachableURIFails()
+    {
+        bean.warmUp("resource:/no/such/schema.json#");
+    }
+
+    private static JsonNode parse(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.testng.Assert.*;
+
+public final class JsonSchemaFactoryTest
+{
+    private static final String[] RESOURCES = {
+        "additionalItems", "additionalProperties", "dependenciesSchema",
+        "dependenciesSimple", "disallow", "divisibleBy", "enum", "extends",
+        "maxItems", "maxLength", "maximum", "minItems", "minLength", "minimum",
+        "pattern", "properties", "type", "typeSimple", "uniqueItems"
+    };
+
+    @Test
+    public void firstValidationAfterWarmUpDoesNoCompileWork()
+        throws IOException
+    {
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .setValidatorCacheSize(10000L).build();
+        final List<SchemaContainer> containers = Lists.newArrayList();
+        final List<JsonNode> instances = Lists.newArrayList();
+
+        JsonNode testData;
+
+        for (final String resource: RESOURCES) {
+            testData = JsonLoader.fromResource("/keyword/" + resource
+                + ".json");
+            for (final JsonNode element: testData) {
+                containers.add(factory.registerSchema(element.get("schema")));
+                instances.add(element.get("data"));
+            }
+        }
+
+        containers.add(factory.registerSchema(recursiveSchema()));
+        instances.add(parse("{\"a\":{\"b\":[{\"a\":{}},1]}}"));
+
+        final WarmUpSummary summary = factory.warmUp(containers);
+
+        assertTrue(summary.isSuccess());
+        assertEquals(summary.getContainers(), containers.size());
+        assertTrue(summary.getSchemas() > 0);
+        assertTrue(summary.getValidators() > 0L);
+
+        final long misses = factory.getValidatorCacheStats().missCount();
+
+        for (int i = 0; i < containers.size(); i++)
+            factory.createSchema(containers.get(i)).validate(instances.get(i));
+
+        assertEquals(factory.getValidatorCacheStats().missCount(), misses);
+    }
+
+    @Test
+    public void warmingUpTwiceBuildsNothing()
+        throws IOException
+    {
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .build();
+        final List<SchemaContainer> containers
+            = ImmutableList.of(factory.registerSchema(recursiveSchema()));
+
+        assertTrue(factory.warmUp(containers).getValidators() > 0L);
+        assertEquals(factory.warmUp(containers).getValidators(), 0L);
+    }
+
+    @Test
+    public void warmUpReportsFailures()
+        throws IOException
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .withWarmUpExecutor(executor).build();
+
+        try {
+            final SchemaContainer invalid = factory.registerSchema(
+                parse("{\"properties\":{\"p\":{\"minimum\":\"x\"}}}"));
+            final SchemaContainer unresolvable = factory.registerSchema(
+                parse("{\"items\":{\"$ref\":\"#/nope\"}}"));
+            final SchemaContainer valid
+                = factory.registerSchema(recursiveSchema());
+
+            final WarmUpSummary summary
+                = factory.warmUp(Arrays.asList(invalid, unresolvable, valid));
+
+            assertFalse(summary.isSuccess());
+            assertEquals(summary.getContainers(), 3);
+            assertEquals(summary.getFailures().size(), 2);
+            assertTrue(summary.getErrors().isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void cannotWarmUpNullContainers()
+    {
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .build();
+
+        factory.warmUp(Collections.<SchemaContainer>singletonList(null));
+    }
+
+    private static JsonNode recursiveSchema()
+        throws IOException
+    {
+        return parse("{\"properties\":{\"a\":"
+            + "{\"$ref\":\"#/definitions/node\"}},\"definitions\":{\"node\":"
+            + "{\"extends\":{\"type\":\"object\"},\"properties\":{\"b\":"
+            + "{\"type\":\"array\",\"items\":[{\"$ref\":\"#\"},"
+            + "{\"minimum\":0}]}}}}}");
+    }
+
+    private static JsonNode parse(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+}
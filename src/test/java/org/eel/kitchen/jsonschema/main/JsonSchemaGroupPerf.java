@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Single traversal validation against several versions of a schema
+ *
+ * <p>Eight "versions" of the draft v3 core schema (which only differ by their
+ * id) validate all schemas of the Google API discovery document. This compares
+ * {@link JsonSchemaGroup#validate(JsonNode)} to validating against each
+ * version independently.</p>
+ */
+public final class JsonSchemaGroupPerf
+{
+    private static final int VERSIONS = 8;
+    private static final int ROUNDS = 200;
+
+    private JsonSchemaGroupPerf()
+    {
+    }
+
+    public static void main(final String... args)
+        throws IOException
+    {
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        final List<SchemaContainer> containers = Lists.newArrayList();
+        final List<JsonSchema> schemas = Lists.newArrayList();
+
+        ObjectNode version;
+        SchemaContainer container;
+
+        for (int i = 0; i < VERSIONS; i++) {
+            version = draftv3.deepCopy();
+            version.put("id", "http://example.com/v" + i + "/schema#");
+            container = factory.registerSchema(version);
+            containers.add(container);
+            schemas.add(factory.createSchema(container));
+        }
+
+        final JsonSchemaGroup group = factory.createSchemaGroup(containers);
+        final List<JsonNode> instances
+            = Lists.newArrayList(googleAPI.get("schemas"));
+
+        long begin, grouped = 0L, independent = 0L;
+
+        for (int round = 0; round < 2 * ROUNDS; round++) {
+            begin = System.nanoTime();
+            for (final JsonNode instance: instances)
+                group.validate(instance);
+            if (round >= ROUNDS)
+                grouped += System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (final JsonNode instance: instances)
+                for (final JsonSchema schema: schemas)
+                    schema.validate(instance);
+            if (round >= ROUNDS)
+                independent += System.nanoTime() - begin;
+        }
+
+        System.out.println(String.format("%d instances x %d versions: "
+            + "%d us/round (independent: %d us/round)", instances.size(),
+            VERSIONS, grouped / ROUNDS / 1000L, independent / ROUNDS / 1000L));
+        System.exit(0);
+    }
+}
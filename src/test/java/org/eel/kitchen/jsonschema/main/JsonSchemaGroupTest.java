@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.eel.kitchen.jsonschema.metrics.AggregatingListener;
+import org.eel.kitchen.jsonschema.metrics.ValidationListener;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public final class JsonSchemaGroupTest
+{
+    private static final String[] RESOURCES = {
+        "additionalItems", "additionalProperties", "dependenciesSchema",
+        "dependenciesSimple", "disallow", "divisibleBy", "enum", "extends",
+        "maxItems", "maxLength", "maximum", "minItems", "minLength", "minimum",
+        "pattern", "properties", "type", "typeSimple", "uniqueItems"
+    };
+
+    private final JsonSchemaFactory factory
+        = new JsonSchemaFactory.Builder().build();
+
+    @DataProvider
+    public Iterator<Object[]> getResources()
+    {
+        final List<Object[]> list = Lists.newArrayList();
+
+        for (final String resource: RESOURCES)
+            list.add(new Object[] { resource });
+
+        return list.iterator();
+    }
+
+    /*
+     * All schemas of a keyword test file form a group; each data of the file
+     * is validated against the group, and the reports compared to those of
+     * individual validations.
+     */
+    @Test(dataProvider = "getResources")
+    public void groupReportsAreTheSameAsIndividualReports(
+        final String resource)
+        throws IOException
+    {
+        final JsonNode testData
+            = JsonLoader.fromResource("/keyword/" + resource + ".json");
+
+        final List<SchemaContainer> containers = Lists.newArrayList();
+        final List<JsonSchema> schemas = Lists.newArrayList();
+
+        SchemaContainer container;
+
+        for (final JsonNode element: testData) {
+            container = factory.registerSchema(element.get("schema"));
+            containers.add(container);
+            schemas.add(factory.createSchema(container));
+        }
+
+        final JsonSchemaGroup group = factory.createSchemaGroup(containers);
+
+        List<ValidationReport> reports;
+
+        for (final JsonNode element: testData) {
+            reports = group.validate(element.get("data"));
+            assertEquals(reports.size(), schemas.size());
+            for (int i = 0; i < schemas.size(); i++)
+                assertEquals(reports.get(i).asJsonNode(), schemas.get(i)
+                    .validate(element.get("data")).asJsonNode());
+        }
+    }
+
+    @Test
+    public void nestedInstancesAreValidatedTheSameWay()
+        throws IOException
+    {
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        final List<SchemaContainer> containers = Lists.newArrayList();
+        containers.add(factory.registerSchema(draftv3));
+
+        for (final JsonNode schema: googleAPI.get("schemas"))
+            containers.add(factory.registerSchema(schema));
+
+        // Stricter schemas, failing at various depths
+        containers.add(factory.registerSchema(JsonLoader.fromReader(
+            new StringReader("{\"additionalProperties\":false,"
+                + "\"properties\":{\"id\":{\"type\":\"string\"}}}"))));
+        containers.add(factory.registerSchema(JsonLoader.fromReader(
+            new StringReader("{\"properties\":{\"properties\":"
+                + "{\"additionalProperties\":{\"properties\":{\"type\":"
+                + "{\"enum\":[\"string\"]},\"items\":{\"$ref\":\"#\"}}"
+                + "}}}}"))));
+
+        final JsonSchemaGroup group = factory.createSchemaGroup(containers);
+
+        List<ValidationReport> reports;
+        int failures = 0;
+
+        for (final JsonNode instance: googleAPI.get("schemas")) {
+            reports = group.validate(instance);
+            for (int i = 0; i < containers.size(); i++) {
+                assertEquals(reports.get(i).asJsonNode(), factory
+                    .createSchema(containers.get(i)).validate(instance)
+                    .asJsonNode());
+                if (!reports.get(i).isSuccess())
+                    failures++;
+            }
+            assertTrue(reports.get(0).isSuccess());
+        }
+
+        // Make sure that failures were actually compared
+        assertTrue(failures > 0);
+    }
+
+    @Test
+    public void triviallyTrueSubschemasAreNotLoaded()
+        throws IOException
+    {
+        final JsonSchemaFactory fresh = new JsonSchemaFactory.Builder().build();
+        final List<SchemaContainer> containers = Lists.newArrayList();
+
+        containers.add(fresh.registerSchema(JsonLoader.fromReader(
+            new StringReader("{\"properties\":{\"a\":{}},\"items\":{}}"))));
+        containers.add(fresh.registerSchema(JsonLoader.fromReader(
+            new StringReader("{\"additionalProperties\":{\"minimum\":0}}"))));
+
+        final List<ValidationReport> reports = fresh.createSchemaGroup(
+            containers).validate(JsonLoader.fromReader(
+            new StringReader("{\"a\":{\"b\":[1]}}")));
+
+        assertTrue(reports.get(0).isSuccess());
+        assertTrue(reports.get(1).isSuccess());
+        // The two roots and the additionalProperties schema only
+        assertEquals(fresh.getValidatorCacheStats().loadCount(), 3L);
+    }
+
+    @Test
+    public void listenersSeeTheSameSchemaAndKeywordEvents()
+        throws IOException
+    {
+        final AggregatingListener single = new AggregatingListener();
+        final AggregatingListener grouped = new AggregatingListener();
+        final JsonSchemaFactory singleFactory = new JsonSchemaFactory.Builder()
+            .withValidationListener(single).build();
+        final JsonSchemaFactory groupFactory = new JsonSchemaFactory.Builder()
+            .withValidationListener(grouped).build();
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode stricter = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"properties\":{\"additionalProperties\":"
+            + "{\"properties\":{\"type\":{\"enum\":[\"string\"]}}}}}}"));
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        final JsonSchemaGroup group = groupFactory.createSchemaGroup(
+            Lists.newArrayList(groupFactory.registerSchema(draftv3),
+                groupFactory.registerSchema(stricter)));
+        final JsonSchema first
+            = singleFactory.createSchema(singleFactory.registerSchema(draftv3));
+        final JsonSchema second = singleFactory.createSchema(
+            singleFactory.registerSchema(stricter));
+
+        for (final JsonNode instance: googleAPI.get("schemas")) {
+            group.validate(instance);
+            first.validate(instance);
+            second.validate(instance);
+        }
+
+        assertFalse(grouped.getKeywordStats().isEmpty());
+        assertEquals(counts(grouped.getSchemaStats()),
+            counts(single.getSchemaStats()));
+        assertEquals(grouped.getKeywordStats().keySet(),
+            single.getKeywordStats().keySet());
+        for (final String location: single.getKeywordStats().keySet())
+            assertEquals(counts(grouped.getKeywordStats().get(location)),
+                counts(single.getKeywordStats().get(location)));
+    }
+
+    @Test
+    public void eachSchemaOfAGroupIsOneValidation()
+        throws IOException
+    {
+        final List<String> events = Lists.newArrayList();
+        final ValidationListener listener = new ValidationListener()
+        {
+            @Override
+            public Granularity getGranularity()
+            {
+                return Granularity.VALIDATIONS;
+            }
+
+            @Override
+            public void enterValidation(final JsonRef locator,
+                final JsonNode instance)
+            {
+                events.add("enter " + locator);
+            }
+
+            @Override
+            public void exitValidation(final JsonRef locator,
+                final JsonNode instance, final long nanos,
+                final boolean success)
+            {
+                events.add("exit " + locator + ' ' + success);
+            }
+        };
+        final JsonSchemaFactory listened = new JsonSchemaFactory.Builder()
+            .withValidationListener(listener).build();
+        final List<SchemaContainer> containers = Lists.newArrayList(
+            listened.registerSchema(JsonLoader.fromReader(new StringReader(
+                "{\"id\":\"http://foo.bar/a#\",\"minimum\":0}"))),
+            listened.registerSchema(JsonLoader.fromReader(new StringReader(
+                "{\"id\":\"http://foo.bar/b#\",\"minimum\":2}"))));
+
+        listened.createSchemaGroup(containers).validate(
+            JsonLoader.fromReader(new StringReader("1")));
+
+        assertEquals(events, Lists.newArrayList("enter http://foo.bar/a#",
+            "enter http://foo.bar/b#", "exit http://foo.bar/b# false",
+            "exit http://foo.bar/a# true"));
+    }
+
+    @Test
+    public void emptyGroupYieldsNoReports()
+        throws IOException
+    {
+        final JsonSchemaGroup group = factory
+            .createSchemaGroup(Lists.<SchemaContainer>newArrayList());
+        final JsonNode instance
+            = JsonLoader.fromResource("/schema-draftv3.json");
+
+        assertTrue(group.validate(instance).isEmpty());
+    }
+
+    private static Map<String, String> counts(
+        final Map<String, AggregatingListener.Stats> stats)
+    {
+        final Map<String, String> ret = Maps.newHashMap();
+
+        for (final Map.Entry<String, AggregatingListener.Stats> entry:
+            stats.entrySet())
+            ret.put(entry.getKey(), entry.getValue().getCount() + "/"
+                + entry.getValue().getFailures());
+
+        return ret;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.testng.Assert.*;
+
+public final class JsonSchemaTest
+{
+    private static final String[] RESOURCES = {
+        "additionalItems", "additionalProperties", "dependenciesSchema",
+        "dependenciesSimple", "disallow", "divisibleBy", "enum", "extends",
+        "maxItems", "maxLength", "maximum", "minItems", "minLength", "minimum",
+        "pattern", "properties", "type", "typeSimple", "uniqueItems"
+    };
+
+    private final JsonSchemaFactory factory
+        = new JsonSchemaFactory.Builder().build();
+
+    private final JsonSchemaFactory promoting = new JsonSchemaFactory.Builder()
+        .enablePromotion(1L, MoreExecutors.sameThreadExecutor()).build();
+
+    @DataProvider
+    public Iterator<Object[]> getResources()
+    {
+        final List<Object[]> list = Lists.newArrayList();
+
+        for (final String resource: RESOURCES)
+            list.add(new Object[] { resource });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "getResources")
+    public void promotedReportsAreTheSameAsInterpretedReports(
+        final String resource)
+        throws IOException
+    {
+        final JsonNode testData
+            = JsonLoader.fromResource("/keyword/" + resource + ".json");
+
+        JsonNode schemaNode, data;
+        JsonSchema schema, promoted;
+
+        for (final JsonNode element: testData) {
+            schemaNode = element.get("schema");
+            data = element.get("data");
+            schema = factory.createSchema(factory.registerSchema(schemaNode));
+            promoted = promoting.createSchema(promoting
+                .registerSchema(schemaNode));
+            assertFalse(promoted.isPromoted());
+            // First validation triggers the promotion
+            promoted.validate(data);
+            assertTrue(promoted.isPromoted());
+            assertEquals(promoted.validate(data).asJsonNode(),
+                schema.validate(data).asJsonNode());
+        }
+    }
+
+    @Test
+    public void promotedRecursiveSchemasValidateNestedInstances()
+        throws IOException
+    {
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        final JsonSchema schema
+            = factory.createSchema(factory.registerSchema(draftv3));
+        final JsonSchema promoted
+            = promoting.createSchema(promoting.registerSchema(draftv3));
+
+        final List<JsonNode> instances = Lists.newArrayList(googleAPI
+            .get("schemas"));
+        instances.add(googleAPI);
+
+        promoted.validate(draftv3);
+        assertTrue(promoted.isPromoted());
+
+        for (final JsonNode instance: instances)
+            assertEquals(promoted.validate(instance).asJsonNode(),
+                schema.validate(instance).asJsonNode());
+    }
+
+    @Test
+    public void compiledSchemasAreUsedFromFirstValidation()
+        throws IOException
+    {
+        final JsonSchemaFactory compiling = new JsonSchemaFactory.Builder()
+            .enableFeature(ValidationFeature.COMPILED_PROGRAMS).build();
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        final JsonSchema schema
+            = factory.createSchema(factory.registerSchema(draftv3));
+        final JsonSchema compiled
+            = compiling.createSchema(compiling.registerSchema(draftv3));
+
+        assertFalse(compiled.isPromoted());
+
+        for (final JsonNode instance: googleAPI.get("schemas"))
+            assertEquals(compiled.validate(instance).asJsonNode(),
+                schema.validate(instance).asJsonNode());
+
+        assertTrue(compiled.isPromoted());
+    }
+
+    @Test
+    public void compactSchemasGiveTheSameReports()
+        throws IOException
+    {
+        final JsonSchemaFactory compacting = new JsonSchemaFactory.Builder()
+            .enableFeature(ValidationFeature.COMPACT_PROGRAMS).build();
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        final JsonSchema schema
+            = factory.createSchema(factory.registerSchema(draftv3));
+        final JsonSchema compact
+            = compacting.createSchema(compacting.registerSchema(draftv3));
+
+        for (final JsonNode instance: googleAPI.get("schemas"))
+            assertEquals(compact.validate(instance).asJsonNode(),
+                schema.validate(instance).asJsonNode());
+
+        assertTrue(compact.isPromoted());
+    }
+
+    @Test
+    public void generatedSchemasGiveTheSameReports()
+        throws IOException
+    {
+        final JsonSchemaFactory generating = new JsonSchemaFactory.Builder()
+            .enableFeature(ValidationFeature.GENERATED_CLASSES).build();
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        final JsonSchema schema
+            = factory.createSchema(factory.registerSchema(draftv3));
+        final JsonSchema generated
+            = generating.createSchema(generating.registerSchema(draftv3));
+
+        assertFalse(generated.isPromoted());
+
+        for (final JsonNode instance: googleAPI.get("schemas"))
+            assertEquals(generated.validate(instance).asJsonNode(),
+                schema.validate(instance).asJsonNode());
+
+        assertTrue(generated.isPromoted());
+    }
+
+    @Test
+    public void schemasAreNotPromotedBeforeThreshold()
+        throws IOException
+    {
+        final List<Runnable> tasks = Lists.newArrayList();
+        final Executor executor = new Executor()
+        {
+            @Override
+            public void execute(final Runnable command)
+            {
+                tasks.add(command);
+            }
+        };
+
+        final JsonSchemaFactory lazy = new JsonSchemaFactory.Builder()
+            .enablePromotion(3L, executor).build();
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final SchemaContainer container = lazy.registerSchema(draftv3);
+        final JsonSchema schema = lazy.createSchema(container);
+
+        schema.validate(draftv3);
+        schema.validate(draftv3);
+        assertTrue(tasks.isEmpty());
+
+        schema.validate(draftv3);
+        schema.validate(draftv3);
+        assertEquals(tasks.size(), 1);
+        assertFalse(schema.isPromoted());
+
+        tasks.get(0).run();
+        assertTrue(schema.isPromoted());
+        assertTrue(schema.validate(draftv3).isSuccess());
+    }
+
+    @Test
+    public void promotedSchemasSkipTriviallyTrueSubschemas()
+        throws IOException
+    {
+        final JsonSchemaFactory fresh = new JsonSchemaFactory.Builder()
+            .enablePromotion(1L, MoreExecutors.sameThreadExecutor()).build();
+        final JsonSchema schema = fresh.createSchema(fresh.registerSchema(
+            JsonLoader.fromReader(new StringReader(
+                "{\"properties\":{\"a\":{}},\"items\":{}}"))));
+        final JsonNode instance = JsonLoader.fromReader(
+            new StringReader("{\"a\":{\"b\":[1]}}"));
+
+        assertTrue(schema.validate(instance).isSuccess());
+        assertTrue(schema.isPromoted());
+        assertTrue(schema.validate(instance).isSuccess());
+        assertEquals(fresh.getValidatorCacheStats().loadCount(), 1L);
+    }
+
+    @Test
+    public void rejectedPromotionsKeepSchemasInterpreted()
+        throws IOException
+    {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        final JsonSchemaFactory rejecting = new JsonSchemaFactory.Builder()
+            .enablePromotion(1L, executor).build();
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonSchema schema
+            = rejecting.createSchema(rejecting.registerSchema(draftv3));
+
+        assertTrue(schema.validate(draftv3).isSuccess());
+        assertTrue(schema.validate(draftv3).isSuccess());
+        assertFalse(schema.isPromoted());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void promotionThresholdMustBePositive()
+    {
+        new JsonSchemaFactory.Builder()
+            .enablePromotion(0L, MoreExecutors.sameThreadExecutor());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Validation with and without promotion
+ *
+ * <p>The draft v3 core schema validates all schemas of the Google API
+ * discovery document, first with a plain schema, then with a promoted one.</p>
+ */
+public final class PromotionPerf
+{
+    private static final int ROUNDS = 500;
+
+    private PromotionPerf()
+    {
+    }
+
+    public static void main(final String... args)
+        throws IOException
+    {
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        final JsonSchemaFactory promoting = new JsonSchemaFactory.Builder()
+            .enablePromotion(1L, MoreExecutors.sameThreadExecutor()).build();
+
+        final JsonSchema plain
+            = factory.createSchema(factory.registerSchema(draftv3));
+        final JsonSchema promoted
+            = promoting.createSchema(promoting.registerSchema(draftv3));
+        final List<JsonNode> instances
+            = Lists.newArrayList(googleAPI.get("schemas"));
+
+        long begin, interpreted = 0L, linked = 0L;
+
+        for (int round = 0; round < 2 * ROUNDS; round++) {
+            begin = System.nanoTime();
+            for (final JsonNode instance: instances)
+                plain.validate(instance);
+            if (round >= ROUNDS)
+                interpreted += System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (final JsonNode instance: instances)
+                promoted.validate(instance);
+            if (round >= ROUNDS)
+                linked += System.nanoTime() - begin;
+        }
+
+        System.out.println(String.format("%d instances: %d us/round "
+            + "(promoted: %d us/round)", instances.size(),
+            interpreted / ROUNDS / 1000L, linked / ROUNDS / 1000L));
+        System.exit(0);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Routing of a mixed event stream against many schemas
+ *
+ * <p>Each schema describes one kind of event, discriminated by a {@code kind}
+ * property. This compares {@link SchemaRouter#match(JsonNode)} against
+ * validating each event against every schema in turn.</p>
+ */
+public final class SchemaRouterPerf
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+    private static final int SCHEMAS = 300;
+    private static final int EVENTS = 2000;
+    private static final int ROUNDS = 5;
+
+    private SchemaRouterPerf()
+    {
+    }
+
+    public static void main(final String... args)
+    {
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+        final List<SchemaContainer> containers = Lists.newArrayList();
+        final List<JsonSchema> schemas = Lists.newArrayList();
+
+        SchemaContainer container;
+
+        for (int i = 0; i < SCHEMAS; i++) {
+            container = factory.registerSchema(eventSchema(i));
+            containers.add(container);
+            schemas.add(factory.createSchema(container));
+        }
+
+        final SchemaRouter router = factory.createRouter(containers);
+
+        final Random random = new Random(0L);
+        final List<JsonNode> events = Lists.newArrayList();
+
+        for (int i = 0; i < EVENTS; i++)
+            events.add(event(random.nextInt(SCHEMAS), random));
+
+        long begin, routed = 0L, sequential = 0L;
+        int matches = 0, expected = 0;
+
+        for (int round = 0; round <= ROUNDS; round++) {
+            begin = System.nanoTime();
+            matches = 0;
+            for (final JsonNode event: events)
+                matches += router.match(event).size();
+            if (round > 0)
+                routed += System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            expected = 0;
+            for (final JsonNode event: events)
+                for (final JsonSchema schema: schemas)
+                    if (schema.validate(event).isSuccess())
+                        expected++;
+            if (round > 0)
+                sequential += System.nanoTime() - begin;
+        }
+
+        if (matches != expected)
+            throw new IllegalStateException("results differ");
+
+        System.out.println(String.format("%d events, %d schemas, %d matches: "
+            + "%d ms (sequential: %d ms)", EVENTS, SCHEMAS, matches,
+            routed / ROUNDS / 1000000L, sequential / ROUNDS / 1000000L));
+        System.exit(0);
+    }
+
+    private static JsonNode eventSchema(final int i)
+    {
+        final ObjectNode schema = FACTORY.objectNode();
+        schema.put("type", "object");
+
+        final ObjectNode properties = schema.putObject("properties");
+        properties.putObject("kind").put("required", true).putArray("enum")
+            .add("event" + i);
+        properties.putObject("timestamp").put("required", true)
+            .put("type", "integer").put("minimum", 0);
+        properties.putObject("source").put("type", "string")
+            .put("maxLength", 64);
+
+        final ObjectNode payload = properties.putObject("payload");
+        payload.put("required", true).put("type", "object");
+        payload.putObject("properties").putObject("field" + i)
+            .put("required", true).put("type", "number");
+
+        return schema;
+    }
+
+    private static JsonNode event(final int i, final Random random)
+    {
+        final ObjectNode event = FACTORY.objectNode();
+
+        event.put("kind", "event" + i);
+        event.put("timestamp", random.nextInt(Integer.MAX_VALUE));
+        event.put("source", "host" + random.nextInt(100));
+        event.putObject("payload").put("field" + i, random.nextDouble());
+
+        return event;
+    }
+}
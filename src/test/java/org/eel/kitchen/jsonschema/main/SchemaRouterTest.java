@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public final class SchemaRouterTest
+{
+    private static final String[] SCHEMAS = {
+        "{'type':'object','properties':{'kind':{'required':true,'enum':['a']},"
+            + "'x':{'required':true,'type':'integer'}}}",
+        "{'type':'object','properties':{'kind':{'required':true,'enum':['b']},"
+            + "'y':{'required':true}}}",
+        "{'type':'object','properties':{'kind':{'required':true,'enum':['b']},"
+            + "'z':{'enum':[1]}}}",
+        "{'properties':{'other':{'required':true}}}",
+        "{'type':['string','integer'],'minLength':2}",
+        "{'type':['null',{}]}",
+        "{'$ref':'#/definitions/s','definitions':{'s':{'type':'boolean'}}}"
+    };
+
+    private static final String[] INSTANCES = {
+        "{'kind':'a','x':1}", "{'kind':'a','x':'1'}", "{'kind':'b','y':1}",
+        "{'kind':'b','y':1,'z':2}", "{'kind':'b','z':1}", "{'kind':'c'}",
+        "{'kind':'a','x':1,'other':null}", "{}", "'ab'", "'a'", "1", "1.0",
+        "true", "null", "[]"
+    };
+
+    private JsonSchemaFactory factory;
+    private List<SchemaContainer> containers;
+    private SchemaRouter router;
+
+    private static JsonNode parse(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input.replace('\'',
+            '"')));
+    }
+
+    @BeforeClass
+    public void initRouter()
+        throws IOException
+    {
+        factory = new JsonSchemaFactory.Builder().build();
+        containers = Lists.newArrayList();
+
+        for (final String schema: SCHEMAS)
+            containers.add(factory.registerSchema(parse(schema)));
+
+        router = factory.createRouter(containers);
+    }
+
+    @DataProvider
+    public Iterator<Object[]> getInstances()
+        throws IOException
+    {
+        final List<Object[]> list = Lists.newArrayList();
+
+        for (final String instance: INSTANCES)
+            list.add(new Object[] { parse(instance) });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "getInstances")
+    public void routingGivesTheSameMatchesAsSequentialValidation(
+        final JsonNode instance)
+    {
+        final List<JsonNode> expected = Lists.newArrayList();
+        final List<JsonNode> actual = Lists.newArrayList();
+
+        for (final SchemaContainer container: containers)
+            if (factory.createSchema(container).validate(instance).isSuccess())
+                expected.add(container.getSchema());
+
+        for (final SchemaContainer container: router.match(instance))
+            actual.add(container.getSchema());
+
+        assertEquals(actual, expected);
+    }
+
+    @Test
+    public void onlyCandidateSchemasAreValidated()
+        throws IOException
+    {
+        final JsonNode instance = parse("{'kind':'b','y':1}");
+        final List<Map.Entry<SchemaContainer, ValidationReport>> reports
+            = router.route(instance);
+
+        final List<JsonNode> schemas = Lists.newArrayList();
+        final List<Boolean> results = Lists.newArrayList();
+
+        for (final Map.Entry<SchemaContainer, ValidationReport> entry:
+            reports) {
+            schemas.add(entry.getKey().getSchema());
+            results.add(entry.getValue().isSuccess());
+        }
+
+        assertEquals(schemas, ImmutableList.of(parse(SCHEMAS[1]),
+            parse(SCHEMAS[2]), parse(SCHEMAS[5]), parse(SCHEMAS[6])));
+        assertEquals(results, ImmutableList.of(true, true, true, false));
+    }
+
+    @Test
+    public void schemasAreFilteredByType()
+        throws IOException
+    {
+        final List<SchemaContainer> candidates
+            = router.getCandidates(parse("'ab'"));
+
+        assertEquals(candidates.size(), 4);
+        assertSame(candidates.get(0), containers.get(3));
+        assertSame(candidates.get(1), containers.get(4));
+        assertSame(candidates.get(2), containers.get(5));
+        assertSame(candidates.get(3), containers.get(6));
+    }
+}
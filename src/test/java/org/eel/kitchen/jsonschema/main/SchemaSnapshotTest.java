@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundle;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.uri.URIDownloader;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public final class SchemaSnapshotTest
+{
+    private static final Map<String, String> CONTENTS = ImmutableMap.of(
+        "foo://host/a#", "{\"properties\":{\"x\":{\"minimum\":1}}}",
+        "foo://host/b#", "{\"properties\":{\"y\":{\"minimum\":\"z\"}}}"
+    );
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final URIDownloader downloader = new URIDownloader()
+    {
+        @Override
+        public InputStream fetch(final URI source)
+            throws IOException
+        {
+            fetches.incrementAndGet();
+            return new ByteArrayInputStream(CONTENTS.get(source.toString())
+                .getBytes(Charsets.UTF_8));
+        }
+    };
+
+    private JsonNode schema;
+    private JsonNode instance;
+    private File file;
+
+    @BeforeMethod
+    public void init()
+        throws IOException
+    {
+        fetches.set(0);
+        schema = fromString("{\"properties\":{"
+            + "\"a\":{\"$ref\":\"foo://host/a#\"},"
+            + "\"b\":{\"$ref\":\"foo://host/b#\"}}}");
+        instance = fromString("{\"a\":{\"x\":0},\"b\":{\"y\":0}}");
+        file = File.createTempFile("snapshot", ".bin");
+    }
+
+    @AfterMethod
+    public void deleteFile()
+    {
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void snapshotsAvoidFetchingSchemasAgain()
+        throws IOException
+    {
+        final JsonSchemaFactory factory = newBuilder().build();
+        final JsonNode expected = validate(factory);
+
+        assertEquals(fetches.get(), 2);
+
+        final SchemaSnapshot snapshot = factory.takeSnapshot();
+
+        assertEquals(snapshot.size(), 2);
+        snapshot.write(file);
+
+        final SchemaSnapshot read = SchemaSnapshot.read(file);
+
+        assertEquals(read.size(), 2);
+        assertEquals(read.getCreationTime(), snapshot.getCreationTime());
+
+        final JsonSchemaFactory restarted
+            = newBuilder().withSnapshot(read).build();
+
+        assertEquals(validate(restarted), expected);
+        assertEquals(fetches.get(), 2);
+    }
+
+    @Test
+    public void corruptedSchemasAreFetchedAgain()
+        throws IOException
+    {
+        final JsonSchemaFactory factory = newBuilder().build();
+        final JsonNode expected = validate(factory);
+
+        factory.takeSnapshot().write(file);
+
+        // The last byte is the end of the content of the last schema
+        final byte[] bytes = Files.toByteArray(file);
+        bytes[bytes.length - 1] = ' ';
+        Files.write(bytes, file);
+
+        final JsonSchemaFactory restarted = newBuilder()
+            .withSnapshot(SchemaSnapshot.read(file)).build();
+
+        assertEquals(validate(restarted), expected);
+        assertEquals(fetches.get(), 3);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void filesWhichAreNotSnapshotsAreRejected()
+        throws IOException
+    {
+        Files.write("{}", file, Charsets.UTF_8);
+        SchemaSnapshot.read(file);
+    }
+
+    @Test
+    public void snapshotsAreOnlyCompatibleWithTheSameBundle()
+    {
+        final SchemaSnapshot snapshot = newBuilder().build().takeSnapshot();
+        final KeywordBundle bundle = KeywordBundles.defaultBundle();
+
+        assertTrue(snapshot.isCompatible(bundle));
+        bundle.unregisterKeyword("minimum");
+        assertFalse(snapshot.isCompatible(bundle));
+    }
+
+    private JsonSchemaFactory.Builder newBuilder()
+    {
+        return new JsonSchemaFactory.Builder().registerScheme("foo",
+            downloader);
+    }
+
+    private JsonNode validate(final JsonSchemaFactory factory)
+    {
+        return factory.createSchema(factory.registerSchema(schema))
+            .validate(instance).asJsonNode();
+    }
+
+    private static JsonNode fromString(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import org.eel.kitchen.jsonschema.uri.URIDownloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Time to first validation, with and without a snapshot
+ *
+ * <p>A schema refers to many remote schemas, each of which takes a few
+ * milliseconds to fetch. The time from the creation of a factory to the end
+ * of the first validation is measured without a snapshot, then with a
+ * snapshot read from a file. A first, unmeasured run warms up the JVM and
+ * takes the snapshot.</p>
+ */
+public final class SnapshotPerf
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private static final int SCHEMAS = 100;
+    private static final long LATENCY = 2L;
+
+    private static final URIDownloader DOWNLOADER = new URIDownloader()
+    {
+        @Override
+        public InputStream fetch(final URI source)
+            throws IOException
+        {
+            try {
+                Thread.sleep(LATENCY);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new ByteArrayInputStream(remoteSchema(source.getPath())
+                .getBytes(Charsets.UTF_8));
+        }
+    };
+
+    private SnapshotPerf()
+    {
+    }
+
+    public static void main(final String... args)
+        throws IOException
+    {
+        final ObjectNode schema = FACTORY.objectNode();
+        final ObjectNode properties = FACTORY.objectNode();
+        final ObjectNode instance = FACTORY.objectNode();
+
+        for (int i = 0; i < SCHEMAS; i++) {
+            properties.put("p" + i, FACTORY.objectNode().put("$ref",
+                "remote://host/" + i + '#'));
+            instance.put("p" + i, FACTORY.objectNode().put("name", "x")
+                .put("count", i));
+        }
+        schema.put("properties", properties);
+
+        final File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+
+        final JsonSchemaFactory factory = newBuilder().build();
+        firstValidation(factory, schema, instance);
+
+        final SchemaSnapshot snapshot = factory.takeSnapshot();
+        snapshot.write(file);
+
+        long begin = System.nanoTime();
+        firstValidation(newBuilder().build(), schema, instance);
+        final long cold = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        final JsonSchemaFactory restarted = newBuilder()
+            .withSnapshot(SchemaSnapshot.read(file)).build();
+        firstValidation(restarted, schema, instance);
+        final long warm = System.nanoTime() - begin;
+
+        System.out.println(String.format("%d remote schemas: first "
+            + "validation after %d ms (with a snapshot of %d schemas: %d ms)",
+            SCHEMAS, cold / 1000000L, snapshot.size(), warm / 1000000L));
+    }
+
+    private static JsonSchemaFactory.Builder newBuilder()
+    {
+        return new JsonSchemaFactory.Builder().registerScheme("remote",
+            DOWNLOADER);
+    }
+
+    private static void firstValidation(final JsonSchemaFactory factory,
+        final JsonNode schema, final JsonNode instance)
+    {
+        if (!factory.createSchema(factory.registerSchema(schema))
+            .validate(instance).isSuccess())
+            throw new IllegalStateException("instance should be valid");
+    }
+
+    private static String remoteSchema(final String path)
+    {
+        return "{\"type\":\"object\",\"description\":\"remote schema " + path
+            + "\",\"properties\":{\"name\":{\"type\":\"string\","
+            + "\"minLength\":1},\"count\":{\"type\":\"integer\","
+            + "\"minimum\":0}}}";
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.main.ValidationFeature;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public final class AggregatingListenerTest
+{
+    private static final String SCHEMA = "{"
+        + "\"properties\":{"
+        + "\"a\":{\"type\":\"string\",\"minLength\":3},"
+        + "\"b\":{\"$ref\":\"#/definitions/num\"}"
+        + "},"
+        + "\"definitions\":{\"num\":{\"type\":\"integer\",\"minimum\":0}}"
+        + "}";
+
+    private AggregatingListener listener;
+    private JsonNode schema;
+    private JsonNode instance;
+
+    @BeforeMethod
+    public void init()
+        throws IOException
+    {
+        listener = new AggregatingListener();
+        schema = parse(SCHEMA);
+        instance = parse("{\"a\":\"xy\",\"b\":-1}");
+    }
+
+    @Test
+    public void noListenerMeansTheNoopListener()
+    {
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .build();
+
+        assertSame(factory.getValidationListener(), ValidationListener.noop());
+    }
+
+    @Test
+    public void keywordsAreCountedBySchemaPointer()
+    {
+        final ValidationReport report = newSchema(listener).validate(instance);
+
+        assertFalse(report.isSuccess());
+
+        final Map<String, Map<String, AggregatingListener.Stats>> keywords
+            = listener.getKeywordStats();
+
+        AggregatingListener.Stats stats;
+
+        stats = keywords.get("#/properties/a").get("type");
+        assertEquals(stats.getCount(), 1L);
+        assertEquals(stats.getFailures(), 0L);
+
+        stats = keywords.get("#/properties/a").get("minLength");
+        assertEquals(stats.getCount(), 1L);
+        assertEquals(stats.getFailures(), 1L);
+
+        stats = keywords.get("#/definitions/num").get("minimum");
+        assertEquals(stats.getCount(), 1L);
+        assertEquals(stats.getFailures(), 1L);
+        assertTrue(stats.getTotalNanos() >= stats.getMaxNanos());
+    }
+
+    @Test
+    public void schemasAreCountedWithTheirResult()
+        throws IOException
+    {
+        final JsonSchema jsonSchema = newSchema(listener);
+
+        jsonSchema.validate(instance);
+        jsonSchema.validate(parse("{\"a\":\"xyz\"}"));
+
+        final Map<String, AggregatingListener.Stats> schemas
+            = listener.getSchemaStats();
+
+        assertEquals(schemas.get("#").getCount(), 2L);
+        assertEquals(schemas.get("#").getFailures(), 1L);
+        assertEquals(schemas.get("#/properties/a").getCount(), 2L);
+        assertEquals(schemas.get("#/properties/a").getFailures(), 1L);
+        assertEquals(schemas.get("#/definitions/num").getCount(), 1L);
+    }
+
+    @Test
+    public void cacheHitsAndMissesAreCounted()
+    {
+        final JsonSchema jsonSchema = newSchema(listener);
+
+        jsonSchema.validate(instance);
+
+        final long misses = listener.getValidatorCacheMisses();
+
+        assertTrue(misses > 0L);
+        assertTrue(listener.getValidatorLoadNanos() > 0L);
+
+        jsonSchema.validate(instance);
+
+        assertEquals(listener.getValidatorCacheMisses(), misses);
+        assertTrue(listener.getValidatorCacheHits() > 0L);
+    }
+
+    @Test
+    public void listenersDoNotChangeCacheStatistics()
+    {
+        final JsonSchemaFactory plain = new JsonSchemaFactory.Builder().build();
+        final JsonSchemaFactory listened = new JsonSchemaFactory.Builder()
+            .withValidationListener(listener).build();
+        final JsonSchema plainSchema
+            = plain.createSchema(plain.registerSchema(schema));
+        final JsonSchema listenedSchema
+            = listened.createSchema(listened.registerSchema(schema));
+
+        for (int i = 0; i < 100; i++) {
+            plainSchema.validate(instance);
+            listenedSchema.validate(instance);
+        }
+
+        final CacheStats stats = listened.getValidatorCacheStats();
+        final CacheStats plainStats = plain.getValidatorCacheStats();
+
+        assertTrue(stats.hitCount() > 0L);
+        assertEquals(stats.hitCount(), plainStats.hitCount());
+        assertEquals(stats.missCount(), plainStats.missCount());
+        assertEquals(listener.getValidatorCacheHits(), stats.hitCount());
+        assertEquals(listener.getValidatorCacheMisses(), stats.missCount());
+    }
+
+    @Test
+    public void refResolutionsAreCounted()
+    {
+        newSchema(listener).validate(instance);
+
+        assertEquals(listener.getRefResolutions(), 1L);
+        assertEquals(listener.getRefHops(), 1L);
+    }
+
+    @Test
+    public void registryHitsAreCounted()
+        throws IOException
+    {
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .withValidationListener(listener).build();
+
+        factory.registerSchema(parse("{\"id\":\"http://foo.bar/baz#\","
+            + "\"type\":\"integer\"}"));
+        factory.createSchema(factory.registerSchema(
+            parse("{\"$ref\":\"http://foo.bar/baz#\"}")))
+            .validate(instance);
+
+        assertEquals(listener.getRegistryHits(), 1L);
+        assertEquals(listener.getRegistryMisses(), 0L);
+        assertEquals(listener.getSchemaStats().get("http://foo.bar/baz#")
+            .getFailures(), 1L);
+    }
+
+    @Test
+    public void programsHaveTheSameKeywordCountsAsInterpretedValidators()
+    {
+        assertSameKeywordCounts(ValidationFeature.COMPILED_PROGRAMS);
+    }
+
+    @Test
+    public void generatedClassesHaveTheSameKeywordCounts()
+    {
+        assertSameKeywordCounts(ValidationFeature.GENERATED_CLASSES);
+    }
+
+    @Test
+    public void resetForgetsStatistics()
+    {
+        newSchema(listener).validate(instance);
+        listener.reset();
+
+        assertTrue(listener.getSchemaStats().isEmpty());
+        assertTrue(listener.getKeywordStats().isEmpty());
+        assertEquals(listener.getValidatorCacheMisses(), 0L);
+        assertEquals(listener.asJsonNode().get("schemas").size(), 0);
+    }
+
+    private void assertSameKeywordCounts(final ValidationFeature feature)
+    {
+        final AggregatingListener other = new AggregatingListener();
+        final JsonSchema interpreted = newSchema(listener);
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .withValidationListener(other).enableFeature(feature).build();
+        final JsonSchema promoted
+            = factory.createSchema(factory.registerSchema(schema));
+
+        for (int i = 0; i < 3; i++) {
+            interpreted.validate(instance);
+            promoted.validate(instance);
+        }
+
+        assertEquals(counts(other), counts(listener));
+        assertFalse(counts(listener).isEmpty());
+    }
+
+    private JsonSchema newSchema(final ValidationListener listener)
+    {
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .withValidationListener(listener).build();
+
+        return factory.createSchema(factory.registerSchema(schema));
+    }
+
+    private static Map<String, Long> counts(final AggregatingListener listener)
+    {
+        final Map<String, Long> ret = Maps.newHashMap();
+
+        for (final Map.Entry<String, Map<String, AggregatingListener.Stats>>
+            entry: listener.getKeywordStats().entrySet())
+            for (final Map.Entry<String, AggregatingListener.Stats> keyword:
+                entry.getValue().entrySet())
+                ret.put(entry.getKey() + ' ' + keyword.getKey(),
+                    keyword.getValue().getCount());
+
+        return ret;
+    }
+
+    private static JsonNode parse(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+}
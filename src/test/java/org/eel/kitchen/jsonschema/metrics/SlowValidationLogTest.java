@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public final class SlowValidationLogTest
+{
+    private static final String SCHEMA = "{"
+        + "\"type\":\"array\","
+        + "\"items\":{\"$ref\":\"#/definitions/entry\"},"
+        + "\"definitions\":{\"entry\":{"
+        + "\"type\":\"object\","
+        + "\"patternProperties\":{\"^x-\":{\"type\":\"string\"}}"
+        + "}}"
+        + "}";
+
+    private final List<SlowValidation> records = Lists.newArrayList();
+    private final SlowValidationLog.Sink sink = new SlowValidationLog.Sink()
+    {
+        @Override
+        public void record(final SlowValidation slowValidation)
+        {
+            records.add(slowValidation);
+        }
+    };
+
+    private JsonNode schema;
+    private JsonNode instance;
+
+    @BeforeMethod
+    public void init()
+        throws IOException
+    {
+        records.clear();
+        schema = parse(SCHEMA);
+        instance = parse("[{\"x-a\":\"1\",\"x-b\":2},{\"x-c\":\"3\"},4]");
+    }
+
+    @Test
+    public void validationsUnderTheThresholdAreNotRecorded()
+    {
+        final SlowValidationLog log = new SlowValidationLog.Builder(sink)
+            .setThreshold(1L, TimeUnit.HOURS).build();
+
+        newSchema(log).validate(instance);
+
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void slowValidationsAreRecordedWithTheirHotPath()
+    {
+        final SlowValidationLog log = new SlowValidationLog.Builder(sink)
+            .setThreshold(0L, TimeUnit.NANOSECONDS).build();
+
+        newSchema(log).validate(instance);
+
+        assertEquals(records.size(), 1);
+
+        final SlowValidation record = records.get(0);
+
+        assertFalse(record.isValid());
+        assertTrue(record.getNanos() >= 0L);
+        assertEquals(record.getSchemaNanos().keySet().iterator().next(), "#");
+        assertTrue(record.getSchemaNanos().containsKey("#/definitions/entry"));
+        assertEquals(record.getPathVisits().get("").longValue(), 1L);
+        assertEquals(record.getPathVisits().get("/0").longValue(), 1L);
+        assertEquals(record.getPathVisits().get("/1").longValue(), 1L);
+        assertFalse(record.getPathVisits().containsKey("/2"));
+        assertEquals(record.getRegexMatches(), 3L);
+        assertEquals(record.getValidatorsBuilt(), 3L);
+        assertEquals(record.getRefHops(), 1L);
+    }
+
+    @Test
+    public void recordsAreLimitedToTheirTopEntries()
+    {
+        final SlowValidationLog log = new SlowValidationLog.Builder(sink)
+            .setThreshold(0L, TimeUnit.NANOSECONDS).setTopSchemas(1)
+            .setTopPaths(1).setMaxPaths(2).build();
+
+        newSchema(log).validate(instance);
+
+        final SlowValidation record = records.get(0);
+
+        assertEquals(record.getSchemaNanos().size(), 1);
+        assertEquals(record.getPathVisits().size(), 1);
+        assertEquals(record.getOtherPathVisits(), 1L);
+    }
+
+    @Test
+    public void countsAreResetBetweenValidations()
+    {
+        final SlowValidationLog log = new SlowValidationLog.Builder(sink)
+            .setThreshold(0L, TimeUnit.NANOSECONDS).build();
+        final JsonSchema jsonSchema = newSchema(log);
+
+        jsonSchema.validate(instance);
+        jsonSchema.validate(instance);
+
+        final SlowValidation record = records.get(1);
+
+        assertEquals(record.getPathVisits().get("/0").longValue(), 1L);
+        assertEquals(record.getRegexMatches(), 3L);
+        assertEquals(record.getValidatorsBuilt(), 0L);
+        assertEquals(record.getRefHops(), 0L);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void negativeThresholdsAreRefused()
+    {
+        new SlowValidationLog.Builder(sink).setThreshold(-1L,
+            TimeUnit.MILLISECONDS);
+    }
+
+    private JsonSchema newSchema(final ValidationListener listener)
+    {
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .withValidationListener(listener).build();
+
+        return factory.createSchema(factory.registerSchema(schema));
+    }
+
+    private static JsonNode parse(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+}
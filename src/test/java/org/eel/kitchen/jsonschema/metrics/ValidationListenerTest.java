@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.ref.JsonRef;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public final class ValidationListenerTest
+{
+    @Test
+    public void validationBuildAndFetchEventsAreSent()
+        throws IOException
+    {
+        final RecordingListener listener = new RecordingListener();
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .withValidationListener(listener).build();
+        final JsonSchema schema = factory.createSchema(factory.registerSchema(
+            parse("{\"items\":{\"$ref\":\"resource:/schema-lookup.json#\"},"
+                + "\"minItems\":\"x\"}")));
+
+        schema.validate(parse("[{}]"));
+
+        assertEquals(listener.events, Lists.newArrayList(
+            "enter #", "built false", "exit # false"));
+
+        listener.events.clear();
+        factory.createSchema(factory.registerSchema(parse("{\"items\":"
+            + "{\"$ref\":\"resource:/schema-lookup.json#\"}}")))
+            .validate(parse("[{}]"));
+
+        assertEquals(listener.events, Lists.newArrayList("enter #",
+            "built true", "fetched resource:/schema-lookup.json#",
+            "built true", "exit # true"));
+    }
+
+    @Test
+    public void combinedListenersAllReceiveEvents()
+        throws IOException
+    {
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+        final JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .withValidationListener(ValidationListener.combine(first,
+                ValidationListener.noop(), second)).build();
+
+        factory.createSchema(factory.registerSchema(parse("{}")))
+            .validate(parse("1"));
+
+        assertEquals(first.events, Lists.newArrayList("enter #",
+            "built true", "exit # true"));
+        assertEquals(second.events, first.events);
+    }
+
+    @Test
+    public void regexEventsAreOnlySentToInstrumentedListeners()
+        throws IOException
+    {
+        final JsonNode schema = parse("{\"patternProperties\":"
+            + "{\"^a\":{\"pattern\":\"x\"}}}");
+        final JsonNode instance = parse("{\"ab\":\"x\",\"b\":1}");
+        final RecordingListener fine = new RecordingListener();
+        final ValidationListener coarse = new ValidationListener()
+        {
+            @Override
+            public Granularity getGranularity()
+            {
+                return Granularity.VALIDATIONS;
+            }
+
+            @Override
+            public void regexMatched(final String regex)
+            {
+                fail("regex event sent to an uninstrumented listener");
+            }
+        };
+
+        JsonSchemaFactory factory = new JsonSchemaFactory.Builder()
+            .withValidationListener(coarse).build();
+
+        assertTrue(factory.createSchema(factory.registerSchema(schema))
+            .validate(instance).isSuccess());
+
+        factory = new JsonSchemaFactory.Builder()
+            .withValidationListener(fine).build();
+        factory.createSchema(factory.registerSchema(schema))
+            .validate(instance);
+
+        final List<String> regexes = Lists.newArrayList();
+
+        for (final String event: fine.events)
+            if (event.startsWith("regex "))
+                regexes.add(event);
+
+        assertEquals(regexes, Lists.newArrayList("regex ^a", "regex x",
+            "regex ^a"));
+    }
+
+    @Test
+    public void combiningKeepsTheFinestGranularity()
+    {
+        final ValidationListener coarse = new ValidationListener()
+        {
+            @Override
+            public Granularity getGranularity()
+            {
+                return Granularity.VALIDATIONS;
+            }
+        };
+        final ValidationListener fine = new RecordingListener();
+
+        assertSame(ValidationListener.combine(), ValidationListener.noop());
+        assertSame(ValidationListener.combine(ValidationListener.noop(),
+            coarse), coarse);
+        assertSame(ValidationListener.combine(coarse, fine).getGranularity(),
+            ValidationListener.Granularity.KEYWORDS);
+    }
+
+    private static JsonNode parse(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+
+    private static final class RecordingListener
+        extends ValidationListener
+    {
+        private final List<String> events = Lists.newArrayList();
+
+        @Override
+        public void enterValidation(final JsonRef locator,
+            final JsonNode instance)
+        {
+            events.add("enter " + locator);
+        }
+
+        @Override
+        public void exitValidation(final JsonRef locator,
+            final JsonNode instance, final long nanos, final boolean success)
+        {
+            assertTrue(nanos >= 0L);
+            events.add("exit " + locator + ' ' + success);
+        }
+
+        @Override
+        public void validatorBuilt(final SchemaNode schemaNode,
+            final long resolveNanos, final long syntaxNanos,
+            final long buildNanos, final boolean success)
+        {
+            assertTrue(resolveNanos >= 0L && syntaxNanos >= 0L
+                && buildNanos >= 0L);
+            events.add("built " + success);
+        }
+
+        @Override
+        public void regexMatched(final String regex)
+        {
+            events.add("regex " + regex);
+        }
+
+        @Override
+        public void contentFetched(final URI uri, final long bytes,
+            final long nanos)
+        {
+            assertTrue(bytes > 0L);
+            events.add("fetched " + uri);
+        }
+    }
+}
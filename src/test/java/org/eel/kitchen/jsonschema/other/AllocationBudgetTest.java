@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.other;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.eel.kitchen.jsonschema.main.JsonSchema;
+import org.eel.kitchen.jsonschema.main.JsonSchemaException;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.ref.JsonPointer;
+import org.eel.kitchen.jsonschema.util.JacksonUtils;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Allocation budgets
+ *
+ * <p>Each test checks that some operation does not allocate more than a
+ * given number of bytes. Budgets are about one and a half times what was
+ * measured when they were set, on a 64-bit HotSpot JVM with compressed
+ * oops; if you legitimately need more, raise them in the same commit, and
+ * say why.</p>
+ */
+public final class AllocationBudgetTest
+{
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private JsonSchema objectSchema;
+    private JsonSchema arraySchema;
+
+    private JsonNode validObject;
+    private JsonNode invalidObject;
+    private JsonNode largeArray;
+
+    @BeforeClass
+    public void initSchemas()
+    {
+        final JsonSchemaFactory factory
+            = new JsonSchemaFactory.Builder().build();
+
+        final ObjectNode properties = FACTORY.objectNode();
+        properties.put("id", FACTORY.objectNode().put("type", "integer")
+            .put("minimum", 0));
+        properties.put("name", FACTORY.objectNode().put("type", "string")
+            .put("maxLength", 32));
+
+        final ObjectNode object = FACTORY.objectNode().put("type", "object");
+        object.put("properties", properties);
+        object.put("additionalProperties", false);
+        objectSchema = factory.createSchema(factory.registerSchema(object));
+
+        final ObjectNode array = FACTORY.objectNode().put("type", "array");
+        array.put("items", FACTORY.objectNode().put("type", "integer")
+            .put("minimum", 0));
+        arraySchema = factory.createSchema(factory.registerSchema(array));
+
+        validObject = FACTORY.objectNode().put("id", 1).put("name", "foo");
+        invalidObject = FACTORY.objectNode().put("id", -1)
+            .put("name", "0123456789012345678901234567890123456789")
+            .put("extra", true);
+
+        final ArrayNode node = FACTORY.arrayNode();
+        for (int i = 0; i < 1000; i++)
+            node.add(i);
+        largeArray = node;
+    }
+
+    @BeforeMethod
+    public void checkSupport()
+    {
+        if (!AllocationMeter.isSupported())
+            throw new SkipException("allocation measurement not supported");
+    }
+
+    @Test
+    public void validSmallObject()
+    {
+        assertTrue(objectSchema.validate(validObject).isSuccess());
+        assertBudget(validate(objectSchema, validObject), 4500L);
+    }
+
+    @Test
+    public void validLargeArray()
+    {
+        assertTrue(arraySchema.validate(largeArray).isSuccess());
+        assertBudget(validate(arraySchema, largeArray), 650000L);
+    }
+
+    @Test
+    public void invalidDocument()
+    {
+        assertFalse(objectSchema.validate(invalidObject).isSuccess());
+        assertBudget(validate(objectSchema, invalidObject), 9500L);
+    }
+
+    @Test
+    public void jsonPointerAppend()
+        throws JsonSchemaException
+    {
+        final JsonPointer pointer = new JsonPointer("/properties/foo");
+
+        assertBudget(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                pointer.append("bar");
+            }
+        }, 700L);
+    }
+
+    @Test
+    public void fieldNames()
+    {
+        final ObjectNode node = FACTORY.objectNode();
+
+        for (int i = 0; i < 10; i++)
+            node.put("field" + i, i);
+
+        assertBudget(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                JacksonUtils.fieldNames(node);
+            }
+        }, 750L);
+    }
+
+    private static Runnable validate(final JsonSchema schema,
+        final JsonNode instance)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                schema.validate(instance);
+            }
+        };
+    }
+
+    private static void assertBudget(final Runnable runnable,
+        final long budget)
+    {
+        final long bytes = AllocationMeter.bytesPerRun(runnable);
+
+        assertTrue(bytes <= budget, "allocated " + bytes
+            + " bytes, budget is " + budget + " bytes");
+    }
+}
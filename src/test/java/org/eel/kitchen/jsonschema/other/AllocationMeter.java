@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.other;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measure bytes allocated by the current thread
+ *
+ * <p>This relies on {@code com.sun.management.ThreadMXBean}, which not all
+ * JVMs provide: check {@link #isSupported()} first.</p>
+ *
+ * <p>Code is run a number of times before being measured, so that it is
+ * compiled (escape analysis may remove allocations) and that caches are
+ * warm. The result is the lowest average of several batches of runs, so
+ * that one-off allocations (for instance, a cache resizing itself) do not
+ * count.</p>
+ */
+public final class AllocationMeter
+{
+    private static final int WARMUP = 5000;
+    private static final int BATCHES = 5;
+    private static final int BATCH_SIZE = 500;
+
+    private static final ThreadMXBean THREADS
+        = ManagementFactory.getThreadMXBean();
+
+    private AllocationMeter()
+    {
+    }
+
+    /**
+     * Tell whether this JVM can measure per thread allocations
+     *
+     * @return true if it can
+     */
+    public static boolean isSupported()
+    {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+            return false;
+
+        final com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean) THREADS;
+
+        return threads.isThreadAllocatedMemorySupported()
+            && threads.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Return the number of bytes allocated by one run of some code
+     *
+     * @param runnable the code
+     * @return the number of bytes
+     * @throws UnsupportedOperationException see {@link #isSupported()}
+     */
+    public static long bytesPerRun(final Runnable runnable)
+    {
+        if (!isSupported())
+            throw new UnsupportedOperationException("per thread allocation "
+                + "measurement is not supported by this JVM");
+
+        for (int i = 0; i < WARMUP; i++)
+            runnable.run();
+
+        long ret = Long.MAX_VALUE;
+        long before;
+
+        for (int batch = 0; batch < BATCHES; batch++) {
+            before = allocatedBytes();
+            for (int i = 0; i < BATCH_SIZE; i++)
+                runnable.run();
+            ret = Math.min(ret, (allocatedBytes() - before) / BATCH_SIZE);
+        }
+
+        return ret;
+    }
+
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) THREADS)
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.uri.URIManager;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public final class FlattenedValidatorTest
+{
+    /*
+     * level0 extends level1 (through a JSON Reference), which extends level2
+     * and an inline schema
+     */
+    private static final String SCHEMA = "{"
+        + "\"level0\":{\"extends\":{\"$ref\":\"#/level1\"},\"minimum\":0,"
+        + "\"properties\":{\"a\":{\"maxLength\":1}}},"
+        + "\"level1\":{\"extends\":[{\"$ref\":\"#/level2\"},{\"maximum\":-5}],"
+        + "\"minimum\":1,\"properties\":{\"a\":{\"maxLength\":2}}},"
+        + "\"level2\":{\"divisibleBy\":7,\"properties\":{\"b\":{\"enum\":[1]}},"
+        + "\"additionalProperties\":{\"minLength\":3}}"
+        + "}";
+
+    private SchemaRegistry registry;
+    private JsonValidatorCache cache;
+    private SchemaContainer container;
+
+    @BeforeMethod
+    public void initCache()
+        throws IOException
+    {
+        registry = new SchemaRegistry(new URIManager(), URI.create(""));
+        cache = new JsonValidatorCache(KeywordBundles.defaultBundle(),
+            registry);
+        container = registry.register(fromString(SCHEMA));
+    }
+
+    @Test
+    public void parentsAreFlattened()
+    {
+        final InstanceValidator validator = getValidator("#/level0");
+        final FlattenedValidator flattened
+            = FlattenedValidator.flatten(cache, validator);
+
+        // level0: minimum, children; level1: minimum, children; level2:
+        // divisibleBy, children; inline parent: maximum ("properties" and
+        // "additionalProperties" are dead keywords)
+        assertEquals(flattened.size(), 7);
+    }
+
+    @Test
+    public void flattenedReportsHaveAllMessages()
+        throws IOException
+    {
+        final JsonNode instance = fromString("{\"a\":\"xyz\",\"b\":2}");
+        final ValidationReport report = validate("#/level0", instance);
+
+        assertTrue(keywords(report, "").isEmpty());
+        assertEquals(keywords(report, "/a"), ImmutableList.of("maxLength",
+            "maxLength"));
+        assertEquals(keywords(report, "/b"), ImmutableList.of("enum"));
+
+        final ValidationReport numberReport
+            = validate("#/level0", fromString("-1"));
+
+        assertEqualsNoOrder(keywords(numberReport, "").toArray(),
+            new Object[] { "minimum", "minimum", "divisibleBy", "maximum" });
+    }
+
+    @Test
+    public void recursiveParentsAreKeptAsValidators()
+        throws IOException
+    {
+        final JsonNode schema = fromString("{\"a\":{\"extends\":"
+            + "{\"$ref\":\"#/b\"},\"minimum\":0},\"b\":{\"extends\":"
+            + "{\"$ref\":\"#/a\"},\"maximum\":10}}");
+        final SchemaContainer recursive = registry.register(schema);
+        final JsonValidator validator = cache.getValidator(
+            new SchemaNode(recursive, fromString("{\"$ref\":\"#/a\"}")));
+
+        // a: minimum; b: maximum; a again: validator
+        assertEquals(FlattenedValidator.flatten(cache,
+            (InstanceValidator) validator).size(), 3);
+    }
+
+    @Test
+    public void refsInSubschemasAreResolvedWhenFlattening()
+        throws IOException
+    {
+        final JsonNode schema = fromString("{\"root\":{\"extends\":"
+            + "{\"type\":\"object\"},\"properties\":{\"a\":{\"$ref\":"
+            + "\"#/leaf\"},\"b\":{\"items\":{\"$ref\":\"#/leaf\"}}}},"
+            + "\"leaf\":{\"$ref\":\"#/string\"},"
+            + "\"string\":{\"type\":\"string\",\"maxLength\":2}}");
+        final SchemaContainer refs = registry.register(schema);
+        final InstanceValidator validator = (InstanceValidator)
+            cache.getValidator(new SchemaNode(refs,
+                fromString("{\"$ref\":\"#/root\"}")));
+        final JsonNode instance
+            = fromString("{\"a\":\"xyz\",\"b\":[\"x\",1,\"yz\"]}");
+
+        validator.getFlattened(Sets.<SchemaNode>newHashSet());
+
+        final long requests = cache.stats().requestCount();
+        final ValidationReport report = new ValidationReport();
+
+        validator.validate(new ValidationContext(cache), report, instance);
+
+        // No more cache lookups once flattened
+        assertEquals(cache.stats().requestCount(), requests);
+        assertEquals(keywords(report, "/a"), ImmutableList.of("maxLength"));
+        assertEquals(keywords(report, "/b/1"), ImmutableList.of("type"));
+        assertEquals(report.asJsonNode().size(), 2);
+    }
+
+    @Test
+    public void recursiveRefsInSubschemasAreLinked()
+        throws IOException
+    {
+        final JsonNode schema = fromString("{\"node\":{\"extends\":"
+            + "{\"type\":\"object\"},\"properties\":{\"value\":"
+            + "{\"maximum\":10},\"next\":{\"$ref\":\"#/node\"}}}}");
+        final SchemaContainer recursive = registry.register(schema);
+        final JsonValidator validator = cache.getValidator(
+            new SchemaNode(recursive, fromString("{\"$ref\":\"#/node\"}")));
+        final JsonNode instance = fromString("{\"value\":1,\"next\":"
+            + "{\"value\":11,\"next\":{\"next\":2}}}");
+        final ValidationReport report = new ValidationReport();
+
+        validator.validate(new ValidationContext(cache), report, instance);
+
+        assertEquals(keywords(report, "/next/value"),
+            ImmutableList.of("maximum"));
+        assertEquals(keywords(report, "/next/next/next"),
+            ImmutableList.of("type"));
+        assertEquals(report.asJsonNode().size(), 2);
+    }
+
+    private InstanceValidator getValidator(final String ref)
+    {
+        final JsonNode node;
+
+        try {
+            node = fromString("{\"$ref\":\"" + ref + "\"}");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return (InstanceValidator) cache.getValidator(new SchemaNode(container,
+            node));
+    }
+
+    private ValidationReport validate(final String ref,
+        final JsonNode instance)
+    {
+        final ValidationReport report = new ValidationReport();
+
+        getValidator(ref).validate(new ValidationContext(cache), report,
+            instance);
+        return report;
+    }
+
+    private static List<String> keywords(final ValidationReport report,
+        final String path)
+    {
+        final List<String> ret = Lists.newArrayList();
+
+        for (final JsonNode message: report.asJsonNode().path(path))
+            ret.add(message.get("keyword").textValue());
+
+        return ret;
+    }
+
+    private static JsonNode fromString(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+}
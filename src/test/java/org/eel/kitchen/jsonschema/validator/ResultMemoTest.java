@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.google.common.base.Predicates;
+import org.eel.kitchen.jsonschema.format.FormatBundle;
+import org.eel.kitchen.jsonschema.format.FormatSpecifier;
+import org.eel.kitchen.jsonschema.main.ValidationFeature;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.EnumSet;
+
+import static org.testng.Assert.*;
+
+public final class ResultMemoTest
+{
+    private static final JsonNodeFactory factory = JsonNodeFactory.instance;
+
+    private ResultMemo memo;
+    private ValidationContext context;
+
+    @BeforeMethod
+    public void initMemo()
+    {
+        memo = new ResultMemo.Builder().setMaxLength(8).build();
+        context = new ValidationContext(null,
+            EnumSet.noneOf(ValidationFeature.class), memo);
+    }
+
+    @Test
+    public void disabledMemoAdmitsNothing()
+    {
+        final ResultMemo disabled = ResultMemo.disabled();
+
+        assertFalse(disabled.admits(""));
+        assertTrue(disabled.regMatch("^a", "abc"));
+        assertEquals(disabled.size(), 0L);
+        assertEquals(disabled.stats().requestCount(), 0L);
+    }
+
+    @Test
+    public void regexResultsAreRemembered()
+    {
+        assertTrue(memo.regMatch("^a", "abc"));
+        assertFalse(memo.regMatch("^b", "abc"));
+        assertTrue(memo.regMatch("^a", "abc"));
+        assertFalse(memo.regMatch("^b", "abc"));
+
+        assertEquals(memo.size(), 2L);
+        assertEquals(memo.stats().hitCount(), 2L);
+        assertEquals(memo.stats().missCount(), 2L);
+    }
+
+    @Test
+    public void longStringsAreNotAdmitted()
+    {
+        final String input = "abcdefghijkl";
+
+        assertFalse(memo.admits(input));
+        assertTrue(memo.regMatch("^a", input));
+        assertEquals(memo.size(), 0L);
+        assertEquals(memo.stats().requestCount(), 0L);
+    }
+
+    @Test
+    public void customAdmissionRuleIsObeyed()
+    {
+        final ResultMemo none = new ResultMemo.Builder()
+            .setAdmission(Predicates.<String>alwaysFalse()).build();
+
+        assertFalse(none.admits("a"));
+        none.putFormatResult("email", "a", true);
+        assertNull(none.getFormatResult("email", "a"));
+    }
+
+    @Test
+    public void formatAndRegexResultsDoNotCollide()
+    {
+        memo.putFormatResult("a", "a", false);
+        assertTrue(memo.regMatch("a", "a"));
+        assertEquals(memo.getFormatResult("a", "a"), Boolean.FALSE);
+    }
+
+    @Test
+    public void formatFailuresAreStillReported()
+    {
+        final FormatSpecifier specifier = FormatBundle.defaultBundle()
+            .getSpecifiers().get("ip-address");
+        final JsonNode good = factory.textNode("1.2.3.4");
+        final JsonNode bad = factory.textNode("1.2.3");
+
+        ValidationReport report;
+
+        for (int i = 0; i < 2; i++) {
+            report = new ValidationReport();
+            specifier.validate("ip-address", context, report, good);
+            assertTrue(report.isSuccess());
+
+            report = new ValidationReport();
+            specifier.validate("ip-address", context, report, bad);
+            assertFalse(report.isSuccess());
+        }
+
+        assertEquals(memo.getFormatResult("ip-address", "1.2.3.4"),
+            Boolean.TRUE);
+        assertEquals(memo.getFormatResult("ip-address", "1.2.3"),
+            Boolean.FALSE);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.uri.URIManager;
+import org.eel.kitchen.jsonschema.util.JacksonUtils;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validator sharing across many containers
+ *
+ * <p>All schemas of the Google API discovery document are registered many
+ * times, each copy with its own URI, as if they were distinct schemas of a
+ * large deployment; then the validators of all their subschemas are looked
+ * up, a few times over, with and without interning.</p>
+ *
+ * <p>Since the validator cache is bounded, all distinct validators are also
+ * kept aside, to measure the heap they would retain if none were evicted.</p>
+ */
+public final class SchemaInternerPerf
+{
+    private static final int COPIES = 50;
+    private static final int PASSES = 3;
+
+    private SchemaInternerPerf()
+    {
+    }
+
+    public static void main(final String... args)
+        throws IOException
+    {
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        run(googleAPI, false);
+        run(googleAPI, true);
+    }
+
+    private static void run(final JsonNode googleAPI, final boolean intern)
+    {
+        final SchemaRegistry registry
+            = new SchemaRegistry(new URIManager(), URI.create(""));
+        final JsonValidatorCache cache = new JsonValidatorCache(
+            KeywordBundles.defaultBundle(), registry, intern);
+        final List<SchemaContainer> containers = Lists.newArrayList();
+
+        final Map<String, JsonNode> schemas
+            = JacksonUtils.nodeToMap(googleAPI.get("schemas"));
+        ObjectNode schema;
+
+        for (int copy = 0; copy < COPIES; copy++)
+            for (final Map.Entry<String, JsonNode> entry: schemas.entrySet()) {
+                schema = entry.getValue().deepCopy();
+                schema.put("id", "http://example.com/" + copy + '/'
+                    + entry.getKey() + '#');
+                containers.add(registry.register(schema));
+            }
+
+        final Map<SchemaNode, JsonValidator> retained = Maps.newHashMap();
+        final long heapBefore = usedHeap();
+        final long begin = System.nanoTime();
+
+        for (int pass = 0; pass < PASSES; pass++)
+            for (final SchemaContainer container: containers)
+                lookup(cache, retained, container, container.getSchema());
+
+        final long elapsed = System.nanoTime() - begin;
+        final long heap = usedHeap() - heapBefore;
+        final CacheStats stats = cache.stats();
+        final SchemaInterner interner = cache.getInterner();
+
+        System.out.println(String.format("interning %s: %d lookups, %d "
+            + "validators built, hit rate %.1f%%, %d subschemas shared; "
+            + "%d ms", intern ? "on" : "off", stats.requestCount(),
+            stats.loadCount(), stats.hitRate() * 100, interner
+            .getSharedSchemas(), elapsed / 1000000L));
+        System.out.println(String.format("    %d distinct validators, "
+            + "retaining %d KiB", retained.size(), heap / 1024L));
+    }
+
+    private static void lookup(final JsonValidatorCache cache,
+        final Map<SchemaNode, JsonValidator> retained,
+        final SchemaContainer container, final JsonNode schema)
+    {
+        final SchemaNode key
+            = cache.getInterner().canonicalize(container, schema);
+        final JsonValidator validator = cache.getValidator(container, schema);
+
+        if (!retained.containsKey(key))
+            retained.put(key, validator);
+
+        for (final JsonNode subSchema: new ObjectValidator(schema)
+            .getAllSchemas())
+            if (subSchema.size() != 0)
+                lookup(cache, retained, container, subSchema);
+
+        for (final JsonNode subSchema: new ArrayValidator(schema)
+            .getAllSchemas())
+            if (subSchema.size() != 0)
+                lookup(cache, retained, container, subSchema);
+    }
+
+    private static long usedHeap()
+    {
+        final Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 5; i++)
+            System.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.uri.URIManager;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+
+import static org.testng.Assert.*;
+
+public final class SchemaInternerTest
+{
+    private static final String SCHEMA = "{"
+        + "\"properties\":{"
+        + "\"amount\":{\"type\":\"number\",\"minimum\":0},"
+        + "\"parent\":{\"$ref\":\"#/properties/amount\"}"
+        + "},"
+        + "\"properties2\":{\"minimum\":1}"
+        + "}";
+
+    private SchemaRegistry registry;
+    private SchemaContainer container1;
+    private SchemaContainer container2;
+
+    @BeforeMethod
+    public void initContainers()
+        throws IOException
+    {
+        registry = new SchemaRegistry(new URIManager(), URI.create(""));
+        container1 = registry.register(withId("http://foo.bar/a#"));
+        container2 = registry.register(withId("http://foo.bar/b#"));
+    }
+
+    @Test
+    public void equalContextFreeSubschemasShareValidators()
+    {
+        final JsonValidatorCache cache = newCache(true);
+        final JsonValidator v1 = cache.getValidator(container1,
+            container1.getSchema().get("properties").get("amount"));
+        final JsonValidator v2 = cache.getValidator(container2,
+            container2.getSchema().get("properties").get("amount"));
+
+        assertSame(v1, v2);
+        assertEquals(cache.getInterner().getSharedSchemas(), 1L);
+        assertEquals(cache.stats().loadCount(), 1L);
+    }
+
+    @Test
+    public void subschemasWithReferencesAreNotShared()
+    {
+        final JsonValidatorCache cache = newCache(true);
+        final SchemaNode node1 = new SchemaNode(container1,
+            container1.getSchema().get("properties").get("parent"));
+        final SchemaNode node2 = new SchemaNode(container2,
+            container2.getSchema().get("properties").get("parent"));
+
+        assertNotSame(cache.getValidator(node1), cache.getValidator(node2));
+        assertNotEquals(cache.getInterner().canonicalize(container1,
+            node1.getNode()), cache.getInterner().canonicalize(container2,
+            node2.getNode()));
+        assertEquals(cache.getInterner().getSharedSchemas(), 0L);
+    }
+
+    @Test
+    public void disabledInternerSharesNothing()
+    {
+        final JsonValidatorCache cache = newCache(false);
+        final JsonValidator v1 = cache.getValidator(container1,
+            container1.getSchema().get("properties").get("amount"));
+        final JsonValidator v2 = cache.getValidator(container2,
+            container2.getSchema().get("properties").get("amount"));
+
+        assertNotSame(v1, v2);
+        assertEquals(cache.getInterner().getContextFreeSchemas(), 0L);
+        assertEquals(cache.stats().loadCount(), 2L);
+    }
+
+    @Test
+    public void canonicalNodesHaveTheSameHashCode()
+    {
+        final SchemaInterner interner = new SchemaInterner(true);
+        final JsonNode schema = container1.getSchema();
+        final SchemaNode canonical = interner.canonicalize(container1,
+            schema.get("properties2"));
+
+        assertEquals(canonical.hashCode(), new SchemaNode(
+            canonical.getContainer(), canonical.getNode()).hashCode());
+        assertEquals(interner.canonicalize(container1, schema), new SchemaNode(
+            container1, schema));
+    }
+
+    @Test
+    public void sharedValidatorsYieldTheSameReports()
+        throws IOException
+    {
+        final JsonValidatorCache shared = newCache(true);
+        final JsonValidatorCache unshared = newCache(false);
+        final JsonNode instance = fromString("{\"amount\":-1,\"parent\":\"x\"}");
+
+        for (final SchemaContainer container: new SchemaContainer[] {
+            container1, container2 }) {
+            final SchemaNode schemaNode
+                = new SchemaNode(container, container.getSchema());
+            final ValidationReport expected = new ValidationReport();
+            final ValidationReport actual = new ValidationReport();
+
+            unshared.getValidator(schemaNode).validate(new ValidationContext(
+                unshared), expected, instance);
+            shared.getValidator(schemaNode).validate(new ValidationContext(
+                shared), actual, instance);
+            assertEquals(actual.asJsonNode(), expected.asJsonNode());
+            assertFalse(actual.isSuccess());
+        }
+    }
+
+    private JsonValidatorCache newCache(final boolean intern)
+    {
+        return new JsonValidatorCache(KeywordBundles.defaultBundle(), registry,
+            intern);
+    }
+
+    private static JsonNode withId(final String id)
+        throws IOException
+    {
+        return fromString(SCHEMA.replaceFirst("\\{", "{\"id\":\"" + id
+            + "\","));
+    }
+
+    private static JsonNode fromString(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+}
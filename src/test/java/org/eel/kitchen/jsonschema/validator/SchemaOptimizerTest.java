@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableSet;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.syntax.SyntaxValidator;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+
+import static org.testng.Assert.*;
+
+public final class SchemaOptimizerTest
+{
+    private SchemaOptimizer optimizer;
+
+    @BeforeMethod
+    public void initOptimizer()
+    {
+        optimizer = new SchemaOptimizer(KeywordBundles.defaultBundle(),
+            new SyntaxValidator(KeywordBundles.defaultBundle()));
+    }
+
+    @DataProvider
+    public Iterator<Object[]> getDeadKeywords()
+    {
+        return ImmutableSet.of(
+            new Object[] { "{\"additionalProperties\":true}" },
+            new Object[] { "{\"additionalProperties\":{\"minimum\":0}}" },
+            new Object[] { "{\"additionalItems\":false}" },
+            new Object[] { "{\"uniqueItems\":false}" },
+            new Object[] { "{\"type\":\"any\"}" },
+            new Object[] { "{\"type\":[\"string\",\"any\"]}" },
+            new Object[] { "{\"type\":[\"string\",{}]}" },
+            new Object[] { "{\"minLength\":0}" },
+            new Object[] { "{\"minItems\":0}" },
+            new Object[] { "{\"dependencies\":{}}" },
+            new Object[] { "{\"extends\":{\"description\":\"x\"}}" },
+            new Object[] { "{\"properties\":{\"p\":{\"minimum\":0}}}" }
+        ).iterator();
+    }
+
+    @Test(dataProvider = "getDeadKeywords")
+    public void deadKeywordsAreFound(final String input)
+        throws IOException
+    {
+        final JsonNode schema = fromString(input);
+        final String keyword = schema.fieldNames().next();
+
+        assertEquals(optimizer.deadKeywords(schema), ImmutableSet.of(keyword));
+        assertEquals(optimizer.getPrunedKeywords(), 1L);
+    }
+
+    @DataProvider
+    public Iterator<Object[]> getLiveKeywords()
+    {
+        return ImmutableSet.of(
+            new Object[] { "{\"additionalProperties\":false}" },
+            new Object[] { "{\"additionalItems\":false,\"items\":[{}]}" },
+            new Object[] { "{\"uniqueItems\":true}" },
+            new Object[] { "{\"type\":\"string\"}" },
+            new Object[] { "{\"type\":[\"string\",{\"$ref\":\"#\"}]}" },
+            new Object[] { "{\"minLength\":1}" },
+            new Object[] { "{\"dependencies\":{\"a\":\"b\"}}" },
+            new Object[] { "{\"extends\":{\"minimum\":0}}" },
+            new Object[] { "{\"properties\":{\"p\":{\"required\":true}}}" },
+            new Object[] { "{\"enum\":[1]}" }
+        ).iterator();
+    }
+
+    @Test(dataProvider = "getLiveKeywords")
+    public void liveKeywordsAreKept(final String input)
+        throws IOException
+    {
+        assertTrue(optimizer.deadKeywords(fromString(input)).isEmpty());
+        assertEquals(optimizer.getPrunedKeywords(), 0L);
+    }
+
+    @Test
+    public void triviallyTrueSchemasAreFound()
+        throws IOException
+    {
+        assertTrue(optimizer.isTriviallyTrue(fromString("{}")));
+        assertTrue(optimizer.isTriviallyTrue(fromString(
+            "{\"description\":\"x\",\"type\":\"any\",\"uniqueItems\":false,"
+            + "\"properties\":{\"p\":{\"additionalProperties\":true}},"
+            + "\"items\":[{}],\"additionalItems\":{\"title\":\"y\"}}")));
+        assertEquals(optimizer.getTrivialSchemas(), 5L);
+
+        assertFalse(optimizer.isTriviallyTrue(fromString("{\"$ref\":\"#\"}")));
+        assertFalse(optimizer.isTriviallyTrue(fromString("{\"minLength\":-1}")));
+        assertFalse(optimizer.isTriviallyTrue(fromString(
+            "{\"properties\":{\"p\":{\"properties\":{\"q\":{\"maximum\":1}}}}}"
+        )));
+        assertFalse(optimizer.isTriviallyTrue(fromString(
+            "{\"items\":{\"format\":\"date-time\"}}")));
+    }
+
+    @Test
+    public void childrenValidatorsKnowWhenAllSubschemasAreTriviallyTrue()
+        throws IOException
+    {
+        final JsonNode trivial = fromString("{\"properties\":{\"p\":{}},"
+            + "\"patternProperties\":{\"^a\":{\"type\":\"any\"}},"
+            + "\"items\":{\"description\":\"x\"}}");
+        final JsonNode nonTrivial = fromString("{\"properties\":{\"p\":{},"
+            + "\"q\":{\"maxLength\":2}},\"items\":[{},{\"minimum\":0}]}");
+
+        assertTrue(new ObjectValidator(trivial, optimizer).isTriviallyTrue());
+        assertTrue(new ArrayValidator(trivial, optimizer).isTriviallyTrue());
+        assertFalse(new ObjectValidator(nonTrivial, optimizer)
+            .isTriviallyTrue());
+        assertFalse(new ArrayValidator(nonTrivial, optimizer)
+            .isTriviallyTrue());
+        // Without an optimizer, nothing is trivially true
+        assertFalse(new ObjectValidator(trivial).isTriviallyTrue());
+    }
+
+    private static JsonNode fromString(final String input)
+        throws IOException
+    {
+        return JsonLoader.fromReader(new StringReader(input));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.eel.kitchen.jsonschema.main.JsonSchemaFactory;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.testng.Assert.*;
+
+public final class SchemaPlanTest
+{
+    private static final String UNION = "{\"type\":["
+        + "{\"properties\":{\"kind\":{\"enum\":[\"a\"],\"required\":true}}},"
+        + "{\"properties\":{\"kind\":{\"enum\":[\"b\"],\"required\":true}}}"
+        + "]}";
+
+    private JsonSchemaFactory factory;
+
+    @BeforeMethod
+    public void initFactory()
+    {
+        factory = new JsonSchemaFactory.Builder().build();
+    }
+
+    @Test
+    public void keywordsAreListedByInstanceType()
+        throws IOException
+    {
+        final JsonNode plan = explain("{\"minLength\":2,\"minimum\":1}")
+            .asJsonNode();
+        final JsonNode types = plan.get("keywordsByType");
+
+        assertEquals(plan.get("location").textValue(), "#");
+        assertEquals(types.get("string").get(0).textValue(), "minLength");
+        assertEquals(types.get("integer").get(0).textValue(), "minimum");
+        assertFalse(types.has("object"));
+    }
+
+    @Test
+    public void deadKeywordsAndTrivialSubschemasAreLeftOut()
+        throws IOException
+    {
+        final JsonNode plan = explain("{\"uniqueItems\":false,"
+            + "\"properties\":{\"p\":{}}}").asJsonNode();
+
+        assertFalse(plan.has("keywords"));
+        assertFalse(plan.has("children"));
+        assertEquals(plan.get("totalCost").longValue(), 0L);
+    }
+
+    @Test
+    public void refsAreFollowedAndRecursionIsCut()
+        throws IOException
+    {
+        final JsonNode plan = explain("{\"properties\":{"
+            + "\"n\":{\"$ref\":\"#/definitions/num\"},"
+            + "\"r\":{\"$ref\":\"#\"}},"
+            + "\"definitions\":{\"num\":{\"minimum\":0}}}").asJsonNode();
+        final JsonNode n = child(plan, "#/properties/n");
+        final JsonNode r = child(plan, "#/properties/r");
+
+        assertEquals(n.get("refs").get(0).textValue(), "#/definitions/num");
+        assertEquals(n.get("keywords").get(0).get("keyword").textValue(),
+            "minimum");
+        assertEquals(r.get("explainedAt").textValue(), "#");
+        assertEquals(r.get("totalCost").longValue(), 1L);
+    }
+
+    @Test
+    public void regexesAreCountedWithTheirEngine()
+        throws IOException
+    {
+        final JsonNode plan = explain("{\"pattern\":\"^a\","
+            + "\"patternProperties\":{\"^x-\":{\"minimum\":0},"
+            + "\"^y-\":{\"minimum\":1}}}").asJsonNode();
+
+        assertEquals(plan.get("keywords").get(0).get("regex").textValue(),
+            "^a");
+        assertEquals(plan.get("patternProperties").get("regexes").size(), 2);
+        assertEquals(plan.get("patternProperties").get("engine").textValue(),
+            "rhino");
+        assertEquals(plan.get("cost").longValue(), 30L);
+    }
+
+    @Test
+    public void discriminatedUnionsCostTheirMostExpensiveSchema()
+        throws IOException
+    {
+        final JsonNode type = explain(UNION).asJsonNode().get("keywords")
+            .get(0);
+
+        assertEquals(type.get("strategy").textValue(), "discriminator");
+        assertEquals(type.get("discriminator").textValue(), "kind");
+        assertEquals(type.get("schemas").size(), 2);
+        assertEquals(type.get("cost").longValue(), 3L);
+    }
+
+    @Test
+    public void extendsDepthIsComputed()
+        throws IOException
+    {
+        final SchemaPlan plan = explain("{\"extends\":"
+            + "{\"extends\":{\"minimum\":1}}}");
+
+        assertEquals(plan.asJsonNode().get("extendsDepth").intValue(), 2);
+        assertTrue(plan.toString().contains("extends depth: 2"));
+    }
+
+    @Test
+    public void failuresAreReported()
+        throws IOException
+    {
+        final JsonNode child = explain("{\"items\":{\"$ref\":\"#/nope\"}}")
+            .asJsonNode().get("children").get(0);
+
+        assertEquals(child.get("location").textValue(), "#/items");
+        assertEquals(child.get("failures").get(0).get("message").textValue(),
+            "dangling JSON Reference");
+    }
+
+    @Test
+    public void budgetIsCheckedAgainstTheTotalCost()
+        throws IOException
+    {
+        final SchemaPlan plan = explain(UNION);
+
+        assertEquals(plan.getTotalCost(), 3L);
+        assertTrue(plan.fitsBudget(3L));
+        assertFalse(plan.fitsBudget(2L));
+    }
+
+    private static JsonNode child(final JsonNode plan, final String location)
+    {
+        for (final JsonNode child: plan.get("children"))
+            if (location.equals(child.get("location").textValue()))
+                return child;
+
+        throw new AssertionError("no child at " + location);
+    }
+
+    private SchemaPlan explain(final String input)
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(input));
+        return factory.explain(factory.registerSchema(schema));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.uri.URIManager;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public final class ValidatorGeneratorTest
+{
+    private static final String[] RESOURCES = {
+        "additionalItems", "additionalProperties", "dependenciesSchema",
+        "dependenciesSimple", "disallow", "divisibleBy", "enum", "extends",
+        "maxItems", "maxLength", "maximum", "minItems", "minLength", "minimum",
+        "pattern", "properties", "type", "typeSimple", "uniqueItems"
+    };
+
+    private SchemaRegistry registry;
+    private JsonValidatorCache cache;
+
+    @BeforeMethod
+    public void initCache()
+    {
+        registry = new SchemaRegistry(new URIManager(), URI.create(""));
+        cache = new JsonValidatorCache(KeywordBundles.defaultBundle(),
+            registry);
+    }
+
+    @DataProvider
+    public Iterator<Object[]> getResources()
+    {
+        final List<Object[]> list = Lists.newArrayList();
+
+        for (final String resource: RESOURCES)
+            list.add(new Object[] { resource });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "getResources")
+    public void generatedReportsAreTheSameAsInterpretedReports(
+        final String resource)
+        throws IOException
+    {
+        final JsonNode testData
+            = JsonLoader.fromResource("/keyword/" + resource + ".json");
+
+        JsonNode schema;
+        SchemaNode schemaNode;
+
+        for (final JsonNode element: testData) {
+            schema = element.get("schema");
+            schemaNode = new SchemaNode(registry.register(schema), schema);
+            assertSameReports(schemaNode, element.get("data"));
+        }
+    }
+
+    @Test
+    public void recursiveSchemasAreGeneratedOnce()
+        throws IOException
+    {
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(draftv3), draftv3);
+
+        assertTrue(cache.generate(schemaNode) instanceof GeneratedValidator);
+
+        for (final JsonNode instance: googleAPI.get("schemas"))
+            assertSameReports(schemaNode, instance);
+        assertSameReports(schemaNode, googleAPI);
+        assertSameReports(schemaNode, draftv3);
+    }
+
+    @Test
+    public void eachSchemaHasAClassOfItsOwn()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"a\":{\"minLength\":2},\"b\":{\"maxLength\":1},"
+            + "\"c\":{\"$ref\":\"#\"}}}"));
+        final GeneratedValidator validator = (GeneratedValidator) cache
+            .generate(new SchemaNode(registry.register(schema), schema));
+        final ClassLoader loader = validator.getClass().getClassLoader();
+
+        assertNotSame(loader, GeneratedValidator.class.getClassLoader());
+        assertEquals(validator.children.length, 3);
+
+        // The reference to the root schema is a direct call to its validator
+        assertSame(validator.children[2], validator);
+        assertNotSame(validator.children[0].getClass(),
+            validator.children[1].getClass());
+        for (final JsonValidator child: validator.children)
+            assertSame(child.getClass().getClassLoader(), loader);
+    }
+
+    @Test
+    public void propertyNamesWithTheSameHashCodeAreToldApart()
+        throws IOException
+    {
+        // "Aa" and "BB" have the same hash code
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"Aa\":{\"minLength\":2},"
+            + "\"BB\":{\"maxLength\":1}},\"additionalProperties\":"
+            + "{\"type\":\"integer\"},\"enum\":[\"Aa\",{\"Aa\":\"xx\"},"
+            + "{\"BB\":\"y\"}]}"));
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(schema), schema);
+
+        assertSameReports(schemaNode, JsonLoader.fromReader(new StringReader(
+            "{\"Aa\":\"x\",\"BB\":\"yy\",\"C#\":\"z\"}")));
+        assertSameReports(schemaNode, JsonLoader.fromReader(new StringReader(
+            "{\"Aa\":\"xx\"}")));
+        assertSameReports(schemaNode, JsonLoader.fromReader(new StringReader(
+            "\"BB\"")));
+    }
+
+    @Test
+    public void patternPropertiesAndUnresolvableRefsAreHandled()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"ab\":{\"minimum\":3}},\"patternProperties\":"
+            + "{\"^a\":{\"maximum\":4},\"b$\":{\"divisibleBy\":2}},"
+            + "\"additionalProperties\":{\"$ref\":\"#/nope\"},"
+            + "\"items\":[{\"pattern\":\"^x\"}],"
+            + "\"additionalItems\":{\"required\":true,"
+            + "\"properties\":{\"p\":{\"required\":true}}}}"));
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(schema), schema);
+
+        assertSameReports(schemaNode, JsonLoader.fromReader(new StringReader(
+            "{\"ab\":5,\"a\":5,\"b\":3,\"cb\":4}")));
+        assertSameReports(schemaNode, JsonLoader.fromReader(new StringReader(
+            "[\"y\",{},{\"p\":1},2]")));
+    }
+
+    @Test
+    public void generatedClassesAreUnloadedWithTheirValidators()
+        throws IOException
+    {
+        final WeakReference<ClassLoader> ref = generateAndDrop();
+
+        for (int i = 0; i < 50 && ref.get() != null; i++)
+            System.gc();
+
+        assertNull(ref.get());
+    }
+
+    private WeakReference<ClassLoader> generateAndDrop()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"p\":{\"$ref\":\"#\"}}}"));
+        final JsonValidator validator = cache.generate(new SchemaNode(
+            registry.register(schema), schema));
+
+        validator.validate(new ValidationContext(cache),
+            new ValidationReport(), JsonLoader.fromReader(new StringReader(
+                "{\"p\":{\"p\":{}}}")));
+
+        return new WeakReference<ClassLoader>(validator.getClass()
+            .getClassLoader());
+    }
+
+    private void assertSameReports(final SchemaNode schemaNode,
+        final JsonNode instance)
+    {
+        final ValidationReport expected = new ValidationReport();
+        final ValidationReport actual = new ValidationReport();
+
+        cache.getValidator(schemaNode).validate(new ValidationContext(cache),
+            expected, instance);
+        cache.generate(schemaNode).validate(new ValidationContext(cache),
+            actual, instance);
+
+        assertEquals(actual.asJsonNode(), expected.asJsonNode());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.uri.URIManager;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Throughput and footprint of programs
+ *
+ * <p>The draft v3 core schema validates all schemas of the Google API
+ * discovery document with the validator cache, a linked validator tree and a
+ * program. The heap retained by many programs of the core schema is then
+ * compared to the heap retained by as many linked trees.</p>
+ */
+public final class ValidatorProgramPerf
+{
+    private static final int ROUNDS = 500;
+    private static final int COPIES = 200;
+
+    private ValidatorProgramPerf()
+    {
+    }
+
+    public static void main(final String... args)
+        throws IOException
+    {
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+
+        final SchemaRegistry registry
+            = new SchemaRegistry(new URIManager(), URI.create(""));
+        final JsonValidatorCache cache
+            = new JsonValidatorCache(KeywordBundles.defaultBundle(), registry);
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(draftv3), draftv3);
+
+        final List<JsonNode> instances
+            = Lists.newArrayList(googleAPI.get("schemas"));
+        final JsonValidator[] validators = {
+            cache.getValidator(schemaNode), cache.link(schemaNode),
+            cache.compile(schemaNode)
+        };
+        final long[] times = new long[validators.length];
+
+        long begin;
+
+        for (int round = 0; round < 2 * ROUNDS; round++)
+            for (int i = 0; i < validators.length; i++) {
+                begin = System.nanoTime();
+                for (final JsonNode instance: instances)
+                    validators[i].validate(new ValidationContext(cache),
+                        new ValidationReport(), instance);
+                if (round >= ROUNDS)
+                    times[i] += System.nanoTime() - begin;
+            }
+
+        System.out.println(String.format("%d instances: cache %d us/round, "
+            + "linked %d us/round, program %d us/round", instances.size(),
+            times[0] / ROUNDS / 1000L, times[1] / ROUNDS / 1000L,
+            times[2] / ROUNDS / 1000L));
+
+        final List<Object> retained = Lists.newArrayList();
+        final long linkedHeap = retainedHeap(retained, cache, schemaNode,
+            instances, false);
+        retained.clear();
+        final long programHeap = retainedHeap(retained, cache, schemaNode,
+            instances, true);
+
+        System.out.println(String.format("%d copies: linked %d KiB, programs "
+            + "%d KiB", COPIES, linkedHeap / 1024L, programHeap / 1024L));
+        System.exit(0);
+    }
+
+    private static long retainedHeap(final List<Object> retained,
+        final JsonValidatorCache cache, final SchemaNode schemaNode,
+        final List<JsonNode> instances, final boolean compile)
+    {
+        final long before = usedHeap();
+        final ValidationContext context = new ValidationContext(cache);
+
+        JsonValidator validator;
+
+        for (int i = 0; i < COPIES; i++) {
+            validator = compile ? cache.compile(schemaNode)
+                : cache.link(schemaNode);
+            // Links are only resolved on use
+            for (final JsonNode instance: instances)
+                validator.validate(context, new ValidationReport(), instance);
+            retained.add(validator);
+        }
+
+        return usedHeap() - before;
+    }
+
+    private static long usedHeap()
+    {
+        final Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 5; i++)
+            System.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
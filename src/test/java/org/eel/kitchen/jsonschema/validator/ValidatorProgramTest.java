@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2012, Francis Galiegue <fgaliegue@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Lesser GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.eel.kitchen.jsonschema.validator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import org.eel.kitchen.jsonschema.bundle.KeywordBundles;
+import org.eel.kitchen.jsonschema.ref.SchemaContainer;
+import org.eel.kitchen.jsonschema.ref.SchemaNode;
+import org.eel.kitchen.jsonschema.ref.SchemaRegistry;
+import org.eel.kitchen.jsonschema.report.ValidationReport;
+import org.eel.kitchen.jsonschema.uri.URIManager;
+import org.eel.kitchen.jsonschema.util.JsonLoader;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public final class ValidatorProgramTest
+{
+    private static final String[] RESOURCES = {
+        "additionalItems", "additionalProperties", "dependenciesSchema",
+        "dependenciesSimple", "disallow", "divisibleBy", "enum", "extends",
+        "maxItems", "maxLength", "maximum", "minItems", "minLength", "minimum",
+        "pattern", "properties", "type", "typeSimple", "uniqueItems"
+    };
+
+    private SchemaRegistry registry;
+    private JsonValidatorCache cache;
+
+    @BeforeMethod
+    public void initCache()
+    {
+        registry = new SchemaRegistry(new URIManager(), URI.create(""));
+        cache = new JsonValidatorCache(KeywordBundles.defaultBundle(),
+            registry);
+    }
+
+    @DataProvider
+    public Iterator<Object[]> getResources()
+    {
+        final List<Object[]> list = Lists.newArrayList();
+
+        for (final String resource: RESOURCES)
+            list.add(new Object[] { resource });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "getResources")
+    public void programReportsAreTheSameAsInterpretedReports(
+        final String resource)
+        throws IOException
+    {
+        final JsonNode testData
+            = JsonLoader.fromResource("/keyword/" + resource + ".json");
+
+        JsonNode schema;
+        SchemaNode schemaNode;
+
+        for (final JsonNode element: testData) {
+            schema = element.get("schema");
+            schemaNode = new SchemaNode(registry.register(schema), schema);
+            assertSameReports(schemaNode, element.get("data"));
+        }
+    }
+
+    @Test
+    public void recursiveSchemasAreCompiledOnce()
+        throws IOException
+    {
+        final JsonNode draftv3
+            = JsonLoader.fromResource("/schema-draftv3.json");
+        final JsonNode googleAPI
+            = JsonLoader.fromResource("/other/google-json-api.json");
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(draftv3), draftv3);
+
+        for (final JsonNode instance: googleAPI.get("schemas"))
+            assertSameReports(schemaNode, instance);
+        assertSameReports(schemaNode, googleAPI);
+        assertSameReports(schemaNode, draftv3);
+    }
+
+    @Test
+    public void equalSubschemasShareTheirBlock()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"a\":{\"minLength\":2},\"b\":{\"minLength\":2},"
+            + "\"c\":{\"minLength\":2}}}"));
+        final JsonNode single = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"a\":{\"minLength\":2}}}"));
+        final SchemaContainer container = registry.register(schema);
+
+        final ValidatorProgram program = (ValidatorProgram) cache.compile(
+            new SchemaNode(container, schema));
+        final ValidatorProgram singleProgram = (ValidatorProgram) cache
+            .compile(new SchemaNode(registry.register(single), single));
+
+        assertEquals(program.codeSize(), singleProgram.codeSize());
+
+        final JsonNode instance = JsonLoader.fromReader(new StringReader(
+            "{\"a\":\"x\",\"b\":\"y\",\"c\":\"zz\",\"d\":\"\"}"));
+        final ValidationReport report = new ValidationReport();
+
+        program.validate(new ValidationContext(cache), report, instance);
+        assertEquals(report.getMessages().size(), 2);
+    }
+
+    @Test
+    public void triviallyTrueSubschemasAreNotCompiled()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"a\":{},\"b\":{\"description\":\"x\"}},"
+            + "\"items\":{}}"));
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(schema), schema);
+
+        final ValidatorProgram program
+            = (ValidatorProgram) cache.compile(schemaNode);
+
+        assertEquals(cache.stats().loadCount(), 1L);
+        assertEquals(program.codeSize(), 1);
+        assertSameReports(schemaNode, JsonLoader.fromReader(
+            new StringReader("{\"a\":1,\"b\":[2]}")));
+    }
+
+    @Test
+    public void usualKeywordsAreLowered()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"a\":{\"minimum\":0,\"maximum\":10,"
+            + "\"exclusiveMaximum\":true,\"divisibleBy\":2},"
+            + "\"b\":{\"pattern\":\"^x\",\"enum\":[\"x\",\"xy\",1]},"
+            + "\"c\":{\"required\":true,\"properties\":{\"d\":{}}}}}"));
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(schema), schema);
+
+        final ValidatorProgram program
+            = (ValidatorProgram) cache.compile(schemaNode);
+
+        assertEquals(program.instructionCount(ValidatorProgram.KEYWORD), 0);
+        assertEquals(program.instructionCount(ValidatorProgram.MINIMUM), 1);
+        assertEquals(program.instructionCount(ValidatorProgram.MAXIMUM), 1);
+        assertEquals(program.instructionCount(ValidatorProgram.DIVISIBLE_BY),
+            1);
+        assertEquals(program.instructionCount(ValidatorProgram.PATTERN), 1);
+        assertEquals(program.instructionCount(ValidatorProgram.ENUM), 1);
+        assertEquals(program.instructionCount(ValidatorProgram.REQUIRED), 1);
+
+        final String[] instances = {
+            "{\"c\":{}}", "{}", "{\"a\":4,\"b\":\"xy\",\"c\":[]}",
+            "{\"a\":-2,\"c\":1}", "{\"a\":10,\"c\":1}", "{\"a\":3,\"c\":1}",
+            "{\"a\":4.0,\"c\":1}", "{\"a\":-1e30,\"c\":1}",
+            "{\"a\":100000000000000000000,\"c\":1}",
+            "{\"a\":\"x\",\"b\":\"y\",\"c\":1}", "{\"b\":\"xz\",\"c\":1}",
+            "{\"b\":1,\"c\":1}", "{\"b\":2,\"c\":1}"
+        };
+
+        for (final String instance: instances)
+            assertSameReports(schemaNode, JsonLoader.fromReader(
+                new StringReader(instance)));
+    }
+
+    @Test
+    public void nonLongNumericKeywordsAreDelegated()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"minimum\":0.5,\"maximum\":100000000000000000000,"
+            + "\"divisibleBy\":0.5}"));
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(schema), schema);
+
+        final ValidatorProgram program
+            = (ValidatorProgram) cache.compile(schemaNode);
+
+        assertEquals(program.instructionCount(ValidatorProgram.KEYWORD), 3);
+        assertSameReports(schemaNode, JsonLoader.fromReader(
+            new StringReader("0")));
+        assertSameReports(schemaNode, JsonLoader.fromReader(
+            new StringReader("1.5")));
+    }
+
+    @Test
+    public void subschemaKeywordsAreCompiled()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"extends\":[{\"minLength\":2},{\"$ref\":\"#/s\"}],"
+            + "\"dependencies\":{\"a\":\"b\",\"c\":{\"required\":true,"
+            + "\"properties\":{\"d\":{\"required\":true}}},"
+            + "\"e\":{\"$ref\":\"#/s\"}},"
+            + "\"type\":[\"string\",{\"properties\":{\"k\":{\"required\":"
+            + "true,\"enum\":[\"one\"]},\"x\":{\"maximum\":1}}},"
+            + "{\"properties\":{\"k\":{\"required\":true,\"enum\":[\"two\"]},"
+            + "\"x\":{\"maximum\":2}}},{\"minItems\":1}],"
+            + "\"disallow\":[\"null\",{\"$ref\":\"#/s\"}],"
+            + "\"s\":{\"maxLength\":3,\"enum\":[\"xy\",\"xyz\"]}}"));
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(schema), schema);
+
+        final ValidatorProgram program
+            = (ValidatorProgram) cache.compile(schemaNode);
+
+        // Only the validator of the property dependency is left
+        assertEquals(program.instructionCount(ValidatorProgram.KEYWORD), 1);
+        assertEquals(program.instructionCount(ValidatorProgram.EXTENDS), 1);
+        assertEquals(program.instructionCount(ValidatorProgram.DEPENDENCIES),
+            1);
+        assertEquals(program.instructionCount(ValidatorProgram.TYPE), 1);
+        assertEquals(program.instructionCount(ValidatorProgram.DISALLOW), 1);
+
+        final String[] instances = {
+            "\"x\"", "\"xy\"", "\"xyzt\"", "null", "1", "[]", "[1]",
+            "{\"k\":\"one\",\"x\":1}", "{\"k\":\"one\",\"x\":2}",
+            "{\"k\":\"two\",\"x\":2}", "{\"k\":\"three\",\"x\":2}", "{\"x\":3}",
+            "{\"k\":\"one\",\"a\":1}",
+            "{\"k\":\"one\",\"a\":1,\"b\":1,\"c\":1}",
+            "{\"k\":\"one\",\"c\":1,\"d\":1,\"e\":1}"
+        };
+
+        for (final String instance: instances)
+            assertSameReports(schemaNode, JsonLoader.fromReader(
+                new StringReader(instance)));
+    }
+
+    @Test
+    public void patternTargetsAreRunInSubschemaOrder()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"ab\":{\"minimum\":10}},"
+            + "\"patternProperties\":{\"^a\":{\"maximum\":0},"
+            + "\"b$\":{\"divisibleBy\":7},\"a\":{\"enum\":[2]},"
+            + "\"^ab$\":{\"minimum\":10},\"^c\":{}},"
+            + "\"additionalProperties\":{\"type\":\"string\"}}"));
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(schema), schema);
+
+        assertSameReports(schemaNode, JsonLoader.fromReader(new StringReader(
+            "{\"ab\":1,\"a\":1,\"b\":1,\"c\":1,\"d\":1}")));
+    }
+
+    @Test
+    public void failingSchemasAreReturnedAsIs()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"minLength\":-1}"));
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(schema), schema);
+
+        assertFalse(cache.compile(schemaNode) instanceof ValidatorProgram);
+        assertSameReports(schemaNode, schema);
+    }
+
+    @Test
+    public void unreachableSubschemasOnlyFailWhenUsed()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"p\":{\"$ref\":\"Unreachable#\"}}}"));
+        final SchemaNode schemaNode
+            = new SchemaNode(registry.register(schema), schema);
+
+        final JsonValidator program = cache.compile(schemaNode);
+        assertTrue(program instanceof ValidatorProgram);
+        assertSameReports(schemaNode, JsonLoader.fromReader(
+            new StringReader("{\"q\":1}")));
+    }
+
+    @Test
+    public void compactProgramsOnlyKeepContainersIfNeeded()
+        throws IOException
+    {
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"properties\":{\"a\":{\"$ref\":\"#/b\"}},"
+            + "\"b\":{\"minimum\":1}}"));
+        final JsonNode typeSchema = JsonLoader.fromReader(new StringReader(
+            "{\"type\":[{\"$ref\":\"#/b\"}],\"b\":{\"minimum\":1}}"));
+        final SchemaContainer container = registry.register(schema);
+        final SchemaContainer typeContainer = registry.register(typeSchema);
+
+        final ValidatorProgram program = (ValidatorProgram) cache.compile(
+            new SchemaNode(container, schema));
+        final ValidatorProgram compact = (ValidatorProgram) cache
+            .compileCompact(new SchemaNode(container, schema));
+        final ValidatorProgram typeCompact = (ValidatorProgram) cache
+            .compileCompact(new SchemaNode(typeContainer, typeSchema));
+
+        assertSame(program.getContainer(), container);
+        assertSame(compact.getContainer(),
+            SchemaInterner.canonicalContainer());
+        // Schemas of type are compiled as well
+        assertSame(typeCompact.getContainer(),
+            SchemaInterner.canonicalContainer());
+
+        final JsonNode instance = JsonLoader.fromReader(new StringReader(
+            "{\"a\":0}"));
+        final ValidationReport report = new ValidationReport();
+
+        compact.validate(new ValidationContext(cache), report, instance);
+        assertEquals(report.getMessages().size(), 1);
+
+        final ValidationReport typeReport = new ValidationReport();
+
+        typeCompact.validate(new ValidationContext(cache), typeReport,
+            JsonLoader.fromReader(new StringReader("0")));
+        assertEquals(typeReport.getMessages().size(), 1);
+    }
+
+    @Test
+    public void compactProgramsDoNotRetainRecursiveSchemas()
+        throws IOException
+    {
+        final List<WeakReference<SchemaContainer>> refs = Lists.newArrayList();
+        final JsonValidator compact = compileRecursiveCompact(refs);
+
+        for (int i = 0; i < 50 && refs.get(0).get() != null; i++)
+            System.gc();
+
+        assertNull(refs.get(0).get());
+
+        final JsonNode instance = JsonLoader.fromReader(new StringReader(
+            "{\"p\":{\"p\":1}}"));
+        final ValidationReport report = new ValidationReport();
+
+        compact.validate(new ValidationContext(cache), report, instance);
+        assertEquals(report.getMessages().size(), 1);
+    }
+
+    @Test
+    public void compactProgramsDoNotRetainSubschemas()
+        throws IOException
+    {
+        final List<WeakReference<JsonNode>> refs = Lists.newArrayList();
+        final JsonValidator compact = compileSubschemasCompact(refs);
+
+        for (int i = 0; i < 50 && anyRetained(refs); i++)
+            System.gc();
+
+        for (final WeakReference<JsonNode> ref: refs)
+            assertNull(ref.get());
+
+        final ValidationReport report = new ValidationReport();
+
+        compact.validate(new ValidationContext(cache), report,
+            JsonLoader.fromReader(new StringReader("{\"a\":1,\"k\":1}")));
+        // extends, dependencies, and both schemas of type
+        assertEquals(report.getMessages().size(), 4);
+    }
+
+    private static JsonValidator compileSubschemasCompact(
+        final List<WeakReference<JsonNode>> refs)
+        throws IOException
+    {
+        final SchemaRegistry localRegistry
+            = new SchemaRegistry(new URIManager(), URI.create(""));
+        final JsonValidatorCache localCache = new JsonValidatorCache(
+            KeywordBundles.defaultBundle(), localRegistry);
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"extends\":{\"required\":true,\"properties\":{\"p\":"
+            + "{\"required\":true}}},\"dependencies\":{\"a\":{\"$ref\":"
+            + "\"#/s\"}},\"type\":[{\"properties\":{\"k\":{\"required\":"
+            + "true,\"enum\":[1]},\"x\":{\"required\":true}}},"
+            + "{\"properties\":{\"k\":{\"required\":true,\"enum\":[2]}}}],"
+            + "\"disallow\":[{\"$ref\":\"#/s\"}],"
+            + "\"patternProperties\":{\"^z\":{\"$ref\":\"#/s\"}},"
+            + "\"s\":{\"required\":true,\"properties\":{\"q\":"
+            + "{\"required\":true}}}}"));
+        final SchemaContainer container = localRegistry.register(schema);
+        final JsonValidator ret = localCache.compileCompact(
+            new SchemaNode(container, schema));
+
+        refs.add(new WeakReference<JsonNode>(schema.get("extends")));
+        refs.add(new WeakReference<JsonNode>(schema.get("dependencies")));
+        refs.add(new WeakReference<JsonNode>(schema.get("type")));
+        refs.add(new WeakReference<JsonNode>(schema.get("disallow")));
+        refs.add(new WeakReference<JsonNode>(schema.get("s")));
+        return ret;
+    }
+
+    private static boolean anyRetained(
+        final List<? extends WeakReference<?>> refs)
+    {
+        for (final WeakReference<?> ref: refs)
+            if (ref.get() != null)
+                return true;
+        return false;
+    }
+
+    /*
+     * The registry and validator cache used to compile the program are
+     * unreachable once this method returns, so that only the program may
+     * retain the schema container.
+     */
+    private static JsonValidator compileRecursiveCompact(
+        final List<WeakReference<SchemaContainer>> refs)
+        throws IOException
+    {
+        final SchemaRegistry localRegistry
+            = new SchemaRegistry(new URIManager(), URI.create(""));
+        final JsonValidatorCache localCache = new JsonValidatorCache(
+            KeywordBundles.defaultBundle(), localRegistry);
+        final JsonNode schema = JsonLoader.fromReader(new StringReader(
+            "{\"type\":\"object\",\"properties\":{\"p\":{\"$ref\":\"#\"}}}"));
+        final SchemaContainer container = localRegistry.register(schema);
+
+        refs.add(new WeakReference<SchemaContainer>(container));
+        return localCache.compileCompact(new SchemaNode(container, schema));
+    }
+
+    private void assertSameReports(final SchemaNode schemaNode,
+        final JsonNode instance)
+    {
+        final ValidationReport expected = new ValidationReport();
+        final ValidationReport actual = new ValidationReport();
+        final ValidationReport compact = new ValidationReport();
+
+        cache.getValidator(schemaNode).validate(new ValidationContext(cache),
+            expected, instance);
+        cache.compile(schemaNode).validate(new ValidationContext(cache),
+            actual, instance);
+        cache.compileCompact(schemaNode).validate(new ValidationContext(cache),
+            compact, instance);
+
+        assertEquals(actual.asJsonNode(), expected.asJsonNode());
+        assertEquals(compact.asJsonNode(), expected.asJsonNode());
+    }
+}